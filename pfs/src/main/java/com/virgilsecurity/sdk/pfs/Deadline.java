@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.pfs;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which an operation should be completed. Deadline attached
+ * to the current thread limits all Virgil PFS service requests made by this
+ * thread, including requests made by {@code SecureChat} on behalf of the
+ * caller.
+ * 
+ * <pre>
+ * try (Deadline.Scope scope = Deadline.after(2, TimeUnit.SECONDS).attach()) {
+ * 	secureChat.startNewSession(card, null);
+ * }
+ * </pre>
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public final class Deadline {
+
+	/**
+	 * Restores previous deadline of the current thread when closed.
+	 */
+	public final class Scope implements Closeable {
+
+		private final Deadline previous;
+
+		private Scope(Deadline previous) {
+			this.previous = previous;
+		}
+
+		@Override
+		public void close() {
+			if (this.previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(this.previous);
+			}
+		}
+	}
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+	private final long deadlineNanos;
+
+	private Deadline(long deadlineNanos) {
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	/**
+	 * Creates deadline after given duration from now.
+	 * 
+	 * @param duration
+	 *            the duration.
+	 * @param unit
+	 *            the duration unit.
+	 * @return the deadline.
+	 */
+	public static Deadline after(long duration, TimeUnit unit) {
+		return new Deadline(System.nanoTime() + unit.toNanos(duration));
+	}
+
+	/**
+	 * @return the deadline attached to the current thread, or {@code null} if
+	 *         there is no deadline.
+	 */
+	public static Deadline current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Attaches deadline to the current thread. If the thread already has an
+	 * earlier deadline, the earlier one remains in effect.
+	 * 
+	 * @return the scope which should be closed when operation completes.
+	 */
+	public Scope attach() {
+		Deadline previous = CURRENT.get();
+		if (previous == null || this.isBefore(previous)) {
+			CURRENT.set(this);
+		}
+		return new Scope(previous);
+	}
+
+	/**
+	 * @return {@code true} if deadline is passed.
+	 */
+	public boolean isExpired() {
+		return timeRemaining(TimeUnit.NANOSECONDS) <= 0;
+	}
+
+	/**
+	 * @param unit
+	 *            the time unit.
+	 * @return the time remaining until deadline, negative if deadline is
+	 *         passed.
+	 */
+	public long timeRemaining(TimeUnit unit) {
+		return unit.convert(this.deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	private boolean isBefore(Deadline other) {
+		return this.deadlineNanos - other.deadlineNanos < 0;
+	}
+
+}
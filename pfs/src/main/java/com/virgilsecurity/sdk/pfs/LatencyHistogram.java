@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.pfs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of request latencies. Latencies are counted in buckets
+ * with power of two bounds in microseconds, so percentiles are accurate
+ * within a factor of two.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class LatencyHistogram {
+
+	/* Bucket i counts latencies below 2^i microseconds */
+	private static final int BUCKETS_COUNT = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_COUNT);
+
+	/**
+	 * Records latency.
+	 * 
+	 * @param latency
+	 *            the latency.
+	 * @param unit
+	 *            the latency unit.
+	 */
+	public void record(long latency, TimeUnit unit) {
+		long micros = Math.max(0, unit.toMicros(latency));
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		this.buckets.incrementAndGet(Math.min(bucket, BUCKETS_COUNT - 1));
+	}
+
+	/**
+	 * @return the number of recorded latencies.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			count += this.buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the upper bound of latency below which given fraction of
+	 * latencies falls.
+	 * 
+	 * @param fraction
+	 *            the fraction, e.g. 0.99 for 99th percentile.
+	 * @param unit
+	 *            the unit of result.
+	 * @return the percentile, or 0 if nothing is recorded.
+	 */
+	public long getPercentile(double fraction, TimeUnit unit) {
+		if (fraction < 0 || fraction > 1) {
+			throw new IllegalArgumentException("Fraction should be between 0 and 1");
+		}
+		long[] counts = new long[BUCKETS_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			counts[i] = this.buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0) {
+				return unit.convert(1L << i, TimeUnit.MICROSECONDS);
+			}
+		}
+		return unit.convert(1L << (BUCKETS_COUNT - 1), TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Clears recorded latencies.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			this.buckets.set(i, 0);
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.pfs;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.virgilsecurity.sdk.pfs.VirgilPFSClient.Endpoint;
+
+/**
+ * Executes Virgil PFS service requests with deadline of the calling thread,
+ * per-endpoint timeouts and hedging of idempotent requests. Latency of each
+ * request is recorded to the endpoint's histogram.
+ * 
+ * Requests without timeout and hedging are executed by the calling thread.
+ * Others are executed by the request executor, so the caller can stop waiting
+ * when time is out. A request which is timed out or lost the race to its
+ * hedged copy is cancelled with interruption.
+ * 
+ * HTTP connections ignore interruption, so each request is performed with
+ * its timeout attached as {@link Deadline} to the executing thread, which
+ * limits connect and read timeouts of the connection. The default request
+ * executor is bounded with {@link #MAX_REQUEST_THREADS} threads. When no
+ * thread is available, hedged copy is not sent, and the request itself is
+ * executed by the calling thread.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+class RequestExecutor {
+
+	/* Maximum number of threads in default request executor */
+	static final int MAX_REQUEST_THREADS = 32;
+
+	private VirgilPFSClientContext context;
+	private ExecutorService executor;
+	private final Map<Endpoint, LatencyHistogram> histograms;
+
+	/**
+	 * Create new instance of {@link RequestExecutor}.
+	 * 
+	 * @param context
+	 *            the client context with timeouts configuration.
+	 */
+	RequestExecutor(VirgilPFSClientContext context) {
+		this.context = context;
+		this.executor = context.getRequestExecutor();
+		if (this.executor == null) {
+			this.executor = new ThreadPoolExecutor(0, MAX_REQUEST_THREADS, 60L, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new ThreadFactory() {
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "virgil-pfs-requests");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		this.histograms = new EnumMap<>(Endpoint.class);
+		for (Endpoint endpoint : Endpoint.values()) {
+			this.histograms.put(endpoint, new LatencyHistogram());
+		}
+	}
+
+	/**
+	 * Executes request.
+	 * 
+	 * @param endpoint
+	 *            the requested endpoint.
+	 * @param request
+	 *            the request.
+	 * @return the response.
+	 * @throws TimeoutException
+	 *             if response is not received before timeout or deadline.
+	 * @throws Exception
+	 *             the exception thrown by request.
+	 */
+	<T> T execute(Endpoint endpoint, Callable<T> request) throws Exception {
+		long start = System.nanoTime();
+		try {
+			return doExecute(endpoint, request, start);
+		} finally {
+			this.histograms.get(endpoint).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * @param endpoint
+	 *            the endpoint.
+	 * @return the latency histogram of endpoint.
+	 */
+	LatencyHistogram getLatencyHistogram(Endpoint endpoint) {
+		return this.histograms.get(endpoint);
+	}
+
+	private <T> T doExecute(Endpoint endpoint, Callable<T> request, long start) throws Exception {
+		long timeout = TimeUnit.MILLISECONDS.toNanos(this.context.getTimeout(endpoint));
+		Deadline deadline = Deadline.current();
+		if (deadline != null) {
+			long remaining = deadline.timeRemaining(TimeUnit.NANOSECONDS);
+			if (remaining <= 0) {
+				throw new TimeoutException(String.format("Deadline exceeded before %s request", endpoint));
+			}
+			timeout = (timeout > 0) ? Math.min(timeout, remaining) : remaining;
+		}
+		long hedgingDelay = 0;
+		if (endpoint.isIdempotent()) {
+			hedgingDelay = TimeUnit.MILLISECONDS.toNanos(this.context.getHedgingDelay());
+		}
+		if (timeout <= 0 && hedgingDelay <= 0) {
+			return request.call();
+		}
+
+		if (timeout > 0) {
+			request = withDeadline(request, Deadline.after(timeout, TimeUnit.NANOSECONDS));
+		}
+		CompletionService<T> completion = new ExecutorCompletionService<>(this.executor);
+		List<Future<T>> futures = new ArrayList<>(2);
+		try {
+			try {
+				futures.add(completion.submit(request));
+			} catch (RejectedExecutionException e) {
+				// All request threads are busy
+				return request.call();
+			}
+			int pending = 1;
+			boolean hedged = hedgingDelay <= 0;
+			Exception failure = null;
+			while (pending > 0) {
+				long elapsed = System.nanoTime() - start;
+				long wait = (timeout > 0) ? timeout - elapsed : Long.MAX_VALUE;
+				if (!hedged) {
+					wait = Math.min(wait, hedgingDelay - elapsed);
+				}
+				Future<T> done;
+				if (wait == Long.MAX_VALUE) {
+					done = completion.take();
+				} else {
+					done = completion.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+				}
+				if (done == null) {
+					if (!hedged && System.nanoTime() - start >= hedgingDelay) {
+						// Response is late, send the same request again
+						hedged = true;
+						try {
+							futures.add(completion.submit(request));
+							pending++;
+						} catch (RejectedExecutionException e) {
+							// All request threads are busy, keep waiting
+						}
+						continue;
+					}
+					if (timeout > 0 && System.nanoTime() - start >= timeout) {
+						throw new TimeoutException(String.format("%s request timed out", endpoint));
+					}
+					continue;
+				}
+				pending--;
+				try {
+					return done.get();
+				} catch (ExecutionException e) {
+					failure = unwrap(e);
+				}
+			}
+			throw failure;
+		} finally {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Attaches deadline to the thread which performs request. The deadline
+	 * limits connection timeouts, so the request is not blocked after caller
+	 * gave up waiting.
+	 */
+	private static <T> Callable<T> withDeadline(final Callable<T> request, final Deadline deadline) {
+		return new Callable<T>() {
+
+			@Override
+			public T call() throws Exception {
+				try (Deadline.Scope scope = deadline.attach()) {
+					return request.call();
+				}
+			}
+		};
+	}
+
+	private static Exception unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof Exception) {
+			return (Exception) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return e;
+	}
+
+}
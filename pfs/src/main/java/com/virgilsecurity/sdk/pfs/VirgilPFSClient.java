@@ -30,10 +30,16 @@
 package com.virgilsecurity.sdk.pfs;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import com.virgilsecurity.sdk.client.ClientBase;
 import com.virgilsecurity.sdk.client.exceptions.VirgilServiceException;
@@ -48,6 +54,8 @@ import com.virgilsecurity.sdk.pfs.model.request.ValidateOTCRequest;
 import com.virgilsecurity.sdk.pfs.model.response.BootstrapCardsResponse;
 import com.virgilsecurity.sdk.pfs.model.response.CardStatus;
 import com.virgilsecurity.sdk.pfs.model.response.ValidateOTCResponse;
+import com.virgilsecurity.sdk.securechat.utils.BufferPool;
+import com.virgilsecurity.sdk.securechat.utils.PooledCharArrayWriter;
 import com.virgilsecurity.sdk.utils.ConvertionUtils;
 
 /**
@@ -59,13 +67,52 @@ import com.virgilsecurity.sdk.utils.ConvertionUtils;
 public class VirgilPFSClient extends ClientBase {
 
 	/**
-	 * Create a new instance of {@code VirgilPFSClient}
+	 * Virgil PFS service endpoints.
+	 */
+	public enum Endpoint {
+		BOOTSTRAP_CARDS_SET(false),
+		CREATE_LONG_TERM_CARD(false),
+		CREATE_ONE_TIME_CARDS(false),
+		GET_CARD_STATUS(true),
+		/*
+		 * Search hands out and consumes a one-time card of each recipient, so
+		 * hedged copy would burn an extra card
+		 */
+		SEARCH_BY_IDS(false),
+		VALIDATE_ONE_TIME_CARDS(true);
+
+		private final boolean idempotent;
+
+		private Endpoint(boolean idempotent) {
+			this.idempotent = idempotent;
+		}
+
+		/**
+		 * @return {@code true} if request to endpoint can be safely sent more
+		 *         than once.
+		 */
+		public boolean isIdempotent() {
+			return idempotent;
+		}
+	}
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private BufferPool bufferPool = BufferPool.getDefault();
+
+	private RequestExecutor requestExecutor;
+
+	/**
+	 * Create a new instance of {@code VirgilPFSClient}. Timeouts and hedging
+	 * are configured with context, and should be set before client is
+	 * created.
 	 *
 	 * @param context
 	 *            the Virgil client context.
 	 */
 	public VirgilPFSClient(VirgilPFSClientContext context) {
 		super(context);
+		this.requestExecutor = new RequestExecutor(context);
 	}
 
 	/**
@@ -93,10 +140,8 @@ public class VirgilPFSClient extends ClientBase {
 			requestModel.setLongTimeCard(longTimeCardRequest.getRequestModel());
 			requestModel.setOneTimeCards(otcRequests);
 
-			String body = ConvertionUtils.getGson().toJson(requestModel);
-
-			BootstrapCardsResponse responseModel = execute(url, "PUT",
-					new ByteArrayInputStream(ConvertionUtils.toBytes(body)), BootstrapCardsResponse.class);
+			BootstrapCardsResponse responseModel = request(Endpoint.BOOTSTRAP_CARDS_SET, url, "PUT", requestModel,
+					BootstrapCardsResponse.class);
 
 			return responseModel;
 		} catch (VirgilServiceException e) {
@@ -120,10 +165,8 @@ public class VirgilPFSClient extends ClientBase {
 			URL url = new URL(getContext().getEphemeralServiceURL(),
 					String.format("/v1/recipient/%s/actions/push-ltc", recipientId));
 
-			String body = ConvertionUtils.getGson().toJson(longTermCardRequest.getRequestModel());
-
-			CardModel responseModel = execute(url, "POST", new ByteArrayInputStream(ConvertionUtils.toBytes(body)),
-					CardModel.class);
+			CardModel responseModel = request(Endpoint.CREATE_LONG_TERM_CARD, url, "POST",
+					longTermCardRequest.getRequestModel(), CardModel.class);
 
 			return responseModel;
 		} catch (VirgilServiceException e) {
@@ -152,10 +195,7 @@ public class VirgilPFSClient extends ClientBase {
 			for (CreateEphemeralCardRequest oneTimeCardRequest : oneTimeCardsRequest) {
 				request.add(oneTimeCardRequest.getRequestModel());
 			}
-			String body = ConvertionUtils.getGson().toJson(request);
-
-			CardModel[] responseModel = execute(url, "POST", new ByteArrayInputStream(ConvertionUtils.toBytes(body)),
-					CardModel[].class);
+			CardModel[] responseModel = request(Endpoint.CREATE_ONE_TIME_CARDS, url, "POST", request, CardModel[].class);
 
 			return Arrays.asList(responseModel);
 		} catch (VirgilServiceException e) {
@@ -177,7 +217,7 @@ public class VirgilPFSClient extends ClientBase {
 			URL url = new URL(getContext().getEphemeralServiceURL(),
 					String.format("/v1/recipient/%s/actions/count-otcs", recipientId));
 
-			CardStatus responseModel = execute(url, "POST", null, CardStatus.class);
+			CardStatus responseModel = request(Endpoint.GET_CARD_STATUS, url, "POST", null, CardStatus.class);
 
 			return responseModel;
 		} catch (VirgilServiceException e) {
@@ -187,10 +227,58 @@ public class VirgilPFSClient extends ClientBase {
 		}
 	}
 
+	/**
+	 * Create connection with connect and read timeouts limited by deadline of
+	 * the current thread. Connection ignores interruption, so request which
+	 * is abandoned on timeout would be blocked forever without them.
+	 */
+	@Override
+	protected HttpURLConnection createConnection(URL url, String method) throws IOException {
+		HttpURLConnection connection = super.createConnection(url, method);
+		Deadline deadline = Deadline.current();
+		if (deadline != null) {
+			long remaining = deadline.timeRemaining(TimeUnit.MILLISECONDS);
+			int timeout = (int) Math.max(1, Math.min(Integer.MAX_VALUE, remaining));
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+		}
+		return connection;
+	}
+
+	/**
+	 * Execute request with JSON body. The body is written to a buffer from the
+	 * buffer pool, which is released when response is received.
+	 */
+	private <T> T executeJson(URL url, String method, Object requestModel, Class<T> clazz) throws Exception {
+		PooledCharArrayWriter json = new PooledCharArrayWriter(this.bufferPool);
+		ByteBuffer body = null;
+		try {
+			ConvertionUtils.getGson().toJson(requestModel, json);
+			body = json.encode(UTF8, false);
+
+			return execute(url, method, new ByteArrayInputStream(body.array(), 0, body.limit()), clazz);
+		} finally {
+			json.close();
+			this.bufferPool.release(body);
+		}
+	}
+
 	private VirgilPFSClientContext getContext() {
 		return (VirgilPFSClientContext) context;
 	}
 
+	/**
+	 * Returns latency histogram of endpoint. Latency includes waiting for
+	 * hedged requests, and time spent before timeout.
+	 * 
+	 * @param endpoint
+	 *            the endpoint.
+	 * @return the latency histogram.
+	 */
+	public LatencyHistogram getLatencyHistogram(Endpoint endpoint) {
+		return this.requestExecutor.getLatencyHistogram(endpoint);
+	}
+
 	/**
 	 * Get cards of recipients.
 	 * 
@@ -202,10 +290,8 @@ public class VirgilPFSClient extends ClientBase {
 		try {
 			URL url = new URL(getContext().getEphemeralServiceURL(), "/v1/recipient/actions/search-by-ids");
 
-			String body = ConvertionUtils.getGson().toJson(new CredentialsRequest(cardsIds));
-
-			RecipientCardsSet[] responseModel = execute(url, "POST",
-					new ByteArrayInputStream(ConvertionUtils.toBytes(body)), RecipientCardsSet[].class);
+			RecipientCardsSet[] responseModel = request(Endpoint.SEARCH_BY_IDS, url, "POST",
+					new CredentialsRequest(cardsIds), RecipientCardsSet[].class);
 
 			return Arrays.asList(responseModel);
 		} catch (VirgilServiceException e) {
@@ -226,6 +312,33 @@ public class VirgilPFSClient extends ClientBase {
 		return getRecipientCardsSet(Arrays.asList(cardId));
 	}
 
+	/**
+	 * Execute request with timeout and hedging configured for endpoint. The
+	 * body is encoded by the thread which performs request, so body buffer is
+	 * not released while abandoned request still uses it.
+	 */
+	private <T> T request(Endpoint endpoint, final URL url, final String method, final Object requestModel,
+			final Class<T> clazz) throws Exception {
+		return this.requestExecutor.execute(endpoint, new Callable<T>() {
+
+			@Override
+			public T call() throws Exception {
+				if (requestModel == null) {
+					return execute(url, method, null, clazz);
+				}
+				return executeJson(url, method, requestModel, clazz);
+			}
+		});
+	}
+
+	/**
+	 * @param bufferPool
+	 *            the pool of buffers used for request bodies.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
 	/**
 	 * Validate one time cards.
 	 * 
@@ -240,10 +353,8 @@ public class VirgilPFSClient extends ClientBase {
 			URL url = new URL(getContext().getEphemeralServiceURL(),
 					String.format("/v1/recipient/%s/actions/validate-otcs", recipientId));
 
-			String body = ConvertionUtils.getGson().toJson(new ValidateOTCRequest(cardsIds));
-
-			ValidateOTCResponse responseModel = execute(url, "POST",
-					new ByteArrayInputStream(ConvertionUtils.toBytes(body)), ValidateOTCResponse.class);
+			ValidateOTCResponse responseModel = request(Endpoint.VALIDATE_ONE_TIME_CARDS, url, "POST",
+					new ValidateOTCRequest(cardsIds), ValidateOTCResponse.class);
 
 			return responseModel.getCardsIds();
 		} catch (VirgilServiceException e) {
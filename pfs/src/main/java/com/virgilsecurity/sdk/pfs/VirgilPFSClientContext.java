@@ -31,8 +31,12 @@ package com.virgilsecurity.sdk.pfs;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import com.virgilsecurity.sdk.client.VirgilClientContext;
+import com.virgilsecurity.sdk.pfs.VirgilPFSClient.Endpoint;
 
 /**
  * @author Andrii Iakovenko
@@ -42,6 +46,18 @@ public class VirgilPFSClientContext extends VirgilClientContext {
 
     private URL ephemeralServiceURL;
 
+    /* Request timeout in milliseconds used when endpoint has no own timeout */
+    private long defaultTimeout;
+
+    /* Delay in milliseconds before idempotent request is sent again */
+    private long hedgingDelay;
+
+    /* The executor requests with timeout or hedging are performed with */
+    private ExecutorService requestExecutor;
+
+    /* Request timeouts in milliseconds by endpoint */
+    private Map<Endpoint, Long> timeouts = new EnumMap<>(Endpoint.class);
+
     /**
      * Create new instance of {@link VirgilPFSClientContext}.
      */
@@ -60,6 +76,14 @@ public class VirgilPFSClientContext extends VirgilClientContext {
         init();
     }
 
+    /**
+     * @return the request timeout in milliseconds used when endpoint has no
+     *         own timeout. 0 means no timeout.
+     */
+    public long getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
     /**
      * @return the ephemeralServiceURL
      */
@@ -67,6 +91,33 @@ public class VirgilPFSClientContext extends VirgilClientContext {
         return ephemeralServiceURL;
     }
 
+    /**
+     * @return the delay in milliseconds before idempotent request is sent
+     *         again if there is no response. 0 means no hedging.
+     */
+    public long getHedgingDelay() {
+        return hedgingDelay;
+    }
+
+    /**
+     * @return the executor requests with timeout or hedging are performed
+     *         with.
+     */
+    public ExecutorService getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    /**
+     * @param endpoint
+     *            the endpoint.
+     * @return the request timeout of endpoint in milliseconds. 0 means no
+     *         timeout.
+     */
+    public long getTimeout(Endpoint endpoint) {
+        Long timeout = timeouts.get(endpoint);
+        return (timeout == null) ? defaultTimeout : timeout;
+    }
+
     private void init() {
         try {
             this.ephemeralServiceURL = new URL("https://pfs.virgilsecurity.com");
@@ -75,6 +126,15 @@ public class VirgilPFSClientContext extends VirgilClientContext {
         }
     }
 
+    /**
+     * @param defaultTimeout
+     *            the request timeout in milliseconds used when endpoint has
+     *            no own timeout. 0 means no timeout.
+     */
+    public void setDefaultTimeout(long defaultTimeout) {
+        this.defaultTimeout = defaultTimeout;
+    }
+
     /**
      * @param ephemeralServiceURL
      *            the ephemeralServiceURL to set
@@ -83,4 +143,33 @@ public class VirgilPFSClientContext extends VirgilClientContext {
         this.ephemeralServiceURL = ephemeralServiceURL;
     }
 
+    /**
+     * @param hedgingDelay
+     *            the delay in milliseconds before idempotent request is sent
+     *            again if there is no response. 0 means no hedging.
+     */
+    public void setHedgingDelay(long hedgingDelay) {
+        this.hedgingDelay = hedgingDelay;
+    }
+
+    /**
+     * @param requestExecutor
+     *            the executor requests with timeout or hedging are performed
+     *            with. Bounded thread pool is used if not set.
+     */
+    public void setRequestExecutor(ExecutorService requestExecutor) {
+        this.requestExecutor = requestExecutor;
+    }
+
+    /**
+     * @param endpoint
+     *            the endpoint.
+     * @param timeout
+     *            the request timeout of endpoint in milliseconds. 0 means no
+     *            timeout.
+     */
+    public void setTimeout(Endpoint endpoint, long timeout) {
+        this.timeouts.put(endpoint, timeout);
+    }
+
 }
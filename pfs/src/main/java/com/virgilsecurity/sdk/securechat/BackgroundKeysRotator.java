@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.virgilsecurity.sdk.securechat.KeysRotator.Phase;
+import com.virgilsecurity.sdk.securechat.KeysRotator.Rotation;
+
+/**
+ * This class performs keys rotation periodically in background.
+ * 
+ * Rotation is split into small steps. Each step processes a limited number of
+ * items, so local storages are never locked for a long time. Steps are
+ * executed until time slice is used up, then rotation yields the executor
+ * thread to other tasks.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class BackgroundKeysRotator {
+
+	private static final Logger log = Logger.getLogger(BackgroundKeysRotator.class.getName());
+
+	/* The default maximum number of items processed with a single step */
+	public static final int DEFAULT_STEP_SIZE = 100;
+
+	/* The default time slice in milliseconds */
+	public static final long DEFAULT_TIME_SLICE = 50;
+
+	/* The default delay in milliseconds before paused rotation is checked again */
+	private static final long PAUSE_CHECK_DELAY = 1000;
+
+	/*
+	 * The delay in milliseconds before rotation is started again when other
+	 * rotation is in progress
+	 */
+	private static final long BUSY_CHECK_DELAY = 1000;
+
+	private KeysRotator rotator;
+	private ScheduledExecutorService executor;
+	private boolean ownExecutor;
+
+	/* Rotation period in seconds */
+	private long period;
+
+	/* Random part of the period, from 0 to 1 */
+	private double jitter;
+
+	private int stepSize;
+	private long timeSlice;
+
+	private Random random;
+
+	private int desiredNumberOfCards;
+	private ScheduledFuture<?> future;
+	private RotationTask task;
+	private volatile boolean started;
+	private volatile boolean paused;
+
+	/*
+	 * Changed on each start and stop. Task which is still running after stop
+	 * belongs to previous generation, and is dropped
+	 */
+	private volatile int generation;
+
+	/**
+	 * Create new instance of {@link BackgroundKeysRotator}.
+	 * 
+	 * @param rotator
+	 *            the keys rotator.
+	 * @param executor
+	 *            the executor rotation steps are executed with. If
+	 *            {@code null}, a single daemon thread is used.
+	 * @param period
+	 *            the rotation period in seconds.
+	 * @param jitter
+	 *            the random part of the period, from 0 to 1.
+	 */
+	public BackgroundKeysRotator(KeysRotator rotator, ScheduledExecutorService executor, long period, double jitter) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Period should be positive");
+		}
+		if (jitter < 0 || jitter > 1) {
+			throw new IllegalArgumentException("Jitter should be in range from 0 to 1");
+		}
+		this.rotator = rotator;
+		this.executor = executor;
+		this.period = period;
+		this.jitter = jitter;
+		this.stepSize = DEFAULT_STEP_SIZE;
+		this.timeSlice = DEFAULT_TIME_SLICE;
+		this.random = new Random();
+	}
+
+	/**
+	 * @return the maximum number of items processed with a single step.
+	 */
+	public int getStepSize() {
+		return stepSize;
+	}
+
+	/**
+	 * @return the time slice in milliseconds.
+	 */
+	public long getTimeSlice() {
+		return timeSlice;
+	}
+
+	/**
+	 * @return {@code true} if rotation is paused.
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * @return {@code true} if rotation is started.
+	 */
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * Pause rotation. Currently executed step will be completed. Rotation which
+	 * is in progress is finished, so it doesn't block other rotations, and
+	 * started again on resume.
+	 */
+	public void pause() {
+		this.paused = true;
+	}
+
+	/**
+	 * Resume paused rotation.
+	 */
+	public void resume() {
+		this.paused = false;
+	}
+
+	/**
+	 * @param stepSize
+	 *            the maximum number of items processed with a single step.
+	 */
+	public void setStepSize(int stepSize) {
+		if (stepSize <= 0) {
+			throw new IllegalArgumentException("Step size should be positive");
+		}
+		this.stepSize = stepSize;
+	}
+
+	/**
+	 * @param timeSlice
+	 *            the time slice in milliseconds.
+	 */
+	public void setTimeSlice(long timeSlice) {
+		this.timeSlice = timeSlice;
+	}
+
+	/**
+	 * Start periodic rotation. The first rotation starts immediately.
+	 * 
+	 * @param desiredNumberOfCards
+	 *            the desired number of one-time cards.
+	 */
+	public synchronized void start(int desiredNumberOfCards) {
+		if (started) {
+			return;
+		}
+		if (this.executor == null || this.executor.isShutdown()) {
+			this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "virgil-keys-rotator");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.ownExecutor = true;
+		}
+		this.desiredNumberOfCards = desiredNumberOfCards;
+		this.started = true;
+		this.generation++;
+		schedule(new RotationTask(this.generation), 0);
+	}
+
+	/**
+	 * Stop periodic rotation. Waits until currently executed step is completed.
+	 */
+	public void stop() {
+		RotationTask stopped;
+		synchronized (this) {
+			if (!started) {
+				return;
+			}
+			this.started = false;
+			this.generation++;
+			stopped = this.task;
+			if (this.future != null) {
+				this.future.cancel(false);
+				this.future = null;
+				this.task = null;
+			}
+			if (this.ownExecutor) {
+				this.executor.shutdown();
+				this.executor = null;
+				this.ownExecutor = false;
+			}
+		}
+		if (stopped != null) {
+			// Waits for the step which is running, since the task could be
+			// cancelled after it was started
+			stopped.abandon();
+		}
+	}
+
+	long nextDelay() {
+		long periodMillis = TimeUnit.SECONDS.toMillis(this.period);
+		double factor = 1 + this.jitter * (2 * this.random.nextDouble() - 1);
+
+		return Math.max((long) (periodMillis * factor), 0);
+	}
+
+	private synchronized void schedule(RotationTask task, long delay) {
+		if (task.isStale()) {
+			task.abandon();
+			return;
+		}
+		this.task = task;
+		this.future = this.executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private class RotationTask implements Runnable {
+
+		private final int generation;
+		private volatile Rotation rotation;
+		private int phaseIndex;
+
+		RotationTask(int generation) {
+			this.generation = generation;
+		}
+
+		@Override
+		public synchronized void run() {
+			if (isStale()) {
+				abandon();
+				return;
+			}
+			if (paused) {
+				abandon();
+				schedule(this, PAUSE_CHECK_DELAY);
+				return;
+			}
+			try {
+				if (rotation == null) {
+					rotation = rotator.tryStartRotation(desiredNumberOfCards);
+					if (rotation == null) {
+						log.fine("Other keys rotation is in progress");
+						schedule(this, BUSY_CHECK_DELAY);
+						return;
+					}
+					log.fine("Background keys rotation started");
+				}
+				Phase[] phases = Phase.values();
+				long deadline = System.currentTimeMillis() + timeSlice;
+				while (phaseIndex < phases.length) {
+					if (rotator.rotate(rotation, phases[phaseIndex], stepSize)) {
+						phaseIndex++;
+					}
+					if (isStale()) {
+						abandon();
+						return;
+					}
+					if (paused || System.currentTimeMillis() >= deadline) {
+						// Yield to other tasks
+						schedule(this, 0);
+						return;
+					}
+				}
+				log.fine("Background keys rotation completed");
+			} catch (Exception e) {
+				log.log(Level.SEVERE, "Background keys rotation failed", e);
+				abandon();
+			}
+			// Schedule next rotation
+			schedule(new RotationTask(this.generation), nextDelay());
+		}
+
+		/**
+		 * @return {@code true} if rotation is stopped after the task was
+		 *         created.
+		 */
+		private boolean isStale() {
+			return this.generation != BackgroundKeysRotator.this.generation;
+		}
+
+		/**
+		 * Finish rotation which is not completed, so other rotations could be
+		 * started.
+		 */
+		private synchronized void abandon() {
+			Rotation current = rotation;
+			if (current != null) {
+				rotator.finishRotation(current);
+				rotation = null;
+				phaseIndex = 0;
+			}
+		}
+	}
+
+}
@@ -50,6 +50,20 @@ public interface Constants {
 			int OBTAINING_RECIPIENT_CARDS_SET = 0x00001;
 			int RECIPIENT_SET_EMPTY = 0x00002;
 			int UNKNOWN_MESSAGE_STRUCTURE = 0x00003;
+			int SESSION_NOT_LOADED = 0x00004;
+		}
+
+		public interface Attachment {
+			int UNSUPPORTED_FORMAT = 0x00001;
+			int CORRUPTED = 0x00002;
+		}
+
+		public interface GroupSession {
+			int GROUP_EXISTS = 0x00001;
+			int UNKNOWN_GROUP = 0x00002;
+			int UNKNOWN_GROUP_KEY = 0x00003;
+			int CORRUPTED_MESSAGE = 0x00004;
+			int NOT_GROUP_CREATOR = 0x00005;
 		}
 
 		public interface SessionManager {
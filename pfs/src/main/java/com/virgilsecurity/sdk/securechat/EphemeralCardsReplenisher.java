@@ -33,6 +33,14 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.virgilsecurity.sdk.client.RequestSigner;
@@ -42,6 +50,7 @@ import com.virgilsecurity.sdk.crypto.PrivateKey;
 import com.virgilsecurity.sdk.pfs.VirgilPFSClient;
 import com.virgilsecurity.sdk.pfs.model.request.CreateEphemeralCardRequest;
 import com.virgilsecurity.sdk.securechat.KeyStorageManager.HelperKeyEntry;
+import com.virgilsecurity.sdk.securechat.exceptions.CardsUploadException;
 
 /**
  * @author Andrii Iakovenko
@@ -51,11 +60,16 @@ public class EphemeralCardsReplenisher {
 	private static final Logger log = Logger.getLogger(EphemeralCardsReplenisher.class.getName());
 	public static final String IDENTITY_TYPE = "identity_card_id";
 
+	/** The default number of one-time cards uploaded with one request. */
+	public static final int DEFAULT_UPLOAD_CHUNK_SIZE = 50;
+
 	private Crypto crypto;
 	private PrivateKey identityPrivateKey;
 	private String identityCardId;
 	private VirgilPFSClient client;
 	private KeyStorageManager keyStorageManager;
+	private int uploadChunkSize = DEFAULT_UPLOAD_CHUNK_SIZE;
+	private Executor uploadExecutor;
 
 	/**
 	 * Create new instance of EphemeralCardsReplenisher.
@@ -89,6 +103,8 @@ public class EphemeralCardsReplenisher {
 	 * @param numberOfOtcCards
 	 *            the number of one-time cards which is should be available at
 	 *            the moment.
+	 * @throws CardsUploadException
+	 *             if only some of one-time cards are uploaded.
 	 */
 	public void addCards(boolean includeLtcCard, int numberOfOtcCards) {
 		log.fine(String.format("Adding %d cards for: %s, include lt: %b", numberOfOtcCards, this.identityCardId,
@@ -119,12 +135,96 @@ public class EphemeralCardsReplenisher {
 
 		this.keyStorageManager.saveKeys(otcKeys, ltcKey);
 
-		// TODO extend exception handling
-
+		int chunkSize = this.uploadChunkSize > 0 ? this.uploadChunkSize : Math.max(1, otcCardsRequests.size());
+		int uploaded = 0;
 		if (ltcCardRequest != null) {
-			this.client.bootstrapCardsSet(this.identityCardId, ltcCardRequest, otcCardsRequests);
-		} else if (!otcCardsRequests.isEmpty()) {
-			this.client.createOneTimeCards(this.identityCardId, otcCardsRequests);
+			// Long-term card is uploaded with the first chunk of one-time
+			// cards
+			List<CreateEphemeralCardRequest> chunk = otcCardsRequests.subList(0,
+					Math.min(chunkSize, otcCardsRequests.size()));
+			this.client.bootstrapCardsSet(this.identityCardId, ltcCardRequest, chunk);
+			uploaded = chunk.size();
+		}
+		if (uploaded < otcCardsRequests.size()) {
+			uploadOneTimeCards(otcCardsRequests.subList(uploaded, otcCardsRequests.size()), chunkSize, uploaded);
+		}
+	}
+
+	/**
+	 * @param uploadChunkSize
+	 *            the number of one-time cards uploaded with one request. Zero
+	 *            uploads all cards with one request.
+	 */
+	public void setUploadChunkSize(int uploadChunkSize) {
+		this.uploadChunkSize = uploadChunkSize;
+	}
+
+	/**
+	 * @param uploadExecutor
+	 *            the executor used to upload chunks of one-time cards
+	 *            concurrently. If not set, chunks are uploaded one by one.
+	 */
+	public void setUploadExecutor(Executor uploadExecutor) {
+		this.uploadExecutor = uploadExecutor;
+	}
+
+	/*
+	 * Upload chunks of one-time cards. Failed chunk doesn't stop others, so
+	 * keys of uploaded cards are used. The calling thread uploads chunks which
+	 * are not started by executor yet
+	 */
+	private void uploadOneTimeCards(List<CreateEphemeralCardRequest> requests, int chunkSize,
+			int alreadyUploaded) {
+		final Queue<List<CreateEphemeralCardRequest>> chunks = new ConcurrentLinkedQueue<>();
+		for (int i = 0; i < requests.size(); i += chunkSize) {
+			chunks.add(requests.subList(i, Math.min(i + chunkSize, requests.size())));
+		}
+		final int chunksCount = chunks.size();
+		final CountDownLatch done = new CountDownLatch(chunksCount);
+		final AtomicInteger uploaded = new AtomicInteger(alreadyUploaded);
+		final AtomicReference<RuntimeException> error = new AtomicReference<>();
+		Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				for (List<CreateEphemeralCardRequest> chunk = chunks.poll(); chunk != null; chunk = chunks.poll()) {
+					try {
+						client.createOneTimeCards(identityCardId, chunk);
+						uploaded.addAndGet(chunk.size());
+					} catch (RuntimeException e) {
+						log.log(Level.WARNING, String.format("Uploading %d one-time cards for %s failed",
+								chunk.size(), identityCardId), e);
+						error.compareAndSet(null, e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}
+		};
+		if (this.uploadExecutor != null) {
+			for (int i = 1; i < chunksCount; i++) {
+				try {
+					this.uploadExecutor.execute(worker);
+				} catch (RejectedExecutionException e) {
+					break;
+				}
+			}
+		}
+		worker.run();
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CardsUploadException(uploaded.get(),
+					alreadyUploaded + requests.size() - uploaded.get(), e);
+		}
+
+		RuntimeException e = error.get();
+		if (e != null) {
+			if (uploaded.get() == 0) {
+				throw e;
+			}
+			throw new CardsUploadException(uploaded.get(), alreadyUploaded + requests.size() - uploaded.get(), e);
 		}
 	}
 
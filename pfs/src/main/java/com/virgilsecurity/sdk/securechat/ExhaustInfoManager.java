@@ -29,18 +29,46 @@
  */
 package com.virgilsecurity.sdk.securechat;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import com.virgilsecurity.sdk.securechat.model.ExhaustInfo;
+import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.ExhaustInfoEntry;
+import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.SessionExhaustInfo;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.IndexEntry;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.Kind;
 import com.virgilsecurity.sdk.utils.ConvertionUtils;
 import com.virgilsecurity.sdk.utils.StringUtils;
 
+/**
+ * This class stores dates when keys and sessions were exhausted.
+ * 
+ * Each entry is stored under its own key, so updates don't rewrite whole
+ * exhaust info. Entries are identified by identifier: adding of already
+ * exhausted key or session doesn't change its exhaust date. Entries are kept
+ * in memory ordered by exhaust date.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
 public class ExhaustInfoManager {
 
 	private static final Logger log = Logger.getLogger(ExhaustInfoManager.class.getName());
 
 	private String cardId;
 	private UserDataStorage storage;
+	private ExpiryIndex index;
+
+	private final Lock lock = new ReentrantLock();
 
 	/**
 	 * Create new instance of ExhaustInfoManager.
@@ -56,8 +84,150 @@ public class ExhaustInfoManager {
 		this.storage = storage;
 	}
 
-	private String getExhaustEntryKey() {
-		return String.format("VIRGIL.EXHAUSTINFO.OWNER=%s", this.cardId);
+	private void add(Kind kind, String identifier, String cardId, Date exhaustDate) {
+		if (this.index.contains(kind, identifier)) {
+			return;
+		}
+		IndexEntry entry = new IndexEntry(kind, identifier, cardId, exhaustDate.getTime());
+		this.index.put(entry);
+		this.storage.addData(this.getStorageName(), IndexEntryRecords.getKey(kind, identifier),
+				IndexEntryRecords.toValue(entry));
+	}
+
+	/**
+	 * Mark long-term keys as exhausted. Keys which are already exhausted are
+	 * ignored.
+	 * 
+	 * @param identifiers
+	 *            the long-term keys identifiers.
+	 * @param exhaustDate
+	 *            the exhaust date.
+	 */
+	public void addLtcs(Collection<String> identifiers, Date exhaustDate) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			for (String identifier : identifiers) {
+				add(Kind.LT_KEY, identifier, null, exhaustDate);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Mark one-time keys as exhausted. Keys which are already exhausted are
+	 * ignored.
+	 * 
+	 * @param identifiers
+	 *            the one-time keys identifiers.
+	 * @param exhaustDate
+	 *            the exhaust date.
+	 */
+	public void addOtcs(Collection<String> identifiers, Date exhaustDate) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			for (String identifier : identifiers) {
+				add(Kind.OT_KEY, identifier, null, exhaustDate);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Mark session as exhausted. Session which is already exhausted is
+	 * ignored.
+	 * 
+	 * @param sessionId
+	 *            the session identifier.
+	 * @param cardId
+	 *            the session participant's Virgil Card identifier.
+	 * @param exhaustDate
+	 *            the exhaust date.
+	 */
+	public void addSession(byte[] sessionId, String cardId, Date exhaustDate) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			add(Kind.SESSION, ConvertionUtils.toBase64String(sessionId), cardId, exhaustDate);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param identifier
+	 *            the long-term key identifier.
+	 * @return {@code true} if long-term key is exhausted.
+	 */
+	public boolean containsLtc(String identifier) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			return this.index.contains(Kind.LT_KEY, identifier);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param identifier
+	 *            the one-time key identifier.
+	 * @return {@code true} if one-time key is exhausted.
+	 */
+	public boolean containsOtc(String identifier) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			return this.index.contains(Kind.OT_KEY, identifier);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param sessionId
+	 *            the session identifier.
+	 * @return {@code true} if session is exhausted.
+	 */
+	public boolean containsSession(byte[] sessionId) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			return this.index.contains(Kind.SESSION, ConvertionUtils.toBase64String(sessionId));
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void ensureLoaded() {
+		if (this.index != null) {
+			return;
+		}
+		log.fine("Loading exhaust info");
+
+		this.index = new ExpiryIndex();
+		Map<String, String> data = new HashMap<>(this.storage.getAllData(this.getStorageName()));
+		for (Entry<String, String> entry : data.entrySet()) {
+			IndexEntry indexEntry = IndexEntryRecords.fromRecord(entry.getKey(), entry.getValue());
+			if (indexEntry == null) {
+				log.warning(String.format("Invalid exhaust info entry: %s", entry.getKey()));
+			} else {
+				this.index.put(indexEntry);
+			}
+		}
+
+		// Migrate exhaust info stored as a single document
+		String legacyEntry = this.storage.getData(this.cardId, this.getLegacyExhaustEntryKey());
+		if (!StringUtils.isBlank(legacyEntry)) {
+			log.fine("Migrating exhaust info");
+
+			ExhaustInfo info = ConvertionUtils.getGson().fromJson(legacyEntry, ExhaustInfo.class);
+			putAll(info);
+			this.storage.removeData(this.cardId, this.getLegacyExhaustEntryKey());
+		}
 	}
 
 	/**
@@ -68,23 +238,234 @@ public class ExhaustInfoManager {
 	public ExhaustInfo getKeysExhaustInfo() {
 		log.fine("Getting exhaust info");
 
-		String entry = storage.getData(this.cardId, this.getExhaustEntryKey());
-		if (StringUtils.isBlank(entry)) {
-			return new ExhaustInfo();
+		List<ExhaustInfoEntry> otc = new ArrayList<>();
+		List<ExhaustInfoEntry> ltc = new ArrayList<>();
+		List<SessionExhaustInfo> sessions = new ArrayList<>();
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			for (IndexEntry entry : this.index.getAll(Kind.OT_KEY)) {
+				otc.add(new ExhaustInfoEntry(entry.getIdentifier(), new Date(entry.getTime())));
+			}
+			for (IndexEntry entry : this.index.getAll(Kind.LT_KEY)) {
+				ltc.add(new ExhaustInfoEntry(entry.getIdentifier(), new Date(entry.getTime())));
+			}
+			sessions.addAll(toSessionExhaustInfos(this.index.getAll(Kind.SESSION)));
+		} finally {
+			this.lock.unlock();
+		}
+		return new ExhaustInfo(otc, ltc, sessions);
+	}
+
+	private String getLegacyExhaustEntryKey() {
+		return String.format("VIRGIL.EXHAUSTINFO.OWNER=%s", this.cardId);
+	}
+
+	/**
+	 * @return the identifiers of all exhausted long-term keys.
+	 */
+	public List<String> getLtcs() {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			return toIdentifiers(this.index.getAll(Kind.LT_KEY));
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Get long-term keys exhausted before the date.
+	 * 
+	 * @param date
+	 *            the date.
+	 * @return the identifiers of long-term keys ordered by exhaust date.
+	 */
+	public List<String> getLtcsExhaustedBefore(Date date) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			return toIdentifiers(this.index.getOlderThan(Kind.LT_KEY, date.getTime()));
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the identifiers of all exhausted one-time keys.
+	 */
+	public List<String> getOtcs() {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			return toIdentifiers(this.index.getAll(Kind.OT_KEY));
+		} finally {
+			this.lock.unlock();
 		}
-		ExhaustInfo info = ConvertionUtils.getGson().fromJson(entry, ExhaustInfo.class);
+	}
 
-		return info;
+	/**
+	 * Get one-time keys exhausted before the date.
+	 * 
+	 * @param date
+	 *            the date.
+	 * @return the identifiers of one-time keys ordered by exhaust date.
+	 */
+	public List<String> getOtcsExhaustedBefore(Date date) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			return toIdentifiers(this.index.getOlderThan(Kind.OT_KEY, date.getTime()));
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return all exhausted sessions.
+	 */
+	public List<SessionExhaustInfo> getSessions() {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			return toSessionExhaustInfos(this.index.getAll(Kind.SESSION));
+		} finally {
+			this.lock.unlock();
+		}
 	}
 
 	/**
-	 * Save exhaust info in storage.
+	 * Get sessions exhausted before the date.
+	 * 
+	 * @param date
+	 *            the date.
+	 * @return the sessions ordered by exhaust date.
+	 */
+	public List<SessionExhaustInfo> getSessionsExhaustedBefore(Date date) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			return toSessionExhaustInfos(this.index.getOlderThan(Kind.SESSION, date.getTime()));
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private String getStorageName() {
+		return String.format("VIRGIL.EXHAUSTINFO.OWNER=%s", this.cardId);
+	}
+
+	private void putAll(ExhaustInfo info) {
+		for (ExhaustInfoEntry entry : info.getOtc()) {
+			add(Kind.OT_KEY, entry.getIdentifier(), null, entry.getExhaustDate());
+		}
+		for (ExhaustInfoEntry entry : info.getLtc()) {
+			add(Kind.LT_KEY, entry.getIdentifier(), null, entry.getExhaustDate());
+		}
+		for (SessionExhaustInfo entry : info.getSessions()) {
+			add(Kind.SESSION, ConvertionUtils.toBase64String(entry.getIdentifier()), entry.getCardId(),
+					entry.getExhaustDate());
+		}
+	}
+
+	private void remove(Kind kind, String identifier) {
+		if (!this.index.contains(kind, identifier)) {
+			return;
+		}
+		this.index.remove(kind, identifier);
+		this.storage.removeData(this.getStorageName(), IndexEntryRecords.getKey(kind, identifier));
+	}
+
+	/**
+	 * Remove long-term keys from exhaust info.
+	 * 
+	 * @param identifiers
+	 *            the long-term keys identifiers.
+	 */
+	public void removeLtcs(Collection<String> identifiers) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			for (String identifier : identifiers) {
+				remove(Kind.LT_KEY, identifier);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove one-time keys from exhaust info.
+	 * 
+	 * @param identifiers
+	 *            the one-time keys identifiers.
+	 */
+	public void removeOtcs(Collection<String> identifiers) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			for (String identifier : identifiers) {
+				remove(Kind.OT_KEY, identifier);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove sessions from exhaust info.
+	 * 
+	 * @param sessionIds
+	 *            the sessions identifiers.
+	 */
+	public void removeSessions(Collection<byte[]> sessionIds) {
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			for (byte[] sessionId : sessionIds) {
+				remove(Kind.SESSION, ConvertionUtils.toBase64String(sessionId));
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Save exhaust info in storage. Existing exhaust info is replaced.
 	 * 
 	 * @param keysExhaustInfo
 	 */
 	public void saveKeysExhaustInfo(ExhaustInfo keysExhaustInfo) {
 		log.fine("Saving exhaust info");
 
-		this.storage.addData(this.cardId, this.getExhaustEntryKey(), ConvertionUtils.getGson().toJson(keysExhaustInfo));
+		this.lock.lock();
+		try {
+			ensureLoaded();
+			for (IndexEntry entry : this.index.getEntries()) {
+				this.storage.removeData(this.getStorageName(),
+						IndexEntryRecords.getKey(entry.getKind(), entry.getIdentifier()));
+			}
+			this.index = new ExpiryIndex();
+			putAll(keysExhaustInfo);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private static List<String> toIdentifiers(List<IndexEntry> entries) {
+		List<String> identifiers = new ArrayList<>(entries.size());
+		for (IndexEntry entry : entries) {
+			identifiers.add(entry.getIdentifier());
+		}
+		return identifiers;
+	}
+
+	private static List<SessionExhaustInfo> toSessionExhaustInfos(List<IndexEntry> entries) {
+		List<SessionExhaustInfo> sessions = new ArrayList<>(entries.size());
+		for (IndexEntry entry : entries) {
+			sessions.add(new SessionExhaustInfo(ConvertionUtils.base64ToBytes(entry.getIdentifier()),
+					entry.getCardId(), new Date(entry.getTime())));
+		}
+		return sessions;
 	}
 }
@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import com.virgilsecurity.sdk.securechat.keystorage.KeyAttrs;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.IndexEntry;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.Kind;
+import com.virgilsecurity.sdk.securechat.model.SessionState;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+import com.virgilsecurity.sdk.utils.StringUtils;
+
+/**
+ * Maintains persistent {@link ExpiryIndex} of sessions and ephemeral keys.
+ * 
+ * The index is built from a full scan of storages with
+ * {@link #rebuild(SessionStorageManager, KeyStorageManager)}. Until then all
+ * updates are ignored, since the full scan will pick them up anyway. Each entry
+ * is stored under its own key, so updates don't rewrite whole index.
+ * 
+ * Index is updated after the storage change it mirrors, so it could miss items
+ * if application crashes in between. It should be rebuilt periodically, see
+ * {@link #needsRebuild(Date)}.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class ExpiryIndexManager {
+
+	private static final Logger log = Logger.getLogger(ExpiryIndexManager.class.getName());
+
+	/** The default period in seconds after which index is rebuilt. */
+	public static final long DEFAULT_REBUILD_PERIOD = 60 * 60 * 24 * 7; // One week
+
+	/* The key of record which holds the time the index was built at */
+	private static final String BUILT_KEY = "built";
+
+	private String cardId;
+	private UserDataStorage storage;
+	private long rebuildPeriod = DEFAULT_REBUILD_PERIOD;
+
+	private ExpiryIndex index;
+	private long builtAt;
+
+	/* Explicit lock doesn't pin virtual threads while storage blocks on I/O */
+	private final Lock lock = new ReentrantLock();
+
+	/**
+	 * Create new instance of ExpiryIndexManager.
+	 * 
+	 * @param cardId
+	 *            the Virgil Card identifier.
+	 * @param storage
+	 *            the user data storage.
+	 */
+	public ExpiryIndexManager(String cardId, UserDataStorage storage) {
+		super();
+		this.cardId = cardId;
+		this.storage = storage;
+	}
+
+	private void add(IndexEntry entry) {
+		this.index.put(entry);
+		this.storage.addData(this.getStorageName(), IndexEntryRecords.getKey(entry.getKind(), entry.getIdentifier()),
+				IndexEntryRecords.toValue(entry));
+	}
+
+	/**
+	 * Add long-term key to index.
+	 * 
+	 * @param name
+	 *            the key name.
+	 * @param creationDate
+	 *            the key creation date.
+	 */
+	public void addLtKey(String name, Date creationDate) {
+		this.lock.lock();
+		try {
+			if (!load()) {
+				return;
+			}
+			add(new IndexEntry(Kind.LT_KEY, name, null, creationDate.getTime()));
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Add one-time keys to index.
+	 * 
+	 * @param names
+	 *            the key names.
+	 * @param creationDate
+	 *            the keys creation date.
+	 */
+	public void addOtKeys(List<String> names, Date creationDate) {
+		if (names.isEmpty()) {
+			return;
+		}
+		this.lock.lock();
+		try {
+			if (!load()) {
+				return;
+			}
+			for (String name : names) {
+				add(new IndexEntry(Kind.OT_KEY, name, null, creationDate.getTime()));
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Add session to index. Sessions without expiration date are never
+	 * expired, so they are not indexed.
+	 * 
+	 * @param sessionState
+	 *            the session state.
+	 * @param recipientCardId
+	 *            the participant's card identifier.
+	 */
+	public void addSession(SessionState sessionState, String recipientCardId) {
+		if (sessionState.getExpirationDate() == null) {
+			return;
+		}
+		this.lock.lock();
+		try {
+			if (!load()) {
+				return;
+			}
+			add(new IndexEntry(Kind.SESSION, ConvertionUtils.toBase64String(sessionState.getSessionId()),
+					recipientCardId, sessionState.getExpirationDate().getTime()));
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove all keys from index.
+	 */
+	public void clearKeys() {
+		this.lock.lock();
+		try {
+			if (!load()) {
+				return;
+			}
+			for (Kind kind : new Kind[] { Kind.LT_KEY, Kind.OT_KEY }) {
+				for (IndexEntry entry : this.index.getAll(kind)) {
+					remove(kind, entry.getIdentifier());
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks if item is indexed.
+	 * 
+	 * @param kind
+	 *            the kind of item.
+	 * @param identifier
+	 *            the item identifier.
+	 * @return {@code true} if item is in index.
+	 */
+	public boolean contains(Kind kind, String identifier) {
+		this.lock.lock();
+		try {
+			return load() && this.index.contains(kind, identifier);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Get all identifiers of the kind.
+	 * 
+	 * @param kind
+	 *            the kind of items.
+	 * @return the list of identifiers.
+	 */
+	public List<String> getIdentifiers(Kind kind) {
+		List<String> identifiers = new ArrayList<>();
+		this.lock.lock();
+		try {
+			if (load()) {
+				for (IndexEntry entry : this.index.getAll(kind)) {
+					identifiers.add(entry.getIdentifier());
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return identifiers;
+	}
+
+	/**
+	 * Get entries of the kind which time is before {@code date}.
+	 * 
+	 * @param kind
+	 *            the kind of entries.
+	 * @param date
+	 *            the date.
+	 * @return the list of entries ordered by time.
+	 */
+	public List<IndexEntry> getOlderThan(Kind kind, Date date) {
+		this.lock.lock();
+		try {
+			if (!load()) {
+				return new ArrayList<>();
+			}
+			return this.index.getOlderThan(kind, date.getTime());
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private String getStorageName() {
+		return String.format("VIRGIL.EXPIRYINDEX.OWNER=%s", this.cardId);
+	}
+
+	/**
+	 * Checks if index was built.
+	 * 
+	 * @return {@code true} if index exists.
+	 */
+	public boolean isInitialized() {
+		this.lock.lock();
+		try {
+			return load();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private boolean load() {
+		if (this.index != null) {
+			return true;
+		}
+		Map<String, String> data = new HashMap<>(this.storage.getAllData(this.getStorageName()));
+		String built = data.remove(BUILT_KEY);
+		if (StringUtils.isBlank(built)) {
+			return false;
+		}
+		ExpiryIndex loadedIndex = new ExpiryIndex();
+		for (Entry<String, String> entry : data.entrySet()) {
+			IndexEntry indexEntry = IndexEntryRecords.fromRecord(entry.getKey(), entry.getValue());
+			if (indexEntry == null) {
+				log.warning(String.format("Invalid expiry index entry: %s", entry.getKey()));
+			} else {
+				loadedIndex.put(indexEntry);
+			}
+		}
+		try {
+			this.builtAt = Long.parseLong(built);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		this.index = loadedIndex;
+
+		return true;
+	}
+
+	/**
+	 * Checks if index should be rebuilt. Index should be rebuilt if it doesn't
+	 * exist, or it was built more than rebuild period ago.
+	 * 
+	 * @param now
+	 *            the current date.
+	 * @return {@code true} if index should be rebuilt.
+	 */
+	public boolean needsRebuild(Date now) {
+		this.lock.lock();
+		try {
+			return !load() || now.getTime() - this.builtAt >= this.rebuildPeriod * 1000;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Rebuild index from all sessions and keys. Storages are scanned while
+	 * index updates wait, so sessions and keys added or removed during the
+	 * rebuild are not lost.
+	 * 
+	 * @param sessionStorageManager
+	 *            the sessions storage.
+	 * @param keyStorageManager
+	 *            the keys storage.
+	 */
+	public void rebuild(SessionStorageManager sessionStorageManager, KeyStorageManager keyStorageManager) {
+		this.lock.lock();
+		try {
+			rebuild(sessionStorageManager.getAllSessionsStates(), keyStorageManager.getAllKeysAttrs());
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/*
+	 * Rebuild index from sessions and keys which are not changed until rebuild
+	 * is completed
+	 */
+	void rebuild(List<Entry<String, SessionState>> sessionStates, Map<String, List<KeyAttrs>> keys) {
+		log.fine("Rebuilding expiry index");
+
+		ExpiryIndex newIndex = new ExpiryIndex();
+		for (Entry<String, SessionState> entry : sessionStates) {
+			SessionState sessionState = entry.getValue();
+			if (sessionState.getExpirationDate() != null) {
+				newIndex.put(new IndexEntry(Kind.SESSION, ConvertionUtils.toBase64String(sessionState.getSessionId()),
+						entry.getKey(), sessionState.getExpirationDate().getTime()));
+			}
+		}
+		for (KeyAttrs keyAttrs : keys.get(KeyStorageManager.LT_KEYS)) {
+			newIndex.put(new IndexEntry(Kind.LT_KEY, keyAttrs.getName(), null, keyAttrs.getCreationDate().getTime()));
+		}
+		for (KeyAttrs keyAttrs : keys.get(KeyStorageManager.OT_KEYS)) {
+			newIndex.put(new IndexEntry(Kind.OT_KEY, keyAttrs.getName(), null, keyAttrs.getCreationDate().getTime()));
+		}
+
+		this.lock.lock();
+		try {
+			// Write the difference only. The time of build is written last, so
+			// interrupted rebuild is repeated
+			Map<String, String> records = new HashMap<>(this.storage.getAllData(this.getStorageName()));
+			records.remove(BUILT_KEY);
+			for (IndexEntry entry : newIndex.getEntries()) {
+				String key = IndexEntryRecords.getKey(entry.getKind(), entry.getIdentifier());
+				String value = IndexEntryRecords.toValue(entry);
+				if (!value.equals(records.remove(key))) {
+					this.storage.addData(this.getStorageName(), key, value);
+				}
+			}
+			for (String key : records.keySet()) {
+				this.storage.removeData(this.getStorageName(), key);
+			}
+
+			this.builtAt = System.currentTimeMillis();
+			this.storage.addData(this.getStorageName(), BUILT_KEY, String.valueOf(this.builtAt));
+			this.index = newIndex;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void remove(Kind kind, String identifier) {
+		if (!this.index.contains(kind, identifier)) {
+			return;
+		}
+		this.index.remove(kind, identifier);
+		this.storage.removeData(this.getStorageName(), IndexEntryRecords.getKey(kind, identifier));
+	}
+
+	private void remove(Kind kind, List<String> identifiers) {
+		if (identifiers.isEmpty()) {
+			return;
+		}
+		this.lock.lock();
+		try {
+			if (!load()) {
+				return;
+			}
+			for (String identifier : identifiers) {
+				remove(kind, identifier);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove long-term keys from index.
+	 * 
+	 * @param names
+	 *            the key names.
+	 */
+	public void removeLtKeys(List<String> names) {
+		remove(Kind.LT_KEY, names);
+	}
+
+	/**
+	 * Remove one-time keys from index.
+	 * 
+	 * @param names
+	 *            the key names.
+	 */
+	public void removeOtKeys(List<String> names) {
+		remove(Kind.OT_KEY, names);
+	}
+
+	/**
+	 * Remove sessions from index.
+	 * 
+	 * @param sessionIds
+	 *            the session identifiers.
+	 */
+	public void removeSessions(List<byte[]> sessionIds) {
+		List<String> identifiers = new ArrayList<>(sessionIds.size());
+		for (byte[] sessionId : sessionIds) {
+			identifiers.add(ConvertionUtils.toBase64String(sessionId));
+		}
+		remove(Kind.SESSION, identifiers);
+	}
+
+	/**
+	 * @param rebuildPeriod
+	 *            the period in seconds after which index should be rebuilt.
+	 */
+	public void setRebuildPeriod(long rebuildPeriod) {
+		this.rebuildPeriod = rebuildPeriod;
+	}
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.virgilsecurity.sdk.securechat.exceptions.SecureChatException;
+import com.virgilsecurity.sdk.securechat.model.DecryptedMessage;
+import com.virgilsecurity.sdk.securechat.model.InboundMessage;
+import com.virgilsecurity.sdk.securechat.model.Message;
+import com.virgilsecurity.sdk.securechat.session.SecureSession;
+import com.virgilsecurity.sdk.securechat.utils.SessionStateResolver;
+
+/**
+ * Processes received messages in stages: envelope decoding, session
+ * resolution, decryption and delivery. Each stage has its own threads and a
+ * bounded number of messages it holds.
+ * 
+ * Messages of each participant pass every stage in order they were
+ * submitted, and are delivered in the same order. Messages of different
+ * participants are processed independently, so a slow session recovery
+ * delays only its participant's messages.
+ * 
+ * When stages are full, {@link #offer(InboundMessage)} returns {@code false}
+ * and {@link PressureListener} is notified, so transport can stop reading
+ * messages until the pipeline catches up.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class InboundPipeline {
+
+	/**
+	 * Receives processed messages.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called for each submitted message. Messages of the same participant
+		 * are delivered one by one in order they were submitted.
+		 * 
+		 * @param message
+		 *            the decrypted message or the error occurred.
+		 */
+		void onMessage(DecryptedMessage message);
+	}
+
+	/**
+	 * Receives backpressure signals.
+	 */
+	public interface PressureListener {
+
+		/**
+		 * Called when the number of messages in the pipeline reaches high
+		 * watermark, and when it falls to low watermark after that.
+		 * 
+		 * @param paused
+		 *            {@code true} if transport should stop reading messages,
+		 *            {@code false} if it can resume.
+		 */
+		void onPressureChanged(boolean paused);
+	}
+
+	private static final Logger log = Logger.getLogger(InboundPipeline.class.getName());
+
+	/** The default number of messages each stage holds. */
+	public static final int DEFAULT_STAGE_CAPACITY = 1024;
+
+	/* Maximum number of messages processed by a lane before it yields the thread */
+	private static final int LANE_BATCH_SIZE = 64;
+
+	private static class Item {
+		private final InboundMessage inboundMessage;
+		private Message message;
+		private SecureSession session;
+		private String text;
+		private Exception error;
+
+		Item(InboundMessage inboundMessage) {
+			this.inboundMessage = inboundMessage;
+		}
+
+		String getCardId() {
+			return this.inboundMessage.getCard().getId();
+		}
+	}
+
+	/*
+	 * Pipeline stage. Messages of each participant are queued in a separate
+	 * lane, and only one thread at a time processes a lane
+	 */
+	private abstract class Stage {
+
+		private final String name;
+		private int parallelism;
+		private int capacity;
+		private ExecutorService executor;
+		private Semaphore permits;
+		private Stage next;
+
+		private final Map<String, Lane> lanes = new HashMap<>();
+
+		private class Lane implements Runnable {
+			private final String cardId;
+			private final Queue<Item> items;
+			private boolean scheduled;
+
+			Lane(String cardId) {
+				this.cardId = cardId;
+				this.items = new ArrayBlockingQueue<>(capacity);
+			}
+
+			@Override
+			public void run() {
+				for (int i = 0; i < LANE_BATCH_SIZE; i++) {
+					Item item;
+					synchronized (lanes) {
+						item = this.items.poll();
+						if (item == null) {
+							this.scheduled = false;
+							lanes.remove(this.cardId);
+							return;
+						}
+					}
+					try {
+						handle(item);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				// Let other lanes run
+				synchronized (lanes) {
+					schedule(this);
+				}
+			}
+		}
+
+		Stage(String name, int parallelism) {
+			this.name = name;
+			this.parallelism = parallelism;
+			this.capacity = DEFAULT_STAGE_CAPACITY;
+		}
+
+		void start() {
+			this.permits = new Semaphore(this.capacity);
+			this.executor = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "virgil-inbound-" + name + "-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		void stop() {
+			if (this.executor != null) {
+				this.executor.shutdownNow();
+			}
+		}
+
+		boolean tryEnter(Item item) {
+			if (!this.permits.tryAcquire()) {
+				return false;
+			}
+			enqueue(item);
+			return true;
+		}
+
+		boolean enter(Item item, long timeout) throws InterruptedException {
+			if (!this.permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				return false;
+			}
+			enqueue(item);
+			return true;
+		}
+
+		void enter(Item item) throws InterruptedException {
+			this.permits.acquire();
+			enqueue(item);
+		}
+
+		private void enqueue(Item item) {
+			synchronized (this.lanes) {
+				Lane lane = this.lanes.get(item.getCardId());
+				if (lane == null) {
+					lane = new Lane(item.getCardId());
+					this.lanes.put(item.getCardId(), lane);
+				}
+				lane.items.add(item);
+				if (!lane.scheduled) {
+					lane.scheduled = true;
+					schedule(lane);
+				}
+			}
+		}
+
+		private void schedule(Lane lane) {
+			try {
+				this.executor.execute(lane);
+			} catch (RejectedExecutionException e) {
+				// Pipeline is stopped
+				log.fine("Inbound pipeline stage " + this.name + " is stopped");
+			}
+		}
+
+		private void handle(Item item) throws InterruptedException {
+			// Failed messages skip processing up to delivery stage
+			if (item.error == null || this.next == null) {
+				try {
+					process(item);
+				} catch (Exception e) {
+					item.error = e;
+				}
+			}
+			try {
+				if (this.next == null) {
+					completed();
+				} else {
+					// Blocks while the next stage is full
+					this.next.enter(item);
+				}
+			} finally {
+				this.permits.release();
+			}
+		}
+
+		abstract void process(Item item) throws Exception;
+	}
+
+	private SecureChat secureChat;
+	private Listener listener;
+	private PressureListener pressureListener;
+
+	private final Stage decodeStage;
+	private final Stage resolveStage;
+	private final Stage decryptStage;
+	private final Stage deliveryStage;
+
+	private int highWatermark;
+	private int lowWatermark;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicBoolean paused = new AtomicBoolean();
+	private volatile boolean started;
+
+	/**
+	 * Create new instance of {@link InboundPipeline}.
+	 * 
+	 * @param secureChat
+	 *            the secure chat.
+	 * @param listener
+	 *            the listener processed messages are delivered to.
+	 */
+	public InboundPipeline(SecureChat secureChat, Listener listener) {
+		this.secureChat = secureChat;
+		this.listener = listener;
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		this.decodeStage = new Stage("decode", 1) {
+
+			@Override
+			void process(Item item) throws Exception {
+				decode(item);
+			}
+		};
+		// Session loading waits for storage and network, so it has at least
+		// two threads to let other participants proceed
+		this.resolveStage = new Stage("resolve", Math.max(2, processors)) {
+
+			@Override
+			void process(Item item) throws Exception {
+				resolve(item);
+			}
+		};
+		this.decryptStage = new Stage("decrypt", processors) {
+
+			@Override
+			void process(Item item) throws Exception {
+				decrypt(item);
+			}
+		};
+		this.deliveryStage = new Stage("delivery", 1) {
+
+			@Override
+			void process(Item item) throws Exception {
+				deliver(item);
+			}
+		};
+		this.decodeStage.next = this.resolveStage;
+		this.resolveStage.next = this.decryptStage;
+		this.decryptStage.next = this.deliveryStage;
+
+		this.highWatermark = DEFAULT_STAGE_CAPACITY;
+		this.lowWatermark = DEFAULT_STAGE_CAPACITY / 2;
+	}
+
+	/**
+	 * Starts pipeline threads. Parallelism and capacity can't be changed
+	 * after start.
+	 */
+	public void start() {
+		synchronized (this) {
+			if (this.started) {
+				return;
+			}
+			for (Stage stage : new Stage[] { this.decodeStage, this.resolveStage, this.decryptStage,
+					this.deliveryStage }) {
+				stage.start();
+			}
+			this.started = true;
+		}
+	}
+
+	/**
+	 * Stops pipeline threads. Messages which are not delivered yet are
+	 * discarded.
+	 */
+	public void stop() {
+		synchronized (this) {
+			for (Stage stage : new Stage[] { this.decodeStage, this.resolveStage, this.decryptStage,
+					this.deliveryStage }) {
+				stage.stop();
+			}
+			this.started = false;
+		}
+	}
+
+	/**
+	 * Submits message if pipeline is not full.
+	 * 
+	 * @param message
+	 *            the received message.
+	 * @return {@code true} if message is accepted, {@code false} if pipeline
+	 *         is full and message should be submitted later.
+	 */
+	public boolean offer(InboundMessage message) {
+		checkStarted();
+		Item item = new Item(message);
+		entered();
+		if (!this.decodeStage.tryEnter(item)) {
+			completed();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Submits message, waiting if pipeline is full.
+	 * 
+	 * @param message
+	 *            the received message.
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds.
+	 * @return {@code true} if message is accepted, {@code false} if pipeline
+	 *         is still full after timeout.
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting.
+	 */
+	public boolean offer(InboundMessage message, long timeout) throws InterruptedException {
+		checkStarted();
+		Item item = new Item(message);
+		entered();
+		if (!this.decodeStage.enter(item, timeout)) {
+			completed();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Submits message, waiting while pipeline is full.
+	 * 
+	 * @param message
+	 *            the received message.
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting.
+	 */
+	public void put(InboundMessage message) throws InterruptedException {
+		checkStarted();
+		Item item = new Item(message);
+		entered();
+		boolean accepted = false;
+		try {
+			this.decodeStage.enter(item);
+			accepted = true;
+		} finally {
+			if (!accepted) {
+				completed();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of messages submitted but not delivered yet.
+	 */
+	public int getInFlightCount() {
+		return this.inFlight.get();
+	}
+
+	/**
+	 * @return {@code true} if transport was asked to stop reading messages.
+	 */
+	public boolean isPaused() {
+		return this.paused.get();
+	}
+
+	/**
+	 * @param capacity
+	 *            the number of messages each stage holds.
+	 */
+	public void setStageCapacity(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity should be positive");
+		}
+		checkNotStarted();
+		for (Stage stage : new Stage[] { this.decodeStage, this.resolveStage, this.decryptStage,
+				this.deliveryStage }) {
+			stage.capacity = capacity;
+		}
+	}
+
+	/**
+	 * @param decodeParallelism
+	 *            the number of threads decoding message envelopes.
+	 * @param resolveParallelism
+	 *            the number of threads loading sessions.
+	 * @param decryptParallelism
+	 *            the number of threads decrypting messages.
+	 * @param deliveryParallelism
+	 *            the number of threads delivering messages to listener.
+	 */
+	public void setParallelism(int decodeParallelism, int resolveParallelism, int decryptParallelism,
+			int deliveryParallelism) {
+		if (decodeParallelism <= 0 || resolveParallelism <= 0 || decryptParallelism <= 0
+				|| deliveryParallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism should be positive");
+		}
+		checkNotStarted();
+		this.decodeStage.parallelism = decodeParallelism;
+		this.resolveStage.parallelism = resolveParallelism;
+		this.decryptStage.parallelism = decryptParallelism;
+		this.deliveryStage.parallelism = deliveryParallelism;
+	}
+
+	/**
+	 * @param pressureListener
+	 *            the listener notified when transport should pause or resume
+	 *            reading messages.
+	 * @param highWatermark
+	 *            the number of messages in pipeline when transport should
+	 *            pause.
+	 * @param lowWatermark
+	 *            the number of messages in pipeline when transport can
+	 *            resume.
+	 */
+	public void setPressureListener(PressureListener pressureListener, int highWatermark, int lowWatermark) {
+		if (lowWatermark < 0 || highWatermark <= lowWatermark) {
+			throw new IllegalArgumentException("High watermark should be greater than low watermark");
+		}
+		this.pressureListener = pressureListener;
+		this.highWatermark = highWatermark;
+		this.lowWatermark = lowWatermark;
+	}
+
+	private void decode(Item item) throws SecureChatException {
+		String message = item.inboundMessage.getMessage();
+		if (SessionStateResolver.isRegularMessage(message)) {
+			item.message = SecureSession.extractMessage(message);
+		} else if (!SessionStateResolver.isInitiationMessage(message)) {
+			throw new SecureChatException(Constants.Errors.SecureChat.UNKNOWN_MESSAGE_STRUCTURE,
+					"Unknown message structure.");
+		}
+	}
+
+	private void resolve(Item item) throws SecureChatException {
+		InboundMessage inboundMessage = item.inboundMessage;
+		if (item.message != null) {
+			item.session = this.secureChat.loadSession(item.getCardId(), item.message.getSessionId());
+		} else {
+			item.session = this.secureChat.loadUpSession(inboundMessage.getCard(), inboundMessage.getMessage(),
+					inboundMessage.getAdditionalData());
+		}
+		if (item.session == null) {
+			throw new SecureChatException(Constants.Errors.SecureChat.SESSION_NOT_LOADED,
+					"Session could not be loaded.");
+		}
+	}
+
+	private void decrypt(Item item) {
+		if (item.message != null) {
+			item.text = item.session.decrypt(item.message);
+		} else {
+			item.text = item.session.decrypt(item.inboundMessage.getMessage());
+		}
+	}
+
+	private void deliver(Item item) {
+		try {
+			this.listener.onMessage(new DecryptedMessage(item.inboundMessage, item.text, item.error));
+		} catch (Exception e) {
+			log.log(Level.WARNING, "Inbound message listener failed", e);
+		}
+	}
+
+	private void entered() {
+		if (this.inFlight.incrementAndGet() >= this.highWatermark && this.paused.compareAndSet(false, true)) {
+			notifyPressure(true);
+		}
+	}
+
+	private void completed() {
+		if (this.inFlight.decrementAndGet() <= this.lowWatermark && this.paused.compareAndSet(true, false)) {
+			notifyPressure(false);
+		}
+	}
+
+	private void notifyPressure(boolean paused) {
+		PressureListener pressureListener = this.pressureListener;
+		if (pressureListener != null) {
+			try {
+				pressureListener.onPressureChanged(paused);
+			} catch (Exception e) {
+				log.log(Level.WARNING, "Pressure listener failed", e);
+			}
+		}
+	}
+
+	private void checkStarted() {
+		if (!this.started) {
+			throw new IllegalStateException("Pipeline is not started");
+		}
+	}
+
+	private void checkNotStarted() {
+		if (this.started) {
+			throw new IllegalStateException("Pipeline is already started");
+		}
+	}
+
+}
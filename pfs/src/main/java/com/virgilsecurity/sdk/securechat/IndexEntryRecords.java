@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.IndexEntry;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.Kind;
+
+/**
+ * Converts {@link IndexEntry} to user data storage record and back. Each entry
+ * is stored as a separate record, so an update doesn't rewrite other entries.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+final class IndexEntryRecords {
+
+	private static final String OTC_PREFIX = "otc.";
+	private static final String LTC_PREFIX = "ltc.";
+	private static final String SESSION_PREFIX = "session.";
+	private static final char SEPARATOR = ':';
+
+	private IndexEntryRecords() {
+	}
+
+	/**
+	 * @param kind
+	 *            the kind of entry.
+	 * @param identifier
+	 *            the entry identifier.
+	 * @return the record key.
+	 */
+	static String getKey(Kind kind, String identifier) {
+		switch (kind) {
+		case OT_KEY:
+			return OTC_PREFIX + identifier;
+		case LT_KEY:
+			return LTC_PREFIX + identifier;
+		default:
+			return SESSION_PREFIX + identifier;
+		}
+	}
+
+	/**
+	 * @param entry
+	 *            the entry.
+	 * @return the record value.
+	 */
+	static String toValue(IndexEntry entry) {
+		if (Kind.SESSION.equals(entry.getKind())) {
+			return String.valueOf(entry.getTime()) + SEPARATOR + entry.getCardId();
+		}
+		return String.valueOf(entry.getTime());
+	}
+
+	/**
+	 * @param key
+	 *            the record key.
+	 * @param value
+	 *            the record value.
+	 * @return the entry, or {@code null} if record is not a valid entry.
+	 */
+	static IndexEntry fromRecord(String key, String value) {
+		try {
+			if (key.startsWith(OTC_PREFIX)) {
+				return new IndexEntry(Kind.OT_KEY, key.substring(OTC_PREFIX.length()), null, Long.parseLong(value));
+			}
+			if (key.startsWith(LTC_PREFIX)) {
+				return new IndexEntry(Kind.LT_KEY, key.substring(LTC_PREFIX.length()), null, Long.parseLong(value));
+			}
+			if (key.startsWith(SESSION_PREFIX)) {
+				int pos = value.indexOf(SEPARATOR);
+				return new IndexEntry(Kind.SESSION, key.substring(SESSION_PREFIX.length()), value.substring(pos + 1),
+						Long.parseLong(value.substring(0, pos)));
+			}
+		} catch (RuntimeException e) {
+			// Invalid entry
+		}
+		return null;
+	}
+
+}
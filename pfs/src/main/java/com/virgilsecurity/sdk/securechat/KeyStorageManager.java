@@ -37,15 +37,17 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.virgilsecurity.sdk.crypto.Crypto;
 import com.virgilsecurity.sdk.crypto.PrivateKey;
 import com.virgilsecurity.sdk.crypto.exceptions.CryptoException;
 import com.virgilsecurity.sdk.securechat.keystorage.KeyAttrs;
 import com.virgilsecurity.sdk.securechat.keystorage.KeyStorage;
+import com.virgilsecurity.sdk.securechat.utils.Base64Codec;
 import com.virgilsecurity.sdk.storage.KeyEntry;
 import com.virgilsecurity.sdk.storage.VirgilKeyEntry;
-import com.virgilsecurity.sdk.utils.ConvertionUtils;
 
 /**
  * Use {@linkplain KeyStorageManager} to store your private keys.
@@ -123,6 +125,9 @@ public class KeyStorageManager {
 		private static final String SessPrefix = "SESS_KEYS";
 
 		private String identityCardId;
+		private final String ltKeyEntryPrefix;
+		private final String otKeyEntryPrefix;
+		private final String sessionKeysEntryPrefix;
 
 		/**
 		 * Create new instance of {@link KeyNamesHelper}.
@@ -132,30 +137,36 @@ public class KeyStorageManager {
 		 */
 		public KeyNamesHelper(String identityCardId) {
 			this.identityCardId = identityCardId;
+
+			// Key names are built and parsed for every key lookup, so prefixes
+			// are formatted once
+			String header = this.getPrivateKeyEntryHeader();
+			this.ltKeyEntryPrefix = String.format("%s.%s.", header, LtPrefix);
+			this.otKeyEntryPrefix = String.format("%s.%s.", header, OtPrefix);
+			this.sessionKeysEntryPrefix = String.format("%s.%s.", header, SessPrefix);
 		}
 
 		String extractLTCardId(String keyEntryName) {
-			String prefix = String.format("%s.%s.", this.getPrivateKeyEntryHeader(), LtPrefix);
-			return keyEntryName.replace(prefix, "");
+			return stripPrefix(keyEntryName, this.ltKeyEntryPrefix);
 		}
 
 		String extractOTCardId(String keyEntryName) {
-			String prefix = String.format("%s.%s.", this.getPrivateKeyEntryHeader(), OtPrefix);
-			return keyEntryName.replace(prefix, "");
+			return stripPrefix(keyEntryName, this.otKeyEntryPrefix);
 		}
 
 		byte[] extractSessionId(String keyEntryName) {
-			String prefix = String.format("%s.%s.", this.getPrivateKeyEntryHeader(), SessPrefix);
-			String id = keyEntryName.replace(prefix, "");
-			return ConvertionUtils.base64ToBytes(id);
+			if (keyEntryName.startsWith(this.sessionKeysEntryPrefix)) {
+				return Base64Codec.decode(keyEntryName, this.sessionKeysEntryPrefix.length(), keyEntryName.length());
+			}
+			return Base64Codec.decode(keyEntryName.replace(this.sessionKeysEntryPrefix, ""));
 		}
 
 		String getLtPrivateKeyEntryName(String name) {
-			return String.format("%s.%s.%s", this.getPrivateKeyEntryHeader(), LtPrefix, name);
+			return this.ltKeyEntryPrefix + name;
 		}
 
 		String getOtPrivateKeyEntryName(String name) {
-			return String.format("%s.%s.%s", this.getPrivateKeyEntryHeader(), OtPrefix, name);
+			return this.otKeyEntryPrefix + name;
 		}
 
 		private String getPrivateKeyEntryHeader() {
@@ -163,17 +174,15 @@ public class KeyStorageManager {
 		}
 
 		String getSessionKeysKeyEntryName(String name) {
-			return String.format("%s.%s.%s", this.getPrivateKeyEntryHeader(), SessPrefix, name);
+			return this.sessionKeysEntryPrefix + name;
 		}
 
 		boolean isLtKeyEntryName(String keyEntryName) {
-			String prefix = String.format("%s.%s.", this.getPrivateKeyEntryHeader(), LtPrefix);
-			return keyEntryName.contains(prefix);
+			return keyEntryName.contains(this.ltKeyEntryPrefix);
 		}
 
 		boolean isOtKeyEntryName(String keyEntryName) {
-			String prefix = String.format("%s.%s.", this.getPrivateKeyEntryHeader(), OtPrefix);
-			return keyEntryName.contains(prefix);
+			return keyEntryName.contains(this.otKeyEntryPrefix);
 		}
 
 		boolean isPfsKeyEntryName(String keyEntryName) {
@@ -182,8 +191,14 @@ public class KeyStorageManager {
 		}
 
 		boolean isSessionKeysKeyEntryName(String keyEntryName) {
-			String prefix = String.format("%s.%s.", this.getPrivateKeyEntryHeader(), SessPrefix);
-			return keyEntryName.contains(prefix);
+			return keyEntryName.contains(this.sessionKeysEntryPrefix);
+		}
+
+		private static String stripPrefix(String keyEntryName, String prefix) {
+			if (keyEntryName.startsWith(prefix) && keyEntryName.indexOf(prefix, prefix.length()) < 0) {
+				return keyEntryName.substring(prefix.length());
+			}
+			return keyEntryName.replace(prefix, "");
 		}
 	}
 
@@ -274,6 +289,20 @@ public class KeyStorageManager {
 
 	private KeyNamesHelper namesHelper;
 
+	private ExpiryIndexManager expiryIndexManager;
+
+	/*
+	 * Imported long term private keys. There are only a few live long term
+	 * keys, so each one is loaded and imported once
+	 */
+	private final Map<String, PrivateKey> ltPrivateKeys = new ConcurrentHashMap<>();
+
+	/*
+	 * Incremented on each long term keys removal, so a key loaded concurrently
+	 * with removal is not cached
+	 */
+	private final AtomicInteger ltPrivateKeysVersion = new AtomicInteger();
+
 	/**
 	 * Create new instance of {@link KeyStorageManager}.
 	 * 
@@ -291,6 +320,24 @@ public class KeyStorageManager {
 		this.namesHelper = new KeyNamesHelper(identityCardId);
 	}
 
+	/**
+	 * Create new instance of {@link KeyStorageManager}.
+	 * 
+	 * @param crypto
+	 *            the crypto.
+	 * @param keyStorage
+	 *            the key storage.
+	 * @param identityCardId
+	 *            the identity's Virgil Card identifier.
+	 * @param expiryIndexManager
+	 *            the expiry index which should be updated on keys change.
+	 */
+	public KeyStorageManager(Crypto crypto, KeyStorage keyStorage, String identityCardId,
+			ExpiryIndexManager expiryIndexManager) {
+		this(crypto, keyStorage, identityCardId);
+		this.expiryIndexManager = expiryIndexManager;
+	}
+
 	/**
 	 * Reset the key storage.
 	 */
@@ -302,6 +349,10 @@ public class KeyStorageManager {
 				this.removeKeyEntry(keyAttrs.getName());
 			}
 		}
+		this.invalidateLtPrivateKeys();
+		if (this.expiryIndexManager != null) {
+			this.expiryIndexManager.clearKeys();
+		}
 	}
 
 	/**
@@ -319,7 +370,7 @@ public class KeyStorageManager {
 			if (this.namesHelper.isSessionKeysKeyEntryName(keyAttr.getName())) {
 				byte[] sessionId = this.namesHelper.extractSessionId(keyAttr.getName());
 
-				String sessionIdStr = ConvertionUtils.toBase64String(sessionId);
+				String sessionIdStr = Base64Codec.encode(sessionId);
 				sessions.add(new KeyAttrs(sessionIdStr, keyAttr.getCreationDate()));
 			} else if (this.namesHelper.isLtKeyEntryName(keyAttr.getName())) {
 				String cardId = this.namesHelper.extractLTCardId(keyAttr.getName());
@@ -351,8 +402,35 @@ public class KeyStorageManager {
 	 * @throws CryptoException
 	 */
 	public PrivateKey getLtPrivateKey(String name) throws CryptoException {
+		PrivateKey privateKey = this.ltPrivateKeys.get(name);
+		if (privateKey != null) {
+			return privateKey;
+		}
+
+		int version = this.ltPrivateKeysVersion.get();
 		String keyEntryName = this.namesHelper.getLtPrivateKeyEntryName(name);
-		return this.getPrivateKey(keyEntryName);
+		privateKey = this.getPrivateKey(keyEntryName);
+
+		this.cacheLtPrivateKey(name, privateKey, version);
+
+		return privateKey;
+	}
+
+	private void cacheLtPrivateKey(String name, PrivateKey privateKey, int version) {
+		this.ltPrivateKeys.put(name, privateKey);
+		if (this.ltPrivateKeysVersion.get() != version) {
+			// Keys were removed meanwhile
+			this.ltPrivateKeys.remove(name);
+		}
+	}
+
+	/**
+	 * Drop all imported long term private keys from memory. Keys are loaded
+	 * from key storage on next access.
+	 */
+	public void invalidateLtPrivateKeys() {
+		this.ltPrivateKeysVersion.incrementAndGet();
+		this.ltPrivateKeys.clear();
 	}
 
 	/**
@@ -390,7 +468,7 @@ public class KeyStorageManager {
 	 * @return
 	 */
 	public SessionKeys getSessionKeys(byte[] sessionId) {
-		String sessionIdStr = ConvertionUtils.toBase64String(sessionId);
+		String sessionIdStr = Base64Codec.encode(sessionId);
 		String keyEntryName = this.namesHelper.getSessionKeysKeyEntryName(sessionIdStr);
 
 		KeyEntry keyEntry = this.getKeyEntry(keyEntryName);
@@ -457,7 +535,12 @@ public class KeyStorageManager {
 		for (String name : names) {
 			keyEntryNames.add(this.namesHelper.getLtPrivateKeyEntryName(name));
 		}
+		this.ltPrivateKeysVersion.incrementAndGet();
+		this.ltPrivateKeys.keySet().removeAll(names);
 		this.removeKeyEntries(keyEntryNames);
+		if (this.expiryIndexManager != null) {
+			this.expiryIndexManager.removeLtKeys(names);
+		}
 	}
 
 	/**
@@ -469,6 +552,9 @@ public class KeyStorageManager {
 	public void removeOtPrivateKey(String name) {
 		String keyEntryName = this.namesHelper.getOtPrivateKeyEntryName(name);
 		this.removeKeyEntry(keyEntryName);
+		if (this.expiryIndexManager != null) {
+			this.expiryIndexManager.removeOtKeys(Arrays.asList(name));
+		}
 	}
 
 	/**
@@ -483,6 +569,9 @@ public class KeyStorageManager {
 			keyEntryNames.add(this.namesHelper.getOtPrivateKeyEntryName(name));
 		}
 		this.removeKeyEntries(keyEntryNames);
+		if (this.expiryIndexManager != null) {
+			this.expiryIndexManager.removeOtKeys(names);
+		}
 	}
 
 	/**
@@ -492,7 +581,7 @@ public class KeyStorageManager {
 	 *            the session identifier.
 	 */
 	public void removeSessionKeys(byte[] sessionId) {
-		String sessionIdStr = ConvertionUtils.toBase64String(sessionId);
+		String sessionIdStr = Base64Codec.encode(sessionId);
 		String keyEntryName = this.namesHelper.getSessionKeysKeyEntryName(sessionIdStr);
 
 		this.removeKeyEntry(keyEntryName);
@@ -507,7 +596,7 @@ public class KeyStorageManager {
 	public void removeSessionKeys(List<byte[]> sessionIds) {
 		List<String> keyEntryNames = new ArrayList<>(sessionIds.size());
 		for (byte[] sessionId : sessionIds) {
-			String name = ConvertionUtils.toBase64String(sessionId);
+			String name = Base64Codec.encode(sessionId);
 			keyEntryNames.add(this.namesHelper.getSessionKeysKeyEntryName(name));
 		}
 		this.removeKeyEntries(keyEntryNames);
@@ -554,11 +643,21 @@ public class KeyStorageManager {
 		if (ltKey != null) {
 			this.saveLtPrivateKey(ltKey.getPrivateKey(), ltKey.getName());
 		}
+
+		if (this.expiryIndexManager != null) {
+			Date now = new Date();
+			this.expiryIndexManager.addOtKeys(names, now);
+			if (ltKey != null) {
+				this.expiryIndexManager.addLtKey(ltKey.getName(), now);
+			}
+		}
 	}
 
 	private void saveLtPrivateKey(PrivateKey key, String name) {
+		int version = this.ltPrivateKeysVersion.get();
 		String keyEntryName = this.namesHelper.getLtPrivateKeyEntryName(name);
 		this.savePrivateKey(key, keyEntryName);
+		this.cacheLtPrivateKey(name, key, version);
 	}
 
 	private void saveOtPrivateKeys(List<PrivateKey> keys, List<String> names) {
@@ -592,7 +691,7 @@ public class KeyStorageManager {
 	}
 
 	public void saveSessionKeys(SessionKeys sessionKeys, byte[] sessionId) {
-		String sessionIdStr = ConvertionUtils.toBase64String(sessionId);
+		String sessionIdStr = Base64Codec.encode(sessionId);
 		String keyEntryName = this.namesHelper.getSessionKeysKeyEntryName(sessionIdStr);
 
 		KeyEntry keyEntry = new VirgilKeyEntry(keyEntryName, sessionKeys.toBytes());
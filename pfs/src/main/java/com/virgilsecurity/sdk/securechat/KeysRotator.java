@@ -33,20 +33,32 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import com.virgilsecurity.sdk.client.model.CardModel;
 import com.virgilsecurity.sdk.pfs.VirgilPFSClient;
+import com.virgilsecurity.sdk.pfs.exceptions.VirgilPFSServiceException;
 import com.virgilsecurity.sdk.pfs.model.response.CardStatus;
+import com.virgilsecurity.sdk.securechat.exceptions.CardsUploadException;
+import com.virgilsecurity.sdk.securechat.impl.DefaultUserDataStorage;
 import com.virgilsecurity.sdk.securechat.keystorage.KeyAttrs;
-import com.virgilsecurity.sdk.securechat.model.ExhaustInfo;
-import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.ExhaustInfoEntry;
 import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.SessionExhaustInfo;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.IndexEntry;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.Kind;
 import com.virgilsecurity.sdk.securechat.model.SessionState;
 import com.virgilsecurity.sdk.securechat.utils.ArrayUtils;
 import com.virgilsecurity.sdk.utils.ConvertionUtils;
@@ -54,13 +66,78 @@ import com.virgilsecurity.sdk.utils.ConvertionUtils;
 /**
  * This class provides key rotation functionality.
  * 
+ * Rotation could be performed at once with {@link #rotateKeys(int)}, or step
+ * by step: start it with {@link #startRotation(int)} and call
+ * {@link #rotate(Rotation, Phase, int)} for each {@link Phase} until the phase
+ * is completed. Only one rotation is performed at a time. Rotation is finished
+ * when its last phase is completed, or with {@link #finishRotation(Rotation)}.
+ * 
  * @author Andrii Iakovenko
  *
  */
 public class KeysRotator {
+
+	/**
+	 * Keys rotation phases in order of execution.
+	 */
+	public enum Phase {
+		/* Remove expired long-term keys */
+		LT_KEYS,
+		/* Remove orphaned one-time keys and find exhausted ones */
+		OT_KEYS,
+		/* Remove expired sessions */
+		SESSIONS,
+		/* Remove orphaned session keys, when expiry index is rebuilt */
+		ORPHANED_KEYS,
+		/* Add new ephemeral cards */
+		REPLENISH
+	}
+
+	/**
+	 * State of a single keys rotation.
+	 */
+	public static class Rotation {
+		private Date now;
+		private int desiredNumberOfCards;
+		private ExpiryIndexManager index;
+		private boolean indexRebuilt;
+		private List<String> otKeysIdsToCheck;
+		private int otKeysIdsChecked;
+		private boolean ltKeyChecked;
+		private boolean finished;
+
+		private Rotation(Date now, int desiredNumberOfCards) {
+			this.now = now;
+			this.desiredNumberOfCards = desiredNumberOfCards;
+		}
+
+		/**
+		 * @return the desired number of one-time cards.
+		 */
+		public int getDesiredNumberOfCards() {
+			return desiredNumberOfCards;
+		}
+
+		/**
+		 * @return the date rotation started at.
+		 */
+		public Date getNow() {
+			return now;
+		}
+	}
+
 	private static final Logger log = Logger.getLogger(KeysRotator.class.getName());
 	static final int SECONDS_IN_DAY = 24 * 60 * 60;
 
+	/* The default maximum number of one-time cards validated with one request */
+	public static final int DEFAULT_VALIDATION_CHUNK_SIZE = 100;
+
+	/* The default maximum number of concurrent validation requests */
+	public static final int DEFAULT_VALIDATION_PARALLELISM = 4;
+
+	/* Time in seconds idle validation thread is kept */
+	private static final long VALIDATION_THREAD_KEEP_ALIVE = 60;
+
 	private CardModel identityCard;
 	private int exhaustedOneTimeCardTtl;
 	private int expiredSessionTtl;
@@ -70,13 +147,49 @@ public class KeysRotator {
 	private SessionStorageManager sessionStorageManager;
 	private KeyStorageManager keyStorageManager;
 	private ExhaustInfoManager exhaustInfoManager;
+	private ExpiryIndexManager expiryIndexManager;
+	// Index rebuilt on every rotation when nobody maintains the index
+	private ExpiryIndexManager scanIndexManager;
 	private VirgilPFSClient pfsClient;
+	private OtcValidationCacheManager otcValidationCacheManager;
+	private int otcValidationTtl;
+	private OtcReplenishmentController replenishmentController;
+	private int validationChunkSize = DEFAULT_VALIDATION_CHUNK_SIZE;
+	private int validationParallelism = DEFAULT_VALIDATION_PARALLELISM;
+
+	// Validates one-time cards chunks concurrently. Idle threads are stopped
+	private ThreadPoolExecutor validationExecutor;
+
+	// Guards local storages changes. Never held during network calls
 	private Semaphore semaphore = new Semaphore(1);
 
+	// Prevents simultaneous cards replenishment
+	private Semaphore replenishSemaphore = new Semaphore(1);
+
+	// Held from start of rotation until it's finished. Not owned by thread,
+	// since rotation steps could be performed by different threads
+	private Semaphore rotationSemaphore = new Semaphore(1);
+
 	public KeysRotator(CardModel card, int exhaustedOneTimeCardTtl, int expiredSessionTtl, int longTermKeysTtl,
 			int expiredLongTermCardTtl, EphemeralCardsReplenisher replenisher,
 			SessionStorageManager sessionStorageManager, KeyStorageManager keyStorageManager,
 			ExhaustInfoManager exhaustInfoManager, VirgilPFSClient pfsClient) {
+		this(card, exhaustedOneTimeCardTtl, expiredSessionTtl, longTermKeysTtl, expiredLongTermCardTtl, replenisher,
+				sessionStorageManager, keyStorageManager, exhaustInfoManager, null, pfsClient);
+	}
+
+	/**
+	 * Create new instance of {@link KeysRotator}.
+	 * 
+	 * @param expiryIndexManager
+	 *            the expiry index maintained by {@code sessionStorageManager}
+	 *            and {@code keyStorageManager}. If {@code null}, all sessions
+	 *            and keys are scanned on every rotation.
+	 */
+	public KeysRotator(CardModel card, int exhaustedOneTimeCardTtl, int expiredSessionTtl, int longTermKeysTtl,
+			int expiredLongTermCardTtl, EphemeralCardsReplenisher replenisher,
+			SessionStorageManager sessionStorageManager, KeyStorageManager keyStorageManager,
+			ExhaustInfoManager exhaustInfoManager, ExpiryIndexManager expiryIndexManager, VirgilPFSClient pfsClient) {
 		this.identityCard = card;
 		this.exhaustedOneTimeCardTtl = exhaustedOneTimeCardTtl;
 		this.expiredSessionTtl = expiredSessionTtl;
@@ -86,20 +199,21 @@ public class KeysRotator {
 		this.sessionStorageManager = sessionStorageManager;
 		this.keyStorageManager = keyStorageManager;
 		this.exhaustInfoManager = exhaustInfoManager;
+		this.expiryIndexManager = expiryIndexManager;
 		this.pfsClient = pfsClient;
-	}
-
-	private void cleanup() {
-		log.fine("Cleanup started.");
-		Date now = new Date();
-
-		Entry<ExhaustInfo, List<String>> entry = processExhaustedStuff(now);
-		ExhaustInfo updatedExhaustInfo = entry.getKey();
-		List<String> otCardsToCheck = entry.getValue();
 
-		List<String> exhaustedCardsIds = this.pfsClient.validateOneTimeCards(this.identityCard.getId(), otCardsToCheck);
-
-		this.updateExhaustInfo(now, updatedExhaustInfo, exhaustedCardsIds);
+		this.validationExecutor = new ThreadPoolExecutor(this.validationParallelism, this.validationParallelism,
+				VALIDATION_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "virgil-otc-validation");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.validationExecutor.allowCoreThreadTimeOut(true);
 	}
 
 	private Date minusSeconds(Date now, int ttl) {
@@ -110,148 +224,134 @@ public class KeysRotator {
 		return cal.getTime();
 	}
 
-	private Entry<ExhaustInfo, List<String>> processExhaustedStuff(Date now) {
-		log.fine("Processing exhausted stuff.");
-
-		ExhaustInfo exhaustInfo = exhaustInfoManager.getKeysExhaustInfo();
-		List<Entry<String, SessionState>> allSessionStates = sessionStorageManager.getAllSessionsStates();
-		Map<String, List<KeyAttrs>> keys = keyStorageManager.getAllKeysAttrs();
-		List<KeyAttrs> otKeys = keys.get(KeyStorageManager.OT_KEYS);
-		List<KeyAttrs> ltKeys = keys.get(KeyStorageManager.LT_KEYS);
-		List<KeyAttrs> sessionKeys = keys.get(KeyStorageManager.SESSION_KEYS);
-
-		exhaustInfo = removeExpiredLtKeys(now, ltKeys, exhaustInfo);
-		exhaustInfo = removeOrphanedOtcs(now, otKeys, exhaustInfo);
-
-		List<String> newOtKeysIds = new ArrayList<>(exhaustInfo.getOtc().size());
-		for (ExhaustInfoEntry infoEntry : exhaustInfo.getOtc()) {
-			newOtKeysIds.add(infoEntry.getIdentifier());
-		}
-		List<String> otKeysIdsToCheck = new ArrayList<>();
-		for (KeyAttrs key : otKeys) {
-			if (!newOtKeysIds.contains(key.getName())) {
-				otKeysIdsToCheck.add(key.getName());
+	private void prepareExpiryIndex(Rotation rotation) {
+		ExpiryIndexManager index = this.expiryIndexManager;
+		if (index == null) {
+			// Nobody maintains the index, so it's built on every rotation
+			if (this.scanIndexManager == null) {
+				this.scanIndexManager = new ExpiryIndexManager(this.identityCard.getId(),
+						new DefaultUserDataStorage());
 			}
+			index = this.scanIndexManager;
+		} else if (!index.needsRebuild(rotation.now)) {
+			rotation.index = index;
+			return;
 		}
 
-		exhaustInfo = removeExpiredSessions(now, allSessionStates, exhaustInfo);
-		removeOrhpanedSessionKeys(sessionKeys, allSessionStates);
+		log.fine("Building expiry index.");
+		index.rebuild(sessionStorageManager, keyStorageManager);
 
-		return new AbstractMap.SimpleEntry<ExhaustInfo, List<String>>(exhaustInfo, otKeysIdsToCheck);
+		rotation.index = index;
+		rotation.indexRebuilt = true;
 	}
 
-	private ExhaustInfo removeExpiredLtKeys(Date now, List<KeyAttrs> ltKeys, ExhaustInfo exhaustInfo) {
+	private boolean removeExpiredLtKeys(Rotation rotation, int maxItems) {
 		log.fine("Removing expired ltc.");
 
-		// Remove lt keys that have expired some time ago
-		List<String> ltcIdsToRemove = new ArrayList<>();
-		Date exDate = minusSeconds(now, this.expiredLongTermCardTtl);
-		for (ExhaustInfoEntry key : exhaustInfo.getLtc()) {
-			if (exDate.after(key.getExhaustDate())) {
-				ltcIdsToRemove.add(key.getIdentifier());
-			}
-		}
-
-		keyStorageManager.removeLtPrivateKeys(ltcIdsToRemove);
+		Date now = rotation.now;
 
-		// Updated lt keys info
-		List<KeyAttrs> ltKeysUpdated = new LinkedList<>();
-		for (KeyAttrs key : ltKeys) {
-			if (!ltcIdsToRemove.contains(key.getName())) {
-				ltKeysUpdated.add(key);
-			}
-		}
-
-		// Update exhaust info:
-		// Clear removed keys
-		List<ExhaustInfoEntry> newLtKeys = new LinkedList<>();
-		for (ExhaustInfoEntry infoEntry : exhaustInfo.getLtc()) {
-			if (!ltcIdsToRemove.contains(infoEntry.getIdentifier())) {
-				newLtKeys.add(infoEntry);
-			}
+		// Remove lt keys that have expired some time ago
+		List<String> ltcIdsToRemove = exhaustInfoManager
+				.getLtcsExhaustedBefore(minusSeconds(now, this.expiredLongTermCardTtl));
+		boolean done = ltcIdsToRemove.size() <= maxItems;
+		ltcIdsToRemove = limit(ltcIdsToRemove, maxItems);
+
+		if (!ltcIdsToRemove.isEmpty()) {
+			keyStorageManager.removeLtPrivateKeys(ltcIdsToRemove);
+			exhaustInfoManager.removeLtcs(ltcIdsToRemove);
 		}
 
 		// Add lt keys that have expired recently
-		List<String> newLtKeysIds = new LinkedList<>();
-		for (ExhaustInfoEntry key : newLtKeys) {
-			newLtKeysIds.add(key.getIdentifier());
-		}
-
-		exDate = minusSeconds(now, this.longTermKeysTtl);
-		for (KeyAttrs key : ltKeysUpdated) {
-			if (exDate.after(key.getCreationDate()) && !newLtKeysIds.contains(key.getName())) {
-				ExhaustInfoEntry infoEntry = new ExhaustInfoEntry(key.getName(), now);
-				newLtKeys.add(infoEntry);
+		Set<String> removedLtKeysIds = new HashSet<>(ltcIdsToRemove);
+		List<String> newLtKeysIds = new ArrayList<>();
+		Date exDate = minusSeconds(now, this.longTermKeysTtl);
+		for (IndexEntry key : rotation.index.getOlderThan(Kind.LT_KEY, exDate)) {
+			if (!removedLtKeysIds.contains(key.getIdentifier())
+					&& !exhaustInfoManager.containsLtc(key.getIdentifier())) {
+				if (newLtKeysIds.size() == maxItems) {
+					done = false;
+					break;
+				}
+				newLtKeysIds.add(key.getIdentifier());
 			}
 		}
+		exhaustInfoManager.addLtcs(newLtKeysIds, now);
 
-		// Update exhaust info
-		return new ExhaustInfo(exhaustInfo.getOtc(), newLtKeys, exhaustInfo.getSessions());
+		return done;
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private ExhaustInfo removeExpiredSessions(Date now, List<Map.Entry<String, SessionState>> allSessions,
-			ExhaustInfo exhaustInfo) {
+	private boolean removeExpiredSessions(Rotation rotation, int maxItems) {
 		log.fine("Removing expired sessions.");
 
-		List<byte[]> sessionsIds = new LinkedList<>();
-		for (Map.Entry<String, SessionState> entry : allSessions) {
-			sessionsIds.add(entry.getValue().getSessionId());
-		}
+		Date now = rotation.now;
+		ExpiryIndexManager index = rotation.index;
 
-		// Remove expired sessions
+		// Remove expired sessions and forget sessions which don't exist
+		// anymore
+		List<SessionExhaustInfo> sessionInfosToRemove = new ArrayList<>();
+		List<byte[]> staleSessionIds = new ArrayList<>();
 		Date exDate = minusSeconds(now, this.expiredSessionTtl);
-		// List<SessionExhaustInfo> sessionInfosToRemove = new LinkedList<>();
-		List<Map.Entry<String, byte[]>> sessionStatesToRemove = new LinkedList<>();
-		List<byte[]> sessionIdsToRemove = new LinkedList<>();
-		for (SessionExhaustInfo sessionInfo : exhaustInfo.getSessions()) {
-			if (exDate.after(sessionInfo.getExhaustDate())
-					&& ArrayUtils.isInList(sessionsIds, sessionInfo.getIdentifier())) {
-				// sessionInfosToRemove.add(sessionInfo);
-				sessionIdsToRemove.add(sessionInfo.getIdentifier());
-
-				sessionStatesToRemove
-						.add(new AbstractMap.SimpleEntry(sessionInfo.getCardId(), sessionInfo.getIdentifier()));
+		for (SessionExhaustInfo sessionInfo : exhaustInfoManager.getSessions()) {
+			String sessionIdStr = ConvertionUtils.toBase64String(sessionInfo.getIdentifier());
+			if (!index.contains(Kind.SESSION, sessionIdStr)) {
+				staleSessionIds.add(sessionInfo.getIdentifier());
+			} else if (exDate.after(sessionInfo.getExhaustDate())) {
+				sessionInfosToRemove.add(sessionInfo);
 			}
 		}
+		exhaustInfoManager.removeSessions(staleSessionIds);
 
-		keyStorageManager.removeSessionKeys(sessionIdsToRemove);
-		sessionStorageManager.removeSessionsStates(sessionStatesToRemove);
+		boolean done = sessionInfosToRemove.size() <= maxItems;
+		sessionInfosToRemove = limit(sessionInfosToRemove, maxItems);
 
-		// Update sessions info
-		List<Entry<String, SessionState>> allSessionsUpdated = new LinkedList<>();
-		for (Entry<String, SessionState> entry : allSessions) {
-			if (!ArrayUtils.isInList(sessionIdsToRemove, entry.getValue().getSessionId())) {
-				allSessionsUpdated.add(entry);
-			}
+		List<Map.Entry<String, byte[]>> sessionStatesToRemove = new LinkedList<>();
+		List<byte[]> sessionIdsToRemove = new LinkedList<>();
+		Set<String> removedSessionsIds = new HashSet<>();
+		for (SessionExhaustInfo sessionInfo : sessionInfosToRemove) {
+			sessionIdsToRemove.add(sessionInfo.getIdentifier());
+			removedSessionsIds.add(ConvertionUtils.toBase64String(sessionInfo.getIdentifier()));
+
+			sessionStatesToRemove.add(
+					new AbstractMap.SimpleEntry<String, byte[]>(sessionInfo.getCardId(), sessionInfo.getIdentifier()));
 		}
 
-		// Update exhaust info:
-		// Clear removed keys
-		List<SessionExhaustInfo> newSessions = new ArrayList<>();
-		List<byte[]> newSessionsIds = new LinkedList<>();
-		for (SessionExhaustInfo sessionInfo : exhaustInfo.getSessions()) {
-			if (!ArrayUtils.isInList(sessionIdsToRemove, sessionInfo.getIdentifier())) {
-				newSessions.add(sessionInfo);
-				newSessionsIds.add(sessionInfo.getIdentifier());
-			}
+		if (!sessionIdsToRemove.isEmpty()) {
+			keyStorageManager.removeSessionKeys(sessionIdsToRemove);
+			sessionStorageManager.removeSessionsStates(sessionStatesToRemove);
+			exhaustInfoManager.removeSessions(sessionIdsToRemove);
 		}
 
-		// Add recently expired keys
-		for (Entry<String, SessionState> entry : allSessionsUpdated) {
-			SessionState session = entry.getValue();
-			if (session.isExpired(now) && !ArrayUtils.isInList(newSessionsIds, session.getSessionId())) {
-				newSessions.add(new SessionExhaustInfo(session.getSessionId(), entry.getKey(), now));
+		// Add recently expired sessions
+		int added = 0;
+		for (IndexEntry entry : index.getOlderThan(Kind.SESSION, now)) {
+			String sessionIdStr = entry.getIdentifier();
+			if (removedSessionsIds.contains(sessionIdStr)) {
+				continue;
+			}
+			byte[] sessionId = ConvertionUtils.base64ToBytes(sessionIdStr);
+			if (!exhaustInfoManager.containsSession(sessionId)) {
+				if (added == maxItems) {
+					done = false;
+					break;
+				}
+				exhaustInfoManager.addSession(sessionId, entry.getCardId(), now);
+				added++;
 			}
 		}
 
-		// Updated exhaust info
-		return new ExhaustInfo(exhaustInfo.getOtc(), exhaustInfo.getLtc(), newSessions);
+		return done;
 	}
 
-	private void removeOrhpanedSessionKeys(List<KeyAttrs> sessionKeys, List<Entry<String, SessionState>> allSessions) {
+	private boolean removeOrhpanedSessionKeys(Rotation rotation) {
+		if (!rotation.indexRebuilt) {
+			// Full scan is performed with periodic index rebuild only
+			return true;
+		}
 		log.fine("Removing orphaned session keys.");
 
+		List<Entry<String, SessionState>> allSessions = sessionStorageManager.getAllSessionsStates();
+		List<KeyAttrs> sessionKeys = keyStorageManager.getAllKeysAttrs().get(KeyStorageManager.SESSION_KEYS);
+
 		List<byte[]> allSessionsIds = new LinkedList<>();
 		for (Entry<String, SessionState> entry : allSessions) {
 			allSessionsIds.add(entry.getValue().getSessionId());
@@ -268,40 +368,174 @@ public class KeysRotator {
 			log.warning(String.format("WARNING: orphaned session keys found: %d", orphanedSessionKeysIds.size()));
 			keyStorageManager.removeSessionKeys(orphanedSessionKeysIds);
 		}
+		return true;
 	}
 
-	private ExhaustInfo removeOrphanedOtcs(Date now, List<KeyAttrs> otKeys, ExhaustInfo exhaustInfo) {
+	private boolean removeOrphanedOtcs(Rotation rotation, int maxItems) {
 		log.fine("Removing orphaned otcs.");
 
-		List<String> otKeysIds = new LinkedList<>();
-		for (KeyAttrs key : otKeys) {
-			otKeysIds.add(key.getName());
-		}
+		ExpiryIndexManager index = rotation.index;
 
 		// Remove ot keys that have been used some time ago
-		Date exDate = minusSeconds(now, this.exhaustedOneTimeCardTtl);
+		Date exDate = minusSeconds(rotation.now, this.exhaustedOneTimeCardTtl);
 
-		List<String> otcIdsToRemove = new LinkedList<>();
-		for (ExhaustInfoEntry infoEntry : exhaustInfo.getOtc()) {
-			if (exDate.after(infoEntry.getExhaustDate()) && otKeysIds.contains(infoEntry.getIdentifier())) {
-				otcIdsToRemove.add(infoEntry.getIdentifier());
+		List<String> otcIdsToRemove = new ArrayList<>();
+		for (String otcId : exhaustInfoManager.getOtcsExhaustedBefore(exDate)) {
+			if (index.contains(Kind.OT_KEY, otcId)) {
+				otcIdsToRemove.add(otcId);
 			}
 		}
+		boolean done = otcIdsToRemove.size() <= maxItems;
+		otcIdsToRemove = limit(otcIdsToRemove, maxItems);
 
 		if (!otcIdsToRemove.isEmpty()) {
 			log.warning(String.format("WARNING: orphaned otcs found: %d", otcIdsToRemove.size()));
 			keyStorageManager.removeOtPrivateKeys(otcIdsToRemove);
 		}
 
-		// Updated exhaust info
-		List<ExhaustInfoEntry> newOtKeys = new LinkedList<>();
-		for (ExhaustInfoEntry infoEntry : exhaustInfo.getOtc()) {
-			if (otcIdsToRemove.contains(infoEntry.getIdentifier())) {
-				newOtKeys.add(infoEntry);
+		// Updated exhaust info:
+		// Clear removed keys and keys which don't exist anymore
+		Set<String> removedOtKeysIds = new HashSet<>(otcIdsToRemove);
+		List<String> staleOtKeysIds = new ArrayList<>(otcIdsToRemove);
+		for (String otcId : exhaustInfoManager.getOtcs()) {
+			if (!removedOtKeysIds.contains(otcId) && !index.contains(Kind.OT_KEY, otcId)) {
+				staleOtKeysIds.add(otcId);
+			}
+		}
+		exhaustInfoManager.removeOtcs(staleOtKeysIds);
+
+		if (done) {
+			// All orphans are removed. Check the rest of keys
+			List<String> otKeysIdsToCheck = new ArrayList<>();
+			for (String otKeyId : index.getIdentifiers(Kind.OT_KEY)) {
+				if (!removedOtKeysIds.contains(otKeyId) && !exhaustInfoManager.containsOtc(otKeyId)) {
+					otKeysIdsToCheck.add(otKeyId);
+				}
+			}
+			rotation.otKeysIdsToCheck = otKeysIdsToCheck;
+
+			if (this.otcValidationCacheManager != null) {
+				this.otcValidationCacheManager.retain(new HashSet<>(otKeysIdsToCheck));
+			}
+		}
+
+		return done;
+	}
+
+	private boolean replenish(Rotation rotation, int maxItems) {
+		log.fine("Adding new cards.");
+
+		replenishSemaphore.acquireUninterruptibly();
+		try {
+			int numberOfMissingCards;
+			if (this.replenishmentController == null) {
+				log.fine("Get OTC status.");
+				CardStatus status = pfsClient.getCardStatus(this.identityCard.getId());
+				numberOfMissingCards = Math.max(rotation.desiredNumberOfCards - status.getActive(), 0);
+			} else {
+				if (this.replenishmentController.needsReconciliation(new Date())) {
+					log.fine("Get OTC status.");
+					CardStatus status = pfsClient.getCardStatus(this.identityCard.getId());
+					this.replenishmentController.reconcile(status.getActive(), new Date());
+				}
+				numberOfMissingCards = this.replenishmentController.getMissingCards(rotation.desiredNumberOfCards,
+						new Date());
+			}
+
+			boolean addLtCard = false;
+			if (!rotation.ltKeyChecked) {
+				addLtCard = !keyStorageManager.hasRelevantLtKey(this.longTermKeysTtl);
+				rotation.ltKeyChecked = true;
+			}
+			int numberOfCards = Math.min(numberOfMissingCards, maxItems);
+			if (numberOfCards > 0 || addLtCard) {
+				if (this.replenishmentController != null) {
+					this.replenishmentController.reserve(numberOfCards);
+				}
+				try {
+					ephemeralCardsReplenisher.addCards(addLtCard, numberOfCards);
+				} catch (CardsUploadException e) {
+					if (this.replenishmentController != null) {
+						this.replenishmentController.release(e.getFailedCount());
+					}
+					throw e;
+				} catch (RuntimeException e) {
+					if (this.replenishmentController != null) {
+						this.replenishmentController.release(numberOfCards);
+					}
+					throw e;
+				}
+			}
+			return numberOfMissingCards <= maxItems;
+		} finally {
+			replenishSemaphore.release();
+		}
+	}
+
+	/**
+	 * Perform a step of rotation phase. The step processes at most
+	 * {@code maxItems} items of each kind. Local storages are locked during
+	 * the step, but not during network calls.
+	 * 
+	 * @param rotation
+	 *            the rotation started with {@link #startRotation(int)}.
+	 * @param phase
+	 *            the phase.
+	 * @param maxItems
+	 *            the maximum number of items to be processed.
+	 * @return {@code true} if phase is completed, {@code false} if more steps
+	 *         are required.
+	 * @throws IllegalStateException
+	 *             if rotation is already finished.
+	 */
+	public boolean rotate(Rotation rotation, Phase phase, int maxItems) {
+		synchronized (rotation) {
+			if (rotation.finished) {
+				throw new IllegalStateException("Rotation is finished");
+			}
+		}
+		boolean done = doRotate(rotation, phase, maxItems);
+		if (done && phase == Phase.REPLENISH) {
+			// The last phase is completed
+			finishRotation(rotation);
+		}
+		return done;
+	}
+
+	private boolean doRotate(Rotation rotation, Phase phase, int maxItems) {
+		switch (phase) {
+		case OT_KEYS:
+			if (rotation.otKeysIdsToCheck == null) {
+				semaphore.acquireUninterruptibly();
+				try {
+					removeOrphanedOtcs(rotation, maxItems);
+				} finally {
+					semaphore.release();
+				}
+				return false;
 			}
+			return validateOtcs(rotation, maxItems);
+		case REPLENISH:
+			return replenish(rotation, maxItems);
+		default:
+			break;
 		}
 
-		return new ExhaustInfo(newOtKeys, exhaustInfo.getLtc(), exhaustInfo.getSessions());
+		semaphore.acquireUninterruptibly();
+		try {
+			switch (phase) {
+			case LT_KEYS:
+				return removeExpiredLtKeys(rotation, maxItems);
+			case SESSIONS:
+				return removeExpiredSessions(rotation, maxItems);
+			case ORPHANED_KEYS:
+				return removeOrhpanedSessionKeys(rotation);
+			default:
+				return true;
+			}
+		} finally {
+			semaphore.release();
+		}
 	}
 
 	/**
@@ -312,37 +546,266 @@ public class KeysRotator {
 	 */
 	public void rotateKeys(int desiredNumberOfCards) {
 		log.fine("Started keys' rotation");
+
+		Rotation rotation = startRotation(desiredNumberOfCards);
 		try {
-			semaphore.acquire();
+			for (Phase phase : Phase.values()) {
+				while (!rotate(rotation, phase, Integer.MAX_VALUE)) {
+					// Phase is not completed yet
+				}
+			}
+		} finally {
+			finishRotation(rotation);
+		}
+	}
 
-			log.fine("Get OTC status.");
-			CardStatus status = pfsClient.getCardStatus(this.identityCard.getId());
-			int numberOfMissingCards = Math.max(desiredNumberOfCards - status.getActive(), 0);
+	/**
+	 * Finish rotation, so next rotation could be started. Rotation is
+	 * finished automatically when its last phase is completed. Rotation which
+	 * is abandoned before that, e.g. because of error, should be finished with
+	 * this method.
+	 * 
+	 * @param rotation
+	 *            the rotation.
+	 */
+	public void finishRotation(Rotation rotation) {
+		synchronized (rotation) {
+			if (rotation.finished) {
+				return;
+			}
+			rotation.finished = true;
+		}
+		rotationSemaphore.release();
+	}
+
+	/**
+	 * Start new keys rotation. Waits until rotation which is in progress is
+	 * finished.
+	 * 
+	 * @param desiredNumberOfCards
+	 *            the desired number of cards which should be available.
+	 * @return the rotation state which should be passed to
+	 *         {@link #rotate(Rotation, Phase, int)}.
+	 */
+	public Rotation startRotation(int desiredNumberOfCards) {
+		rotationSemaphore.acquireUninterruptibly();
+		return doStartRotation(desiredNumberOfCards);
+	}
 
-			// Cleanup
-			log.fine("Cleanup");
-			cleanup();
+	/**
+	 * Start new keys rotation if no other rotation is in progress.
+	 * 
+	 * @param desiredNumberOfCards
+	 *            the desired number of cards which should be available.
+	 * @return the rotation state which should be passed to
+	 *         {@link #rotate(Rotation, Phase, int)}, or {@code null} if other
+	 *         rotation is in progress.
+	 */
+	public Rotation tryStartRotation(int desiredNumberOfCards) {
+		if (!rotationSemaphore.tryAcquire()) {
+			return null;
+		}
+		return doStartRotation(desiredNumberOfCards);
+	}
 
-			log.fine("Adding new cards.");
-			boolean addLtCard = !keyStorageManager.hasRelevantLtKey(this.longTermKeysTtl);
-			if (numberOfMissingCards > 0 || addLtCard) {
-				ephemeralCardsReplenisher.addCards(addLtCard, numberOfMissingCards);
+	private Rotation doStartRotation(int desiredNumberOfCards) {
+		Rotation rotation = new Rotation(new Date(), desiredNumberOfCards);
+		try {
+			semaphore.acquireUninterruptibly();
+			try {
+				prepareExpiryIndex(rotation);
+			} finally {
+				semaphore.release();
 			}
-		} catch (InterruptedException e) {
-			log.severe("Rotate keys interrupted");
+		} catch (RuntimeException | Error e) {
+			finishRotation(rotation);
+			throw e;
+		}
+		return rotation;
+	}
+
+	private void updateExhaustInfo(Date now, List<String> exhaustedCardsIds) {
+		if (exhaustedCardsIds.isEmpty()) {
+			return;
+		}
+		semaphore.acquireUninterruptibly();
+		try {
+			this.exhaustInfoManager.addOtcs(exhaustedCardsIds, now);
 		} finally {
 			semaphore.release();
 		}
 	}
 
-	private void updateExhaustInfo(Date now, ExhaustInfo exhaustInfo, List<String> exhaustedCardsIds) {
-		List<ExhaustInfoEntry> newOtc = exhaustInfo.getOtc();
-		for (String exhaustedCardsId : exhaustedCardsIds) {
-			ExhaustInfoEntry infoEntry = new ExhaustInfoEntry(exhaustedCardsId, now);
-			newOtc.add(infoEntry);
+	/**
+	 * Set the cache of one-time cards validation results. One-time cards
+	 * validated during last {@code ttl} seconds are not validated again.
+	 * 
+	 * @param otcValidationCacheManager
+	 *            the validation results cache.
+	 * @param ttl
+	 *            the validation result time-to-live in seconds.
+	 */
+	public void setOtcValidationCache(OtcValidationCacheManager otcValidationCacheManager, int ttl) {
+		this.otcValidationCacheManager = otcValidationCacheManager;
+		this.otcValidationTtl = ttl;
+	}
+
+	/**
+	 * Set the one-time cards replenishment controller. If controller is set,
+	 * the number of active one-time cards is obtained from Virgil PFS service
+	 * only when reconciliation is required, and the number of cards added
+	 * depends on consumption rate.
+	 * 
+	 * @param replenishmentController
+	 *            the replenishment controller.
+	 */
+	public void setReplenishmentController(OtcReplenishmentController replenishmentController) {
+		this.replenishmentController = replenishmentController;
+	}
+
+	/**
+	 * @param validationChunkSize
+	 *            the maximum number of one-time cards validated with one
+	 *            request.
+	 */
+	public void setValidationChunkSize(int validationChunkSize) {
+		if (validationChunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size should be positive");
+		}
+		this.validationChunkSize = validationChunkSize;
+	}
+
+	/**
+	 * @param validationParallelism
+	 *            the maximum number of concurrent validation requests.
+	 */
+	public void setValidationParallelism(int validationParallelism) {
+		if (validationParallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism should be positive");
 		}
-		ExhaustInfo newExhaustInfo = new ExhaustInfo(newOtc, exhaustInfo.getLtc(), exhaustInfo.getSessions());
+		this.validationParallelism = validationParallelism;
+		if (validationParallelism > this.validationExecutor.getMaximumPoolSize()) {
+			this.validationExecutor.setMaximumPoolSize(validationParallelism);
+			this.validationExecutor.setCorePoolSize(validationParallelism);
+		} else {
+			this.validationExecutor.setCorePoolSize(validationParallelism);
+			this.validationExecutor.setMaximumPoolSize(validationParallelism);
+		}
+	}
+
+	/**
+	 * Stop threads used for one-time cards validation. Rotation could not
+	 * validate one-time cards concurrently after that.
+	 */
+	public void shutdown() {
+		this.validationExecutor.shutdownNow();
+	}
 
-		this.exhaustInfoManager.saveKeysExhaustInfo(newExhaustInfo);
+	private boolean validateOtcs(Rotation rotation, int maxItems) {
+		List<String> otKeysIds = rotation.otKeysIdsToCheck;
+		int from = rotation.otKeysIdsChecked;
+		int to = (int) Math.min((long) from + maxItems, otKeysIds.size());
+
+		if (from < to) {
+			List<String> otCardsToCheck = new ArrayList<>(otKeysIds.subList(from, to));
+
+			// Skip cards validated recently
+			if (this.otcValidationCacheManager != null) {
+				Set<String> validatedIds = this.otcValidationCacheManager
+						.getValidatedSince(minusSeconds(rotation.now, this.otcValidationTtl));
+				otCardsToCheck.removeAll(validatedIds);
+			}
+
+			if (!otCardsToCheck.isEmpty()) {
+				log.fine("Validating otcs.");
+				validateOtcs(rotation.now, otCardsToCheck);
+			}
+		}
+		rotation.otKeysIdsChecked = to;
+
+		return to == otKeysIds.size();
+	}
+
+	private void validateOtcs(Date now, List<String> otCardsToCheck) {
+		final String recipientId = this.identityCard.getId();
+
+		List<List<String>> chunks = new ArrayList<>();
+		for (int i = 0; i < otCardsToCheck.size(); i += this.validationChunkSize) {
+			chunks.add(otCardsToCheck.subList(i, Math.min(i + this.validationChunkSize, otCardsToCheck.size())));
+		}
+
+		List<String> checkedCardsIds = new ArrayList<>();
+		List<String> exhaustedCardsIds = new ArrayList<>();
+		RuntimeException error = null;
+		if (chunks.size() == 1) {
+			exhaustedCardsIds.addAll(this.pfsClient.validateOneTimeCards(recipientId, otCardsToCheck));
+			checkedCardsIds.addAll(otCardsToCheck);
+		} else {
+			List<Future<List<String>>> futures = new ArrayList<>(chunks.size());
+			try {
+				for (final List<String> chunk : chunks) {
+					futures.add(this.validationExecutor.submit(new Callable<List<String>>() {
+
+						@Override
+						public List<String> call() throws Exception {
+							return pfsClient.validateOneTimeCards(recipientId, chunk);
+						}
+					}));
+				}
+				// Keep results of successful requests even if some requests
+				// failed
+				for (int i = 0; i < chunks.size(); i++) {
+					try {
+						exhaustedCardsIds.addAll(futures.get(i).get());
+						checkedCardsIds.addAll(chunks.get(i));
+					} catch (ExecutionException e) {
+						if (error == null) {
+							error = toRuntimeException(e.getCause());
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						if (error == null) {
+							error = new VirgilPFSServiceException(e);
+						}
+						break;
+					}
+				}
+			} finally {
+				// Don't leave requests behind if interrupted
+				for (Future<List<String>> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+
+		this.updateExhaustInfo(now, exhaustedCardsIds);
+
+		if (this.otcValidationCacheManager != null) {
+			Set<String> validCardsIds = new HashSet<>(checkedCardsIds);
+			validCardsIds.removeAll(exhaustedCardsIds);
+			this.otcValidationCacheManager.markValidated(validCardsIds, now);
+			this.otcValidationCacheManager.remove(exhaustedCardsIds);
+		}
+
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private static RuntimeException toRuntimeException(Throwable e) {
+		if (e instanceof RuntimeException) {
+			return (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		return new VirgilPFSServiceException((Exception) e);
+	}
+
+	private static <T> List<T> limit(List<T> list, int maxItems) {
+		if (list.size() <= maxItems) {
+			return list;
+		}
+		return new ArrayList<>(list.subList(0, maxItems));
 	}
 }
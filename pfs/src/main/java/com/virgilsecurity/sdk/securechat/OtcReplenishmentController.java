@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import java.util.Date;
+import java.util.logging.Logger;
+
+import com.virgilsecurity.sdk.securechat.model.ReplenishmentInfo;
+import com.virgilsecurity.sdk.securechat.utils.GsonUtils;
+import com.virgilsecurity.sdk.utils.StringUtils;
+
+/**
+ * This class tracks one-time cards consumption locally and decides how many
+ * one-time cards should be uploaded.
+ * 
+ * The number of active one-time cards is estimated locally and reconciled
+ * with Virgil PFS service periodically. Consumption rate is an exponentially
+ * weighted average, so the number of cards grows with demand during bursts
+ * and falls back to the desired number when demand drops.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class OtcReplenishmentController {
+
+	private static final Logger log = Logger.getLogger(OtcReplenishmentController.class.getName());
+
+	/* The default consumption rate averaging window in seconds */
+	public static final long DEFAULT_RATE_WINDOW = 24 * 60 * 60;
+
+	/* Forecasted demand is multiplied by this factor */
+	private static final double SAFETY_FACTOR = 1.5;
+
+	/* Target number of cards never exceeds desired number multiplied by this */
+	private static final int MAX_TARGET_MULTIPLIER = 10;
+
+	private String cardId;
+	private UserDataStorage storage;
+	private long reconciliationPeriod;
+	private long horizon;
+	private long rateWindow;
+
+	/**
+	 * Create new instance of {@link OtcReplenishmentController}.
+	 * 
+	 * @param cardId
+	 *            the Virgil Card identifier.
+	 * @param storage
+	 *            the user data storage.
+	 * @param reconciliationPeriod
+	 *            the period of reconciliation with Virgil PFS service in
+	 *            seconds.
+	 * @param horizon
+	 *            the period in seconds one-time cards should be enough for.
+	 */
+	public OtcReplenishmentController(String cardId, UserDataStorage storage, long reconciliationPeriod,
+			long horizon) {
+		this.cardId = cardId;
+		this.storage = storage;
+		this.reconciliationPeriod = reconciliationPeriod;
+		this.horizon = horizon;
+		this.rateWindow = DEFAULT_RATE_WINDOW;
+	}
+
+	private double currentRate(ReplenishmentInfo info, long now) {
+		long elapsed = Math.max(now - info.getRateUpdatedAt(), 0);
+		return info.getRate() * Math.exp(-elapsed / (this.rateWindow * 1000.0));
+	}
+
+	/**
+	 * Get current consumption rate.
+	 * 
+	 * @param now
+	 *            the current date.
+	 * @return the consumption rate, cards per second.
+	 */
+	public double getConsumptionRate(Date now) {
+		synchronized (this) {
+			ReplenishmentInfo info = load();
+			return info == null ? 0 : currentRate(info, now.getTime());
+		}
+	}
+
+	private String getEntryKey() {
+		return String.format("VIRGIL.REPLENISHMENTINFO.OWNER=%s", this.cardId);
+	}
+
+	/**
+	 * @return the estimated number of active one-time cards.
+	 */
+	public int getEstimatedActive() {
+		synchronized (this) {
+			ReplenishmentInfo info = load();
+			return info == null ? 0 : info.getActive();
+		}
+	}
+
+	/**
+	 * Get the number of one-time cards which should be added.
+	 * 
+	 * @param desiredNumberOfCards
+	 *            the minimum number of one-time cards which should be
+	 *            available.
+	 * @param now
+	 *            the current date.
+	 * @return the number of missing cards.
+	 */
+	public int getMissingCards(int desiredNumberOfCards, Date now) {
+		synchronized (this) {
+			ReplenishmentInfo info = load();
+			if (info == null) {
+				return desiredNumberOfCards;
+			}
+			if (info.getDesired() != desiredNumberOfCards) {
+				info.setDesired(desiredNumberOfCards);
+				save(info);
+			}
+			return Math.max(getTarget(info, now.getTime()) - info.getActive(), 0);
+		}
+	}
+
+	private int getTarget(ReplenishmentInfo info, long now) {
+		double demand = currentRate(info, now) * this.horizon * SAFETY_FACTOR;
+		int maxTarget = Math.max(info.getDesired(), 1) * MAX_TARGET_MULTIPLIER;
+
+		return Math.max(info.getDesired(), (int) Math.min(Math.ceil(demand), maxTarget));
+	}
+
+	private ReplenishmentInfo load() {
+		String entry = storage.getData(this.cardId, this.getEntryKey());
+		if (StringUtils.isBlank(entry)) {
+			return null;
+		}
+		return GsonUtils.getGson().fromJson(entry, ReplenishmentInfo.class);
+	}
+
+	/**
+	 * Check if number of active one-time cards should be obtained from Virgil
+	 * PFS service.
+	 * 
+	 * @param now
+	 *            the current date.
+	 * @return {@code true} if reconciliation is required.
+	 */
+	public boolean needsReconciliation(Date now) {
+		synchronized (this) {
+			ReplenishmentInfo info = load();
+			return info == null || now.getTime() - info.getReconciledAt() >= this.reconciliationPeriod * 1000;
+		}
+	}
+
+	/**
+	 * Set the number of active one-time cards obtained from Virgil PFS
+	 * service.
+	 * 
+	 * @param active
+	 *            the number of active one-time cards.
+	 * @param now
+	 *            the current date.
+	 */
+	public void reconcile(int active, Date now) {
+		synchronized (this) {
+			ReplenishmentInfo info = load();
+			if (info == null) {
+				info = new ReplenishmentInfo();
+				info.setRateUpdatedAt(now.getTime());
+			}
+			if (info.getActive() != active) {
+				log.fine(String.format("Estimated number of otcs %d differs from actual %d", info.getActive(),
+						active));
+			}
+			info.setActive(active);
+			info.setReconciledAt(now.getTime());
+			save(info);
+		}
+	}
+
+	/**
+	 * Register one-time card consumption.
+	 * 
+	 * @param now
+	 *            the consumption date.
+	 * @return the number of one-time cards which should be added. These cards
+	 *         are already reserved. Call {@link #release(int)} if cards were
+	 *         not added.
+	 */
+	public int recordConsumption(Date now) {
+		synchronized (this) {
+			ReplenishmentInfo info = load();
+			if (info == null) {
+				// Nothing is known about cards yet, so replace consumed card
+				return 1;
+			}
+			long time = now.getTime();
+			info.setRate(currentRate(info, time) + 1.0 / this.rateWindow);
+			info.setRateUpdatedAt(time);
+			info.setActive(Math.max(info.getActive() - 1, 0));
+
+			int target = getTarget(info, time);
+			int numberOfCards = 0;
+			if (info.getActive() < Math.max(target / 2, 1)) {
+				numberOfCards = target - info.getActive();
+				info.setActive(target);
+			}
+			save(info);
+
+			return numberOfCards;
+		}
+	}
+
+	/**
+	 * Release one-time cards reserved but not added.
+	 * 
+	 * @param numberOfCards
+	 *            the number of cards.
+	 */
+	public void release(int numberOfCards) {
+		reserve(-numberOfCards);
+	}
+
+	/**
+	 * Reserve one-time cards which are going to be added.
+	 * 
+	 * @param numberOfCards
+	 *            the number of cards.
+	 */
+	public void reserve(int numberOfCards) {
+		if (numberOfCards == 0) {
+			return;
+		}
+		synchronized (this) {
+			ReplenishmentInfo info = load();
+			if (info == null) {
+				return;
+			}
+			info.setActive(Math.max(info.getActive() + numberOfCards, 0));
+			save(info);
+		}
+	}
+
+	private void save(ReplenishmentInfo info) {
+		this.storage.addData(this.cardId, this.getEntryKey(), GsonUtils.getGson().toJson(info));
+	}
+
+	/**
+	 * @param rateWindow
+	 *            the consumption rate averaging window in seconds.
+	 */
+	public void setRateWindow(long rateWindow) {
+		if (rateWindow <= 0) {
+			throw new IllegalArgumentException("Rate window should be positive");
+		}
+		this.rateWindow = rateWindow;
+	}
+
+}
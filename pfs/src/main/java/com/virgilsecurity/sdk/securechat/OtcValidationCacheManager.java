@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import com.google.gson.reflect.TypeToken;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+import com.virgilsecurity.sdk.utils.StringUtils;
+
+/**
+ * This class stores results of one-time cards validation. One-time cards
+ * which were validated recently are not sent to Virgil PFS service again.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class OtcValidationCacheManager {
+
+	private static final Logger log = Logger.getLogger(OtcValidationCacheManager.class.getName());
+
+	private static final Type CACHE_TYPE = new TypeToken<Map<String, Long>>() {
+	}.getType();
+
+	private String cardId;
+	private UserDataStorage storage;
+
+	private final Lock lock = new ReentrantLock();
+
+	/**
+	 * Create new instance of OtcValidationCacheManager.
+	 * 
+	 * @param cardId
+	 *            the Virgil Card identifier.
+	 * @param storage
+	 *            the user data storage.
+	 */
+	public OtcValidationCacheManager(String cardId, UserDataStorage storage) {
+		super();
+		this.cardId = cardId;
+		this.storage = storage;
+	}
+
+	private String getCacheEntryKey() {
+		return String.format("VIRGIL.OTCVALIDATION.OWNER=%s", this.cardId);
+	}
+
+	/**
+	 * Get one-time cards which were validated after specified date.
+	 * 
+	 * @param date
+	 *            the date.
+	 * @return the identifiers of valid one-time cards.
+	 */
+	public Set<String> getValidatedSince(Date date) {
+		Set<String> result = new HashSet<>();
+		this.lock.lock();
+		try {
+			for (Entry<String, Long> entry : load().entrySet()) {
+				if (entry.getValue() >= date.getTime()) {
+					result.add(entry.getKey());
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return result;
+	}
+
+	private Map<String, Long> load() {
+		String entry = storage.getData(this.cardId, this.getCacheEntryKey());
+		if (StringUtils.isBlank(entry)) {
+			return new HashMap<>();
+		}
+		Map<String, Long> cache = ConvertionUtils.getGson().fromJson(entry, CACHE_TYPE);
+
+		return cache;
+	}
+
+	/**
+	 * Remember that one-time cards are valid.
+	 * 
+	 * @param cardsIds
+	 *            the identifiers of valid one-time cards.
+	 * @param date
+	 *            the validation date.
+	 */
+	public void markValidated(Collection<String> cardsIds, Date date) {
+		if (cardsIds.isEmpty()) {
+			return;
+		}
+		log.fine("Saving otc validation results");
+
+		this.lock.lock();
+		try {
+			Map<String, Long> cache = load();
+			for (String cardId : cardsIds) {
+				cache.put(cardId, date.getTime());
+			}
+			save(cache);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Forget validation results of one-time cards.
+	 * 
+	 * @param cardsIds
+	 *            the identifiers of one-time cards.
+	 */
+	public void remove(Collection<String> cardsIds) {
+		if (cardsIds.isEmpty()) {
+			return;
+		}
+		this.lock.lock();
+		try {
+			Map<String, Long> cache = load();
+			if (cache.keySet().removeAll(cardsIds)) {
+				save(cache);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Forget validation results of all one-time cards except specified ones.
+	 * 
+	 * @param cardsIds
+	 *            the identifiers of one-time cards which exist.
+	 */
+	public void retain(Collection<String> cardsIds) {
+		this.lock.lock();
+		try {
+			Map<String, Long> cache = load();
+			boolean changed = false;
+			for (Iterator<String> it = cache.keySet().iterator(); it.hasNext();) {
+				if (!cardsIds.contains(it.next())) {
+					it.remove();
+					changed = true;
+				}
+			}
+			if (changed) {
+				save(cache);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void save(Map<String, Long> cache) {
+		this.storage.addData(this.cardId, this.getCacheEntryKey(), ConvertionUtils.getGson().toJson(cache));
+	}
+
+}
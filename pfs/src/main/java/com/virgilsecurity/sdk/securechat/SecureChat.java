@@ -29,33 +29,69 @@
  */
 package com.virgilsecurity.sdk.securechat;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 import com.virgilsecurity.sdk.client.exceptions.CardValidationException;
 import com.virgilsecurity.sdk.client.model.CardModel;
+import com.virgilsecurity.sdk.pfs.Deadline;
 import com.virgilsecurity.sdk.pfs.VirgilPFSClient;
 import com.virgilsecurity.sdk.pfs.model.RecipientCardsSet;
+import com.virgilsecurity.sdk.securechat.attachment.AttachmentCipher;
+import com.virgilsecurity.sdk.securechat.exceptions.AttachmentException;
+import com.virgilsecurity.sdk.securechat.exceptions.CardsUploadException;
 import com.virgilsecurity.sdk.securechat.exceptions.MigrationException;
 import com.virgilsecurity.sdk.securechat.exceptions.SecureChatException;
 import com.virgilsecurity.sdk.securechat.exceptions.SessionManagerException;
+import com.virgilsecurity.sdk.securechat.group.GroupSessionManager;
 import com.virgilsecurity.sdk.securechat.migration.MigrationManager;
+import com.virgilsecurity.sdk.securechat.model.AttachmentDescriptor;
 import com.virgilsecurity.sdk.securechat.model.CardEntry;
+import com.virgilsecurity.sdk.securechat.model.DecryptedMessage;
+import com.virgilsecurity.sdk.securechat.model.EncryptedBroadcast;
+import com.virgilsecurity.sdk.securechat.model.InboundMessage;
 import com.virgilsecurity.sdk.securechat.model.InitiationMessage;
 import com.virgilsecurity.sdk.securechat.model.Message;
 import com.virgilsecurity.sdk.securechat.model.MessageType;
+import com.virgilsecurity.sdk.securechat.session.EphemeralKeyPool;
 import com.virgilsecurity.sdk.securechat.session.SecureSession;
 import com.virgilsecurity.sdk.securechat.session.SessionInitializer;
 import com.virgilsecurity.sdk.securechat.session.SessionManager;
+import com.virgilsecurity.sdk.securechat.utils.Base64Codec;
+import com.virgilsecurity.sdk.securechat.utils.GsonUtils;
 import com.virgilsecurity.sdk.securechat.utils.SessionStateResolver;
+import com.virgilsecurity.sdk.securechat.utils.SingleFlight;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
 import com.virgilsecurity.sdk.utils.StringUtils;
 
 /**
+ * Secure chat should be closed with {@link #close()} when it's not needed
+ * anymore, so background keys rotation is stopped and executors created by
+ * secure chat are shut down.
+ * 
  * @author Andrii Iakovenko
  *
  */
-public class SecureChat {
+public class SecureChat implements AutoCloseable {
 
 	public enum Version {
 		V1_0("1.0"), V1_1("1.1");
@@ -108,11 +144,21 @@ public class SecureChat {
 	private EphemeralCardsReplenisher ephemeralCardsReplenisher;
 	private SessionManager sessionManager;
 	private KeysRotator rotator;
+	private BackgroundKeysRotator backgroundRotator;
+	private OtcReplenishmentController replenishmentController;
 
 	private UserDataStorage insensitiveDataStorage;
 
 	private MigrationManager migrationManager;
 
+	private SingleFlight<String, SecureSession> sessionStarts = new SingleFlight<>();
+
+	private Executor messagesExecutor;
+	private boolean ownMessagesExecutor;
+	private EphemeralKeyPool ephemeralKeyPool;
+
+	private GroupSessionManager groupSessionManager;
+
 	/**
 	 * Create new instance of {@link SecureChat}.
 	 * 
@@ -122,20 +168,32 @@ public class SecureChat {
 	public SecureChat(SecureChatContext config) {
 		this.identityCardId = config.getIdentityCard().getId();
 		this.client = new VirgilPFSClient(config.getContext());
+		this.client.setBufferPool(config.getBufferPool());
 		this.insensitiveDataStorage = config.getUserDataStorage();
 
+		ExpiryIndexManager expiryIndexManager = new ExpiryIndexManager(identityCardId, config.getUserDataStorage());
+		expiryIndexManager.setRebuildPeriod(config.getExpiryIndexRebuildPeriod());
+
 		KeyStorageManager keyStorageManager = new KeyStorageManager(config.getCrypto(), config.getKeyStorage(),
-				identityCardId);
+				identityCardId, expiryIndexManager);
 		this.ephemeralCardsReplenisher = new EphemeralCardsReplenisher(config.getCrypto(),
 				config.getIdentityPrivateKey(), identityCardId, this.client, keyStorageManager);
 
 		SessionStorageManager sessionStorageManager = new SessionStorageManager(identityCardId,
-				config.getUserDataStorage());
+				config.getUserDataStorage(), expiryIndexManager);
 
 		ExhaustInfoManager exhaustInfoManager = new ExhaustInfoManager(identityCardId, config.getUserDataStorage());
 
 		SessionInitializer sessionInitializer = new SessionInitializer(config.getCrypto(),
 				config.getIdentityPrivateKey(), config.getIdentityCard());
+		sessionInitializer.setBufferPool(config.getBufferPool());
+		sessionInitializer.setPfsPool(config.getPfsPool());
+		if (config.getEphemeralKeyPoolSize() > 0) {
+			this.ephemeralKeyPool = new EphemeralKeyPool(config.getCrypto(), config.getIdentityPrivateKey(),
+					config.getEphemeralKeyPoolSize(), null);
+			sessionInitializer.setEphemeralKeyPool(this.ephemeralKeyPool);
+			this.ephemeralKeyPool.refill();
+		}
 		this.sessionManager = new SessionManager(config.getIdentityCard(), config.getIdentityPrivateKey(),
 				config.getCrypto(), config.getSessionTtl(), keyStorageManager, sessionStorageManager,
 				sessionInitializer);
@@ -143,7 +201,34 @@ public class SecureChat {
 		this.rotator = new KeysRotator(config.getIdentityCard(), config.getExhaustedOneTimeKeysTtl(),
 				config.getExpiredSessionTtl(), config.getLongTermKeysTtl(), config.getExpiredLongTermKeysTtl(),
 				this.ephemeralCardsReplenisher, sessionStorageManager, keyStorageManager, exhaustInfoManager,
-				this.client);
+				expiryIndexManager, this.client);
+		this.rotator.setOtcValidationCache(new OtcValidationCacheManager(identityCardId, config.getUserDataStorage()),
+				config.getOtcValidationTtl());
+		this.replenishmentController = new OtcReplenishmentController(identityCardId, config.getUserDataStorage(),
+				config.getOtcReconciliationPeriod(), config.getKeysRotationPeriod());
+		this.rotator.setReplenishmentController(this.replenishmentController);
+		this.backgroundRotator = new BackgroundKeysRotator(this.rotator, config.getKeysRotationExecutor(),
+				config.getKeysRotationPeriod(), config.getKeysRotationJitter());
+
+		this.messagesExecutor = config.getMessagesExecutor();
+		if (this.messagesExecutor == null) {
+			this.messagesExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					new ThreadFactory() {
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "virgil-messages");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			this.ownMessagesExecutor = true;
+		}
+		this.ephemeralCardsReplenisher.setUploadChunkSize(config.getOtcUploadChunkSize());
+		this.ephemeralCardsReplenisher.setUploadExecutor(this.messagesExecutor);
+
+		this.groupSessionManager = new GroupSessionManager(this, identityCardId, config.getKeyStorage(),
+				config.getUserDataStorage());
 
 		this.migrationManager = new MigrationManager(config.getCrypto(), config.getIdentityPrivateKey(),
 				config.getIdentityCard(), config.getKeyStorage(), keyStorageManager, config.getUserDataStorage(),
@@ -165,6 +250,276 @@ public class SecureChat {
 		return this.sessionManager.activeSession(cardId);
 	}
 
+	/**
+	 * Stops background keys rotation, and shuts down executors created by
+	 * secure chat and its keys rotator. Executors passed with {@link SecureChatContext} are not
+	 * shut down.
+	 */
+	@Override
+	public void close() {
+		this.backgroundRotator.stop();
+		this.rotator.shutdown();
+		if (this.ephemeralKeyPool != null) {
+			this.ephemeralKeyPool.shutdown();
+		}
+		if (this.ownMessagesExecutor) {
+			((ExecutorService) this.messagesExecutor).shutdown();
+		}
+	}
+
+	/**
+	 * Decrypts received message.
+	 * 
+	 * @param message
+	 *            the received message.
+	 * @return the decrypted message or the error occurred.
+	 */
+	public DecryptedMessage decrypt(InboundMessage message) {
+		DecryptedMessage[] results = new DecryptedMessage[1];
+		decryptSequentially(Collections.singletonList(message), Collections.singletonList(0), results);
+		return results[0];
+	}
+
+	/**
+	 * Decrypts a batch of received messages, e.g. messages queued while the
+	 * user was offline. Messages of each participant are decrypted in order
+	 * they are listed. Messages of different participants are decrypted in
+	 * parallel. Each session is loaded once per batch.
+	 * 
+	 * @param messages
+	 *            the received messages.
+	 * @return the decryption results in the same order as {@code messages}.
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting for
+	 *             decryption.
+	 */
+	public List<DecryptedMessage> decryptBatch(List<InboundMessage> messages) throws InterruptedException {
+		log.fine(String.format("SecureChat: %s. Decrypting %d messages", this.identityCardId, messages.size()));
+
+		final DecryptedMessage[] results = new DecryptedMessage[messages.size()];
+
+		// Group messages by participant keeping their order
+		Map<String, List<Integer>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < messages.size(); i++) {
+			String cardId = messages.get(i).getCard().getId();
+			List<Integer> group = groups.get(cardId);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(cardId, group);
+			}
+			group.add(i);
+		}
+
+		final List<InboundMessage> inboundMessages = messages;
+		List<Runnable> tasks = new ArrayList<>(groups.size());
+		for (final List<Integer> group : groups.values()) {
+			tasks.add(new Runnable() {
+
+				@Override
+				public void run() {
+					decryptSequentially(inboundMessages, group, results);
+				}
+			});
+		}
+		executeAll(tasks);
+
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Decrypts attachment encrypted with
+	 * {@link #encryptAttachment(List, InputStream, OutputStream)}.
+	 * 
+	 * @param descriptorMessage
+	 *            the attachment descriptor message decrypted with the
+	 *            sender's session.
+	 * @param in
+	 *            the encrypted attachment.
+	 * @param out
+	 *            the stream decrypted attachment is written to.
+	 * @throws IOException
+	 *             if attachment can't be read or written.
+	 * @throws AttachmentException
+	 *             if encrypted attachment is corrupted or doesn't match the
+	 *             descriptor.
+	 */
+	public void decryptAttachment(String descriptorMessage, InputStream in, OutputStream out)
+			throws IOException, AttachmentException {
+		AttachmentDescriptor descriptor = GsonUtils.getGson().fromJson(descriptorMessage,
+				AttachmentDescriptor.class);
+		new AttachmentCipher().decrypt(descriptor, in, out);
+	}
+
+	private void decryptSequentially(List<InboundMessage> messages, List<Integer> indexes,
+			DecryptedMessage[] results) {
+		Map<ByteBuffer, SecureSession> sessions = new HashMap<>();
+		for (int index : indexes) {
+			InboundMessage inboundMessage = messages.get(index);
+			try {
+				String text;
+				String message = inboundMessage.getMessage();
+				if (SessionStateResolver.isRegularMessage(message)) {
+					Message regularMessage = SecureSession.extractMessage(message);
+					ByteBuffer sessionId = ByteBuffer.wrap(regularMessage.getSessionId());
+					SecureSession session = sessions.get(sessionId);
+					if (session == null) {
+						session = this.loadSession(inboundMessage.getCard().getId(),
+								regularMessage.getSessionId());
+						sessions.put(sessionId, session);
+					}
+					text = session.decrypt(regularMessage);
+				} else {
+					SecureSession session = this.loadUpSession(inboundMessage.getCard(), message,
+							inboundMessage.getAdditionalData());
+					if (session == null) {
+						throw new SecureChatException(Constants.Errors.SecureChat.SESSION_NOT_LOADED,
+								"Session could not be loaded.");
+					}
+					sessions.put(ByteBuffer.wrap(session.getIdentifier()), session);
+					text = session.decrypt(message);
+				}
+				results[index] = new DecryptedMessage(inboundMessage, text, null);
+			} catch (Exception e) {
+				results[index] = new DecryptedMessage(inboundMessage, null, e);
+			}
+		}
+	}
+
+	/**
+	 * Encrypts attachment once for many participants. The encrypted
+	 * attachment is the same for all participants, and only a small
+	 * descriptor with the attachment key is encrypted with each participant's
+	 * active session.
+	 * 
+	 * @param cardIds
+	 *            the participants' Virgil Card identifiers.
+	 * @param in
+	 *            the attachment.
+	 * @param out
+	 *            the stream encrypted attachment is written to.
+	 * @return the encrypted descriptor messages, the participants with no
+	 *         active session and the errors occurred.
+	 * @throws IOException
+	 *             if attachment can't be read or written.
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting for
+	 *             encryption.
+	 */
+	public EncryptedBroadcast encryptAttachment(List<String> cardIds, InputStream in, OutputStream out)
+			throws IOException, InterruptedException {
+		AttachmentDescriptor descriptor = new AttachmentCipher().encrypt(in, out);
+		byte[] descriptorData = ConvertionUtils.toBytes(GsonUtils.getGson().toJson(descriptor));
+		try {
+			return encryptForAll(cardIds, descriptorData);
+		} finally {
+			Arrays.fill(descriptor.getKey(), (byte) 0);
+			Arrays.fill(descriptorData, (byte) 0);
+		}
+	}
+
+	/**
+	 * Encrypts one message for many participants using their active
+	 * sessions. Encryptions are performed in parallel. The message data is
+	 * shared by all encryptions and is not copied.
+	 * 
+	 * @param cardIds
+	 *            the participants' Virgil Card identifiers.
+	 * @param messageData
+	 *            the UTF-8 encoded message to encrypt.
+	 * @return the encrypted messages, the participants with no active session
+	 *         and the errors occurred.
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting for
+	 *             encryption.
+	 */
+	public EncryptedBroadcast encryptForAll(List<String> cardIds, final byte[] messageData)
+			throws InterruptedException {
+		log.fine(String.format("SecureChat: %s. Encrypting message for %d participants", this.identityCardId,
+				cardIds.size()));
+
+		final String[] ids = cardIds.toArray(new String[cardIds.size()]);
+		final Object[] results = new Object[ids.length];
+
+		// Split participants into a few ranges, so there is no task per
+		// participant
+		int tasksCount = Math.min(ids.length, Runtime.getRuntime().availableProcessors());
+		List<Runnable> tasks = new ArrayList<>(tasksCount);
+		for (int i = 0; i < tasksCount; i++) {
+			final int from = (int) ((long) ids.length * i / tasksCount);
+			final int to = (int) ((long) ids.length * (i + 1) / tasksCount);
+			tasks.add(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int j = from; j < to; j++) {
+						try {
+							SecureSession session = sessionManager.activeSession(ids[j]);
+							if (session != null) {
+								results[j] = session.encrypt(messageData);
+							}
+						} catch (Exception e) {
+							results[j] = e;
+						}
+					}
+				}
+			});
+		}
+		executeAll(tasks);
+
+		Map<String, String> messages = new LinkedHashMap<>();
+		List<String> cardIdsWithoutSession = new ArrayList<>();
+		Map<String, Exception> errors = new LinkedHashMap<>();
+		for (int i = 0; i < ids.length; i++) {
+			if (results[i] == null) {
+				cardIdsWithoutSession.add(ids[i]);
+			} else if (results[i] instanceof Exception) {
+				errors.put(ids[i], (Exception) results[i]);
+			} else {
+				messages.put(ids[i], (String) results[i]);
+			}
+		}
+		return new EncryptedBroadcast(messages, cardIdsWithoutSession, errors);
+	}
+
+	/*
+	 * Run tasks with messages executor. The calling thread runs tasks which
+	 * are not started by executor yet, so it never waits for queued tasks.
+	 * Returns when all tasks are done
+	 */
+	private void executeAll(List<Runnable> tasks) throws InterruptedException {
+		final Queue<Runnable> pending = new ConcurrentLinkedQueue<>(tasks);
+		final CountDownLatch done = new CountDownLatch(tasks.size());
+		Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				Runnable task = pending.poll();
+				if (task != null) {
+					try {
+						task.run();
+					} finally {
+						done.countDown();
+					}
+				}
+			}
+		};
+		for (int i = 1; i < tasks.size(); i++) {
+			try {
+				this.messagesExecutor.execute(worker);
+			} catch (RejectedExecutionException e) {
+				break;
+			}
+		}
+		for (Runnable task = pending.poll(); task != null; task = pending.poll()) {
+			try {
+				task.run();
+			} finally {
+				done.countDown();
+			}
+		}
+		done.await();
+	}
+
 	/**
 	 * Reset chat.
 	 */
@@ -172,6 +527,13 @@ public class SecureChat {
 		this.sessionManager.gentleReset();
 	}
 
+	/**
+	 * @return the group sessions manager.
+	 */
+	public GroupSessionManager getGroupSessionManager() {
+		return this.groupSessionManager;
+	}
+
 	public Version getPreviousVersion() {
 		String versionStr = this.insensitiveDataStorage.getData(CONFIGURATION_STORAGE_KEY, this.getVersionKey());
 		Version version = Version.fromString(versionStr);
@@ -229,15 +591,26 @@ public class SecureChat {
 
 		if (SessionStateResolver.isInitiationMessage(message)) {
 			InitiationMessage initiationMessage = SecureSession.extractInitiationMessage(message);
-			// Add new one time card if we have received strong session
+			// One time card is consumed if we have received strong session. Add
+			// new cards if needed
 			if (!StringUtils.isBlank(initiationMessage.getResponderOtcId())) {
-				try {
-					this.ephemeralCardsReplenisher.addCards(false, 1);
-				} catch (Exception e) {
-					log.warning(String.format(
-							"SecureChat: %s. WARNING: Error occured while adding new otc in loadUpSession",
-							this.identityCardId));
-					return null;
+				int numberOfCards = this.replenishmentController.recordConsumption(new Date());
+				if (numberOfCards > 0) {
+					try {
+						this.ephemeralCardsReplenisher.addCards(false, numberOfCards);
+					} catch (CardsUploadException e) {
+						// Some cards are uploaded, the rest will be added by
+						// keys rotation
+						this.replenishmentController.release(e.getFailedCount());
+						log.warning(String.format("SecureChat: %s. WARNING: %s", this.identityCardId,
+								e.getMessage()));
+					} catch (Exception e) {
+						this.replenishmentController.release(numberOfCards);
+						log.warning(String.format(
+								"SecureChat: %s. WARNING: Error occured while adding new otc in loadUpSession",
+								this.identityCardId));
+						return null;
+					}
 				}
 			}
 
@@ -255,6 +628,13 @@ public class SecureChat {
 		}
 	}
 
+	/*
+	 * Load session by identifier for regular message which is already parsed
+	 */
+	SecureSession loadSession(String cardId, byte[] sessionId) throws SessionManagerException {
+		return this.sessionManager.loadSession(cardId, sessionId);
+	}
+
 	public void migrate() throws MigrationException {
 		Version previousVersion = this.getPreviousVersion();
 		this.migrate(previousVersion);
@@ -279,6 +659,14 @@ public class SecureChat {
 		}
 	}
 
+	/**
+	 * Pauses background keys rotation. Rotation step which is executed at the
+	 * moment will be completed.
+	 */
+	public void pauseKeysRotation() {
+		this.backgroundRotator.pause();
+	}
+
 	/**
 	 * Removes session with given participant and session identifier.
 	 * 
@@ -301,6 +689,13 @@ public class SecureChat {
 		this.sessionManager.removeSessions(cardId);
 	}
 
+	/**
+	 * Resumes paused background keys rotation.
+	 */
+	public void resumeKeysRotation() {
+		this.backgroundRotator.resume();
+	}
+
 	/**
 	 * Periodic Keys processing.
 	 * 
@@ -316,7 +711,8 @@ public class SecureChat {
 	 * WARNING: This method is called during initialization. It's up to you to
 	 * call this method after that periodically, since iOS app can stay in
 	 * memory for any period of time without restarting. Recommended period:
-	 * 24h.
+	 * 24h. Use {@link #startKeysRotation(int)} to rotate keys periodically in
+	 * background.
 	 * 
 	 * @param desiredNumberOfCards
 	 *            The desired number of one-time cards.
@@ -325,6 +721,19 @@ public class SecureChat {
 		this.rotator.rotateKeys(desiredNumberOfCards);
 	}
 
+	/**
+	 * Starts periodic keys rotation in background. Rotation is performed in
+	 * small steps, so sessions and keys storages are not locked for a long
+	 * time. Rotation period and executor are configured with
+	 * {@link SecureChatContext}.
+	 * 
+	 * @param desiredNumberOfCards
+	 *            The desired number of one-time cards.
+	 */
+	public void startKeysRotation(int desiredNumberOfCards) {
+		this.backgroundRotator.start(desiredNumberOfCards);
+	}
+
 	/**
 	 * Starts new session with given recipient.
 	 * 
@@ -337,12 +746,56 @@ public class SecureChat {
 	 *            sides. AdditionalData should be constracted on both sides
 	 *            independently and should NOT be transmitted for security
 	 *            reasons.
+	 * @return The initialized {@link SecureSession}. Concurrent calls with
+	 *         the same recipient and additional data share one session.
+	 * @throws SecureChatException
+	 * @throws CardValidationException
+	 */
+	public SecureSession startNewSession(final CardModel recipientCard, final byte[] additionalData)
+			throws SecureChatException, CardValidationException {
+		String key = recipientCard.getId();
+		if (additionalData != null) {
+			key = key + '.' + Base64Codec.encode(additionalData);
+		}
+		return this.sessionStarts.execute(key, new SingleFlight.Call<SecureSession, SecureChatException>() {
+
+			@Override
+			public SecureSession call() throws SecureChatException {
+				return doStartNewSession(recipientCard, additionalData);
+			}
+		});
+	}
+
+	/**
+	 * Starts new session with given recipient. Virgil PFS service requests
+	 * made while starting session fail if they are not completed before
+	 * deadline. Waiting for concurrent start of the same session is limited by
+	 * the deadline too, and fails with
+	 * {@link java.util.concurrent.CancellationException} when the
+	 * deadline is passed.
+	 * 
+	 * @param recipientCard
+	 *            The recipient's identity Virgil Card. WARNING: Identity Card
+	 *            should be validated before getting here!
+	 * @param additionalData
+	 *            Data for additional authorization.
+	 * @param deadline
+	 *            the deadline.
 	 * @return The initialized {@link SecureSession}.
 	 * @throws SecureChatException
 	 * @throws CardValidationException
+	 * 
+	 * @see #startNewSession(CardModel, byte[])
 	 */
-	public SecureSession startNewSession(CardModel recipientCard, byte[] additionalData)
+	public SecureSession startNewSession(CardModel recipientCard, byte[] additionalData, Deadline deadline)
 			throws SecureChatException, CardValidationException {
+		try (Deadline.Scope scope = deadline.attach()) {
+			return startNewSession(recipientCard, additionalData);
+		}
+	}
+
+	private SecureSession doStartNewSession(CardModel recipientCard, byte[] additionalData)
+			throws SecureChatException {
 		log.fine(String.format("SecureChat: %s. Starting new session with: %s", this.identityCardId,
 				recipientCard.getId()));
 
@@ -376,6 +829,13 @@ public class SecureChat {
 		return this.sessionManager.initializeInitiatorSession(recipientCard, cardsSet, additionalData);
 	}
 
+	/**
+	 * Stops background keys rotation.
+	 */
+	public void stopKeysRotation() {
+		this.backgroundRotator.stop();
+	}
+
 	/**
 	 * Wipes cache used for loadUp and activeSession functions.
 	 */
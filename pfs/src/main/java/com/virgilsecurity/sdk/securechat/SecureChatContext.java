@@ -29,12 +29,18 @@
  */
 package com.virgilsecurity.sdk.securechat;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
 import com.virgilsecurity.sdk.client.model.CardModel;
 import com.virgilsecurity.sdk.crypto.Crypto;
 import com.virgilsecurity.sdk.crypto.PrivateKey;
 import com.virgilsecurity.sdk.device.DeviceManager;
 import com.virgilsecurity.sdk.pfs.VirgilPFSClientContext;
 import com.virgilsecurity.sdk.securechat.keystorage.KeyStorage;
+import com.virgilsecurity.sdk.securechat.session.EphemeralKeyPool;
+import com.virgilsecurity.sdk.securechat.session.VirgilPFSPool;
+import com.virgilsecurity.sdk.securechat.utils.BufferPool;
 
 /**
  * @author Andrii Iakovenko
@@ -74,6 +80,67 @@ public class SecureChatContext {
 	 */
 	public int exhaustedOneTimeKeysTtl;
 
+	/*
+	 * Period in seconds after which expiry index of sessions and keys is
+	 * rebuilt from full scan of storages
+	 */
+	private long expiryIndexRebuildPeriod;
+
+	/*
+	 * One-time card validation result time-to-live in seconds (time during
+	 * which valid one-time card is not validated again)
+	 */
+	private int otcValidationTtl;
+
+	/*
+	 * Period in seconds after which the number of active one-time cards is
+	 * obtained from Virgil PFS service instead of local estimation
+	 */
+	private long otcReconciliationPeriod;
+
+	/*
+	 * Number of one-time cards uploaded to Virgil PFS service with one
+	 * request. Chunks are uploaded concurrently with messages executor
+	 */
+	private int otcUploadChunkSize;
+
+	/* Background keys rotation period in seconds */
+	private long keysRotationPeriod;
+
+	/*
+	 * Random part of background keys rotation period, from 0 to 1 (rotation
+	 * period varies within keysRotationPeriod * (1 +/- keysRotationJitter))
+	 */
+	private double keysRotationJitter;
+
+	/*
+	 * Executor used for background keys rotation. If not set, a dedicated
+	 * daemon thread is used
+	 */
+	private ScheduledExecutorService keysRotationExecutor;
+
+	/*
+	 * Pool of buffers used for message serialization and request bodies
+	 */
+	private BufferPool bufferPool;
+
+	/*
+	 * Pool of native PFS contexts used by sessions
+	 */
+	private VirgilPFSPool pfsPool;
+
+	/*
+	 * Number of ephemeral keys generated in advance for new sessions. Zero
+	 * disables the pool
+	 */
+	private int ephemeralKeyPoolSize;
+
+	/*
+	 * Executor used to process messages of different participants in
+	 * parallel. If not set, a dedicated pool of daemon threads is used
+	 */
+	private Executor messagesExecutor;
+
 	/**
 	 * Create new instance of {@link SecureChatContext}.
 	 */
@@ -83,6 +150,15 @@ public class SecureChatContext {
 		sessionTtl = 24 * 60 * 60; // One day
 		expiredSessionTtl = 60 * 60 * 24; // One day
 		exhaustedOneTimeKeysTtl = 60 * 60 * 24; // One day
+		expiryIndexRebuildPeriod = ExpiryIndexManager.DEFAULT_REBUILD_PERIOD;
+		otcValidationTtl = 60 * 60; // One hour
+		otcReconciliationPeriod = 60 * 60 * 24; // One day
+		otcUploadChunkSize = EphemeralCardsReplenisher.DEFAULT_UPLOAD_CHUNK_SIZE;
+		keysRotationPeriod = 60 * 60 * 24; // One day
+		keysRotationJitter = 0.1;
+		bufferPool = BufferPool.getDefault();
+		pfsPool = VirgilPFSPool.getDefault();
+		ephemeralKeyPoolSize = EphemeralKeyPool.DEFAULT_SIZE;
 	}
 
 	/**
@@ -109,6 +185,14 @@ public class SecureChatContext {
 		this.context = context;
 	}
 
+	/**
+	 * @return the pool of buffers used for message serialization and request
+	 *         bodies.
+	 */
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
 	/**
 	 * @return the context
 	 */
@@ -130,6 +214,13 @@ public class SecureChatContext {
 		return deviceManager;
 	}
 
+	/**
+	 * @return the number of ephemeral keys generated in advance.
+	 */
+	public int getEphemeralKeyPoolSize() {
+		return ephemeralKeyPoolSize;
+	}
+
 	/**
 	 * @return the exhaustedOneTimeKeysTtl
 	 */
@@ -151,6 +242,14 @@ public class SecureChatContext {
 		return expiredSessionTtl;
 	}
 
+	/**
+	 * @return the period in seconds after which expiry index of sessions and
+	 *         keys is rebuilt.
+	 */
+	public long getExpiryIndexRebuildPeriod() {
+		return expiryIndexRebuildPeriod;
+	}
+
 	/**
 	 * Returns user's identity card.
 	 * 
@@ -180,6 +279,29 @@ public class SecureChatContext {
 		return keyStorage;
 	}
 
+	/**
+	 * @return the executor used for background keys rotation.
+	 */
+	public ScheduledExecutorService getKeysRotationExecutor() {
+		return keysRotationExecutor;
+	}
+
+	/**
+	 * @return the random part of background keys rotation period.
+	 */
+	public double getKeysRotationJitter() {
+		return keysRotationJitter;
+	}
+
+	/**
+	 * Get background keys rotation period in seconds.
+	 * 
+	 * @return the keys rotation period.
+	 */
+	public long getKeysRotationPeriod() {
+		return keysRotationPeriod;
+	}
+
 	/**
 	 * @return the longTermKeysTtl
 	 */
@@ -187,6 +309,50 @@ public class SecureChatContext {
 		return longTermKeysTtl;
 	}
 
+	/**
+	 * @return the executor used to process messages of different
+	 *         participants in parallel.
+	 */
+	public Executor getMessagesExecutor() {
+		return messagesExecutor;
+	}
+
+	/**
+	 * Get period in seconds after which the number of active one-time cards
+	 * is obtained from Virgil PFS service.
+	 * 
+	 * @return the otcReconciliationPeriod
+	 */
+	public long getOtcReconciliationPeriod() {
+		return otcReconciliationPeriod;
+	}
+
+	/**
+	 * Get number of one-time cards uploaded to Virgil PFS service with one
+	 * request.
+	 * 
+	 * @return the otcUploadChunkSize
+	 */
+	public int getOtcUploadChunkSize() {
+		return otcUploadChunkSize;
+	}
+
+	/**
+	 * Get one-time card validation result time-to-live in seconds.
+	 * 
+	 * @return the otcValidationTtl
+	 */
+	public int getOtcValidationTtl() {
+		return otcValidationTtl;
+	}
+
+	/**
+	 * @return the pool of native PFS contexts used by sessions.
+	 */
+	public VirgilPFSPool getPfsPool() {
+		return pfsPool;
+	}
+
 	/**
 	 * Get session time to live in seconds.
 	 * 
@@ -203,6 +369,15 @@ public class SecureChatContext {
 		return userDataStorage;
 	}
 
+	/**
+	 * @param bufferPool
+	 *            the pool of buffers used for message serialization and
+	 *            request bodies.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
 	/**
 	 * @param context
 	 *            the context to set
@@ -227,6 +402,15 @@ public class SecureChatContext {
 		this.deviceManager = deviceManager;
 	}
 
+	/**
+	 * @param ephemeralKeyPoolSize
+	 *            the number of ephemeral keys generated in advance. Zero
+	 *            disables generation in advance.
+	 */
+	public void setEphemeralKeyPoolSize(int ephemeralKeyPoolSize) {
+		this.ephemeralKeyPoolSize = ephemeralKeyPoolSize;
+	}
+
 	/**
 	 * @param exhaustedOneTimeKeysTtl
 	 *            the exhaustedOneTimeKeysTtl to set
@@ -251,6 +435,16 @@ public class SecureChatContext {
 		this.expiredSessionTtl = expiredSessionTtl;
 	}
 
+	/**
+	 * @param expiryIndexRebuildPeriod
+	 *            the period in seconds after which expiry index of sessions
+	 *            and keys is rebuilt. Index rebuild fixes entries missed
+	 *            because of application crash.
+	 */
+	public void setExpiryIndexRebuildPeriod(long expiryIndexRebuildPeriod) {
+		this.expiryIndexRebuildPeriod = expiryIndexRebuildPeriod;
+	}
+
 	/**
 	 * @param identityCard
 	 *            the myIdentityCard to set
@@ -275,6 +469,33 @@ public class SecureChatContext {
 		this.keyStorage = keyStorage;
 	}
 
+	/**
+	 * @param keysRotationExecutor
+	 *            the executor used for background keys rotation.
+	 */
+	public void setKeysRotationExecutor(ScheduledExecutorService keysRotationExecutor) {
+		this.keysRotationExecutor = keysRotationExecutor;
+	}
+
+	/**
+	 * @param keysRotationJitter
+	 *            the random part of background keys rotation period, from 0
+	 *            to 1.
+	 */
+	public void setKeysRotationJitter(double keysRotationJitter) {
+		this.keysRotationJitter = keysRotationJitter;
+	}
+
+	/**
+	 * Set background keys rotation period in seconds.
+	 * 
+	 * @param keysRotationPeriod
+	 *            the keys rotation period.
+	 */
+	public void setKeysRotationPeriod(long keysRotationPeriod) {
+		this.keysRotationPeriod = keysRotationPeriod;
+	}
+
 	/**
 	 * @param longTermKeysTtl
 	 *            the longTermKeysTtl to set
@@ -283,6 +504,57 @@ public class SecureChatContext {
 		this.longTermKeysTtl = longTermKeysTtl;
 	}
 
+	/**
+	 * @param messagesExecutor
+	 *            the executor used to process messages of different
+	 *            participants in parallel.
+	 */
+	public void setMessagesExecutor(Executor messagesExecutor) {
+		this.messagesExecutor = messagesExecutor;
+	}
+
+	/**
+	 * Set period in seconds after which the number of active one-time cards
+	 * is obtained from Virgil PFS service. Use {@code 0} to obtain it on
+	 * every keys rotation.
+	 * 
+	 * @param otcReconciliationPeriod
+	 *            the otcReconciliationPeriod to set
+	 */
+	public void setOtcReconciliationPeriod(long otcReconciliationPeriod) {
+		this.otcReconciliationPeriod = otcReconciliationPeriod;
+	}
+
+	/**
+	 * Set number of one-time cards uploaded to Virgil PFS service with one
+	 * request. Use {@code 0} to upload all cards with one request.
+	 * 
+	 * @param otcUploadChunkSize
+	 *            the otcUploadChunkSize to set
+	 */
+	public void setOtcUploadChunkSize(int otcUploadChunkSize) {
+		this.otcUploadChunkSize = otcUploadChunkSize;
+	}
+
+	/**
+	 * Set one-time card validation result time-to-live in seconds. Use
+	 * {@code 0} to validate all one-time cards on every keys rotation.
+	 * 
+	 * @param otcValidationTtl
+	 *            the otcValidationTtl to set
+	 */
+	public void setOtcValidationTtl(int otcValidationTtl) {
+		this.otcValidationTtl = otcValidationTtl;
+	}
+
+	/**
+	 * @param pfsPool
+	 *            the pool of native PFS contexts used by sessions.
+	 */
+	public void setPfsPool(VirgilPFSPool pfsPool) {
+		this.pfsPool = pfsPool;
+	}
+
 	/**
 	 * Set session time to live in seconds.
 	 * 
@@ -32,17 +32,24 @@ package com.virgilsecurity.sdk.securechat;
 import java.lang.reflect.Type;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.virgilsecurity.sdk.securechat.model.SessionState;
+import com.virgilsecurity.sdk.securechat.utils.EpochDateTypeAdapter;
+import com.virgilsecurity.sdk.securechat.utils.ModelTypeAdapterFactory;
 import com.virgilsecurity.sdk.utils.ConvertionUtils;
 import com.virgilsecurity.sdk.utils.StringUtils;
 
@@ -52,8 +59,22 @@ public class SessionStorageManager {
 
 	private String cardId;
 	private UserDataStorage storage;
+	private ExpiryIndexManager expiryIndexManager;
 
-	private Gson gson;
+	/* Gson is immutable and thread-safe, so it's shared between managers */
+	private static final Gson GSON = new GsonBuilder().disableHtmlEscaping()
+			.registerTypeAdapter(Date.class, new EpochDateTypeAdapter())
+			.registerTypeAdapterFactory(new ModelTypeAdapterFactory()).create();
+
+	/*
+	 * Managers which share a storage share a lock, so read-modify-write of
+	 * sessions entry is not interleaved. Explicit locks don't pin virtual
+	 * threads while storage blocks on I/O
+	 */
+	private static final Map<UserDataStorage, Lock> STORAGE_LOCKS = new WeakHashMap<>();
+	private static final Lock STORAGE_LOCKS_LOCK = new ReentrantLock();
+
+	private Lock lock;
 
 	/**
 	 * @param cardId
@@ -62,13 +83,26 @@ public class SessionStorageManager {
 	public SessionStorageManager(String cardId, UserDataStorage storage) {
 		this.cardId = cardId;
 		this.storage = storage;
+		this.lock = getStorageLock(storage);
+	}
+
+	/**
+	 * @param cardId
+	 * @param storage
+	 * @param expiryIndexManager
+	 *            the expiry index which should be updated on sessions change.
+	 */
+	public SessionStorageManager(String cardId, UserDataStorage storage, ExpiryIndexManager expiryIndexManager) {
+		this(cardId, storage);
+		this.expiryIndexManager = expiryIndexManager;
 	}
 
 	public void addSessionState(SessionState sessionState, String recipientCardId) {
 		String sessionIdStr = ConvertionUtils.toBase64String(sessionState.getSessionId());
 		log.fine(String.format("Adding session state for: %s, sessionId: %s", recipientCardId, sessionIdStr));
 
-		synchronized (storage) {
+		this.lock.lock();
+		try {
 			Map<String, Map<String, SessionState>> sessionStates = loadSessionStates(this.getSessionsEntryKey());
 			Map<String, SessionState> recipientEntry = sessionStates.get(recipientCardId);
 			if (recipientEntry == null) {
@@ -79,6 +113,25 @@ public class SessionStorageManager {
 
 			this.storage.addData(this.cardId, this.getSessionsEntryKey(),
 					getGson().toJson(sessionStates));
+		} finally {
+			this.lock.unlock();
+		}
+		if (this.expiryIndexManager != null) {
+			this.expiryIndexManager.addSession(sessionState, recipientCardId);
+		}
+	}
+
+	private static Lock getStorageLock(UserDataStorage storage) {
+		STORAGE_LOCKS_LOCK.lock();
+		try {
+			Lock lock = STORAGE_LOCKS.get(storage);
+			if (lock == null) {
+				lock = new ReentrantLock();
+				STORAGE_LOCKS.put(storage, lock);
+			}
+			return lock;
+		} finally {
+			STORAGE_LOCKS_LOCK.unlock();
 		}
 	}
 
@@ -97,11 +150,7 @@ public class SessionStorageManager {
 	}
 
 	private Gson getGson() {
-		if (this.gson == null) {
-			GsonBuilder builder = new GsonBuilder();
-			gson = builder.disableHtmlEscaping().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").create();
-		}
-		return gson;
+		return GSON;
 	}
 
 	public SessionState getNewestSessionState(String recipientCardId) {
@@ -172,9 +221,12 @@ public class SessionStorageManager {
 			return;
 		}
 
-		synchronized (storage) {
+		List<byte[]> sessionIds = new ArrayList<>(pairs.size());
+		this.lock.lock();
+		try {
 			Map<String, Map<String, SessionState>> sessionStates = loadSessionStates(this.getSessionsEntryKey());
 			for (Entry<String, byte[]> pair : pairs) {
+				sessionIds.add(pair.getValue());
 				Map<String, SessionState> recipientEntry = sessionStates.get(pair.getKey());
 				if (recipientEntry == null) {
 					// TODO throw exception if session not found
@@ -185,6 +237,11 @@ public class SessionStorageManager {
 
 			this.storage.addData(this.cardId, this.getSessionsEntryKey(),
 					getGson().toJson(sessionStates));
+		} finally {
+			this.lock.unlock();
+		}
+		if (this.expiryIndexManager != null) {
+			this.expiryIndexManager.removeSessions(sessionIds);
 		}
 	}
 
@@ -192,7 +249,8 @@ public class SessionStorageManager {
 		String sessionIdStr = ConvertionUtils.toBase64String(sessionId);
 		log.fine(String.format("Removing session state for: %s, sessionId: %s", recipientCardId, sessionIdStr));
 
-		synchronized (storage) {
+		this.lock.lock();
+		try {
 			Map<String, Map<String, SessionState>> sessionStates = loadSessionStates(this.getSessionsEntryKey());
 			Map<String, SessionState> recipientEntry = sessionStates.get(recipientCardId);
 			if (recipientEntry == null) {
@@ -203,6 +261,11 @@ public class SessionStorageManager {
 
 			this.storage.addData(this.cardId, this.getSessionsEntryKey(),
 					getGson().toJson(sessionStates));
+		} finally {
+			this.lock.unlock();
+		}
+		if (this.expiryIndexManager != null) {
+			this.expiryIndexManager.removeSessions(Arrays.asList(sessionId));
 		}
 	}
 }
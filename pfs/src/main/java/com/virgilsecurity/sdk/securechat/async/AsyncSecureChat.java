@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import com.virgilsecurity.sdk.client.model.CardModel;
+import com.virgilsecurity.sdk.securechat.SecureChat;
+import com.virgilsecurity.sdk.securechat.model.DecryptedMessage;
+import com.virgilsecurity.sdk.securechat.model.InboundMessage;
+import com.virgilsecurity.sdk.securechat.session.SecureSession;
+
+/**
+ * Asynchronous facade of {@link SecureChat}. Operations which block on
+ * storage and service calls are performed with the executor supplied by
+ * caller. Each operation returns {@link Future}, and optionally notifies
+ * {@link Callback} on completion, so operations can be chained without a
+ * thread waiting for each of them.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class AsyncSecureChat {
+
+	private SecureChat secureChat;
+	private Executor executor;
+
+	/**
+	 * Create new instance of {@link AsyncSecureChat}.
+	 * 
+	 * @param secureChat
+	 *            the secure chat.
+	 * @param executor
+	 *            the executor operations are performed with.
+	 */
+	public AsyncSecureChat(SecureChat secureChat, Executor executor) {
+		this.secureChat = secureChat;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns latest active session with specified participant, if present.
+	 * 
+	 * @param cardId
+	 *            The participant's Virgil Card identifier
+	 * @param callback
+	 *            the callback notified with session, or {@code null}.
+	 * @return the future of {@link SecureSession}, or of {@code null} if
+	 *         session is not exists.
+	 * 
+	 * @see SecureChat#activeSession(String)
+	 */
+	public Future<SecureSession> activeSessionAsync(final String cardId, Callback<? super SecureSession> callback) {
+		return submit(new Callable<SecureSession>() {
+
+			@Override
+			public SecureSession call() throws Exception {
+				return secureChat.activeSession(cardId);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Decrypts received message.
+	 * 
+	 * @param message
+	 *            the received message.
+	 * @param callback
+	 *            the callback notified with decrypted message, or
+	 *            {@code null}.
+	 * @return the future of decrypted message.
+	 * 
+	 * @see SecureChat#decrypt(InboundMessage)
+	 */
+	public Future<DecryptedMessage> decryptAsync(final InboundMessage message,
+			Callback<? super DecryptedMessage> callback) {
+		return submit(new Callable<DecryptedMessage>() {
+
+			@Override
+			public DecryptedMessage call() throws Exception {
+				return secureChat.decrypt(message);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Loads existing session using with given participant using received
+	 * message.
+	 * 
+	 * @param card
+	 *            The participant's identity Virgil Card.
+	 * @param message
+	 *            Received message from this participant.
+	 * @param additionalData
+	 *            Data for additional authorization.
+	 * @param callback
+	 *            the callback notified with session, or {@code null}.
+	 * @return the future of initialized {@link SecureSession}.
+	 * 
+	 * @see SecureChat#loadUpSession(CardModel, String, byte[])
+	 */
+	public Future<SecureSession> loadUpSessionAsync(final CardModel card, final String message,
+			final byte[] additionalData, Callback<? super SecureSession> callback) {
+		return submit(new Callable<SecureSession>() {
+
+			@Override
+			public SecureSession call() throws Exception {
+				return secureChat.loadUpSession(card, message, additionalData);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Removes session with given participant and session identifier.
+	 * 
+	 * @param cardId
+	 *            The participant's identity Virgil Card identifier
+	 * @param sessionId
+	 *            The session identifier.
+	 * @param callback
+	 *            the callback notified on completion, or {@code null}.
+	 * @return the future completed when session is removed.
+	 * 
+	 * @see SecureChat#removeSession(String, byte[])
+	 */
+	public Future<Void> removeSessionAsync(final String cardId, final byte[] sessionId,
+			Callback<? super Void> callback) {
+		return submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				secureChat.removeSession(cardId, sessionId);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Removes all sessions with given participant.
+	 * 
+	 * @param cardId
+	 *            The participant's identity Virgil Card identifier.
+	 * @param callback
+	 *            the callback notified on completion, or {@code null}.
+	 * @return the future completed when sessions are removed.
+	 * 
+	 * @see SecureChat#removeSessions(String)
+	 */
+	public Future<Void> removeSessionsAsync(final String cardId, Callback<? super Void> callback) {
+		return submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				secureChat.removeSessions(cardId);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Periodic Keys processing.
+	 * 
+	 * @param desiredNumberOfCards
+	 *            The desired number of one-time cards.
+	 * @param callback
+	 *            the callback notified on completion, or {@code null}.
+	 * @return the future completed when keys are rotated.
+	 * 
+	 * @see SecureChat#rotateKeys(int)
+	 */
+	public Future<Void> rotateKeysAsync(final int desiredNumberOfCards, Callback<? super Void> callback) {
+		return submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				secureChat.rotateKeys(desiredNumberOfCards);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Starts new session with given recipient.
+	 * 
+	 * @param recipientCard
+	 *            The recipient's identity Virgil Card.
+	 * @param additionalData
+	 *            Data for additional authorization.
+	 * @param callback
+	 *            the callback notified with session, or {@code null}.
+	 * @return the future of initialized {@link SecureSession}.
+	 * 
+	 * @see SecureChat#startNewSession(CardModel, byte[])
+	 */
+	public Future<SecureSession> startNewSessionAsync(final CardModel recipientCard, final byte[] additionalData,
+			Callback<? super SecureSession> callback) {
+		return submit(new Callable<SecureSession>() {
+
+			@Override
+			public SecureSession call() throws Exception {
+				return secureChat.startNewSession(recipientCard, additionalData);
+			}
+		}, callback);
+	}
+
+	private <T> Future<T> submit(Callable<T> operation, Callback<? super T> callback) {
+		CallbackFuture<T> future = new CallbackFuture<>(operation, callback);
+		this.executor.execute(future);
+		return future;
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link FutureTask} which notifies {@link Callback} on completion.
+ * 
+ * @author Andrii Iakovenko
+ *
+ * @param <T>
+ *            the type of operation result.
+ */
+class CallbackFuture<T> extends FutureTask<T> {
+
+	private static final Logger log = Logger.getLogger(CallbackFuture.class.getName());
+
+	private final Callback<? super T> callback;
+
+	/**
+	 * Create new instance of {@link CallbackFuture}.
+	 * 
+	 * @param operation
+	 *            the operation.
+	 * @param callback
+	 *            the callback, or {@code null} if no notification needed.
+	 */
+	CallbackFuture(Callable<T> operation, Callback<? super T> callback) {
+		super(operation);
+		this.callback = callback;
+	}
+
+	@Override
+	protected void done() {
+		if (this.callback == null) {
+			return;
+		}
+		try {
+			T result;
+			try {
+				result = get();
+			} catch (CancellationException e) {
+				this.callback.onFailure(e);
+				return;
+			} catch (ExecutionException e) {
+				this.callback.onFailure(e.getCause());
+				return;
+			} catch (InterruptedException e) {
+				// Never happens since the task is done
+				Thread.currentThread().interrupt();
+				this.callback.onFailure(e);
+				return;
+			}
+			this.callback.onSuccess(result);
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Callback failed", e);
+		}
+	}
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.attachment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.virgilsecurity.sdk.securechat.Constants;
+import com.virgilsecurity.sdk.securechat.exceptions.AttachmentException;
+import com.virgilsecurity.sdk.securechat.model.AttachmentDescriptor;
+import com.virgilsecurity.sdk.securechat.utils.BufferPool;
+
+/**
+ * Encrypts an attachment once for any number of participants. The attachment
+ * is encrypted with a fresh random key, and only the small
+ * {@link AttachmentDescriptor} should be encrypted with each participant's
+ * secure session.
+ * 
+ * The attachment is processed by chunks, so it's never loaded into memory
+ * entirely. Each chunk is encrypted with AES-CTR and authenticated with
+ * HMAC-SHA256 over the header, chunk number and last chunk flag, so chunks
+ * can't be modified, reordered or truncated. A chunk is written out only
+ * after it's authenticated.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class AttachmentCipher {
+
+	/** The default size of encrypted chunk in bytes. */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	private static final byte[] MAGIC = new byte[] { 'V', 'A', 'T', '1' };
+	private static final int KEY_SIZE = 32;
+	private static final int NONCE_SIZE = 16;
+	private static final int HEADER_SIZE = MAGIC.length + 4 + NONCE_SIZE;
+	private static final int TAG_SIZE = 32;
+
+	/*
+	 * AES-128 works with default JCE policy of all Java versions
+	 */
+	private static final int CIPHER_KEY_SIZE = 16;
+
+	private static final byte[] CIPHER_KEY_LABEL = new byte[] { 'e', 'n', 'c' };
+	private static final byte[] MAC_KEY_LABEL = new byte[] { 'm', 'a', 'c' };
+
+	private final SecureRandom random;
+	private final int chunkSize;
+	private BufferPool bufferPool = BufferPool.getDefault();
+
+	/**
+	 * Create new instance of {@link AttachmentCipher}.
+	 */
+	public AttachmentCipher() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create new instance of {@link AttachmentCipher}.
+	 * 
+	 * @param chunkSize
+	 *            the size of encrypted chunk in bytes.
+	 */
+	public AttachmentCipher(int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size should be positive");
+		}
+		this.chunkSize = chunkSize;
+		this.random = new SecureRandom();
+	}
+
+	/**
+	 * Encrypts attachment with a new random key.
+	 * 
+	 * @param in
+	 *            the attachment.
+	 * @param out
+	 *            the stream encrypted attachment is written to.
+	 * @return the descriptor which should be sent to participants.
+	 * @throws IOException
+	 *             if attachment can't be read or written.
+	 */
+	public AttachmentDescriptor encrypt(InputStream in, OutputStream out) throws IOException {
+		byte[] key = new byte[KEY_SIZE];
+		this.random.nextBytes(key);
+
+		byte[] header = new byte[HEADER_SIZE];
+		System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+		putInt(header, MAGIC.length, this.chunkSize);
+		byte[] nonce = new byte[NONCE_SIZE];
+		this.random.nextBytes(nonce);
+		System.arraycopy(nonce, 0, header, MAGIC.length + 4, NONCE_SIZE);
+
+		Cipher cipher = createCipher(Cipher.ENCRYPT_MODE, key, nonce);
+		Mac mac = createMac(key);
+
+		out.write(header);
+
+		long size = 0;
+		byte[] chunk = this.bufferPool.acquireBytes(this.chunkSize);
+		byte[] nextChunk = this.bufferPool.acquireBytes(this.chunkSize);
+		byte[] record = this.bufferPool.acquireBytes(this.chunkSize + TAG_SIZE);
+		try {
+			int length = readFully(in, chunk, this.chunkSize);
+			for (long index = 0;; index++) {
+				int nextLength = (length == this.chunkSize) ? readFully(in, nextChunk, this.chunkSize) : 0;
+				boolean last = nextLength == 0;
+
+				cipher.update(chunk, 0, length, record, 0);
+				computeTag(mac, header, index, last, record, length);
+				out.write(record, 0, length + TAG_SIZE);
+				size += length;
+
+				if (last) {
+					break;
+				}
+				byte[] tmp = chunk;
+				chunk = nextChunk;
+				nextChunk = tmp;
+				length = nextLength;
+			}
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			release(chunk, true);
+			release(nextChunk, true);
+			release(record, false);
+		}
+
+		return new AttachmentDescriptor(key, size, this.chunkSize);
+	}
+
+	/**
+	 * Decrypts attachment.
+	 * 
+	 * @param descriptor
+	 *            the descriptor received from attachment sender.
+	 * @param in
+	 *            the encrypted attachment.
+	 * @param out
+	 *            the stream decrypted attachment is written to. Only
+	 *            authenticated chunks are written.
+	 * @throws IOException
+	 *             if attachment can't be read or written.
+	 * @throws AttachmentException
+	 *             if encrypted attachment is corrupted or doesn't match the
+	 *             descriptor.
+	 */
+	public void decrypt(AttachmentDescriptor descriptor, InputStream in, OutputStream out)
+			throws IOException, AttachmentException {
+		byte[] key = descriptor.getKey();
+		int size = descriptor.getChunkSize();
+		if (key == null || key.length != KEY_SIZE || size <= 0) {
+			throw new AttachmentException(Constants.Errors.Attachment.UNSUPPORTED_FORMAT,
+					"Unsupported attachment descriptor.");
+		}
+
+		byte[] header = new byte[HEADER_SIZE];
+		if (readFully(in, header, HEADER_SIZE) != HEADER_SIZE
+				|| !Arrays.equals(MAGIC, Arrays.copyOf(header, MAGIC.length))) {
+			throw new AttachmentException(Constants.Errors.Attachment.UNSUPPORTED_FORMAT,
+					"Unsupported attachment format.");
+		}
+		if (getInt(header, MAGIC.length) != size) {
+			throw new AttachmentException(Constants.Errors.Attachment.CORRUPTED,
+					"Attachment doesn't match the descriptor.");
+		}
+		byte[] nonce = Arrays.copyOfRange(header, MAGIC.length + 4, HEADER_SIZE);
+
+		Cipher cipher = createCipher(Cipher.DECRYPT_MODE, key, nonce);
+		Mac mac = createMac(key);
+
+		int recordSize = size + TAG_SIZE;
+		long total = 0;
+		byte[] record = this.bufferPool.acquireBytes(recordSize);
+		byte[] nextRecord = this.bufferPool.acquireBytes(recordSize);
+		byte[] tag = new byte[TAG_SIZE];
+		byte[] chunk = this.bufferPool.acquireBytes(size);
+		try {
+			int length = readFully(in, record, recordSize);
+			for (long index = 0;; index++) {
+				int nextLength = (length == recordSize) ? readFully(in, nextRecord, recordSize) : 0;
+				boolean last = nextLength == 0;
+				if (length < TAG_SIZE) {
+					throw new AttachmentException(Constants.Errors.Attachment.CORRUPTED, "Attachment is truncated.");
+				}
+
+				int chunkLength = length - TAG_SIZE;
+				System.arraycopy(record, chunkLength, tag, 0, TAG_SIZE);
+				computeTag(mac, header, index, last, record, chunkLength);
+				if (!MessageDigest.isEqual(tag, Arrays.copyOfRange(record, chunkLength, length))) {
+					throw new AttachmentException(Constants.Errors.Attachment.CORRUPTED,
+							"Attachment authentication failed.");
+				}
+
+				cipher.update(record, 0, chunkLength, chunk, 0);
+				total += chunkLength;
+				if (total > descriptor.getSize()) {
+					throw new AttachmentException(Constants.Errors.Attachment.CORRUPTED,
+							"Attachment doesn't match the descriptor.");
+				}
+				out.write(chunk, 0, chunkLength);
+
+				if (last) {
+					break;
+				}
+				byte[] tmp = record;
+				record = nextRecord;
+				nextRecord = tmp;
+				length = nextLength;
+			}
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			release(record, false);
+			release(nextRecord, false);
+			release(chunk, true);
+		}
+		if (total != descriptor.getSize()) {
+			throw new AttachmentException(Constants.Errors.Attachment.CORRUPTED,
+					"Attachment doesn't match the descriptor.");
+		}
+	}
+
+	/**
+	 * @param bufferPool
+	 *            the pool of buffers used for chunks.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/*
+	 * Computes the tag of the chunk and writes it right after the chunk
+	 */
+	private static void computeTag(Mac mac, byte[] header, long index, boolean last, byte[] record, int length)
+			throws ShortBufferException {
+		byte[] position = new byte[9];
+		putInt(position, 0, (int) (index >>> 32));
+		putInt(position, 4, (int) index);
+		position[8] = (byte) (last ? 1 : 0);
+
+		mac.update(header);
+		mac.update(position);
+		mac.update(record, 0, length);
+		mac.doFinal(record, length);
+	}
+
+	private static Cipher createCipher(int mode, byte[] key, byte[] nonce) {
+		try {
+			Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+			byte[] cipherKey = Arrays.copyOf(deriveKey(key, CIPHER_KEY_LABEL), CIPHER_KEY_SIZE);
+			cipher.init(mode, new SecretKeySpec(cipherKey, "AES"), new IvParameterSpec(nonce));
+			return cipher;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Mac createMac(byte[] key) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(deriveKey(key, MAC_KEY_LABEL), "HmacSHA256"));
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] deriveKey(byte[] key, byte[] label) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(key, "HmacSHA256"));
+		return mac.doFinal(label);
+	}
+
+	private static int readFully(InputStream in, byte[] buffer, int length) throws IOException {
+		int total = 0;
+		while (total < length) {
+			int count = in.read(buffer, total, length - total);
+			if (count < 0) {
+				break;
+			}
+			total += count;
+		}
+		return total;
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	private static int getInt(byte[] buffer, int offset) {
+		return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+				| ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+	}
+
+	private void release(byte[] buffer, boolean wipe) {
+		if (wipe) {
+			Arrays.fill(buffer, (byte) 0);
+		}
+		this.bufferPool.release(buffer);
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.exceptions;
+
+/**
+ * Thrown when some of one-time cards are uploaded to Virgil PFS service, but
+ * others are not. Private keys of all cards are kept. Keys of cards which are
+ * not uploaded are removed by keys rotation.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class CardsUploadException extends RuntimeException {
+
+	private static final long serialVersionUID = 4721785021463850117L;
+
+	private int uploadedCount;
+	private int failedCount;
+
+	/**
+	 * Create new instance of {@link CardsUploadException}.
+	 * 
+	 * @param uploadedCount
+	 *            the number of uploaded one-time cards.
+	 * @param failedCount
+	 *            the number of one-time cards which are not uploaded.
+	 * @param cause
+	 *            the first error occurred.
+	 */
+	public CardsUploadException(int uploadedCount, int failedCount, Throwable cause) {
+		super(String.format("%d of %d one-time cards are not uploaded", failedCount, uploadedCount + failedCount),
+				cause);
+		this.uploadedCount = uploadedCount;
+		this.failedCount = failedCount;
+	}
+
+	/**
+	 * @return the number of one-time cards which are not uploaded.
+	 */
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * @return the number of uploaded one-time cards.
+	 */
+	public int getUploadedCount() {
+		return uploadedCount;
+	}
+
+}
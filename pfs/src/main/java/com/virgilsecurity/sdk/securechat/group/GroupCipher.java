@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.group;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Authenticated symmetric encryption of group messages. Message is encrypted
+ * with AES-CTR and authenticated with HMAC-SHA256 over associated data, salt
+ * and cipher text.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+final class GroupCipher {
+
+	static final int KEY_SIZE = 32;
+	static final int SALT_SIZE = 16;
+
+	private static final int TAG_SIZE = 32;
+	private static final int CIPHER_KEY_SIZE = 16;
+
+	private static final byte[] CIPHER_KEY_LABEL = new byte[] { 'e', 'n', 'c' };
+	private static final byte[] MAC_KEY_LABEL = new byte[] { 'm', 'a', 'c' };
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private GroupCipher() {
+	}
+
+	/**
+	 * @return new random group key.
+	 */
+	static byte[] generateKey() {
+		byte[] key = new byte[KEY_SIZE];
+		RANDOM.nextBytes(key);
+		return key;
+	}
+
+	/**
+	 * @return new random salt.
+	 */
+	static byte[] generateSalt() {
+		byte[] salt = new byte[SALT_SIZE];
+		RANDOM.nextBytes(salt);
+		return salt;
+	}
+
+	/**
+	 * Encrypts data.
+	 * 
+	 * @return cipher text followed by authentication tag.
+	 */
+	static byte[] encrypt(byte[] key, byte[] associatedData, byte[] salt, byte[] data) {
+		try {
+			byte[] cipherText = new byte[data.length + TAG_SIZE];
+			createCipher(Cipher.ENCRYPT_MODE, key, salt).doFinal(data, 0, data.length, cipherText, 0);
+			Mac mac = createMac(key, associatedData, salt);
+			mac.update(cipherText, 0, data.length);
+			mac.doFinal(cipherText, data.length);
+			return cipherText;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Decrypts data.
+	 * 
+	 * @return the decrypted data, or {@code null} if authentication failed.
+	 */
+	static byte[] decrypt(byte[] key, byte[] associatedData, byte[] salt, byte[] cipherText) {
+		if (salt == null || salt.length != SALT_SIZE || cipherText == null || cipherText.length < TAG_SIZE) {
+			return null;
+		}
+		try {
+			int length = cipherText.length - TAG_SIZE;
+			Mac mac = createMac(key, associatedData, salt);
+			mac.update(cipherText, 0, length);
+			byte[] tag = mac.doFinal();
+			if (!MessageDigest.isEqual(tag, Arrays.copyOfRange(cipherText, length, cipherText.length))) {
+				return null;
+			}
+			return createCipher(Cipher.DECRYPT_MODE, key, salt).doFinal(cipherText, 0, length);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Cipher createCipher(int mode, byte[] key, byte[] salt) throws GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+		byte[] cipherKey = Arrays.copyOf(deriveKey(key, CIPHER_KEY_LABEL), CIPHER_KEY_SIZE);
+		cipher.init(mode, new SecretKeySpec(cipherKey, "AES"), new IvParameterSpec(salt));
+		return cipher;
+	}
+
+	private static Mac createMac(byte[] key, byte[] associatedData, byte[] salt) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(deriveKey(key, MAC_KEY_LABEL), "HmacSHA256"));
+		mac.update(associatedData);
+		mac.update(salt);
+		return mac;
+	}
+
+	private static byte[] deriveKey(byte[] key, byte[] label) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(key, "HmacSHA256"));
+		return mac.doFinal(label);
+	}
+
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.group;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.virgilsecurity.sdk.securechat.Constants;
+import com.virgilsecurity.sdk.securechat.exceptions.GroupSessionException;
+import com.virgilsecurity.sdk.securechat.model.EncryptedBroadcast;
+import com.virgilsecurity.sdk.securechat.model.GroupKeyMessage;
+import com.virgilsecurity.sdk.securechat.model.GroupMessage;
+import com.virgilsecurity.sdk.securechat.model.GroupState;
+import com.virgilsecurity.sdk.securechat.utils.GsonUtils;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+/**
+ * Group session. Each member encrypts group messages once with own group
+ * key, and sends the key to other members through pairwise secure sessions.
+ * So the cost of message encryption doesn't depend on the group size.
+ * 
+ * Own group key is replaced with a new one on each membership change, so
+ * removed members can't decrypt new messages and added members can't decrypt
+ * previous ones. Only the group creator can change membership.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class GroupSession {
+
+	private static final Logger log = Logger.getLogger(GroupSession.class.getName());
+
+	/* Number of group keys kept for each member, so messages encrypted before
+	 * key change can still be decrypted */
+	private static final int MAX_MEMBER_KEYS = 2;
+
+	private final GroupSessionManager manager;
+	private final String identityCardId;
+	private final GroupState state;
+
+	/* Loaded group keys by member and key identifier */
+	private final Map<String, byte[]> keys = new HashMap<>();
+
+	GroupSession(GroupSessionManager manager, String identityCardId, GroupState state) {
+		this.manager = manager;
+		this.identityCardId = identityCardId;
+		this.state = state;
+	}
+
+	/**
+	 * Adds members to the group. Own group key is replaced and sent to all
+	 * members.
+	 * 
+	 * @param cardIds
+	 *            the identity card identifiers of new members.
+	 * @return the encrypted group key messages which should be sent to
+	 *         members.
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting for
+	 *             encryption.
+	 * @throws GroupSessionException
+	 *             if group was not created by this user.
+	 */
+	public EncryptedBroadcast addMembers(List<String> cardIds) throws InterruptedException, GroupSessionException {
+		synchronized (this) {
+			checkCreator();
+			for (String cardId : cardIds) {
+				if (!this.identityCardId.equals(cardId) && !this.state.getMembers().contains(cardId)) {
+					this.state.getMembers().add(cardId);
+				}
+			}
+			rotateKey();
+		}
+		return distributeKey();
+	}
+
+	/**
+	 * Decrypts group message.
+	 * 
+	 * @param message
+	 *            the group message.
+	 * @return the decrypted message.
+	 * @throws GroupSessionException
+	 *             if message can't be decrypted.
+	 */
+	public String decrypt(String message) throws GroupSessionException {
+		return decrypt(GsonUtils.getGson().fromJson(message, GroupMessage.class));
+	}
+
+	String decrypt(GroupMessage message) throws GroupSessionException {
+		byte[] key;
+		synchronized (this) {
+			key = getKey(message.getSender(), message.getKeyId());
+		}
+		if (key == null) {
+			throw new GroupSessionException(Constants.Errors.GroupSession.UNKNOWN_GROUP_KEY,
+					"Group key of the sender is unknown.");
+		}
+
+		byte[] data = GroupCipher.decrypt(key,
+				associatedData(getGroupId(), message.getSender(), message.getKeyId()), message.getSalt(),
+				message.getCipherText());
+		if (data == null) {
+			throw new GroupSessionException(Constants.Errors.GroupSession.CORRUPTED_MESSAGE,
+					"Group message is corrupted.");
+		}
+		return ConvertionUtils.toString(data);
+	}
+
+	/**
+	 * Sends own group key to all members.
+	 * 
+	 * @return the encrypted group key messages which should be sent to
+	 *         members. Members with no active session are listed in the
+	 *         result, the key should be sent to them after session is
+	 *         started.
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting for
+	 *             encryption.
+	 */
+	public EncryptedBroadcast distributeKey() throws InterruptedException {
+		List<String> members;
+		int keyId;
+		byte[] data;
+		synchronized (this) {
+			members = new ArrayList<>(this.state.getMembers());
+			keyId = this.state.getKeyId();
+
+			List<String> allMembers = new ArrayList<>(members);
+			allMembers.add(this.identityCardId);
+			GroupKeyMessage keyMessage = new GroupKeyMessage(this.state.getGroupId(), keyId,
+					getKey(this.identityCardId, keyId), allMembers);
+			data = ConvertionUtils.toBytes(GsonUtils.getGson().toJson(keyMessage));
+		}
+
+		EncryptedBroadcast broadcast;
+		try {
+			broadcast = this.manager.getSecureChat().encryptForAll(members, data);
+		} finally {
+			Arrays.fill(data, (byte) 0);
+		}
+
+		if (broadcast.getErrors().isEmpty() && broadcast.getCardIdsWithoutSession().isEmpty()) {
+			synchronized (this) {
+				if (this.state.getKeyId() == keyId) {
+					this.state.setDistributionPending(false);
+					this.manager.saveState(this.state);
+				}
+			}
+		}
+		return broadcast;
+	}
+
+	/**
+	 * Encrypts group message with own group key.
+	 * 
+	 * @param message
+	 *            the message to encrypt.
+	 * @return the group message which should be sent to all members.
+	 */
+	public String encrypt(String message) {
+		int keyId;
+		byte[] key;
+		synchronized (this) {
+			keyId = this.state.getKeyId();
+			key = getKey(this.identityCardId, keyId);
+		}
+
+		byte[] salt = GroupCipher.generateSalt();
+		byte[] cipherText = GroupCipher.encrypt(key, associatedData(getGroupId(), this.identityCardId, keyId), salt,
+				ConvertionUtils.toBytes(message));
+
+		return GsonUtils.getGson()
+				.toJson(new GroupMessage(getGroupId(), this.identityCardId, keyId, salt, cipherText));
+	}
+
+	/**
+	 * @return the group identifier.
+	 */
+	public String getGroupId() {
+		return this.state.getGroupId();
+	}
+
+	/**
+	 * @return the identity card identifier of the group creator.
+	 */
+	public String getCreator() {
+		String creator = this.state.getCreator();
+		// Groups stored without creator were created or accepted locally
+		return (creator == null) ? this.identityCardId : creator;
+	}
+
+	/**
+	 * @return the identity card identifiers of other group members.
+	 */
+	public List<String> getMembers() {
+		synchronized (this) {
+			return Collections.unmodifiableList(new ArrayList<>(this.state.getMembers()));
+		}
+	}
+
+	/**
+	 * @return {@code true} if own group key was not sent to all members yet.
+	 *         Use {@link #distributeKey()} to send it.
+	 */
+	public boolean isKeyDistributionPending() {
+		synchronized (this) {
+			return this.state.isDistributionPending();
+		}
+	}
+
+	/**
+	 * Removes members from the group. Own group key is replaced and sent to
+	 * remaining members.
+	 * 
+	 * @param cardIds
+	 *            the identity card identifiers of members to remove.
+	 * @return the encrypted group key messages which should be sent to
+	 *         members.
+	 * @throws InterruptedException
+	 *             if the current thread was interrupted while waiting for
+	 *             encryption.
+	 * @throws GroupSessionException
+	 *             if group was not created by this user.
+	 */
+	public EncryptedBroadcast removeMembers(List<String> cardIds)
+			throws InterruptedException, GroupSessionException {
+		synchronized (this) {
+			checkCreator();
+			for (String cardId : cardIds) {
+				if (this.state.getMembers().remove(cardId)) {
+					removeMemberKeys(cardId);
+				}
+			}
+			rotateKey();
+		}
+		return distributeKey();
+	}
+
+	/*
+	 * Process group key received from member
+	 */
+	void processKeyMessage(String senderCardId, GroupKeyMessage keyMessage) {
+		synchronized (this) {
+			if (!this.state.getMembers().contains(senderCardId)) {
+				log.warning(String.format("Group key for %s received from non-member %s", getGroupId(),
+						senderCardId));
+				return;
+			}
+
+			List<Integer> keyIds = this.state.getMemberKeys().get(senderCardId);
+			if (keyIds == null) {
+				keyIds = new ArrayList<>();
+				this.state.getMemberKeys().put(senderCardId, keyIds);
+			}
+			if (!keyIds.contains(keyMessage.getKeyId())) {
+				this.manager.storeKey(getGroupId(), senderCardId, keyMessage.getKeyId(), keyMessage.getKey());
+				keyIds.add(keyMessage.getKeyId());
+				while (keyIds.size() > MAX_MEMBER_KEYS) {
+					removeKey(senderCardId, keyIds.remove(0));
+				}
+			}
+
+			// Membership change. Only the creator can change it, members list
+			// sent by other members is ignored
+			Set<String> members = new HashSet<>(keyMessage.getMembers());
+			members.remove(this.identityCardId);
+			if (!members.equals(new HashSet<>(this.state.getMembers()))) {
+				if (senderCardId.equals(getCreator())) {
+					for (String cardId : this.state.getMembers()) {
+						if (!members.contains(cardId)) {
+							removeMemberKeys(cardId);
+						}
+					}
+					this.state.setMembers(new ArrayList<>(members));
+					rotateKey();
+				} else {
+					log.warning(String.format("Membership change for %s received from %s which is not a creator",
+							getGroupId(), senderCardId));
+				}
+			}
+
+			this.manager.saveState(this.state);
+		}
+	}
+
+	/*
+	 * Replace own group key with a new one
+	 */
+	void rotateKey() {
+		int oldKeyId = this.state.getKeyId();
+		int keyId = oldKeyId + 1;
+		byte[] key = GroupCipher.generateKey();
+
+		this.manager.storeKey(getGroupId(), this.identityCardId, keyId, key);
+		this.keys.put(keyName(this.identityCardId, keyId), key);
+		if (oldKeyId > 0) {
+			removeKey(this.identityCardId, oldKeyId);
+		}
+
+		this.state.setKeyId(keyId);
+		this.state.setDistributionPending(true);
+		this.manager.saveState(this.state);
+	}
+
+	/*
+	 * Remove all keys from storage
+	 */
+	void removeKeys() {
+		synchronized (this) {
+			if (this.state.getKeyId() > 0) {
+				removeKey(this.identityCardId, this.state.getKeyId());
+			}
+			for (String cardId : new ArrayList<>(this.state.getMemberKeys().keySet())) {
+				removeMemberKeys(cardId);
+			}
+		}
+	}
+
+	private void checkCreator() throws GroupSessionException {
+		if (!this.identityCardId.equals(getCreator())) {
+			throw new GroupSessionException(Constants.Errors.GroupSession.NOT_GROUP_CREATOR,
+					"Only group creator can change membership.");
+		}
+	}
+
+	private byte[] getKey(String cardId, int keyId) {
+		String name = keyName(cardId, keyId);
+		byte[] key = this.keys.get(name);
+		if (key == null) {
+			if (!this.identityCardId.equals(cardId)) {
+				List<Integer> keyIds = this.state.getMemberKeys().get(cardId);
+				if (keyIds == null || !keyIds.contains(keyId)) {
+					return null;
+				}
+			}
+			key = this.manager.loadKey(getGroupId(), cardId, keyId);
+			if (key != null) {
+				this.keys.put(name, key);
+			}
+		}
+		return key;
+	}
+
+	private void removeKey(String cardId, int keyId) {
+		byte[] key = this.keys.remove(keyName(cardId, keyId));
+		if (key != null) {
+			Arrays.fill(key, (byte) 0);
+		}
+		this.manager.removeKey(getGroupId(), cardId, keyId);
+	}
+
+	private void removeMemberKeys(String cardId) {
+		List<Integer> keyIds = this.state.getMemberKeys().remove(cardId);
+		if (keyIds != null) {
+			for (Integer keyId : keyIds) {
+				removeKey(cardId, keyId);
+			}
+		}
+	}
+
+	private static String keyName(String cardId, int keyId) {
+		return cardId + '.' + keyId;
+	}
+
+	private static byte[] associatedData(String groupId, String sender, int keyId) {
+		byte[] groupIdData = ConvertionUtils.toBytes(groupId);
+		byte[] senderData = ConvertionUtils.toBytes(sender);
+		byte[] data = new byte[4 + groupIdData.length + 4 + senderData.length + 4];
+		int pos = putInt(data, 0, groupIdData.length);
+		System.arraycopy(groupIdData, 0, data, pos, groupIdData.length);
+		pos = putInt(data, pos + groupIdData.length, senderData.length);
+		System.arraycopy(senderData, 0, data, pos, senderData.length);
+		putInt(data, pos + senderData.length, keyId);
+		return data;
+	}
+
+	private static int putInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+		return offset + 4;
+	}
+
+}
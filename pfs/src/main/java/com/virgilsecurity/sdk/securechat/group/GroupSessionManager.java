@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.group;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.virgilsecurity.sdk.securechat.Constants;
+import com.virgilsecurity.sdk.securechat.SecureChat;
+import com.virgilsecurity.sdk.securechat.UserDataStorage;
+import com.virgilsecurity.sdk.securechat.exceptions.GroupSessionException;
+import com.virgilsecurity.sdk.securechat.keystorage.KeyStorage;
+import com.virgilsecurity.sdk.securechat.model.GroupKeyMessage;
+import com.virgilsecurity.sdk.securechat.model.GroupMessage;
+import com.virgilsecurity.sdk.securechat.model.GroupState;
+import com.virgilsecurity.sdk.securechat.utils.GsonUtils;
+import com.virgilsecurity.sdk.securechat.utils.SessionStateResolver;
+import com.virgilsecurity.sdk.storage.KeyEntry;
+import com.virgilsecurity.sdk.storage.VirgilKeyEntry;
+import com.virgilsecurity.sdk.utils.StringUtils;
+
+/**
+ * Use {@linkplain GroupSessionManager} to create group sessions and process
+ * group messages. Group state is stored in user data storage, and group keys
+ * are stored in key storage.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class GroupSessionManager {
+
+	private static final Logger log = Logger.getLogger(GroupSessionManager.class.getName());
+
+	/* The default maximum number of groups which could be created by a single member */
+	public static final int DEFAULT_MAX_GROUPS_PER_CREATOR = 32;
+
+	private SecureChat secureChat;
+	private String identityCardId;
+	private KeyStorage keyStorage;
+	private UserDataStorage storage;
+	private int maxGroupsPerCreator;
+
+	private final Map<String, GroupSession> groups = new HashMap<>();
+
+	/**
+	 * Create new instance of {@link GroupSessionManager}.
+	 * 
+	 * @param secureChat
+	 *            the secure chat used to send group keys.
+	 * @param identityCardId
+	 *            the identity's Virgil Card identifier.
+	 * @param keyStorage
+	 *            the key storage.
+	 * @param storage
+	 *            the user data storage.
+	 */
+	public GroupSessionManager(SecureChat secureChat, String identityCardId, KeyStorage keyStorage,
+			UserDataStorage storage) {
+		this.secureChat = secureChat;
+		this.identityCardId = identityCardId;
+		this.keyStorage = keyStorage;
+		this.storage = storage;
+		this.maxGroupsPerCreator = DEFAULT_MAX_GROUPS_PER_CREATOR;
+	}
+
+	/**
+	 * Creates new group. Own group key should be sent to members with
+	 * {@link GroupSession#distributeKey()}.
+	 * 
+	 * @param groupId
+	 *            the group identifier.
+	 * @param memberCardIds
+	 *            the identity card identifiers of other group members.
+	 * @return the group session.
+	 * @throws GroupSessionException
+	 *             if group already exists.
+	 */
+	public GroupSession createGroup(String groupId, List<String> memberCardIds) throws GroupSessionException {
+		synchronized (this.groups) {
+			if (getGroup(groupId) != null) {
+				throw new GroupSessionException(Constants.Errors.GroupSession.GROUP_EXISTS, "Group already exists.");
+			}
+			List<String> members = new ArrayList<>(memberCardIds);
+			members.remove(this.identityCardId);
+
+			return newGroup(groupId, this.identityCardId, members);
+		}
+	}
+
+	/**
+	 * Decrypts group message.
+	 * 
+	 * @param message
+	 *            the group message.
+	 * @return the decrypted message.
+	 * @throws GroupSessionException
+	 *             if group is unknown or message can't be decrypted.
+	 */
+	public String decrypt(String message) throws GroupSessionException {
+		GroupMessage groupMessage = GsonUtils.getGson().fromJson(message, GroupMessage.class);
+		GroupSession group = getGroup(groupMessage.getGroupId());
+		if (group == null) {
+			throw new GroupSessionException(Constants.Errors.GroupSession.UNKNOWN_GROUP, "Group is unknown.");
+		}
+		return group.decrypt(groupMessage);
+	}
+
+	/**
+	 * Get group session by identifier.
+	 * 
+	 * @param groupId
+	 *            the group identifier.
+	 * @return the group session or {@code null} if group is unknown.
+	 */
+	public GroupSession getGroup(String groupId) {
+		synchronized (this.groups) {
+			GroupSession group = this.groups.get(groupId);
+			if (group == null) {
+				String json = this.storage.getData(getStorageName(), groupId);
+				if (StringUtils.isBlank(json)) {
+					return null;
+				}
+				GroupState state = GsonUtils.getGson().fromJson(json, GroupState.class);
+				group = new GroupSession(this, this.identityCardId, state);
+				this.groups.put(groupId, group);
+			}
+			return group;
+		}
+	}
+
+	/**
+	 * @return the maximum number of groups which could be created by a single
+	 *         member.
+	 */
+	public int getMaxGroupsPerCreator() {
+		return maxGroupsPerCreator;
+	}
+
+	/**
+	 * Processes message decrypted with pairwise secure session. If message is
+	 * a group key, the key is stored. A group which is unknown yet is created,
+	 * and the sender is its creator. Group is not created if the sender
+	 * already created {@link #getMaxGroupsPerCreator()} groups.
+	 * 
+	 * If the group creator changed membership, own group key is replaced and
+	 * {@link GroupSession#isKeyDistributionPending()} returns {@code true}.
+	 * Membership changes sent by other members are ignored.
+	 * 
+	 * @param senderCardId
+	 *            the sender's identity card identifier.
+	 * @param decryptedMessage
+	 *            the decrypted message.
+	 * @return the group session if message is a group key, {@code null}
+	 *         otherwise.
+	 */
+	public GroupSession processKeyMessage(String senderCardId, String decryptedMessage) {
+		if (!SessionStateResolver.isGroupKeyMessage(decryptedMessage)) {
+			return null;
+		}
+		GroupKeyMessage keyMessage = GsonUtils.getGson().fromJson(decryptedMessage, GroupKeyMessage.class);
+		String groupId = keyMessage.getGroupId();
+
+		synchronized (this.groups) {
+			GroupSession group = getGroup(groupId);
+			if (!keyMessage.getMembers().contains(this.identityCardId)) {
+				// Removed from the group
+				if (group != null && senderCardId.equals(group.getCreator())) {
+					removeGroup(groupId);
+				}
+				return null;
+			}
+			if (group == null) {
+				if (countGroupsCreatedBy(senderCardId) >= this.maxGroupsPerCreator) {
+					log.warning(String.format("Group %s is not created, too many groups created by %s", groupId,
+							senderCardId));
+					return null;
+				}
+				log.fine(String.format("Group %s created by %s", groupId, senderCardId));
+
+				List<String> members = new ArrayList<>(keyMessage.getMembers());
+				members.remove(this.identityCardId);
+				group = newGroup(groupId, senderCardId, members);
+			}
+			group.processKeyMessage(senderCardId, keyMessage);
+
+			return group;
+		}
+	}
+
+	/**
+	 * Removes group and its keys.
+	 * 
+	 * @param groupId
+	 *            the group identifier.
+	 */
+	public void removeGroup(String groupId) {
+		synchronized (this.groups) {
+			GroupSession group = getGroup(groupId);
+			if (group != null) {
+				group.removeKeys();
+				this.groups.remove(groupId);
+				this.storage.removeData(getStorageName(), groupId);
+				this.storage.synchronize();
+			}
+		}
+	}
+
+	/**
+	 * @param maxGroupsPerCreator
+	 *            the maximum number of groups which could be created by a
+	 *            single member.
+	 */
+	public void setMaxGroupsPerCreator(int maxGroupsPerCreator) {
+		this.maxGroupsPerCreator = maxGroupsPerCreator;
+	}
+
+	SecureChat getSecureChat() {
+		return this.secureChat;
+	}
+
+	byte[] loadKey(String groupId, String cardId, int keyId) {
+		String keyEntryName = getKeyEntryName(groupId, cardId, keyId);
+		if (!this.keyStorage.exists(keyEntryName)) {
+			return null;
+		}
+		return this.keyStorage.load(keyEntryName).getValue();
+	}
+
+	void removeKey(String groupId, String cardId, int keyId) {
+		String keyEntryName = getKeyEntryName(groupId, cardId, keyId);
+		if (this.keyStorage.exists(keyEntryName)) {
+			this.keyStorage.delete(keyEntryName);
+		}
+	}
+
+	void saveState(GroupState state) {
+		this.storage.addData(getStorageName(), state.getGroupId(), GsonUtils.getGson().toJson(state));
+		this.storage.synchronize();
+	}
+
+	void storeKey(String groupId, String cardId, int keyId, byte[] key) {
+		KeyEntry keyEntry = new VirgilKeyEntry(getKeyEntryName(groupId, cardId, keyId), key);
+		this.keyStorage.store(keyEntry);
+	}
+
+	private int countGroupsCreatedBy(String cardId) {
+		int count = 0;
+		for (String json : this.storage.getAllData(getStorageName()).values()) {
+			GroupState state = GsonUtils.getGson().fromJson(json, GroupState.class);
+			if (cardId.equals(state.getCreator())) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private GroupSession newGroup(String groupId, String creator, List<String> members) {
+		GroupSession group = new GroupSession(this, this.identityCardId, new GroupState(groupId, creator, members));
+		group.rotateKey();
+		this.groups.put(groupId, group);
+		return group;
+	}
+
+	private String getKeyEntryName(String groupId, String cardId, int keyId) {
+		return String.format("VIRGIL.GROUPKEY.OWNER=%s.%s.%s.%d", this.identityCardId, groupId, cardId, keyId);
+	}
+
+	private String getStorageName() {
+		return String.format("VIRGIL.GROUPS.OWNER=%s", this.identityCardId);
+	}
+
+}
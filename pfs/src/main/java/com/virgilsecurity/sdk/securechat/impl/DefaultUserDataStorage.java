@@ -29,9 +29,9 @@
  */
 package com.virgilsecurity.sdk.securechat.impl;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.virgilsecurity.sdk.securechat.UserDataStorage;
 
@@ -43,13 +43,14 @@ import com.virgilsecurity.sdk.securechat.UserDataStorage;
  */
 public class DefaultUserDataStorage implements UserDataStorage {
 
-	private Map<String, Map<String, String>> defaults;
+	/* Lock-free maps, so storage never blocks callers on a monitor */
+	private ConcurrentMap<String, Map<String, String>> defaults;
 
 	/**
 	 * Create new instance of {@link DefaultUserDataStorage}.
 	 */
 	public DefaultUserDataStorage() {
-		defaults = Collections.synchronizedMap(new HashMap<String, Map<String, String>>());
+		defaults = new ConcurrentHashMap<>();
 	}
 
 	/*
@@ -60,7 +61,11 @@ public class DefaultUserDataStorage implements UserDataStorage {
 	 */
 	@Override
 	public void addData(String storageName, String key, String value) {
-		getAllData(storageName).put(key, value);
+		if (value == null) {
+			getAllData(storageName).remove(key);
+		} else {
+			getAllData(storageName).put(key, value);
+		}
 	}
 
 	/*
@@ -72,13 +77,13 @@ public class DefaultUserDataStorage implements UserDataStorage {
 	 */
 	@Override
 	public Map<String, String> getAllData(String storageName) {
-		if (defaults.containsKey(storageName)) {
-			Map<String, String> data = defaults.get(storageName);
+		Map<String, String> data = defaults.get(storageName);
+		if (data != null) {
 			return data;
 		}
-		Map<String, String> data = Collections.synchronizedMap(new HashMap<String, String>());
-		defaults.put(storageName, data);
-		return data;
+		data = new ConcurrentHashMap<>();
+		Map<String, String> existing = defaults.putIfAbsent(storageName, data);
+		return existing == null ? data : existing;
 	}
 
 	/*
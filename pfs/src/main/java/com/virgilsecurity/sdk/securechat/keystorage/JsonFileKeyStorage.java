@@ -29,12 +29,13 @@
  */
 package com.virgilsecurity.sdk.securechat.keystorage;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.InvalidPathException;
 import java.util.ArrayList;
@@ -42,6 +43,9 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -61,6 +65,9 @@ import com.google.gson.stream.JsonWriter;
 import com.virgilsecurity.sdk.crypto.exceptions.KeyEntryAlreadyExistsException;
 import com.virgilsecurity.sdk.crypto.exceptions.KeyEntryNotFoundException;
 import com.virgilsecurity.sdk.crypto.exceptions.KeyStorageException;
+import com.virgilsecurity.sdk.securechat.utils.BufferPool;
+import com.virgilsecurity.sdk.securechat.utils.EpochDateTypeAdapter;
+import com.virgilsecurity.sdk.securechat.utils.PooledCharArrayWriter;
 import com.virgilsecurity.sdk.storage.KeyEntry;
 import com.virgilsecurity.sdk.storage.VirgilKeyEntry;
 import com.virgilsecurity.sdk.utils.ConvertionUtils;
@@ -127,12 +134,22 @@ public class JsonFileKeyStorage implements KeyStorage {
 
 	private static final String CREATION_DATE_META_KEY = "created_at";
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	private String directoryName;
 
 	private String fileName;
 
 	private Gson gson;
 
+	private BufferPool bufferPool = BufferPool.getDefault();
+
+	/*
+	 * Guards the key storage file. Readers don't block each other. Explicit
+	 * locks don't pin virtual threads during file I/O
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
 	/**
 	 * Create a new instance of {@code VirgilKeyStorage}
 	 *
@@ -173,12 +190,16 @@ public class JsonFileKeyStorage implements KeyStorage {
 	 */
 	@Override
 	public void delete(List<String> keyNames) {
-		synchronized (this) {
+		Lock lock = this.lock.writeLock();
+		lock.lock();
+		try {
 			Entries entries = load();
 			for (String keyName : keyNames) {
 				entries.remove(keyName);
 			}
 			save(entries);
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -189,13 +210,17 @@ public class JsonFileKeyStorage implements KeyStorage {
 	 */
 	@Override
 	public void delete(String keyName) {
-		synchronized (this) {
+		Lock lock = this.lock.writeLock();
+		lock.lock();
+		try {
 			Entries entries = load();
 			if (!entries.containsKey(keyName)) {
 				throw new KeyEntryNotFoundException();
 			}
 			entries.remove(keyName);
 			save(entries);
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -209,9 +234,13 @@ public class JsonFileKeyStorage implements KeyStorage {
 		if (keyName == null) {
 			return false;
 		}
-		synchronized (this) {
+		Lock lock = this.lock.readLock();
+		lock.lock();
+		try {
 			Entries entries = load();
 			return entries.containsKey(keyName);
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -224,8 +253,12 @@ public class JsonFileKeyStorage implements KeyStorage {
 	@Override
 	public List<KeyAttrs> getAllKeysAttrs() {
 		Entries entries = null;
-		synchronized (this) {
+		Lock lock = this.lock.readLock();
+		lock.lock();
+		try {
 			entries = load();
+		} finally {
+			lock.unlock();
 		}
 		List<KeyAttrs> keyAttrs = new ArrayList<>(entries.size());
 		for (Entry<String, VirgilKeyEntry> entrySet : entries.entrySet()) {
@@ -233,7 +266,10 @@ public class JsonFileKeyStorage implements KeyStorage {
 			Date creationDate = null;
 			if (entrySet.getValue().getMetadata() != null) {
 				String creationDateStr = entrySet.getValue().getMetadata().get(CREATION_DATE_META_KEY);
-				if (!StringUtils.isBlank(creationDateStr)) {
+				if (EpochDateTypeAdapter.isEpoch(creationDateStr)) {
+					creationDate = new Date(Long.parseLong(creationDateStr));
+				} else if (!StringUtils.isBlank(creationDateStr)) {
+					// Creation date stored by previous versions
 					creationDate = getGson().fromJson(creationDateStr, Date.class);
 				}
 			}
@@ -250,13 +286,16 @@ public class JsonFileKeyStorage implements KeyStorage {
 			GsonBuilder builder = new GsonBuilder();
 			this.gson = builder.registerTypeHierarchyAdapter(byte[].class, new ByteArrayToBase64TypeAdapter())
 					.registerTypeAdapterFactory(new ClassTypeAdapterFactory()).disableHtmlEscaping()
-					.setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").create();
+					.registerTypeAdapter(Date.class, new EpochDateTypeAdapter()).create();
 		}
 
 		return gson;
 	}
 
 	private void init() {
+		// Create Gson before storage is shared between threads
+		getGson();
+
 		File dir = new File(this.directoryName);
 
 		if (dir.exists()) {
@@ -274,22 +313,25 @@ public class JsonFileKeyStorage implements KeyStorage {
 
 	private Entries load() {
 		File file = new File(this.directoryName, this.fileName);
-		try (FileInputStream is = new FileInputStream(file)) {
-			ByteArrayOutputStream os = new ByteArrayOutputStream();
-
-			byte[] buffer = new byte[4096];
-			int n = 0;
-			while (-1 != (n = is.read(buffer))) {
-				os.write(buffer, 0, n);
+		PooledCharArrayWriter json = new PooledCharArrayWriter(this.bufferPool);
+		try (FileInputStream is = new FileInputStream(file); FileChannel channel = is.getChannel()) {
+			ByteBuffer buffer = this.bufferPool.acquireDirect((int) channel.size());
+			try {
+				while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+				}
+				buffer.flip();
+				json.decode(buffer, UTF8);
+			} finally {
+				this.bufferPool.release(buffer);
 			}
 
-			byte[] bytes = os.toByteArray();
-
-			Entries entries = getGson().fromJson(new String(bytes, Charset.forName("UTF-8")), Entries.class);
+			Entries entries = getGson().fromJson(json.toReader(), Entries.class);
 
 			return entries;
 		} catch (Exception e) {
 			throw new KeyStorageException(e);
+		} finally {
+			json.close();
 		}
 	}
 
@@ -300,7 +342,9 @@ public class JsonFileKeyStorage implements KeyStorage {
 	 */
 	@Override
 	public KeyEntry load(String keyName) {
-		synchronized (this) {
+		Lock lock = this.lock.readLock();
+		lock.lock();
+		try {
 			Entries entries = load();
 			if (!entries.containsKey(keyName)) {
 				throw new KeyEntryNotFoundException();
@@ -308,6 +352,8 @@ public class JsonFileKeyStorage implements KeyStorage {
 			VirgilKeyEntry entry = entries.get(keyName);
 			entry.setName(keyName);
 			return entry;
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -316,14 +362,33 @@ public class JsonFileKeyStorage implements KeyStorage {
 	 */
 	private void save(Entries entries) {
 		File file = new File(this.directoryName, this.fileName);
-		try (FileOutputStream os = new FileOutputStream(file)) {
-			String json = getGson().toJson(entries);
-			os.write(json.getBytes(Charset.forName("UTF-8")));
+		PooledCharArrayWriter json = new PooledCharArrayWriter(this.bufferPool);
+		try (FileOutputStream os = new FileOutputStream(file); FileChannel channel = os.getChannel()) {
+			getGson().toJson(entries, json);
+
+			ByteBuffer buffer = json.encode(UTF8, true);
+			try {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} finally {
+				this.bufferPool.release(buffer);
+			}
 		} catch (Exception e) {
 			throw new KeyStorageException(e);
+		} finally {
+			json.close();
 		}
 	}
 
+	/**
+	 * @param bufferPool
+	 *            the pool of buffers used to read and write key storage file.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
 	/**
 	 * @param gson
 	 *            the gson to set
@@ -341,9 +406,11 @@ public class JsonFileKeyStorage implements KeyStorage {
 	@Override
 	public void store(KeyEntry keyEntry) {
 		String name = keyEntry.getName();
-		String creationDateStr = getGson().toJson(new Date());
+		String creationDateStr = String.valueOf(System.currentTimeMillis());
 
-		synchronized (this) {
+		Lock lock = this.lock.writeLock();
+		lock.lock();
+		try {
 			Entries entries = load();
 			if (entries.containsKey(name)) {
 				throw new KeyEntryAlreadyExistsException();
@@ -353,6 +420,8 @@ public class JsonFileKeyStorage implements KeyStorage {
 			}
 			entries.put(name, (VirgilKeyEntry) keyEntry);
 			save(entries);
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -365,12 +434,16 @@ public class JsonFileKeyStorage implements KeyStorage {
 	 */
 	@Override
 	public void store(List<KeyEntry> keyEntries) {
-		synchronized (this) {
+		Lock lock = this.lock.writeLock();
+		lock.lock();
+		try {
 			Entries entries = load();
 			for (KeyEntry keyEntry : keyEntries) {
 				entries.put(keyEntry.getName(), (VirgilKeyEntry) keyEntry);
 			}
 			save(entries);
+		} finally {
+			lock.unlock();
 		}
 	}
 
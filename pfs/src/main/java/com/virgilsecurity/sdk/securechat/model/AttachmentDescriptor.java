@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Everything a participant needs to decrypt an attachment. The descriptor is
+ * small, so it's sent through participant's secure session, while the
+ * encrypted attachment is shared by all participants.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class AttachmentDescriptor {
+
+	/* Random symmetric key the attachment is encrypted with */
+	@SerializedName("key")
+	private byte[] key;
+
+	/* Size of the attachment in bytes */
+	@SerializedName("size")
+	private long size;
+
+	/* Size of encrypted chunk in bytes */
+	@SerializedName("chunk_size")
+	private int chunkSize;
+
+	/**
+	 * Create new instance of {@link AttachmentDescriptor}.
+	 */
+	public AttachmentDescriptor() {
+	}
+
+	/**
+	 * Create new instance of {@link AttachmentDescriptor}.
+	 * 
+	 * @param key
+	 *            the symmetric key the attachment is encrypted with.
+	 * @param size
+	 *            the size of the attachment in bytes.
+	 * @param chunkSize
+	 *            the size of encrypted chunk in bytes.
+	 */
+	public AttachmentDescriptor(byte[] key, long size, int chunkSize) {
+		this.key = key;
+		this.size = size;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @return the size of encrypted chunk in bytes.
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * @return the symmetric key the attachment is encrypted with.
+	 */
+	public byte[] getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the size of the attachment in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @param chunkSize
+	 *            the size of encrypted chunk in bytes.
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param key
+	 *            the symmetric key the attachment is encrypted with.
+	 */
+	public void setKey(byte[] key) {
+		this.key = key;
+	}
+
+	/**
+	 * @param size
+	 *            the size of the attachment in bytes.
+	 */
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+}
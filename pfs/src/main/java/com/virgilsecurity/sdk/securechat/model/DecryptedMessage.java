@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+/**
+ * Result of inbound message decryption. Contains either decrypted text or the
+ * error occurred.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class DecryptedMessage {
+
+	private InboundMessage inboundMessage;
+	private String text;
+	private Exception error;
+
+	/**
+	 * Create new instance of {@link DecryptedMessage}.
+	 * 
+	 * @param inboundMessage
+	 *            the encrypted message.
+	 * @param text
+	 *            the decrypted text.
+	 * @param error
+	 *            the error occurred while decryption.
+	 */
+	public DecryptedMessage(InboundMessage inboundMessage, String text, Exception error) {
+		this.inboundMessage = inboundMessage;
+		this.text = text;
+		this.error = error;
+	}
+
+	/**
+	 * @return the error occurred while decryption, or {@code null} if the
+	 *         message was decrypted.
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * @return the encrypted message.
+	 */
+	public InboundMessage getInboundMessage() {
+		return inboundMessage;
+	}
+
+	/**
+	 * @return the decrypted text.
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return {@code true} if the message was decrypted.
+	 */
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+}
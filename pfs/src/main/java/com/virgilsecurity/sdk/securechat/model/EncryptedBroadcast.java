@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of one message encryption for many participants.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class EncryptedBroadcast {
+
+	private Map<String, String> messages;
+	private List<String> cardIdsWithoutSession;
+	private Map<String, Exception> errors;
+
+	/**
+	 * Create new instance of {@link EncryptedBroadcast}.
+	 * 
+	 * @param messages
+	 *            the encrypted messages by participant's card identifier.
+	 * @param cardIdsWithoutSession
+	 *            the identifiers of participants' cards with no active
+	 *            session.
+	 * @param errors
+	 *            the errors occurred while encryption by participant's card
+	 *            identifier.
+	 */
+	public EncryptedBroadcast(Map<String, String> messages, List<String> cardIdsWithoutSession,
+			Map<String, Exception> errors) {
+		this.messages = messages;
+		this.cardIdsWithoutSession = cardIdsWithoutSession;
+		this.errors = errors;
+	}
+
+	/**
+	 * @return the identifiers of participants' cards with no active session.
+	 */
+	public List<String> getCardIdsWithoutSession() {
+		return cardIdsWithoutSession;
+	}
+
+	/**
+	 * @return the errors occurred while encryption by participant's card
+	 *         identifier.
+	 */
+	public Map<String, Exception> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return the encrypted messages by participant's card identifier.
+	 */
+	public Map<String, String> getMessages() {
+		return messages;
+	}
+
+}
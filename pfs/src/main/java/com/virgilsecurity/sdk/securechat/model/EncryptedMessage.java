@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+/**
+ * Result of outbound message encryption. Contains either encrypted message or
+ * the error occurred.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class EncryptedMessage {
+
+	private OutboundMessage outboundMessage;
+	private String message;
+	private Exception error;
+
+	/**
+	 * Create new instance of {@link EncryptedMessage}.
+	 * 
+	 * @param outboundMessage
+	 *            the message to be encrypted.
+	 * @param message
+	 *            the encrypted message.
+	 * @param error
+	 *            the error occurred while encryption.
+	 */
+	public EncryptedMessage(OutboundMessage outboundMessage, String message, Exception error) {
+		this.outboundMessage = outboundMessage;
+		this.message = message;
+		this.error = error;
+	}
+
+	/**
+	 * @return the error occurred while encryption, or {@code null} if the
+	 *         message was encrypted.
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * @return the encrypted message.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return the message to be encrypted.
+	 */
+	public OutboundMessage getOutboundMessage() {
+		return outboundMessage;
+	}
+
+	/**
+	 * @return {@code true} if the message was encrypted.
+	 */
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Time-ordered index of sessions and ephemeral keys. Entries of each kind are
+ * kept sorted by their time, so items older than some date could be found
+ * without scanning all of them.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class ExpiryIndex {
+
+	public enum Kind {
+		/* Session indexed by expiration date */
+		@SerializedName("session")
+		SESSION,
+		/* Long-term key indexed by creation date */
+		@SerializedName("lt")
+		LT_KEY,
+		/* One-time key indexed by creation date */
+		@SerializedName("ot")
+		OT_KEY
+	}
+
+	public static class IndexEntry {
+		@SerializedName("kind")
+		private Kind kind;
+
+		@SerializedName("identifier")
+		private String identifier;
+
+		@SerializedName("card_id")
+		private String cardId;
+
+		@SerializedName("time")
+		private long time;
+
+		/**
+		 * Create new instance of {@link IndexEntry}.
+		 */
+		public IndexEntry() {
+			super();
+		}
+
+		/**
+		 * Create new instance of {@link IndexEntry}.
+		 * 
+		 * @param kind
+		 *            the kind of indexed item.
+		 * @param identifier
+		 *            the item identifier.
+		 * @param cardId
+		 *            the participant's card identifier (sessions only).
+		 * @param time
+		 *            the time in milliseconds the item is indexed by.
+		 */
+		public IndexEntry(Kind kind, String identifier, String cardId, long time) {
+			super();
+			this.kind = kind;
+			this.identifier = identifier;
+			this.cardId = cardId;
+			this.time = time;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			IndexEntry other = (IndexEntry) obj;
+			if (cardId == null) {
+				if (other.cardId != null)
+					return false;
+			} else if (!cardId.equals(other.cardId))
+				return false;
+			if (identifier == null) {
+				if (other.identifier != null)
+					return false;
+			} else if (!identifier.equals(other.identifier))
+				return false;
+			if (kind != other.kind)
+				return false;
+			if (time != other.time)
+				return false;
+			return true;
+		}
+
+		/**
+		 * @return the cardId
+		 */
+		public String getCardId() {
+			return cardId;
+		}
+
+		/**
+		 * @return the identifier
+		 */
+		public String getIdentifier() {
+			return identifier;
+		}
+
+		/**
+		 * @return the kind
+		 */
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return the time
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((cardId == null) ? 0 : cardId.hashCode());
+			result = prime * result + ((identifier == null) ? 0 : identifier.hashCode());
+			result = prime * result + ((kind == null) ? 0 : kind.hashCode());
+			result = prime * result + (int) (time ^ (time >>> 32));
+			return result;
+		}
+	}
+
+	private static class TimeComparator implements Comparator<IndexEntry> {
+		@Override
+		public int compare(IndexEntry o1, IndexEntry o2) {
+			int cmp = Long.compare(o1.getTime(), o2.getTime());
+			if (cmp != 0) {
+				return cmp;
+			}
+			return o1.getIdentifier().compareTo(o2.getIdentifier());
+		}
+	}
+
+	private Map<Kind, NavigableSet<IndexEntry>> byTime;
+	private Map<Kind, Map<String, IndexEntry>> byIdentifier;
+
+	/**
+	 * Create new empty instance of {@link ExpiryIndex}.
+	 */
+	public ExpiryIndex() {
+		this.byTime = new EnumMap<>(Kind.class);
+		this.byIdentifier = new EnumMap<>(Kind.class);
+		for (Kind kind : Kind.values()) {
+			this.byTime.put(kind, new TreeSet<IndexEntry>(new TimeComparator()));
+			this.byIdentifier.put(kind, new HashMap<String, IndexEntry>());
+		}
+	}
+
+	/**
+	 * Create new instance of {@link ExpiryIndex} filled with entries.
+	 * 
+	 * @param entries
+	 *            the index entries.
+	 */
+	public ExpiryIndex(Collection<IndexEntry> entries) {
+		this();
+		for (IndexEntry entry : entries) {
+			put(entry);
+		}
+	}
+
+	/**
+	 * Remove all entries of the kind.
+	 * 
+	 * @param kind
+	 *            the kind of entries.
+	 */
+	public void clear(Kind kind) {
+		this.byTime.get(kind).clear();
+		this.byIdentifier.get(kind).clear();
+	}
+
+	/**
+	 * Checks if item is indexed.
+	 * 
+	 * @param kind
+	 *            the kind of item.
+	 * @param identifier
+	 *            the item identifier.
+	 * @return {@code true} if item is in index.
+	 */
+	public boolean contains(Kind kind, String identifier) {
+		return this.byIdentifier.get(kind).containsKey(identifier);
+	}
+
+	/**
+	 * Get all entries of the kind ordered by time.
+	 * 
+	 * @param kind
+	 *            the kind of entries.
+	 * @return the list of entries.
+	 */
+	public List<IndexEntry> getAll(Kind kind) {
+		return new ArrayList<>(this.byTime.get(kind));
+	}
+
+	/**
+	 * @return all index entries.
+	 */
+	public List<IndexEntry> getEntries() {
+		List<IndexEntry> entries = new ArrayList<>();
+		for (NavigableSet<IndexEntry> set : this.byTime.values()) {
+			entries.addAll(set);
+		}
+		return entries;
+	}
+
+	/**
+	 * Get entries of the kind which time is before {@code time}. Only matching
+	 * entries are visited.
+	 * 
+	 * @param kind
+	 *            the kind of entries.
+	 * @param time
+	 *            the time in milliseconds.
+	 * @return the list of entries ordered by time.
+	 */
+	public List<IndexEntry> getOlderThan(Kind kind, long time) {
+		IndexEntry bound = new IndexEntry(kind, "", null, time);
+		return new ArrayList<>(this.byTime.get(kind).headSet(bound, false));
+	}
+
+	/**
+	 * Add entry to index. Existing entry with the same kind and identifier is
+	 * replaced.
+	 * 
+	 * @param entry
+	 *            the entry to add.
+	 */
+	public void put(IndexEntry entry) {
+		remove(entry.getKind(), entry.getIdentifier());
+		this.byTime.get(entry.getKind()).add(entry);
+		this.byIdentifier.get(entry.getKind()).put(entry.getIdentifier(), entry);
+	}
+
+	/**
+	 * Remove entry from index.
+	 * 
+	 * @param kind
+	 *            the kind of entry.
+	 * @param identifier
+	 *            the entry identifier.
+	 */
+	public void remove(Kind kind, String identifier) {
+		IndexEntry entry = this.byIdentifier.get(kind).remove(identifier);
+		if (entry != null) {
+			this.byTime.get(kind).remove(entry);
+		}
+	}
+
+	/**
+	 * @param kind
+	 *            the kind of entries.
+	 * @return the number of entries of the kind.
+	 */
+	public int size(Kind kind) {
+		return this.byIdentifier.get(kind).size();
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+import java.util.List;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Sender's group key. It's sent to each group member through pairwise secure
+ * session.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class GroupKeyMessage {
+
+	@SerializedName("group_id")
+	private String groupId;
+
+	@SerializedName("group_key_id")
+	private int keyId;
+
+	@SerializedName("group_key")
+	private byte[] key;
+
+	/* Identity card identifiers of all group members, including sender */
+	@SerializedName("group_members")
+	private List<String> members;
+
+	/**
+	 * Create new instance of {@link GroupKeyMessage}.
+	 */
+	public GroupKeyMessage() {
+	}
+
+	/**
+	 * Create new instance of {@link GroupKeyMessage}.
+	 * 
+	 * @param groupId
+	 *            the group identifier.
+	 * @param keyId
+	 *            the group key identifier.
+	 * @param key
+	 *            the group key.
+	 * @param members
+	 *            the identity card identifiers of all group members.
+	 */
+	public GroupKeyMessage(String groupId, int keyId, byte[] key, List<String> members) {
+		this.groupId = groupId;
+		this.keyId = keyId;
+		this.key = key;
+		this.members = members;
+	}
+
+	/**
+	 * @return the group identifier.
+	 */
+	public String getGroupId() {
+		return groupId;
+	}
+
+	/**
+	 * @return the group key.
+	 */
+	public byte[] getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the group key identifier.
+	 */
+	public int getKeyId() {
+		return keyId;
+	}
+
+	/**
+	 * @return the identity card identifiers of all group members.
+	 */
+	public List<String> getMembers() {
+		return members;
+	}
+
+}
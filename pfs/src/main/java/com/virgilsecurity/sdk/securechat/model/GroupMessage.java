@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Group message encrypted once with sender's group key.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class GroupMessage {
+
+	@SerializedName("group_id")
+	private String groupId;
+
+	/* Sender's identity card identifier */
+	@SerializedName("sender")
+	private String sender;
+
+	/* Sender's group key identifier */
+	@SerializedName("key_id")
+	private int keyId;
+
+	@SerializedName("salt")
+	private byte[] salt;
+
+	@SerializedName("ciphertext")
+	private byte[] cipherText;
+
+	/**
+	 * Create new instance of {@link GroupMessage}.
+	 */
+	public GroupMessage() {
+	}
+
+	/**
+	 * Create new instance of {@link GroupMessage}.
+	 * 
+	 * @param groupId
+	 *            the group identifier.
+	 * @param sender
+	 *            the sender's identity card identifier.
+	 * @param keyId
+	 *            the sender's group key identifier.
+	 * @param salt
+	 *            the salt.
+	 * @param cipherText
+	 *            the cipher text.
+	 */
+	public GroupMessage(String groupId, String sender, int keyId, byte[] salt, byte[] cipherText) {
+		this.groupId = groupId;
+		this.sender = sender;
+		this.keyId = keyId;
+		this.salt = salt;
+		this.cipherText = cipherText;
+	}
+
+	/**
+	 * @return the cipher text.
+	 */
+	public byte[] getCipherText() {
+		return cipherText;
+	}
+
+	/**
+	 * @return the group identifier.
+	 */
+	public String getGroupId() {
+		return groupId;
+	}
+
+	/**
+	 * @return the sender's group key identifier.
+	 */
+	public int getKeyId() {
+		return keyId;
+	}
+
+	/**
+	 * @return the salt.
+	 */
+	public byte[] getSalt() {
+		return salt;
+	}
+
+	/**
+	 * @return the sender's identity card identifier.
+	 */
+	public String getSender() {
+		return sender;
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Persistent state of a group. Group keys are not included, they are stored
+ * in key storage.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class GroupState {
+
+	@SerializedName("group_id")
+	private String groupId;
+
+	/* Identity card identifier of the member who created the group */
+	@SerializedName("creator")
+	private String creator;
+
+	/* Identity card identifiers of other group members */
+	@SerializedName("members")
+	private List<String> members;
+
+	/* Identifier of own group key */
+	@SerializedName("key_id")
+	private int keyId;
+
+	/* Own group key should be sent to members */
+	@SerializedName("distribution_pending")
+	private boolean distributionPending;
+
+	/* Known group keys identifiers by member, the newest go last */
+	@SerializedName("member_keys")
+	private Map<String, List<Integer>> memberKeys;
+
+	/**
+	 * Create new instance of {@link GroupState}.
+	 */
+	public GroupState() {
+		this.members = new ArrayList<>();
+		this.memberKeys = new HashMap<>();
+	}
+
+	/**
+	 * Create new instance of {@link GroupState}.
+	 * 
+	 * @param groupId
+	 *            the group identifier.
+	 * @param creator
+	 *            the identity card identifier of the group creator.
+	 * @param members
+	 *            the identity card identifiers of other group members.
+	 */
+	public GroupState(String groupId, String creator, List<String> members) {
+		this();
+		this.groupId = groupId;
+		this.creator = creator;
+		this.members.addAll(members);
+	}
+
+	/**
+	 * @return the identity card identifier of the group creator.
+	 */
+	public String getCreator() {
+		return creator;
+	}
+
+	/**
+	 * @return the group identifier.
+	 */
+	public String getGroupId() {
+		return groupId;
+	}
+
+	/**
+	 * @return the identifier of own group key.
+	 */
+	public int getKeyId() {
+		return keyId;
+	}
+
+	/**
+	 * @return the known group keys identifiers by member.
+	 */
+	public Map<String, List<Integer>> getMemberKeys() {
+		return memberKeys;
+	}
+
+	/**
+	 * @return the identity card identifiers of other group members.
+	 */
+	public List<String> getMembers() {
+		return members;
+	}
+
+	/**
+	 * @return {@code true} if own group key should be sent to members.
+	 */
+	public boolean isDistributionPending() {
+		return distributionPending;
+	}
+
+	/**
+	 * @param distributionPending
+	 *            {@code true} if own group key should be sent to members.
+	 */
+	public void setDistributionPending(boolean distributionPending) {
+		this.distributionPending = distributionPending;
+	}
+
+	/**
+	 * @param keyId
+	 *            the identifier of own group key.
+	 */
+	public void setKeyId(int keyId) {
+		this.keyId = keyId;
+	}
+
+	/**
+	 * @param members
+	 *            the identity card identifiers of other group members.
+	 */
+	public void setMembers(List<String> members) {
+		this.members = members;
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+import com.virgilsecurity.sdk.client.model.CardModel;
+
+/**
+ * Encrypted message received from a participant.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class InboundMessage {
+
+	private CardModel card;
+	private String message;
+	private byte[] additionalData;
+
+	/**
+	 * Create new instance of {@link InboundMessage}.
+	 * 
+	 * @param card
+	 *            the sender's identity card.
+	 * @param message
+	 *            the encrypted message.
+	 */
+	public InboundMessage(CardModel card, String message) {
+		this(card, message, null);
+	}
+
+	/**
+	 * Create new instance of {@link InboundMessage}.
+	 * 
+	 * @param card
+	 *            the sender's identity card.
+	 * @param message
+	 *            the encrypted message.
+	 * @param additionalData
+	 *            the data for additional authorization.
+	 */
+	public InboundMessage(CardModel card, String message, byte[] additionalData) {
+		this.card = card;
+		this.message = message;
+		this.additionalData = additionalData;
+	}
+
+	/**
+	 * @return the data for additional authorization.
+	 */
+	public byte[] getAdditionalData() {
+		return additionalData;
+	}
+
+	/**
+	 * @return the sender's identity card.
+	 */
+	public CardModel getCard() {
+		return card;
+	}
+
+	/**
+	 * @return the encrypted message.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+}
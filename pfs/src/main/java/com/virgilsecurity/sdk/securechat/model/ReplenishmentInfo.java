@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.model;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Local knowledge about one-time cards available on Virgil PFS service.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class ReplenishmentInfo {
+
+	/* Estimated number of active one-time cards */
+	@SerializedName("active")
+	private int active;
+
+	/* Desired number of one-time cards */
+	@SerializedName("desired")
+	private int desired;
+
+	/* Exponentially weighted consumption rate, cards per second */
+	@SerializedName("rate")
+	private double rate;
+
+	/* Consumption rate update time in milliseconds */
+	@SerializedName("rate_updated_at")
+	private long rateUpdatedAt;
+
+	/* Last reconciliation with Virgil PFS service time in milliseconds */
+	@SerializedName("reconciled_at")
+	private long reconciledAt;
+
+	/**
+	 * @return the estimated number of active one-time cards.
+	 */
+	public int getActive() {
+		return active;
+	}
+
+	/**
+	 * @return the desired number of one-time cards.
+	 */
+	public int getDesired() {
+		return desired;
+	}
+
+	/**
+	 * @return the consumption rate, cards per second.
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * @return the rate update time in milliseconds.
+	 */
+	public long getRateUpdatedAt() {
+		return rateUpdatedAt;
+	}
+
+	/**
+	 * @return the last reconciliation time in milliseconds.
+	 */
+	public long getReconciledAt() {
+		return reconciledAt;
+	}
+
+	/**
+	 * @param active
+	 *            the estimated number of active one-time cards.
+	 */
+	public void setActive(int active) {
+		this.active = active;
+	}
+
+	/**
+	 * @param desired
+	 *            the desired number of one-time cards.
+	 */
+	public void setDesired(int desired) {
+		this.desired = desired;
+	}
+
+	/**
+	 * @param rate
+	 *            the consumption rate, cards per second.
+	 */
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	/**
+	 * @param rateUpdatedAt
+	 *            the rate update time in milliseconds.
+	 */
+	public void setRateUpdatedAt(long rateUpdatedAt) {
+		this.rateUpdatedAt = rateUpdatedAt;
+	}
+
+	/**
+	 * @param reconciledAt
+	 *            the last reconciliation time in milliseconds.
+	 */
+	public void setReconciledAt(long reconciledAt) {
+		this.reconciledAt = reconciledAt;
+	}
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.reactive;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link Processor} which transforms each element with a function on the
+ * scheduler. Elements are transformed one at a time and published in order
+ * they were received. Demand of the subscriber is passed to the upstream
+ * publisher as is, so no more elements are buffered than requested.
+ * 
+ * @author Andrii Iakovenko
+ *
+ * @param <T>
+ *            the type of element consumed.
+ * @param <R>
+ *            the type of element published.
+ */
+class MappingProcessor<T, R> implements Processor<T, R> {
+
+	/**
+	 * Transforms an element.
+	 */
+	interface Function<T, R> {
+		R apply(T item);
+	}
+
+	private static class Terminal {
+		private final Throwable error;
+
+		Terminal(Throwable error) {
+			this.error = error;
+		}
+	}
+
+	private final Function<T, R> function;
+	private final Executor scheduler;
+
+	private Subscription upstream;
+	private Subscriber<? super R> downstream;
+	private long pendingRequest;
+	private boolean terminated;
+	private boolean cancelled;
+
+	private final Queue<Object> signals = new ArrayDeque<>();
+	private boolean draining;
+
+	private final Runnable drain = new Runnable() {
+
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Create new instance of {@link MappingProcessor}.
+	 * 
+	 * @param function
+	 *            the function applied to each element.
+	 * @param scheduler
+	 *            the executor the function is called with.
+	 */
+	MappingProcessor(Function<T, R> function, Executor scheduler) {
+		this.function = function;
+		this.scheduler = scheduler;
+	}
+
+	@Override
+	public void onSubscribe(Subscription subscription) {
+		long request;
+		synchronized (this) {
+			if (this.upstream != null || this.cancelled) {
+				request = -1;
+			} else {
+				this.upstream = subscription;
+				request = this.pendingRequest;
+				this.pendingRequest = 0;
+			}
+		}
+		if (request < 0) {
+			subscription.cancel();
+		} else if (request > 0) {
+			subscription.request(request);
+		}
+	}
+
+	@Override
+	public void onNext(T item) {
+		if (item == null) {
+			throw new NullPointerException("Element should not be null");
+		}
+		signal(item);
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		if (throwable == null) {
+			throw new NullPointerException("Error should not be null");
+		}
+		signal(new Terminal(throwable));
+	}
+
+	@Override
+	public void onComplete() {
+		signal(new Terminal(null));
+	}
+
+	@Override
+	public void subscribe(final Subscriber<? super R> subscriber) {
+		boolean accepted;
+		synchronized (this) {
+			accepted = this.downstream == null;
+			if (accepted) {
+				this.downstream = subscriber;
+			}
+		}
+		if (!accepted) {
+			subscriber.onSubscribe(new Subscription() {
+
+				@Override
+				public void request(long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("Processor supports only one subscriber"));
+			return;
+		}
+		subscriber.onSubscribe(new Subscription() {
+
+			@Override
+			public void request(long n) {
+				MappingProcessor.this.request(n);
+			}
+
+			@Override
+			public void cancel() {
+				MappingProcessor.this.cancel();
+			}
+		});
+		schedule();
+	}
+
+	private void request(long n) {
+		if (n <= 0) {
+			cancelUpstream();
+			signal(new Terminal(new IllegalArgumentException("Requested number of elements should be positive")));
+			return;
+		}
+		Subscription subscription;
+		synchronized (this) {
+			if (this.cancelled) {
+				return;
+			}
+			subscription = this.upstream;
+			if (subscription == null) {
+				this.pendingRequest = addCapped(this.pendingRequest, n);
+			}
+		}
+		if (subscription != null) {
+			subscription.request(n);
+		}
+	}
+
+	private void cancel() {
+		synchronized (this) {
+			this.cancelled = true;
+			this.signals.clear();
+		}
+		cancelUpstream();
+	}
+
+	private void cancelUpstream() {
+		Subscription subscription;
+		synchronized (this) {
+			subscription = this.upstream;
+		}
+		if (subscription != null) {
+			subscription.cancel();
+		}
+	}
+
+	private void signal(Object signal) {
+		synchronized (this) {
+			if (this.cancelled || this.terminated) {
+				return;
+			}
+			if (signal instanceof Terminal) {
+				this.terminated = true;
+			}
+			this.signals.add(signal);
+		}
+		schedule();
+	}
+
+	private void schedule() {
+		synchronized (this) {
+			if (this.draining || this.downstream == null || this.signals.isEmpty()) {
+				return;
+			}
+			this.draining = true;
+		}
+		try {
+			this.scheduler.execute(this.drain);
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				this.draining = false;
+				this.signals.clear();
+				this.cancelled = true;
+			}
+			cancelUpstream();
+			this.downstream.onError(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void drain() {
+		while (true) {
+			Object signal;
+			synchronized (this) {
+				signal = this.signals.poll();
+				if (signal == null) {
+					this.draining = false;
+					return;
+				}
+			}
+			if (signal instanceof Terminal) {
+				Throwable error = ((Terminal) signal).error;
+				if (error == null) {
+					this.downstream.onComplete();
+				} else {
+					this.downstream.onError(error);
+				}
+				continue;
+			}
+			R result;
+			try {
+				result = this.function.apply((T) signal);
+			} catch (RuntimeException e) {
+				cancel();
+				this.downstream.onError(e);
+				continue;
+			}
+			synchronized (this) {
+				if (this.cancelled) {
+					continue;
+				}
+			}
+			this.downstream.onNext(result);
+		}
+	}
+
+	private static long addCapped(long a, long b) {
+		long sum = a + b;
+		return sum < 0 ? Long.MAX_VALUE : sum;
+	}
+
+}
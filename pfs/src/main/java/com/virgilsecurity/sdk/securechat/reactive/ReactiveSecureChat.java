@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.reactive;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.virgilsecurity.sdk.client.model.CardModel;
+import com.virgilsecurity.sdk.securechat.SecureChat;
+import com.virgilsecurity.sdk.securechat.model.DecryptedMessage;
+import com.virgilsecurity.sdk.securechat.model.EncryptedMessage;
+import com.virgilsecurity.sdk.securechat.model.InboundMessage;
+import com.virgilsecurity.sdk.securechat.model.OutboundMessage;
+import com.virgilsecurity.sdk.securechat.session.SecureSession;
+
+/**
+ * Reactive facade of {@link SecureChat}. Blocking storage and service calls
+ * are performed on the scheduler, so caller threads are never blocked.
+ * 
+ * Processors returned by this class publish no more elements than requested
+ * by their subscribers, and publish elements in order they were received.
+ * Errors of individual messages are published as results, so one bad message
+ * doesn't terminate the stream.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class ReactiveSecureChat {
+
+	private SecureChat secureChat;
+	private Executor scheduler;
+
+	/**
+	 * Create new instance of {@link ReactiveSecureChat} with a scheduler which
+	 * creates threads as needed.
+	 * 
+	 * @param secureChat
+	 *            the secure chat.
+	 */
+	public ReactiveSecureChat(SecureChat secureChat) {
+		this(secureChat, Executors.newCachedThreadPool(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "virgil-reactive");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+	}
+
+	/**
+	 * Create new instance of {@link ReactiveSecureChat}.
+	 * 
+	 * @param secureChat
+	 *            the secure chat.
+	 * @param scheduler
+	 *            the executor blocking operations are performed with.
+	 */
+	public ReactiveSecureChat(SecureChat secureChat, Executor scheduler) {
+		this.secureChat = secureChat;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Creates processor which decrypts received messages. Each processor
+	 * should be subscribed to one publisher and has one subscriber.
+	 * 
+	 * @return the decrypting processor.
+	 */
+	public Processor<InboundMessage, DecryptedMessage> decryptor() {
+		return new MappingProcessor<>(new MappingProcessor.Function<InboundMessage, DecryptedMessage>() {
+
+			@Override
+			public DecryptedMessage apply(InboundMessage message) {
+				return secureChat.decrypt(message);
+			}
+		}, this.scheduler);
+	}
+
+	/**
+	 * Creates processor which encrypts messages with active session. If there
+	 * is no active session with recipient, new session is started. Each
+	 * processor should be subscribed to one publisher and has one subscriber.
+	 * 
+	 * @return the encrypting processor.
+	 */
+	public Processor<OutboundMessage, EncryptedMessage> encryptor() {
+		return new MappingProcessor<>(new MappingProcessor.Function<OutboundMessage, EncryptedMessage>() {
+
+			@Override
+			public EncryptedMessage apply(OutboundMessage message) {
+				try {
+					SecureSession session = secureChat.activeSession(message.getCard().getId());
+					if (session == null) {
+						session = secureChat.startNewSession(message.getCard(), message.getAdditionalData());
+					}
+					return new EncryptedMessage(message, session.encrypt(message.getText()), null);
+				} catch (Exception e) {
+					return new EncryptedMessage(message, null, e);
+				}
+			}
+		}, this.scheduler);
+	}
+
+	/**
+	 * Creates publisher which rotates keys when requested. The publisher
+	 * completes with no elements.
+	 * 
+	 * @param desiredNumberOfCards
+	 *            The desired number of one-time cards.
+	 * @return the publisher.
+	 * 
+	 * @see SecureChat#rotateKeys(int)
+	 */
+	public Publisher<Void> rotateKeys(final int desiredNumberOfCards) {
+		return new SinglePublisher<>(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				secureChat.rotateKeys(desiredNumberOfCards);
+				return null;
+			}
+		}, this.scheduler);
+	}
+
+	/**
+	 * Creates publisher which starts new session with given recipient when
+	 * requested.
+	 * 
+	 * @param recipientCard
+	 *            The recipient's identity Virgil Card.
+	 * @param additionalData
+	 *            Data for additional authorization.
+	 * @return the publisher of started session.
+	 * 
+	 * @see SecureChat#startNewSession(CardModel, byte[])
+	 */
+	public Publisher<SecureSession> startNewSession(final CardModel recipientCard, final byte[] additionalData) {
+		return new SinglePublisher<>(new Callable<SecureSession>() {
+
+			@Override
+			public SecureSession call() throws Exception {
+				return secureChat.startNewSession(recipientCard, additionalData);
+			}
+		}, this.scheduler);
+	}
+
+}
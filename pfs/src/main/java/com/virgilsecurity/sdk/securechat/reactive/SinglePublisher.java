@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.reactive;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link Publisher} which calls an operation on the scheduler when subscriber
+ * requests an element, and publishes the result. The operation is called
+ * once for each subscriber. A {@code null} result completes subscriber with
+ * no elements.
+ * 
+ * @author Andrii Iakovenko
+ *
+ * @param <T>
+ *            the type of element signaled.
+ */
+class SinglePublisher<T> implements Publisher<T> {
+
+	private final Callable<T> operation;
+	private final Executor scheduler;
+
+	/**
+	 * Create new instance of {@link SinglePublisher}.
+	 * 
+	 * @param operation
+	 *            the operation.
+	 * @param scheduler
+	 *            the executor the operation is called with.
+	 */
+	SinglePublisher(Callable<T> operation, Executor scheduler) {
+		this.operation = operation;
+		this.scheduler = scheduler;
+	}
+
+	@Override
+	public void subscribe(final Subscriber<? super T> subscriber) {
+		final AtomicBoolean requested = new AtomicBoolean();
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		subscriber.onSubscribe(new Subscription() {
+
+			@Override
+			public void request(long n) {
+				if (n <= 0) {
+					if (!cancelled.getAndSet(true)) {
+						subscriber.onError(
+								new IllegalArgumentException("Requested number of elements should be positive"));
+					}
+					return;
+				}
+				if (requested.getAndSet(true)) {
+					return;
+				}
+				try {
+					scheduler.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							call(subscriber, cancelled);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					if (!cancelled.getAndSet(true)) {
+						subscriber.onError(e);
+					}
+				}
+			}
+
+			@Override
+			public void cancel() {
+				cancelled.set(true);
+			}
+		});
+	}
+
+	private void call(Subscriber<? super T> subscriber, AtomicBoolean cancelled) {
+		if (cancelled.get()) {
+			return;
+		}
+		T result;
+		try {
+			result = this.operation.call();
+		} catch (Exception e) {
+			if (!cancelled.getAndSet(true)) {
+				subscriber.onError(e);
+			}
+			return;
+		}
+		if (cancelled.getAndSet(true)) {
+			return;
+		}
+		if (result != null) {
+			subscriber.onNext(result);
+		}
+		subscriber.onComplete();
+	}
+
+}
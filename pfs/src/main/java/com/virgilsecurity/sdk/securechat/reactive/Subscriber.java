@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.reactive;
+
+/**
+ * Receiver of elements from a {@link Publisher}. No elements are received
+ * until {@link Subscription#request(long)} is called.
+ * 
+ * Mirrors {@code org.reactivestreams.Subscriber}.
+ * 
+ * @author Andrii Iakovenko
+ *
+ * @param <T>
+ *            the type of element signaled.
+ */
+public interface Subscriber<T> {
+
+	/**
+	 * Invoked after calling {@link Publisher#subscribe(Subscriber)}.
+	 * 
+	 * @param subscription
+	 *            the subscription used to request elements and cancel.
+	 */
+	void onSubscribe(Subscription subscription);
+
+	/**
+	 * Data notification sent by the {@link Publisher} in response to requests
+	 * to {@link Subscription#request(long)}.
+	 * 
+	 * @param item
+	 *            the element signaled.
+	 */
+	void onNext(T item);
+
+	/**
+	 * Failed terminal state. No further events will be sent.
+	 * 
+	 * @param throwable
+	 *            the error signaled.
+	 */
+	void onError(Throwable throwable);
+
+	/**
+	 * Successful terminal state. No further events will be sent.
+	 */
+	void onComplete();
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.session;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.virgilsecurity.crypto.VirgilPFSPrivateKey;
+import com.virgilsecurity.sdk.crypto.Crypto;
+import com.virgilsecurity.sdk.crypto.KeyPair;
+import com.virgilsecurity.sdk.crypto.PrivateKey;
+import com.virgilsecurity.sdk.crypto.PublicKey;
+
+/**
+ * Pool of pre-generated ephemeral keys. Each key is exported and its public
+ * key is signed with identity private key in background, so initiator session
+ * creation doesn't spend time on key generation.
+ * 
+ * If the pool is empty, a key is generated by the calling thread.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class EphemeralKeyPool {
+
+	/**
+	 * Ephemeral key prepared for initiator session.
+	 * 
+	 * @author Andrii Iakovenko
+	 *
+	 */
+	public static class EphemeralKey {
+
+		/**
+		 * Prepare ephemeral key.
+		 * 
+		 * @param crypto
+		 *            the crypto.
+		 * @param identityPrivateKey
+		 *            the identity private key which signs ephemeral public key.
+		 * @param privateKey
+		 *            the ephemeral private key.
+		 * @param publicKey
+		 *            the ephemeral public key.
+		 * @return the prepared ephemeral key.
+		 */
+		public static EphemeralKey create(Crypto crypto, PrivateKey identityPrivateKey, PrivateKey privateKey,
+				PublicKey publicKey) {
+			byte[] privateKeyData = crypto.exportPrivateKey(privateKey);
+			byte[] publicKeyData = crypto.exportPublicKey(publicKey);
+			byte[] signature = crypto.sign(publicKeyData, identityPrivateKey);
+
+			return new EphemeralKey(privateKey, new VirgilPFSPrivateKey(privateKeyData), publicKeyData, signature);
+		}
+
+		private PrivateKey privateKey;
+		private VirgilPFSPrivateKey pfsPrivateKey;
+		private byte[] publicKeyData;
+		private byte[] publicKeySignature;
+
+		private EphemeralKey(PrivateKey privateKey, VirgilPFSPrivateKey pfsPrivateKey, byte[] publicKeyData,
+				byte[] publicKeySignature) {
+			this.privateKey = privateKey;
+			this.pfsPrivateKey = pfsPrivateKey;
+			this.publicKeyData = publicKeyData;
+			this.publicKeySignature = publicKeySignature;
+		}
+
+		/**
+		 * @return the ephemeral private key.
+		 */
+		public PrivateKey getPrivateKey() {
+			return privateKey;
+		}
+
+		/**
+		 * @return the ephemeral private key prepared for PFS.
+		 */
+		public VirgilPFSPrivateKey getPfsPrivateKey() {
+			return pfsPrivateKey;
+		}
+
+		/**
+		 * @return the exported ephemeral public key.
+		 */
+		public byte[] getPublicKeyData() {
+			return publicKeyData;
+		}
+
+		/**
+		 * @return the signature of exported ephemeral public key.
+		 */
+		public byte[] getPublicKeySignature() {
+			return publicKeySignature;
+		}
+	}
+
+	private static final Logger log = Logger.getLogger(EphemeralKeyPool.class.getName());
+
+	/** The default number of prepared keys. */
+	public static final int DEFAULT_SIZE = 4;
+
+	private Crypto crypto;
+	private PrivateKey identityPrivateKey;
+	private int size;
+	private Executor executor;
+	private boolean ownExecutor;
+
+	private final Deque<EphemeralKey> keys = new ArrayDeque<>();
+	private final AtomicBoolean refilling = new AtomicBoolean();
+
+	/**
+	 * Create new instance of {@link EphemeralKeyPool}.
+	 * 
+	 * @param crypto
+	 *            the crypto.
+	 * @param identityPrivateKey
+	 *            the identity private key.
+	 * @param size
+	 *            the number of prepared keys.
+	 * @param executor
+	 *            the executor keys are generated with. If {@code null}, a
+	 *            single daemon thread is used.
+	 */
+	public EphemeralKeyPool(Crypto crypto, PrivateKey identityPrivateKey, int size, Executor executor) {
+		this.crypto = crypto;
+		this.identityPrivateKey = identityPrivateKey;
+		this.size = size;
+		if (executor == null) {
+			this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "virgil-ephemeral-keys");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.ownExecutor = true;
+		} else {
+			this.executor = executor;
+		}
+	}
+
+	/**
+	 * Take prepared key from the pool, or generate a new one if the pool is
+	 * empty. The pool is refilled in background.
+	 * 
+	 * @return the ephemeral key.
+	 */
+	public EphemeralKey take() {
+		EphemeralKey key;
+		synchronized (this.keys) {
+			key = this.keys.pollFirst();
+		}
+		refill();
+		if (key == null) {
+			key = generate();
+		}
+		return key;
+	}
+
+	/**
+	 * Generate and prepare a new ephemeral key.
+	 * 
+	 * @return the ephemeral key.
+	 */
+	public EphemeralKey generate() {
+		KeyPair keyPair = this.crypto.generateKeys();
+		return EphemeralKey.create(this.crypto, this.identityPrivateKey, keyPair.getPrivateKey(),
+				keyPair.getPublicKey());
+	}
+
+	/**
+	 * Start background generation of keys if the pool is not full.
+	 */
+	public void refill() {
+		if (getAvailableCount() >= this.size || !this.refilling.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					boolean filled = false;
+					try {
+						while (getAvailableCount() < size) {
+							EphemeralKey key = generate();
+							synchronized (keys) {
+								keys.offerLast(key);
+							}
+						}
+						filled = true;
+					} catch (Exception e) {
+						log.log(Level.WARNING, "Ephemeral keys generation failed", e);
+					} finally {
+						refilling.set(false);
+					}
+					if (filled) {
+						// Keys taken before the flag was cleared didn't start
+						// refill
+						refill();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.refilling.set(false);
+			log.log(Level.FINE, "Ephemeral keys generation rejected", e);
+		}
+	}
+
+	/**
+	 * @return the number of prepared keys.
+	 */
+	public int getAvailableCount() {
+		synchronized (this.keys) {
+			return this.keys.size();
+		}
+	}
+
+	/**
+	 * Stop background generation and discard prepared keys.
+	 */
+	public void shutdown() {
+		if (this.ownExecutor) {
+			((ExecutorService) this.executor).shutdown();
+		}
+		synchronized (this.keys) {
+			this.keys.clear();
+		}
+	}
+
+}
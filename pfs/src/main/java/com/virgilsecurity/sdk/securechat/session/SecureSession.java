@@ -29,8 +29,14 @@
  */
 package com.virgilsecurity.sdk.securechat.session;
 
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Deque;
+import java.util.List;
 
 import com.virgilsecurity.crypto.VirgilPFS;
 import com.virgilsecurity.crypto.VirgilPFSEncryptedMessage;
@@ -39,52 +45,245 @@ import com.virgilsecurity.sdk.securechat.exceptions.NoSessionException;
 import com.virgilsecurity.sdk.securechat.model.InitiationMessage;
 import com.virgilsecurity.sdk.securechat.model.Message;
 import com.virgilsecurity.sdk.securechat.session.SessionInitializer.FirstMessageGenerator;
+import com.virgilsecurity.sdk.securechat.utils.BufferPool;
 import com.virgilsecurity.sdk.securechat.utils.GsonUtils;
+import com.virgilsecurity.sdk.securechat.utils.PooledCharArrayWriter;
+import com.virgilsecurity.sdk.securechat.utils.ResourceCleaner;
+import com.virgilsecurity.sdk.securechat.utils.ResourceCleaner.Cleanable;
 import com.virgilsecurity.sdk.securechat.utils.SessionStateResolver;
 import com.virgilsecurity.sdk.utils.ConvertionUtils;
 
 /**
+ * Secure session could be used by several threads at once. Each encryption or
+ * decryption takes a native PFS context initialized with the session keys from
+ * the pool of idle contexts, or takes a new one from {@link VirgilPFSPool} if
+ * all contexts are busy.
+ * 
+ * Session should be closed when it's not used anymore, so its native contexts
+ * are returned to the pool and its native session is released.
+ * 
  * @author Andrii Iakovenko
  *
  */
-public class SecureSession {
+public class SecureSession implements AutoCloseable {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 
 	public static InitiationMessage extractInitiationMessage(byte[] message) {
-		String json = ConvertionUtils.toString(message);
-		InitiationMessage msg = GsonUtils.getGson().fromJson(json, InitiationMessage.class);
-		return msg;
+		return fromJson(message, InitiationMessage.class);
 	}
 	public static InitiationMessage extractInitiationMessage(String jsonMessage) {
 		InitiationMessage msg = GsonUtils.getGson().fromJson(jsonMessage, InitiationMessage.class);
 		return msg;
 	}
 	public static Message extractMessage(byte[] message) {
-		String json = ConvertionUtils.toString(message);
-		return extractMessage(json);
+		return fromJson(message, Message.class);
 	}
 	public static Message extractMessage(String jsonMessage) {
 		Message msg = GsonUtils.getGson().fromJson(jsonMessage, Message.class);
 		return msg;
 	}
 
+	private static <T> T fromJson(byte[] json, Class<T> clazz) {
+		PooledCharArrayWriter writer = new PooledCharArrayWriter(BufferPool.getDefault());
+		try {
+			writer.decode(json, 0, json.length, UTF8);
+			return GsonUtils.getGson().fromJson(writer.toReader(), clazz);
+		} catch (CharacterCodingException e) {
+			return GsonUtils.getGson().fromJson(ConvertionUtils.toString(json), clazz);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * PFS contexts and native session of secure session. Doesn't reference the
+	 * session, so it could be released when the session is unreachable.
+	 */
+	private static class SessionContexts implements AutoCloseable {
+
+		private final VirgilPFSPool pool;
+		private final VirgilPFSSession pfsSession;
+		private final VirgilPFS primary;
+
+		/* Idle PFS contexts */
+		private final Deque<VirgilPFS> idle = new ArrayDeque<>();
+		private int maxIdle = Runtime.getRuntime().availableProcessors();
+		private boolean closed;
+
+		/* Primary context is owned by caller of getPfs() */
+		private boolean primaryExposed;
+
+		SessionContexts(VirgilPFSPool pool, VirgilPFSSession pfsSession) {
+			this.pool = pool;
+			this.pfsSession = pfsSession;
+			this.primary = acquireFromPool();
+			this.idle.add(this.primary);
+		}
+
+		private VirgilPFS acquireFromPool() {
+			if (this.pfsSession == null) {
+				// Pooled context is useless without session keys
+				return new VirgilPFS();
+			}
+			VirgilPFS context = this.pool.acquire();
+			context.setSession(this.pfsSession);
+			return context;
+		}
+
+		VirgilPFS acquire() {
+			synchronized (this.idle) {
+				checkOpen();
+				VirgilPFS context = this.idle.pollFirst();
+				if (context != null) {
+					return context;
+				}
+				// Native session should not be closed while it's copied
+				return acquireFromPool();
+			}
+		}
+
+		private void checkOpen() {
+			if (this.closed) {
+				throw new IllegalStateException("Secure session is closed");
+			}
+		}
+
+		byte[] getAdditionalData() {
+			synchronized (this.idle) {
+				checkOpen();
+				return this.pfsSession.getAdditionalData();
+			}
+		}
+
+		byte[] getDecryptionKey() {
+			synchronized (this.idle) {
+				checkOpen();
+				return this.pfsSession.getDecryptionSecretKey();
+			}
+		}
+
+		byte[] getEncryptionKey() {
+			synchronized (this.idle) {
+				checkOpen();
+				return this.pfsSession.getEncryptionSecretKey();
+			}
+		}
+
+		void release(VirgilPFS context) {
+			synchronized (this.idle) {
+				if (context == this.primary && this.primaryExposed) {
+					return;
+				}
+				if (!this.closed && (context == this.primary || this.idle.size() < this.maxIdle)) {
+					this.idle.offerFirst(context);
+					return;
+				}
+			}
+			this.pool.release(context);
+		}
+
+		/*
+		 * Hand out primary context. It's not used for encryption and decryption
+		 * and never returns to pool after that
+		 */
+		VirgilPFS expose() {
+			synchronized (this.idle) {
+				checkOpen();
+				if (!this.primaryExposed) {
+					this.primaryExposed = true;
+					this.idle.remove(this.primary);
+				}
+				return this.primary;
+			}
+		}
+
+		void setMaxIdle(int maxIdle) {
+			synchronized (this.idle) {
+				this.maxIdle = Math.max(1, maxIdle);
+			}
+		}
+
+		@Override
+		public void close() {
+			List<VirgilPFS> contexts;
+			synchronized (this.idle) {
+				if (this.closed) {
+					return;
+				}
+				this.closed = true;
+				contexts = new ArrayList<>(this.idle);
+				this.idle.clear();
+				if (this.pfsSession != null) {
+					// Contexts keep own copy of the session
+					this.pfsSession.close();
+				}
+			}
+			for (VirgilPFS context : contexts) {
+				this.pool.release(context);
+			}
+		}
+	}
+
 	private Date expirationDate;
 
-	private VirgilPFS pfs;
+	/* Identifier of the session, available after the session is closed */
+	private final byte[] identifier;
 
-	private VirgilPFSSession pfsSession;
+	private volatile FirstMessageGenerator firstMsgGenerator;
 
-	private FirstMessageGenerator firstMsgGenerator;
+	private BufferPool bufferPool = BufferPool.getDefault();
+
+	private final SessionContexts contexts;
+
+	private final Cleanable cleanable;
 
 	public SecureSession() {
-		this.pfs = new VirgilPFS();
+		this(null, null, null, VirgilPFSPool.getDefault());
 	}
 
 	public SecureSession(VirgilPFSSession pfsSession, Date expirationDate, FirstMessageGenerator firstMsgGenerator) {
-		this();
+		this(pfsSession, expirationDate, firstMsgGenerator, VirgilPFSPool.getDefault());
+	}
+
+	/**
+	 * Create new instance of {@link SecureSession}.
+	 * 
+	 * @param pfsSession
+	 *            the PFS session.
+	 * @param expirationDate
+	 *            the session expiration date.
+	 * @param firstMsgGenerator
+	 *            the initiation message generator, or {@code null} if session
+	 *            is already established.
+	 * @param pfsPool
+	 *            the pool of native PFS contexts.
+	 */
+	public SecureSession(VirgilPFSSession pfsSession, Date expirationDate, FirstMessageGenerator firstMsgGenerator,
+			VirgilPFSPool pfsPool) {
 		this.expirationDate = expirationDate;
-		this.pfsSession = pfsSession;
-		this.pfs.setSession(pfsSession);
+		this.identifier = (pfsSession == null) ? null : pfsSession.getIdentifier();
 		this.firstMsgGenerator = firstMsgGenerator;
+		this.contexts = new SessionContexts(pfsPool, pfsSession);
+		this.cleanable = ResourceCleaner.register(this, this.contexts);
+	}
+
+	private VirgilPFS acquireContext() {
+		return this.contexts.acquire();
+	}
+
+	private void releaseContext(VirgilPFS context) {
+		this.contexts.release(context);
+	}
+
+	/**
+	 * Release native PFS contexts and native session of this session. Closed
+	 * session can't be used for encryption and decryption anymore. Session
+	 * which is not closed is released when it becomes unreachable.
+	 */
+	@Override
+	public void close() {
+		this.cleanable.clean();
 	}
 
 	/**
@@ -98,7 +297,13 @@ public class SecureSession {
 		VirgilPFSEncryptedMessage message = new VirgilPFSEncryptedMessage(encryptedMessage.getSessionId(),
 				encryptedMessage.getSalt(), encryptedMessage.getCipherText());
 
-		byte[] msgData = this.pfs.decrypt(message);
+		byte[] msgData;
+		VirgilPFS context = acquireContext();
+		try {
+			msgData = context.decrypt(message);
+		} finally {
+			releaseContext(context);
+		}
 		String str = ConvertionUtils.toString(msgData);
 		return str;
 	}
@@ -114,7 +319,7 @@ public class SecureSession {
 		Message message = null;
 		if (SessionStateResolver.isInitiationMessage(encryptedMessage)) {
 			InitiationMessage initiationMessage = SecureSession.extractInitiationMessage(encryptedMessage);
-			message = new Message(this.pfsSession.getIdentifier(), initiationMessage.getSalt(),
+			message = new Message(getIdentifier(), initiationMessage.getSalt(),
 					initiationMessage.getCipherText());
 		} else {
 			message = SecureSession.extractMessage(encryptedMessage);
@@ -131,37 +336,63 @@ public class SecureSession {
 	 * @throws NoSessionException
 	 */
 	public String encrypt(String message) throws NoSessionException {
+		return encrypt(ConvertionUtils.toBytes(message));
+	}
+
+	/**
+	 * Encrypts message data. The data is not modified, so the same array can
+	 * be encrypted with many sessions.
+	 * 
+	 * @param messageData
+	 *            the UTF-8 encoded message to encrypt.
+	 * @return the encrypted message.
+	 * @throws NoSessionException
+	 */
+	public String encrypt(byte[] messageData) throws NoSessionException {
 
-		// Initiation message
+		// Initiation message. Concurrent callers wait until it's generated, so
+		// no regular message is produced before the initiation one
 		if (this.firstMsgGenerator != null) {
-			String encryptedMessage = firstMsgGenerator.generate(this, message);
-			this.firstMsgGenerator = null;
-			return encryptedMessage;
+			synchronized (this) {
+				if (this.firstMsgGenerator != null) {
+					String encryptedMessage = firstMsgGenerator.generate(this, messageData);
+					this.firstMsgGenerator = null;
+					return encryptedMessage;
+				}
+			}
 		}
 
-		byte[] messageData = ConvertionUtils.toBytes(message);
-
-		VirgilPFSEncryptedMessage encryptedMessage = this.pfs.encrypt(messageData);
+		VirgilPFSEncryptedMessage encryptedMessage = encryptData(messageData);
 
 		Message msg = new Message(encryptedMessage.getSessionIdentifier(), encryptedMessage.getSalt(),
 				encryptedMessage.getCipherText());
 
-		String msgStr = GsonUtils.getGson().toJson(msg);
-
-		return msgStr;
+		return toJson(msg);
 	}
 
 	public String encryptInitiationMessage(String message, byte[] ephPublicKeyData, byte[] ephPublicKeySignature,
 			String initiatorIcId, String responderIcId, String responderLtcId, String responderOtcId) {
-		byte[] messageData = ConvertionUtils.toBytes(message);
+		return encryptInitiationMessage(ConvertionUtils.toBytes(message), ephPublicKeyData, ephPublicKeySignature,
+				initiatorIcId, responderIcId, responderLtcId, responderOtcId);
+	}
 
-		VirgilPFSEncryptedMessage encryptedMessage = this.pfs.encrypt(messageData);
+	public String encryptInitiationMessage(byte[] messageData, byte[] ephPublicKeyData, byte[] ephPublicKeySignature,
+			String initiatorIcId, String responderIcId, String responderLtcId, String responderOtcId) {
+		VirgilPFSEncryptedMessage encryptedMessage = encryptData(messageData);
 
 		InitiationMessage initMsg = new InitiationMessage(initiatorIcId, responderIcId, responderLtcId, responderOtcId,
 				ephPublicKeyData, ephPublicKeySignature, encryptedMessage.getSalt(), encryptedMessage.getCipherText());
 
-		String msg = ConvertionUtils.getGson().toJson(initMsg);
-		return msg;
+		return toJson(initMsg);
+	}
+
+	private VirgilPFSEncryptedMessage encryptData(byte[] messageData) {
+		VirgilPFS context = acquireContext();
+		try {
+			return context.encrypt(messageData);
+		} finally {
+			releaseContext(context);
+		}
 	}
 
 	/*
@@ -185,8 +416,8 @@ public class SecureSession {
 		} else if (!expirationDate.equals(other.expirationDate)) {
 			return false;
 		}
-		if (pfsSession == null) {
-			if (other.pfsSession != null) {
+		if (identifier == null) {
+			if (other.identifier != null) {
 				return false;
 			}
 		} else {
@@ -202,16 +433,31 @@ public class SecureSession {
 		return true;
 	}
 
+	/**
+	 * @return the session additional data.
+	 * @throws IllegalStateException
+	 *             if session is closed.
+	 */
 	public byte[] getAdditionalData() {
-		return this.pfsSession.getAdditionalData();
+		return this.contexts.getAdditionalData();
 	}
 
+	/**
+	 * @return the session decryption key.
+	 * @throws IllegalStateException
+	 *             if session is closed.
+	 */
 	public byte[] getDecryptionKey() {
-		return this.pfsSession.getDecryptionSecretKey();
+		return this.contexts.getDecryptionKey();
 	}
 
+	/**
+	 * @return the session encryption key.
+	 * @throws IllegalStateException
+	 *             if session is closed.
+	 */
 	public byte[] getEncryptionKey() {
-		return this.pfsSession.getEncryptionSecretKey();
+		return this.contexts.getEncryptionKey();
 	}
 
 	/**
@@ -222,14 +468,24 @@ public class SecureSession {
 	}
 
 	public byte[] getIdentifier() {
-		return this.pfsSession.getIdentifier();
+		return (this.identifier == null) ? null : this.identifier.clone();
 	}
 
 	/**
+	 * Get the primary PFS context of this session. The context is owned by
+	 * caller since then: it's not used by {@link #encrypt(String)} and
+	 * {@link #decrypt(Message)} anymore, and it's not returned to the pool when
+	 * the session is closed.
+	 * 
 	 * @return the pfs
+	 * @throws IllegalStateException
+	 *             if session is closed.
+	 * @deprecated Use {@link #encrypt(String)} and {@link #decrypt(Message)}
+	 *             which are safe for concurrent use.
 	 */
+	@Deprecated
 	public VirgilPFS getPfs() {
-		return pfs;
+		return this.contexts.expose();
 	}
 
 	/*
@@ -242,12 +498,39 @@ public class SecureSession {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((expirationDate == null) ? 0 : expirationDate.hashCode());
-		if (pfsSession != null) {
-			result = prime * result + Arrays.hashCode(getIdentifier());
+		if (identifier != null) {
+			result = prime * result + Arrays.hashCode(identifier);
 		}
 		return result;
 	}
 
+	/**
+	 * @param bufferPool
+	 *            the pool of buffers used to serialize messages.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	private String toJson(Object message) {
+		PooledCharArrayWriter writer = new PooledCharArrayWriter(this.bufferPool);
+		try {
+			GsonUtils.getGson().toJson(message, writer);
+			return writer.toString();
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @param maxIdleContexts
+	 *            the number of idle PFS contexts kept by this session. The
+	 *            number of available processors by default.
+	 */
+	public void setMaxIdleContexts(int maxIdleContexts) {
+		this.contexts.setMaxIdle(maxIdleContexts);
+	}
+
 	/**
 	 * Checks if this session is expired.
 	 * 
@@ -41,9 +41,11 @@ import com.virgilsecurity.crypto.VirgilPFSResponderPublicInfo;
 import com.virgilsecurity.crypto.VirgilPFSSession;
 import com.virgilsecurity.sdk.client.model.CardModel;
 import com.virgilsecurity.sdk.crypto.Crypto;
+import com.virgilsecurity.sdk.crypto.KeyPair;
 import com.virgilsecurity.sdk.crypto.PrivateKey;
-import com.virgilsecurity.sdk.crypto.PublicKey;
 import com.virgilsecurity.sdk.securechat.model.CardEntry;
+import com.virgilsecurity.sdk.securechat.session.EphemeralKeyPool.EphemeralKey;
+import com.virgilsecurity.sdk.securechat.utils.BufferPool;
 
 /**
  * @author Andrii Iakovenko
@@ -79,6 +81,14 @@ public class SessionInitializer {
 			return firstMessage;
 		}
 
+		public String generate(SecureSession secureSession, byte[] messageData) {
+			String firstMessage = secureSession.encryptInitiationMessage(messageData, this.ephPublicKeyData,
+					this.ephPublicKeySignature, this.identityCardId, this.recipientIdCardId, this.recipientLtCardId,
+					recipientOtCardId);
+
+			return firstMessage;
+		}
+
 	}
 
 	private Crypto crypto;
@@ -86,6 +96,14 @@ public class SessionInitializer {
 
 	private CardModel identityCard;
 
+	private BufferPool bufferPool = BufferPool.getDefault();
+
+	private VirgilPFSPool pfsPool = VirgilPFSPool.getDefault();
+
+	private EphemeralKeyPool ephemeralKeyPool;
+
+	private volatile VirgilPFSPrivateKey identityPfsPrivateKey;
+
 	/**
 	 * @param crypto
 	 * @param identityPrivateKey
@@ -98,16 +116,52 @@ public class SessionInitializer {
 		this.identityCard = identityCard;
 	}
 
+	/**
+	 * Get identity private key prepared for PFS. The key is exported once.
+	 */
+	private VirgilPFSPrivateKey getIdentityPfsPrivateKey() {
+		VirgilPFSPrivateKey key = this.identityPfsPrivateKey;
+		if (key == null) {
+			synchronized (this) {
+				key = this.identityPfsPrivateKey;
+				if (key == null) {
+					byte[] privateKeyData = this.crypto.exportPrivateKey(this.identityPrivateKey);
+					key = new VirgilPFSPrivateKey(privateKeyData);
+					this.identityPfsPrivateKey = key;
+				}
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Take prepared ephemeral key from the pool, or generate a new one if pool
+	 * is not set.
+	 * 
+	 * @return the ephemeral key.
+	 */
+	public EphemeralKey takeEphemeralKey() {
+		if (this.ephemeralKeyPool != null) {
+			return this.ephemeralKeyPool.take();
+		}
+		KeyPair keyPair = this.crypto.generateKeys();
+		return EphemeralKey.create(this.crypto, this.identityPrivateKey, keyPair.getPrivateKey(),
+				keyPair.getPublicKey());
+	}
+
 	public SecureSession initializeInitiatorSession(PrivateKey ephPrivateKey, CardEntry recipientIdCard,
 			CardEntry recipientLtCard, CardEntry recipientOtCard, byte[] additionalData, Date expirationDate) {
-		byte[] privateKeyData = this.crypto.exportPrivateKey(this.identityPrivateKey);
-		byte[] ephPrivateKeyData = this.crypto.exportPrivateKey(ephPrivateKey);
+		EphemeralKey ephKey = EphemeralKey.create(this.crypto, this.identityPrivateKey, ephPrivateKey,
+				this.crypto.extractPublicKey(ephPrivateKey));
 
-		VirgilPFSPrivateKey pfsPrivateKey = new VirgilPFSPrivateKey(privateKeyData);
-		VirgilPFSPrivateKey pfsEphPrivateKey = new VirgilPFSPrivateKey(ephPrivateKeyData);
+		return initializeInitiatorSession(ephKey, recipientIdCard, recipientLtCard, recipientOtCard, additionalData,
+				expirationDate);
+	}
 
-		VirgilPFSInitiatorPrivateInfo initiatorPrivateInfo = new VirgilPFSInitiatorPrivateInfo(pfsPrivateKey,
-				pfsEphPrivateKey);
+	public SecureSession initializeInitiatorSession(EphemeralKey ephKey, CardEntry recipientIdCard,
+			CardEntry recipientLtCard, CardEntry recipientOtCard, byte[] additionalData, Date expirationDate) {
+		VirgilPFSInitiatorPrivateInfo initiatorPrivateInfo = new VirgilPFSInitiatorPrivateInfo(
+				getIdentityPfsPrivateKey(), ephKey.getPfsPrivateKey());
 
 		byte[] responderPublicKeyData = recipientIdCard.getPublicKeyData();
 		VirgilPFSPublicKey pfsResponderPublicKey = new VirgilPFSPublicKey(responderPublicKeyData);
@@ -131,23 +185,26 @@ public class SessionInitializer {
 		}
 
 		VirgilPFSSession session = null;
-		try (VirgilPFS pfs = new VirgilPFS()) {
+		VirgilPFS pfs = this.pfsPool.acquire();
+		boolean reusable = false;
+		try {
 			if (additionalData == null) {
 				session = pfs.startInitiatorSession(initiatorPrivateInfo, responderPublicInfo);
 			} else {
 				session = pfs.startInitiatorSession(initiatorPrivateInfo, responderPublicInfo, additionalData);
 			}
+			reusable = true;
+		} finally {
+			releaseContext(pfs, reusable);
 		}
 
-		PublicKey ephPublicKey = this.crypto.extractPublicKey(ephPrivateKey);
-		byte[] ephPublicKeyData = this.crypto.exportPublicKey(ephPublicKey);
-		byte[] ephPublicKeySignature = this.crypto.sign(ephPublicKeyData, this.identityPrivateKey);
-
-		FirstMessageGenerator firstMessageGenerator = new FirstMessageGenerator(ephPublicKeyData, ephPublicKeySignature,
-				this.identityCard.getId(), recipientIdCard.getIdentifier(), recipientLtCard.getIdentifier(),
+		FirstMessageGenerator firstMessageGenerator = new FirstMessageGenerator(ephKey.getPublicKeyData(),
+				ephKey.getPublicKeySignature(), this.identityCard.getId(), recipientIdCard.getIdentifier(), recipientLtCard.getIdentifier(),
 				recipientOtCard == null ? null : recipientOtCard.getIdentifier());
 
-		SecureSession secureSession = new SecureSession(session, expirationDate, firstMessageGenerator);
+		SecureSession secureSession = new SecureSession(session, expirationDate, firstMessageGenerator,
+				this.pfsPool);
+		secureSession.setBufferPool(this.bufferPool);
 
 		return secureSession;
 	}
@@ -156,8 +213,7 @@ public class SessionInitializer {
 			PrivateKey ltPrivateKey, PrivateKey otPrivateKey, byte[] ephPublicKey, byte[] additionalData,
 			Date expirationDate) {
 
-		byte[] privateKeyData = this.crypto.exportPrivateKey(this.identityPrivateKey);
-		VirgilPFSPrivateKey pfsPrivateKey = new VirgilPFSPrivateKey(privateKeyData);
+		VirgilPFSPrivateKey pfsPrivateKey = getIdentityPfsPrivateKey();
 
 		byte[] ltPrivateKeyData = this.crypto.exportPrivateKey(ltPrivateKey);
 		VirgilPFSPrivateKey pfsLtPrivateKey = new VirgilPFSPrivateKey(ltPrivateKeyData);
@@ -179,22 +235,71 @@ public class SessionInitializer {
 				initiatorEphPublicKey);
 
 		VirgilPFSSession session = null;
-		try (VirgilPFS pfs = new VirgilPFS()) {
+		VirgilPFS pfs = this.pfsPool.acquire();
+		boolean reusable = false;
+		try {
 			if (additionalData == null) {
 				session = pfs.startResponderSession(responderPrivateInfo, initiatorPublicInfo);
 			} else {
 				session = pfs.startResponderSession(responderPrivateInfo, initiatorPublicInfo, additionalData);
 			}
+			reusable = true;
+		} finally {
+			releaseContext(pfs, reusable);
+		}
+
+		return createSession(session, expirationDate);
+	}
+
+	/**
+	 * @param bufferPool
+	 *            the pool of buffers used by created sessions.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * @param ephemeralKeyPool
+	 *            the pool of prepared ephemeral keys. If {@code null}, keys are
+	 *            generated on demand.
+	 */
+	public void setEphemeralKeyPool(EphemeralKeyPool ephemeralKeyPool) {
+		this.ephemeralKeyPool = ephemeralKeyPool;
+	}
+
+	/**
+	 * @param pfsPool
+	 *            the pool of native PFS contexts used for session
+	 *            initialization and by created sessions.
+	 */
+	public void setPfsPool(VirgilPFSPool pfsPool) {
+		this.pfsPool = pfsPool;
+	}
+
+	/**
+	 * Return context to pool. Context which failed to start a session is
+	 * closed, since its native state is unknown.
+	 */
+	private void releaseContext(VirgilPFS pfs, boolean reusable) {
+		if (reusable) {
+			this.pfsPool.release(pfs);
+		} else {
+			pfs.close();
 		}
+	}
 
-		return new SecureSession(session, expirationDate, null);
+	private SecureSession createSession(VirgilPFSSession session, Date expirationDate) {
+		SecureSession secureSession = new SecureSession(session, expirationDate, null, this.pfsPool);
+		secureSession.setBufferPool(this.bufferPool);
+		return secureSession;
 	}
 
 	public SecureSession initializeSavedSession(byte[] sessionId, byte[] encryptionKey, byte[] decryptionKey,
 			byte[] additionalData, Date expirationDate) {
 		VirgilPFSSession session = new VirgilPFSSession(sessionId, encryptionKey, decryptionKey, additionalData);
 
-		return new SecureSession(session, expirationDate, null);
+		return createSession(session, expirationDate);
 	}
 
 }
@@ -29,11 +29,12 @@
  */
 package com.virgilsecurity.sdk.securechat.session;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -43,7 +44,6 @@ import java.util.logging.Logger;
 
 import com.virgilsecurity.sdk.client.model.CardModel;
 import com.virgilsecurity.sdk.crypto.Crypto;
-import com.virgilsecurity.sdk.crypto.KeyPair;
 import com.virgilsecurity.sdk.crypto.PrivateKey;
 import com.virgilsecurity.sdk.crypto.PublicKey;
 import com.virgilsecurity.sdk.crypto.exceptions.CryptoException;
@@ -59,7 +59,9 @@ import com.virgilsecurity.sdk.securechat.exceptions.SessionManagerException;
 import com.virgilsecurity.sdk.securechat.model.CardEntry;
 import com.virgilsecurity.sdk.securechat.model.InitiationMessage;
 import com.virgilsecurity.sdk.securechat.model.SessionState;
+import com.virgilsecurity.sdk.securechat.session.EphemeralKeyPool.EphemeralKey;
 import com.virgilsecurity.sdk.securechat.utils.ArrayUtils;
+import com.virgilsecurity.sdk.securechat.utils.SingleFlight;
 import com.virgilsecurity.sdk.utils.ConvertionUtils;
 import com.virgilsecurity.sdk.utils.StringUtils;
 
@@ -70,6 +72,18 @@ import com.virgilsecurity.sdk.utils.StringUtils;
 public class SessionManager {
 	private static final Logger log = Logger.getLogger(KeysRotator.class.getName());
 
+	private static final int MAX_CACHED_PUBLIC_KEYS = 256;
+
+	private static class ImportedPublicKey {
+		private byte[] publicKeyData;
+		private PublicKey publicKey;
+
+		ImportedPublicKey(byte[] publicKeyData, PublicKey publicKey) {
+			this.publicKeyData = publicKeyData;
+			this.publicKey = publicKey;
+		}
+	}
+
 	private CardModel identityCard;
 	private PrivateKey identityPrivateKey;
 	private Crypto crypto;
@@ -78,13 +92,27 @@ public class SessionManager {
 	private SessionStorageManager sessionStorageManager;
 	private SessionInitializer sessionInitializer;
 
-	private Map<byte[], SecureSession> loadUpCache;
-	private Map<String, SecureSession> activeSessionCache;
+	private volatile Map<byte[], SecureSession> loadUpCache;
+	private volatile Map<String, SecureSession> activeSessionCache;
+	private SingleFlight<ByteBuffer, SecureSession> recoveries;
+
+	/* Imported initiators identity public keys, least recently used go first */
+	private Map<String, ImportedPublicKey> publicKeysCache;
 
 	public SessionManager() {
-		this.loadUpCache = Collections
-				.synchronizedMap(new TreeMap<byte[], SecureSession>(new ArrayUtils.ArrayComparator()));
+		this.loadUpCache = createLoadUpCache();
 		this.activeSessionCache = new ConcurrentHashMap<>();
+		this.recoveries = new SingleFlight<>();
+		this.publicKeysCache = Collections
+				.synchronizedMap(new LinkedHashMap<String, ImportedPublicKey>(16, 0.75f, true) {
+
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Entry<String, ImportedPublicKey> eldest) {
+						return size() > MAX_CACHED_PUBLIC_KEYS;
+					}
+				});
 	}
 
 	public SessionManager(CardModel card, PrivateKey privateKey, Crypto crypto, int sessionTtl,
@@ -119,11 +147,10 @@ public class SessionManager {
 			return session;
 		} else {
 			try {
-				session = this.recoverSession(this.identityCard, sessionState);
+				session = this.recoverCachedSession(sessionState);
 
 				// Put session in caches
 				this.activeSessionCache.put(cardId, session);
-				this.loadUpCache.put(session.getIdentifier(), session);
 
 				return session;
 			} catch (Exception e) {
@@ -182,9 +209,6 @@ public class SessionManager {
 			oneTimePublicKeyData = cardsSet.getOneTimeCard().getSnapshotModel().getPublicKeyData();
 		}
 
-		KeyPair ephKeyPair = this.crypto.generateKeys();
-		PrivateKey ephPrivateKey = ephKeyPair.getPrivateKey();
-
 		EphemeralCardValidator validator = new EphemeralCardValidator(this.crypto);
 
 		try {
@@ -219,8 +243,10 @@ public class SessionManager {
 		cal.add(Calendar.SECOND, this.sessionTtl);
 		Date expirationDate = cal.getTime();
 
-		SecureSession secureSession = this.sessionInitializer.initializeInitiatorSession(ephPrivateKey,
-				identityCardEntry, ltCardEntry, otCardEntry, additionalData, expirationDate);
+		EphemeralKey ephKey = this.sessionInitializer.takeEphemeralKey();
+
+		SecureSession secureSession = this.sessionInitializer.initializeInitiatorSession(ephKey, identityCardEntry,
+				ltCardEntry, otCardEntry, additionalData, expirationDate);
 
 		this.saveSession(secureSession, creationDate, recipientCard.getId());
 
@@ -233,7 +259,7 @@ public class SessionManager {
 			byte[] additionalData) throws SessionManagerException {
 		PublicKey initiatorPublicKey;
 		try {
-			initiatorPublicKey = this.crypto.importPublicKey(initiatorCardEntry.getPublicKeyData());
+			initiatorPublicKey = this.importIdentityPublicKey(initiatorCardEntry);
 		} catch (Exception e) {
 			throw new SessionManagerException(
 					Constants.Errors.SessionManager.IMPORTING_INITIATOR_PUBLIC_KEY_FROM_IDENTITY_CARD,
@@ -292,6 +318,21 @@ public class SessionManager {
 		return secureSession;
 	}
 
+	private PublicKey importIdentityPublicKey(CardEntry cardEntry) {
+		byte[] publicKeyData = cardEntry.getPublicKeyData();
+
+		ImportedPublicKey importedKey = this.publicKeysCache.get(cardEntry.getIdentifier());
+		if (importedKey != null && Arrays.equals(importedKey.publicKeyData, publicKeyData)) {
+			return importedKey.publicKey;
+		}
+
+		PublicKey publicKey = this.crypto.importPublicKey(publicKeyData);
+		this.publicKeysCache.put(cardEntry.getIdentifier(),
+				new ImportedPublicKey(Arrays.copyOf(publicKeyData, publicKeyData.length), publicKey));
+
+		return publicKey;
+	}
+
 	public SecureSession loadSession(String recipientCardId, byte[] sessionId) throws SessionManagerException {
 		// Look for cached value
 		SecureSession session = this.loadUpCache.get(sessionId);
@@ -304,11 +345,28 @@ public class SessionManager {
 			throw new SessionManagerException(Constants.Errors.SessionManager.SESSION_NOT_FOUND, "Session not found.");
 		}
 
-		session = this.recoverSession(this.identityCard, sessionState);
-
-		this.loadUpCache.put(sessionId, session);
+		return this.recoverCachedSession(sessionState);
+	}
 
-		return session;
+	/*
+	 * Recover session and put it in load up cache. Concurrent recoveries of
+	 * the same session are coalesced
+	 */
+	private SecureSession recoverCachedSession(final SessionState sessionState) {
+		return this.recoveries.execute(ByteBuffer.wrap(sessionState.getSessionId()),
+				new SingleFlight.Call<SecureSession, RuntimeException>() {
+
+					@Override
+					public SecureSession call() {
+						// Session could be recovered by previous call
+						SecureSession session = loadUpCache.get(sessionState.getSessionId());
+						if (session == null) {
+							session = recoverSession(identityCard, sessionState);
+							loadUpCache.put(session.getIdentifier(), session);
+						}
+						return session;
+					}
+				});
 	}
 
 	private SecureSession recoverSession(CardModel myIdentityCard, SessionState sessionState) {
@@ -351,7 +409,12 @@ public class SessionManager {
 			if (Arrays.equals(session.getIdentifier(), sessionId)) {
 				this.activeSessionCache.remove(cardId);
 			}
-			this.loadUpCache.remove(sessionId);
+			SecureSession removedSession = this.loadUpCache.remove(sessionId);
+
+			// Release native resources of evicted session
+			if (removedSession != null) {
+				removedSession.close();
+			}
 		}
 	}
 
@@ -394,8 +457,25 @@ public class SessionManager {
 	}
 
 	public void wipeCache() {
-		this.loadUpCache = new HashMap<>();
-		this.activeSessionCache = new HashMap<>();
+		Map<byte[], SecureSession> loadUpCache = this.loadUpCache;
+		Map<String, SecureSession> activeSessionCache = this.activeSessionCache;
+
+		this.loadUpCache = createLoadUpCache();
+		this.activeSessionCache = new ConcurrentHashMap<>();
+
+		// Release native resources of evicted sessions
+		synchronized (loadUpCache) {
+			for (SecureSession session : loadUpCache.values()) {
+				session.close();
+			}
+		}
+		for (SecureSession session : activeSessionCache.values()) {
+			session.close();
+		}
+	}
+
+	private static Map<byte[], SecureSession> createLoadUpCache() {
+		return Collections.synchronizedMap(new TreeMap<byte[], SecureSession>(new ArrayUtils.ArrayComparator()));
 	}
 
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.session;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.virgilsecurity.crypto.VirgilPFS;
+import com.virgilsecurity.crypto.VirgilPFSSession;
+
+/**
+ * Pool of native {@link VirgilPFS} contexts. Contexts are reused for session
+ * initialization and by secure sessions, so native contexts are not allocated
+ * for each operation.
+ * 
+ * Session keys are wiped when a context is released, so a context acquired
+ * from the pool never holds a session of previous user. The session should be
+ * set or started before use.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class VirgilPFSPool implements AutoCloseable {
+
+	/** The default number of idle contexts kept by pool. */
+	public static final int DEFAULT_MAX_IDLE_CONTEXTS = Runtime.getRuntime().availableProcessors() * 2;
+
+	private static final VirgilPFSPool DEFAULT = new VirgilPFSPool(DEFAULT_MAX_IDLE_CONTEXTS);
+
+	/**
+	 * Get the pool shared by secure chat components.
+	 * 
+	 * @return the default pool.
+	 */
+	public static VirgilPFSPool getDefault() {
+		return DEFAULT;
+	}
+
+	private final Deque<VirgilPFS> contexts = new ArrayDeque<>();
+	private final int maxIdleContexts;
+	private boolean closed;
+	private long created;
+
+	/**
+	 * Create new instance of {@link VirgilPFSPool}.
+	 * 
+	 * @param maxIdleContexts
+	 *            the number of idle contexts kept by pool. Released contexts
+	 *            above this limit are closed.
+	 */
+	public VirgilPFSPool(int maxIdleContexts) {
+		this.maxIdleContexts = maxIdleContexts;
+	}
+
+	/**
+	 * Take a context from pool or create a new one.
+	 * 
+	 * @return the context.
+	 */
+	public VirgilPFS acquire() {
+		synchronized (this.contexts) {
+			VirgilPFS context = this.contexts.pollFirst();
+			if (context != null) {
+				return context;
+			}
+			this.created++;
+		}
+		return new VirgilPFS();
+	}
+
+	/**
+	 * Return context to pool. The session of context is reset. The context is
+	 * closed if pool is full or closed, or if its session can't be reset.
+	 * 
+	 * @param context
+	 *            the context.
+	 */
+	public void release(VirgilPFS context) {
+		if (context == null) {
+			return;
+		}
+		if (!resetSession(context)) {
+			context.close();
+			return;
+		}
+		synchronized (this.contexts) {
+			if (!this.closed && this.contexts.size() < this.maxIdleContexts) {
+				this.contexts.offerFirst(context);
+				return;
+			}
+		}
+		context.close();
+	}
+
+	/*
+	 * Replace session of context with an empty one, so session keys don't
+	 * stay in native memory of idle context
+	 */
+	private static boolean resetSession(VirgilPFS context) {
+		try (VirgilPFSSession emptySession = new VirgilPFSSession()) {
+			context.setSession(emptySession);
+			return true;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the number of idle contexts.
+	 */
+	public int getIdleCount() {
+		synchronized (this.contexts) {
+			return this.contexts.size();
+		}
+	}
+
+	/**
+	 * @return the number of contexts created by pool.
+	 */
+	public long getCreatedCount() {
+		synchronized (this.contexts) {
+			return this.created;
+		}
+	}
+
+	/**
+	 * Close idle contexts. Contexts released after that are closed.
+	 */
+	@Override
+	public void close() {
+		synchronized (this.contexts) {
+			this.closed = true;
+			for (VirgilPFS context : this.contexts) {
+				context.close();
+			}
+			this.contexts.clear();
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import java.util.Arrays;
+
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+/**
+ * Base64 encoder and decoder which work with character arrays and sequences
+ * directly, without intermediate strings and byte arrays.
+ * 
+ * Only canonical base64 (standard alphabet, padded, no line breaks) is decoded
+ * by the fast path. Anything else is passed to {@link ConvertionUtils}.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public final class Base64Codec {
+
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+			.toCharArray();
+
+	private static final int[] DECODE_TABLE = new int[128];
+
+	static {
+		Arrays.fill(DECODE_TABLE, -1);
+		for (int i = 0; i < ALPHABET.length; i++) {
+			DECODE_TABLE[ALPHABET[i]] = i;
+		}
+	}
+
+	private Base64Codec() {
+	}
+
+	/**
+	 * Decode base64 encoded data.
+	 * 
+	 * @param src
+	 *            the base64 encoded data.
+	 * @return the decoded data.
+	 */
+	public static byte[] decode(CharSequence src) {
+		return decode(src, 0, src.length());
+	}
+
+	/**
+	 * Decode base64 encoded part of character sequence.
+	 * 
+	 * @param src
+	 *            the character sequence.
+	 * @param from
+	 *            the index of the first character of encoded data.
+	 * @param to
+	 *            the index after the last character of encoded data.
+	 * @return the decoded data.
+	 */
+	public static byte[] decode(CharSequence src, int from, int to) {
+		int length = to - from;
+		if (length == 0) {
+			return new byte[0];
+		}
+		if (length % 4 != 0) {
+			return fallbackDecode(src, from, to);
+		}
+		int padding = 0;
+		if (src.charAt(to - 1) == '=') {
+			padding++;
+			if (src.charAt(to - 2) == '=') {
+				padding++;
+			}
+		}
+		byte[] dst = new byte[length / 4 * 3 - padding];
+
+		int dstPos = 0;
+		int srcPos = from;
+		int fullEnd = to - (padding > 0 ? 4 : 0);
+		while (srcPos < fullEnd) {
+			int bits = (decodeChar(src.charAt(srcPos)) << 18) | (decodeChar(src.charAt(srcPos + 1)) << 12)
+					| (decodeChar(src.charAt(srcPos + 2)) << 6) | decodeChar(src.charAt(srcPos + 3));
+			if (bits < 0) {
+				return fallbackDecode(src, from, to);
+			}
+			dst[dstPos++] = (byte) (bits >> 16);
+			dst[dstPos++] = (byte) (bits >> 8);
+			dst[dstPos++] = (byte) bits;
+			srcPos += 4;
+		}
+		if (padding > 0) {
+			int c0 = decodeChar(src.charAt(srcPos));
+			int c1 = decodeChar(src.charAt(srcPos + 1));
+			int c2 = padding == 1 ? decodeChar(src.charAt(srcPos + 2)) : 0;
+			if ((c0 | c1 | c2) < 0) {
+				return fallbackDecode(src, from, to);
+			}
+			int bits = (c0 << 18) | (c1 << 12) | (c2 << 6);
+			dst[dstPos++] = (byte) (bits >> 16);
+			if (padding == 1) {
+				dst[dstPos++] = (byte) (bits >> 8);
+			}
+		}
+		return dst;
+	}
+
+	private static int decodeChar(char c) {
+		return c < 128 ? DECODE_TABLE[c] : -1;
+	}
+
+	/**
+	 * Encode data as base64.
+	 * 
+	 * @param data
+	 *            the data to encode.
+	 * @return the base64 encoded data.
+	 */
+	public static String encode(byte[] data) {
+		char[] dst = new char[encodedLength(data.length)];
+		encode(data, dst, 0);
+		return new String(dst);
+	}
+
+	/**
+	 * Encode data as base64 into character array.
+	 * 
+	 * @param data
+	 *            the data to encode.
+	 * @param dst
+	 *            the destination array. Should have at least
+	 *            {@link #encodedLength(int)} characters after {@code offset}.
+	 * @param offset
+	 *            the position of the first encoded character in destination
+	 *            array.
+	 * @return the number of characters written.
+	 */
+	public static int encode(byte[] data, char[] dst, int offset) {
+		int pos = offset;
+		int fullEnd = data.length - data.length % 3;
+		for (int i = 0; i < fullEnd; i += 3) {
+			int bits = ((data[i] & 0xff) << 16) | ((data[i + 1] & 0xff) << 8) | (data[i + 2] & 0xff);
+			dst[pos++] = ALPHABET[(bits >>> 18) & 0x3f];
+			dst[pos++] = ALPHABET[(bits >>> 12) & 0x3f];
+			dst[pos++] = ALPHABET[(bits >>> 6) & 0x3f];
+			dst[pos++] = ALPHABET[bits & 0x3f];
+		}
+		int remaining = data.length - fullEnd;
+		if (remaining > 0) {
+			int bits = (data[fullEnd] & 0xff) << 16;
+			if (remaining == 2) {
+				bits |= (data[fullEnd + 1] & 0xff) << 8;
+			}
+			dst[pos++] = ALPHABET[(bits >>> 18) & 0x3f];
+			dst[pos++] = ALPHABET[(bits >>> 12) & 0x3f];
+			dst[pos++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : '=';
+			dst[pos++] = '=';
+		}
+		return pos - offset;
+	}
+
+	/**
+	 * Get the length of base64 encoded data.
+	 * 
+	 * @param dataLength
+	 *            the length of data.
+	 * @return the number of characters.
+	 */
+	public static int encodedLength(int dataLength) {
+		return (dataLength + 2) / 3 * 4;
+	}
+
+	private static byte[] fallbackDecode(CharSequence src, int from, int to) {
+		return ConvertionUtils.base64ToBytes(src.subSequence(from, to).toString());
+	}
+
+}
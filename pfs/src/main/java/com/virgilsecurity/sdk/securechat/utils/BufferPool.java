@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Size-classed pool of heap byte arrays, char arrays and direct byte buffers.
+ * 
+ * Buffer sizes are powers of two from {@value #MIN_BUFFER_SIZE} bytes up to
+ * the maximum buffer size. Buffer acquired from the pool could be larger than
+ * requested. Larger buffers are allocated on demand and are not retained on
+ * release. Each size class retains a limited number of released buffers.
+ * 
+ * A buffer should be released once and should not be used after release.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class BufferPool {
+
+	private abstract static class SizeClasses<T> {
+
+		private final Deque<T>[] classes;
+		private final int maxBuffersPerClass;
+
+		@SuppressWarnings("unchecked")
+		SizeClasses(int classesCount, int maxBuffersPerClass) {
+			this.classes = new Deque[classesCount];
+			for (int i = 0; i < classesCount; i++) {
+				this.classes[i] = new ArrayDeque<>();
+			}
+			this.maxBuffersPerClass = maxBuffersPerClass;
+		}
+
+		T acquire(int minSize) {
+			int sizeClass = sizeClass(minSize);
+			if (sizeClass >= this.classes.length) {
+				return allocate(minSize);
+			}
+			T buffer = null;
+			Deque<T> deque = this.classes[sizeClass];
+			synchronized (deque) {
+				buffer = deque.pollFirst();
+			}
+			if (buffer == null) {
+				buffer = allocate(MIN_BUFFER_SIZE << sizeClass);
+			}
+			return buffer;
+		}
+
+		abstract T allocate(int size);
+
+		void release(T buffer, int size) {
+			int sizeClass = sizeClass(size);
+			if (sizeClass >= this.classes.length || (MIN_BUFFER_SIZE << sizeClass) != size) {
+				// Not allocated by the pool
+				return;
+			}
+			Deque<T> deque = this.classes[sizeClass];
+			synchronized (deque) {
+				if (deque.size() < this.maxBuffersPerClass) {
+					deque.offerFirst(buffer);
+				}
+			}
+		}
+	}
+
+	/** The size of the smallest buffer in the pool. */
+	public static final int MIN_BUFFER_SIZE = 256;
+
+	/** The default size of the largest buffer in the pool. */
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 1 << 20;
+
+	/** The default number of buffers retained for each size. */
+	public static final int DEFAULT_MAX_BUFFERS_PER_CLASS = 16;
+
+	private static final BufferPool DEFAULT = new BufferPool();
+
+	/**
+	 * Get the pool shared by secure chat components.
+	 * 
+	 * @return the default buffer pool.
+	 */
+	public static BufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	static int sizeClass(int size) {
+		if (size <= MIN_BUFFER_SIZE) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+	}
+
+	private final SizeClasses<byte[]> bytes;
+	private final SizeClasses<char[]> chars;
+	private final SizeClasses<ByteBuffer> directBuffers;
+
+	/**
+	 * Create new instance of {@link BufferPool} with default limits.
+	 */
+	public BufferPool() {
+		this(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_BUFFERS_PER_CLASS);
+	}
+
+	/**
+	 * Create new instance of {@link BufferPool}.
+	 * 
+	 * @param maxBufferSize
+	 *            the size of the largest pooled buffer. Rounded up to power of
+	 *            two.
+	 * @param maxBuffersPerClass
+	 *            the number of buffers retained for each size.
+	 */
+	public BufferPool(int maxBufferSize, int maxBuffersPerClass) {
+		if (maxBufferSize < MIN_BUFFER_SIZE) {
+			throw new IllegalArgumentException("Max buffer size should be at least " + MIN_BUFFER_SIZE);
+		}
+		int classesCount = sizeClass(maxBufferSize) + 1;
+		this.bytes = new SizeClasses<byte[]>(classesCount, maxBuffersPerClass) {
+			@Override
+			byte[] allocate(int size) {
+				return new byte[size];
+			}
+		};
+		this.chars = new SizeClasses<char[]>(classesCount, maxBuffersPerClass) {
+			@Override
+			char[] allocate(int size) {
+				return new char[size];
+			}
+		};
+		this.directBuffers = new SizeClasses<ByteBuffer>(classesCount, maxBuffersPerClass) {
+			@Override
+			ByteBuffer allocate(int size) {
+				return ByteBuffer.allocateDirect(size);
+			}
+		};
+	}
+
+	/**
+	 * Acquire byte array.
+	 * 
+	 * @param minSize
+	 *            the minimum size of array.
+	 * @return the byte array of at least {@code minSize} bytes.
+	 */
+	public byte[] acquireBytes(int minSize) {
+		return this.bytes.acquire(minSize);
+	}
+
+	/**
+	 * Acquire char array.
+	 * 
+	 * @param minSize
+	 *            the minimum size of array.
+	 * @return the char array of at least {@code minSize} chars.
+	 */
+	public char[] acquireChars(int minSize) {
+		return this.chars.acquire(minSize);
+	}
+
+	/**
+	 * Acquire direct byte buffer.
+	 * 
+	 * @param minSize
+	 *            the minimum capacity of buffer.
+	 * @return the cleared direct byte buffer with at least {@code minSize}
+	 *         bytes capacity.
+	 */
+	public ByteBuffer acquireDirect(int minSize) {
+		ByteBuffer buffer = this.directBuffers.acquire(minSize);
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Return byte array to the pool.
+	 * 
+	 * @param buffer
+	 *            the byte array.
+	 */
+	public void release(byte[] buffer) {
+		if (buffer != null) {
+			this.bytes.release(buffer, buffer.length);
+		}
+	}
+
+	/**
+	 * Return char array to the pool.
+	 * 
+	 * @param buffer
+	 *            the char array.
+	 */
+	public void release(char[] buffer) {
+		if (buffer != null) {
+			this.chars.release(buffer, buffer.length);
+		}
+	}
+
+	/**
+	 * Return byte buffer to the pool. Heap buffers return their backing
+	 * arrays.
+	 * 
+	 * @param buffer
+	 *            the byte buffer.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		if (buffer.isDirect()) {
+			this.directBuffers.release(buffer, buffer.capacity());
+		} else if (buffer.hasArray() && buffer.arrayOffset() == 0) {
+			release(buffer.array());
+		}
+	}
+
+}
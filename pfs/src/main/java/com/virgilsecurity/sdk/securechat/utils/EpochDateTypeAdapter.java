@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * This type adapter writes dates as number of milliseconds since epoch. Dates
+ * written as formatted strings are still accepted on reading.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class EpochDateTypeAdapter extends TypeAdapter<Date> {
+
+	/* Date format used by previous versions */
+	public static final String LEGACY_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+
+	private final String legacyPattern;
+	private final ThreadLocal<DateFormat> legacyFormat;
+
+	/**
+	 * Create new instance of {@link EpochDateTypeAdapter} which accepts dates
+	 * in {@link #LEGACY_DATE_FORMAT}.
+	 */
+	public EpochDateTypeAdapter() {
+		this(LEGACY_DATE_FORMAT);
+	}
+
+	/**
+	 * Create new instance of {@link EpochDateTypeAdapter}.
+	 * 
+	 * @param legacyPattern
+	 *            the pattern of dates written as strings.
+	 */
+	public EpochDateTypeAdapter(String legacyPattern) {
+		this.legacyPattern = legacyPattern;
+		this.legacyFormat = new ThreadLocal<DateFormat>() {
+			@Override
+			protected DateFormat initialValue() {
+				return new SimpleDateFormat(EpochDateTypeAdapter.this.legacyPattern, Locale.US);
+			}
+		};
+	}
+
+	/**
+	 * Check if value is a date written as number of milliseconds since epoch.
+	 * 
+	 * @param value
+	 *            the value.
+	 * @return {@code true} if value is a number.
+	 */
+	public static boolean isEpoch(String value) {
+		if (value == null || value.isEmpty()) {
+			return false;
+		}
+		int start = value.charAt(0) == '-' ? 1 : 0;
+		if (start == value.length()) {
+			return false;
+		}
+		for (int i = start; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parse date.
+	 * 
+	 * @param value
+	 *            the number of milliseconds since epoch or a date in legacy
+	 *            format.
+	 * @return the date.
+	 */
+	public Date parse(String value) {
+		if (isEpoch(value)) {
+			return new Date(Long.parseLong(value));
+		}
+		try {
+			return this.legacyFormat.get().parse(value);
+		} catch (ParseException e) {
+			throw new JsonSyntaxException(value, e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.google.gson.TypeAdapter#read(com.google.gson.stream.JsonReader)
+	 */
+	@Override
+	public Date read(JsonReader in) throws IOException {
+		JsonToken token = in.peek();
+		if (token == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		if (token == JsonToken.NUMBER) {
+			return new Date(in.nextLong());
+		}
+		return parse(in.nextString());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.google.gson.TypeAdapter#write(com.google.gson.stream.JsonWriter,
+	 * java.lang.Object)
+	 */
+	@Override
+	public void write(JsonWriter out, Date value) throws IOException {
+		if (value == null) {
+			out.nullValue();
+			return;
+		}
+		out.value(value.getTime());
+	}
+
+}
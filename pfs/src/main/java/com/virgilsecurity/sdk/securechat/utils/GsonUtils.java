@@ -40,7 +40,6 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
-import com.virgilsecurity.sdk.utils.ConvertionUtils;
 
 /**
  * @author Andrii Iakovenko
@@ -51,23 +50,25 @@ public class GsonUtils {
     private static class ByteArrayToBase64TypeAdapter implements JsonSerializer<byte[]>, JsonDeserializer<byte[]> {
         public byte[] deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
                 throws JsonParseException {
-            return ConvertionUtils.base64ToBytes(json.getAsString());
+            return Base64Codec.decode(json.getAsString());
         }
 
         public JsonElement serialize(byte[] src, Type typeOfSrc, JsonSerializationContext context) {
-            return new JsonPrimitive(ConvertionUtils.toBase64String(src));
+            return new JsonPrimitive(Base64Codec.encode(src));
         }
     }
 
-    private static Gson gson = null;
+    /*
+     * Gson is immutable and thread-safe, so the same instance is shared without
+     * locking
+     */
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+            .registerTypeHierarchyAdapter(byte[].class, new ByteArrayToBase64TypeAdapter()).disableHtmlEscaping()
+            .serializeNulls().create();
 
-    public static synchronized Gson getGson() {
-        if (gson == null) {
-            GsonBuilder builder = new GsonBuilder();
-            gson = builder.registerTypeHierarchyAdapter(byte[].class, new ByteArrayToBase64TypeAdapter())
-                    .disableHtmlEscaping().serializeNulls().create();
-        }
-        return gson;
+    public static Gson getGson() {
+        return GSON;
     }
 
 }
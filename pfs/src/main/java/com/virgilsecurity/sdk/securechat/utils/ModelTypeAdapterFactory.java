@@ -0,0 +1,582 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.virgilsecurity.sdk.securechat.model.ExhaustInfo;
+import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.ExhaustInfoEntry;
+import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.SessionExhaustInfo;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.IndexEntry;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.Kind;
+import com.virgilsecurity.sdk.securechat.model.InitiationMessage;
+import com.virgilsecurity.sdk.securechat.model.Message;
+import com.virgilsecurity.sdk.securechat.model.ReplenishmentInfo;
+import com.virgilsecurity.sdk.securechat.model.SessionState;
+
+/**
+ * This factory provides streaming type adapters for secure chat models, so
+ * models are (de)serialized without reflection. Field names are the same as
+ * declared with {@code SerializedName} annotations. Byte arrays are written as
+ * base64 strings. Dates are written with the date adapter of the {@link Gson}
+ * instance.
+ * 
+ * Only exact model classes are handled. Subclasses are bound by reflection as
+ * before.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+	private static class ExhaustInfoEntryTypeAdapter extends TypeAdapter<ExhaustInfoEntry> {
+		private final TypeAdapter<Date> dateAdapter;
+
+		ExhaustInfoEntryTypeAdapter(TypeAdapter<Date> dateAdapter) {
+			this.dateAdapter = dateAdapter;
+		}
+
+		@Override
+		public ExhaustInfoEntry read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			ExhaustInfoEntry entry = new ExhaustInfoEntry();
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+				case "identifier":
+					entry.setIdentifier(readString(in));
+					break;
+				case "exhaust_date":
+					entry.setExhaustDate(dateAdapter.read(in));
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return entry;
+		}
+
+		@Override
+		public void write(JsonWriter out, ExhaustInfoEntry value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("identifier").value(value.getIdentifier());
+			out.name("exhaust_date");
+			dateAdapter.write(out, value.getExhaustDate());
+			out.endObject();
+		}
+	}
+
+	private static class ExhaustInfoTypeAdapter extends TypeAdapter<ExhaustInfo> {
+		private final TypeAdapter<ExhaustInfoEntry> entryAdapter;
+		private final TypeAdapter<SessionExhaustInfo> sessionAdapter;
+
+		ExhaustInfoTypeAdapter(TypeAdapter<ExhaustInfoEntry> entryAdapter,
+				TypeAdapter<SessionExhaustInfo> sessionAdapter) {
+			this.entryAdapter = entryAdapter;
+			this.sessionAdapter = sessionAdapter;
+		}
+
+		@Override
+		public ExhaustInfo read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			ExhaustInfo info = new ExhaustInfo();
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+				case "otc":
+					info.setOtc(readList(in, entryAdapter));
+					break;
+				case "ltc":
+					info.setLtc(readList(in, entryAdapter));
+					break;
+				case "sessions":
+					info.setSessions(readList(in, sessionAdapter));
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return info;
+		}
+
+		@Override
+		public void write(JsonWriter out, ExhaustInfo value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("otc");
+			writeList(out, value.getOtc(), entryAdapter);
+			out.name("ltc");
+			writeList(out, value.getLtc(), entryAdapter);
+			out.name("sessions");
+			writeList(out, value.getSessions(), sessionAdapter);
+			out.endObject();
+		}
+	}
+
+	private static class IndexEntryTypeAdapter extends TypeAdapter<IndexEntry> {
+		private final TypeAdapter<Kind> kindAdapter;
+
+		IndexEntryTypeAdapter(TypeAdapter<Kind> kindAdapter) {
+			this.kindAdapter = kindAdapter;
+		}
+
+		@Override
+		public IndexEntry read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			Kind kind = null;
+			String identifier = null;
+			String cardId = null;
+			long time = 0;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+				case "kind":
+					kind = kindAdapter.read(in);
+					break;
+				case "identifier":
+					identifier = readString(in);
+					break;
+				case "card_id":
+					cardId = readString(in);
+					break;
+				case "time":
+					time = in.nextLong();
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return new IndexEntry(kind, identifier, cardId, time);
+		}
+
+		@Override
+		public void write(JsonWriter out, IndexEntry value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("kind");
+			kindAdapter.write(out, value.getKind());
+			out.name("identifier").value(value.getIdentifier());
+			out.name("card_id").value(value.getCardId());
+			out.name("time").value(value.getTime());
+			out.endObject();
+		}
+	}
+
+	private static class InitiationMessageTypeAdapter extends TypeAdapter<InitiationMessage> {
+		@Override
+		public InitiationMessage read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			InitiationMessage message = new InitiationMessage(null, null, null, null, null, null, null, null);
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+				case "initiator_ic_id":
+					message.setInitiatorIcId(readString(in));
+					break;
+				case "responder_ic_id":
+					message.setResponderIcId(readString(in));
+					break;
+				case "responder_ltc_id":
+					message.setResponderLtcId(readString(in));
+					break;
+				case "responder_otc_id":
+					message.setResponderOtcId(readString(in));
+					break;
+				case "eph":
+					message.setEphPublicKey(readBytes(in));
+					break;
+				case "sign":
+					message.setEphPublicKeySignature(readBytes(in));
+					break;
+				case "salt":
+					message.setSalt(readBytes(in));
+					break;
+				case "ciphertext":
+					message.setCipherText(readBytes(in));
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return message;
+		}
+
+		@Override
+		public void write(JsonWriter out, InitiationMessage value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("initiator_ic_id").value(value.getInitiatorIcId());
+			out.name("responder_ic_id").value(value.getResponderIcId());
+			out.name("responder_ltc_id").value(value.getResponderLtcId());
+			// Weak session has no one-time card
+			if (value.getResponderOtcId() != null) {
+				out.name("responder_otc_id").value(value.getResponderOtcId());
+			}
+			out.name("eph");
+			writeBytes(out, value.getEphPublicKey());
+			out.name("sign");
+			writeBytes(out, value.getEphPublicKeySignature());
+			out.name("salt");
+			writeBytes(out, value.getSalt());
+			out.name("ciphertext");
+			writeBytes(out, value.getCipherText());
+			out.endObject();
+		}
+	}
+
+	private static class MessageTypeAdapter extends TypeAdapter<Message> {
+		@Override
+		public Message read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			Message message = new Message();
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+				case "session_id":
+					message.setSessionId(readBytes(in));
+					break;
+				case "salt":
+					message.setSalt(readBytes(in));
+					break;
+				case "ciphertext":
+					message.setCipherText(readBytes(in));
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return message;
+		}
+
+		@Override
+		public void write(JsonWriter out, Message value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("session_id");
+			writeBytes(out, value.getSessionId());
+			out.name("salt");
+			writeBytes(out, value.getSalt());
+			out.name("ciphertext");
+			writeBytes(out, value.getCipherText());
+			out.endObject();
+		}
+	}
+
+	private static class ReplenishmentInfoTypeAdapter extends TypeAdapter<ReplenishmentInfo> {
+		@Override
+		public ReplenishmentInfo read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			ReplenishmentInfo info = new ReplenishmentInfo();
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+				case "active":
+					info.setActive(in.nextInt());
+					break;
+				case "desired":
+					info.setDesired(in.nextInt());
+					break;
+				case "rate":
+					info.setRate(in.nextDouble());
+					break;
+				case "rate_updated_at":
+					info.setRateUpdatedAt(in.nextLong());
+					break;
+				case "reconciled_at":
+					info.setReconciledAt(in.nextLong());
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return info;
+		}
+
+		@Override
+		public void write(JsonWriter out, ReplenishmentInfo value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("active").value(value.getActive());
+			out.name("desired").value(value.getDesired());
+			out.name("rate").value(value.getRate());
+			out.name("rate_updated_at").value(value.getRateUpdatedAt());
+			out.name("reconciled_at").value(value.getReconciledAt());
+			out.endObject();
+		}
+	}
+
+	private static class SessionExhaustInfoTypeAdapter extends TypeAdapter<SessionExhaustInfo> {
+		private final TypeAdapter<Date> dateAdapter;
+
+		SessionExhaustInfoTypeAdapter(TypeAdapter<Date> dateAdapter) {
+			this.dateAdapter = dateAdapter;
+		}
+
+		@Override
+		public SessionExhaustInfo read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			SessionExhaustInfo info = new SessionExhaustInfo();
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+				case "identifier":
+					info.setIdentifier(readBytes(in));
+					break;
+				case "card_id":
+					info.setCardId(readString(in));
+					break;
+				case "exhaust_date":
+					info.setExhaustDate(dateAdapter.read(in));
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return info;
+		}
+
+		@Override
+		public void write(JsonWriter out, SessionExhaustInfo value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("identifier");
+			writeBytes(out, value.getIdentifier());
+			out.name("card_id").value(value.getCardId());
+			out.name("exhaust_date");
+			dateAdapter.write(out, value.getExhaustDate());
+			out.endObject();
+		}
+	}
+
+	private static class SessionStateTypeAdapter extends TypeAdapter<SessionState> {
+		private final TypeAdapter<Date> dateAdapter;
+
+		SessionStateTypeAdapter(TypeAdapter<Date> dateAdapter) {
+			this.dateAdapter = dateAdapter;
+		}
+
+		@Override
+		public SessionState read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			SessionState state = new SessionState();
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+				case "creation_date":
+					state.setCreationDate(dateAdapter.read(in));
+					break;
+				case "expiration_date":
+					state.setExpirationDate(dateAdapter.read(in));
+					break;
+				case "session_id":
+					state.setSessionId(readBytes(in));
+					break;
+				case "additional_data":
+					state.setAdditionalData(readBytes(in));
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return state;
+		}
+
+		@Override
+		public void write(JsonWriter out, SessionState value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("creation_date");
+			dateAdapter.write(out, value.getCreationDate());
+			out.name("expiration_date");
+			dateAdapter.write(out, value.getExpirationDate());
+			out.name("session_id");
+			writeBytes(out, value.getSessionId());
+			out.name("additional_data");
+			writeBytes(out, value.getAdditionalData());
+			out.endObject();
+		}
+	}
+
+	private static byte[] readBytes(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		return Base64Codec.decode(in.nextString());
+	}
+
+	private static <T> List<T> readList(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		List<T> list = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			list.add(adapter.read(in));
+		}
+		in.endArray();
+		return list;
+	}
+
+	private static String readString(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		return in.nextString();
+	}
+
+	private static void writeBytes(JsonWriter out, byte[] value) throws IOException {
+		if (value == null) {
+			out.nullValue();
+			return;
+		}
+		out.value(Base64Codec.encode(value));
+	}
+
+	private static <T> void writeList(JsonWriter out, List<T> list, TypeAdapter<T> adapter) throws IOException {
+		if (list == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginArray();
+		for (T item : list) {
+			adapter.write(out, item);
+		}
+		out.endArray();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.google.gson.TypeAdapterFactory#create(com.google.gson.Gson,
+	 * com.google.gson.reflect.TypeToken)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+		Class<? super T> rawType = type.getRawType();
+		if (rawType == Message.class) {
+			return (TypeAdapter<T>) new MessageTypeAdapter();
+		}
+		if (rawType == InitiationMessage.class) {
+			return (TypeAdapter<T>) new InitiationMessageTypeAdapter();
+		}
+		if (rawType == SessionState.class) {
+			return (TypeAdapter<T>) new SessionStateTypeAdapter(gson.getAdapter(Date.class));
+		}
+		if (rawType == ExhaustInfo.class) {
+			return (TypeAdapter<T>) new ExhaustInfoTypeAdapter(gson.getAdapter(ExhaustInfoEntry.class),
+					gson.getAdapter(SessionExhaustInfo.class));
+		}
+		if (rawType == ExhaustInfoEntry.class) {
+			return (TypeAdapter<T>) new ExhaustInfoEntryTypeAdapter(gson.getAdapter(Date.class));
+		}
+		if (rawType == SessionExhaustInfo.class) {
+			return (TypeAdapter<T>) new SessionExhaustInfoTypeAdapter(gson.getAdapter(Date.class));
+		}
+		if (rawType == IndexEntry.class) {
+			return (TypeAdapter<T>) new IndexEntryTypeAdapter(gson.getAdapter(Kind.class));
+		}
+		if (rawType == ReplenishmentInfo.class) {
+			return (TypeAdapter<T>) new ReplenishmentInfoTypeAdapter();
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Character buffer backed by arrays from {@link BufferPool}. Used to write
+ * JSON without intermediate strings and to convert it from and to encoded
+ * bytes.
+ * 
+ * The writer should be closed to return its buffer to the pool. Readers and
+ * buffers obtained from the writer should not be used after that.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class PooledCharArrayWriter extends Writer {
+
+	private final BufferPool pool;
+	private char[] buffer;
+	private int count;
+
+	/**
+	 * Create new instance of {@link PooledCharArrayWriter}.
+	 * 
+	 * @param pool
+	 *            the buffer pool.
+	 */
+	public PooledCharArrayWriter(BufferPool pool) {
+		this.pool = pool;
+		this.buffer = pool.acquireChars(BufferPool.MIN_BUFFER_SIZE);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (this.buffer == null) {
+			throw new IllegalStateException("Writer is closed");
+		}
+		if (capacity <= this.buffer.length) {
+			return;
+		}
+		char[] newBuffer = this.pool.acquireChars(Math.max(capacity, this.buffer.length << 1));
+		System.arraycopy(this.buffer, 0, newBuffer, 0, this.count);
+		this.pool.release(this.buffer);
+		this.buffer = newBuffer;
+	}
+
+	@Override
+	public void write(int c) {
+		ensureCapacity(this.count + 1);
+		this.buffer[this.count++] = (char) c;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		ensureCapacity(this.count + len);
+		System.arraycopy(cbuf, off, this.buffer, this.count, len);
+		this.count += len;
+	}
+
+	@Override
+	public void write(String str, int off, int len) {
+		ensureCapacity(this.count + len);
+		str.getChars(off, off + len, this.buffer, this.count);
+		this.count += len;
+	}
+
+	@Override
+	public Writer append(CharSequence csq) {
+		String str = String.valueOf(csq);
+		write(str, 0, str.length());
+		return this;
+	}
+
+	/**
+	 * Append decoded text.
+	 * 
+	 * @param data
+	 *            the encoded text.
+	 * @param charset
+	 *            the charset of encoded text.
+	 * @throws CharacterCodingException
+	 *             if text is malformed.
+	 */
+	public void decode(ByteBuffer data, Charset charset) throws CharacterCodingException {
+		CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ensureCapacity(this.count + (int) (data.remaining() * decoder.maxCharsPerByte()));
+
+		CharBuffer out = CharBuffer.wrap(this.buffer, this.count, this.buffer.length - this.count);
+		CoderResult result = decoder.decode(data, out, true);
+		if (!result.isUnderflow()) {
+			result.throwException();
+		}
+		result = decoder.flush(out);
+		if (!result.isUnderflow()) {
+			result.throwException();
+		}
+		this.count = out.position();
+	}
+
+	/**
+	 * Append decoded text.
+	 * 
+	 * @param data
+	 *            the encoded text.
+	 * @param offset
+	 *            the offset of encoded text.
+	 * @param length
+	 *            the length of encoded text.
+	 * @param charset
+	 *            the charset of encoded text.
+	 * @throws CharacterCodingException
+	 *             if text is malformed.
+	 */
+	public void decode(byte[] data, int offset, int length, Charset charset) throws CharacterCodingException {
+		decode(ByteBuffer.wrap(data, offset, length), charset);
+	}
+
+	/**
+	 * Encode written text into a buffer acquired from the pool. The buffer
+	 * should be released with {@link BufferPool#release(ByteBuffer)}.
+	 * 
+	 * @param charset
+	 *            the charset.
+	 * @param direct
+	 *            {@code true} if direct buffer is required.
+	 * @return the buffer with encoded text between position and limit.
+	 * @throws CharacterCodingException
+	 *             if text can't be encoded.
+	 */
+	public ByteBuffer encode(Charset charset, boolean direct) throws CharacterCodingException {
+		CharsetEncoder encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		int maxLength = (int) Math.ceil(this.count * (double) encoder.maxBytesPerChar());
+
+		ByteBuffer out = direct ? this.pool.acquireDirect(maxLength)
+				: ByteBuffer.wrap(this.pool.acquireBytes(maxLength));
+		try {
+			CoderResult result = encoder.encode(CharBuffer.wrap(this.buffer, 0, this.count), out, true);
+			if (!result.isUnderflow()) {
+				result.throwException();
+			}
+			result = encoder.flush(out);
+			if (!result.isUnderflow()) {
+				result.throwException();
+			}
+		} catch (CharacterCodingException e) {
+			this.pool.release(out);
+			throw e;
+		}
+		out.flip();
+		return out;
+	}
+
+	/**
+	 * @return the number of written characters.
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Discard written text.
+	 */
+	public void reset() {
+		this.count = 0;
+	}
+
+	/**
+	 * Get reader of written text. The reader uses the buffer of this writer.
+	 * 
+	 * @return the reader.
+	 */
+	public Reader toReader() {
+		return new CharArrayReader(this.buffer, 0, this.count);
+	}
+
+	@Override
+	public String toString() {
+		return new String(this.buffer, 0, this.count);
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+		if (this.buffer != null) {
+			this.pool.release(this.buffer);
+			this.buffer = null;
+			this.count = 0;
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Releases resources of objects which became unreachable without being
+ * closed. Resources are closed by a daemon thread.
+ * 
+ * A resource should not reference its owner, otherwise the owner never
+ * becomes unreachable.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public final class ResourceCleaner {
+
+	/**
+	 * Registered resource.
+	 */
+	public interface Cleanable {
+
+		/**
+		 * Close the resource and unregister it. The resource is closed at most
+		 * once.
+		 */
+		void clean();
+	}
+
+	private static class CleanableReference extends PhantomReference<Object> implements Cleanable {
+
+		private final AutoCloseable resource;
+
+		CleanableReference(Object referent, AutoCloseable resource) {
+			super(referent, QUEUE);
+			this.resource = resource;
+		}
+
+		@Override
+		public void clean() {
+			if (!REFERENCES.remove(this)) {
+				return;
+			}
+			clear();
+			try {
+				this.resource.close();
+			} catch (Exception e) {
+				log.log(Level.WARNING, "Resource can't be closed", e);
+			}
+		}
+	}
+
+	private static final Logger log = Logger.getLogger(ResourceCleaner.class.getName());
+
+	private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+	private static final Set<CleanableReference> REFERENCES = Collections
+			.newSetFromMap(new ConcurrentHashMap<CleanableReference, Boolean>());
+
+	static {
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					try {
+						((CleanableReference) QUEUE.remove()).clean();
+					} catch (InterruptedException e) {
+						// Cleaner thread should run while application is
+						// running
+					} catch (Throwable e) {
+						log.log(Level.WARNING, "Resource cleaning failed", e);
+					}
+				}
+			}
+		}, "virgil-resource-cleaner");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private ResourceCleaner() {
+	}
+
+	/**
+	 * Register resource to be closed when its owner becomes unreachable.
+	 * 
+	 * @param owner
+	 *            the owner of resource.
+	 * @param resource
+	 *            the resource.
+	 * @return the registered resource which could be closed explicitly.
+	 */
+	public static Cleanable register(Object owner, AutoCloseable resource) {
+		CleanableReference reference = new CleanableReference(owner, resource);
+		REFERENCES.add(reference);
+		return reference;
+	}
+
+	/**
+	 * @return the number of registered resources which are not closed yet.
+	 */
+	public static int getRegisteredCount() {
+		return REFERENCES.size();
+	}
+
+}
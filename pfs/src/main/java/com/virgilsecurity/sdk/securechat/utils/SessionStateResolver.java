@@ -36,8 +36,11 @@ import java.util.Set;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.annotations.SerializedName;
+import com.virgilsecurity.sdk.securechat.model.GroupKeyMessage;
+import com.virgilsecurity.sdk.securechat.model.GroupMessage;
 import com.virgilsecurity.sdk.securechat.model.InitiationMessage;
 import com.virgilsecurity.sdk.securechat.model.InitiatorSessionState;
 import com.virgilsecurity.sdk.securechat.model.Message;
@@ -54,6 +57,8 @@ public class SessionStateResolver {
 	private static final Set<String> RESPONDER_SESSION_STATE_FIELDS;
 	private static final Set<String> INITIALIZATION_MESSAGE_FIELDS;
 	private static final Set<String> REGULAR_MESSAGE_FIELDS;
+	private static final Set<String> GROUP_MESSAGE_FIELDS;
+	private static final Set<String> GROUP_KEY_MESSAGE_FIELDS;
 
 	static {
 		INITIATOR_SESSION_STATE_FIELDS = Collections
@@ -62,6 +67,8 @@ public class SessionStateResolver {
 				.unmodifiableSet(getSerializedNameValues(ResponderSessionState.class));
 		INITIALIZATION_MESSAGE_FIELDS = Collections.unmodifiableSet(getSerializedNameValues(InitiationMessage.class));
 		REGULAR_MESSAGE_FIELDS = Collections.unmodifiableSet(getSerializedNameValues(Message.class));
+		GROUP_MESSAGE_FIELDS = Collections.unmodifiableSet(getSerializedNameValues(GroupMessage.class));
+		GROUP_KEY_MESSAGE_FIELDS = Collections.unmodifiableSet(getSerializedNameValues(GroupKeyMessage.class));
 	}
 
 	private static Set<String> getSerializedNameValues(Class<?> clazz) {
@@ -116,6 +123,48 @@ public class SessionStateResolver {
 		return true;
 	}
 
+	/**
+	 * Checks if message is a group message.
+	 * 
+	 * @param message
+	 *            the message.
+	 * @return {@code true} if message is a group message.
+	 */
+	public static boolean isGroupMessage(String message) {
+		return hasAllFields(message, GROUP_MESSAGE_FIELDS);
+	}
+
+	/**
+	 * Checks if decrypted message is a group key message. Any text could be
+	 * decrypted, so it's not required to be JSON.
+	 * 
+	 * @param message
+	 *            the decrypted message.
+	 * @return {@code true} if message is a group key message.
+	 */
+	public static boolean isGroupKeyMessage(String message) {
+		return hasAllFields(message, GROUP_KEY_MESSAGE_FIELDS);
+	}
+
+	private static boolean hasAllFields(String json, Set<String> fields) {
+		JsonElement jsonEl;
+		try {
+			jsonEl = new JsonParser().parse(json);
+		} catch (JsonParseException e) {
+			return false;
+		}
+		if (!jsonEl.isJsonObject()) {
+			return false;
+		}
+		JsonObject jsObj = (JsonObject) jsonEl;
+		for (String fieldName : fields) {
+			if (!jsObj.has(fieldName)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public static boolean isResponderSessionState(String json) {
 		JsonObject jsObj = (JsonObject) new JsonParser().parse(json);
 		for (String fieldName : RESPONDER_SESSION_STATE_FIELDS) {
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.virgilsecurity.sdk.pfs.Deadline;
+
+/**
+ * Coalesces concurrent calls with the same key. While a call is in flight,
+ * other callers with the same key wait for it and get its result instead of
+ * doing the same work again.
+ * 
+ * Waiting is limited by the {@link Deadline} of the waiting thread. Caller
+ * which runs out of time fails without doing the work, so there is never more
+ * than one call per key in flight. Timeout failures of the call are not
+ * shared, since waiting callers may have more time than the caller which did
+ * the work.
+ * 
+ * @author Andrii Iakovenko
+ *
+ * @param <K>
+ *            the key type.
+ * @param <V>
+ *            the result type.
+ */
+public class SingleFlight<K, V> {
+
+	/**
+	 * The work which should be done once per key at a time.
+	 *
+	 * @param <V>
+	 *            the result type.
+	 * @param <E>
+	 *            the exception type.
+	 */
+	public interface Call<V, E extends Exception> {
+
+		/**
+		 * Do the work.
+		 * 
+		 * @return the result.
+		 * @throws E
+		 *             if the work failed.
+		 */
+		V call() throws E;
+	}
+
+	private static class Flight<V> {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private V result;
+		private Throwable error;
+
+		/*
+		 * Wait for the call. Returns false if deadline passed before the call
+		 * completed
+		 */
+		boolean await(Deadline deadline) throws InterruptedException {
+			if (deadline == null) {
+				this.done.await();
+				return true;
+			}
+			return this.done.await(Math.max(0, deadline.timeRemaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+	/**
+	 * Execute the call, or wait for the call with the same key which is
+	 * already in flight.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param call
+	 *            the call.
+	 * @return the result of the call.
+	 * @throws E
+	 *             if the call failed. Waiting callers get the same exception,
+	 *             unless it's caused by timeout.
+	 * @throws CancellationException
+	 *             if the thread is interrupted or its deadline is passed while
+	 *             waiting for the call in flight. Deadline failure is caused
+	 *             by {@link TimeoutException}.
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends Exception> V execute(K key, Call<V, E> call) throws E {
+		Flight<V> flight = new Flight<>();
+		Flight<V> current;
+		while ((current = this.flights.putIfAbsent(key, flight)) != null) {
+			boolean completed;
+			try {
+				completed = current.await(Deadline.current());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				CancellationException cancellation = new CancellationException(
+						"Interrupted while waiting for the call in flight");
+				cancellation.initCause(e);
+				throw cancellation;
+			}
+			if (!completed) {
+				CancellationException cancellation = new CancellationException(
+						"Deadline exceeded while waiting for the call in flight");
+				cancellation.initCause(new TimeoutException());
+				throw cancellation;
+			}
+			if (current.error == null) {
+				return current.result;
+			}
+			if (isTimeout(current.error)) {
+				// Retry, this caller may have more time
+				continue;
+			}
+			if (current.error instanceof RuntimeException) {
+				throw (RuntimeException) current.error;
+			}
+			if (current.error instanceof Error) {
+				throw (Error) current.error;
+			}
+			throw (E) current.error;
+		}
+
+		try {
+			flight.result = call.call();
+			return flight.result;
+		} catch (Exception | Error e) {
+			flight.error = e;
+			throw e;
+		} finally {
+			this.flights.remove(key, flight);
+			flight.done.countDown();
+		}
+	}
+
+	private static boolean isTimeout(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof TimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of calls in flight.
+	 */
+	public int getInFlightCount() {
+		return this.flights.size();
+	}
+
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.pfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.sdk.pfs.VirgilPFSClient.Endpoint;
+
+public class RequestExecutorTest {
+
+	private static final String RESPONSE = "response";
+
+	private VirgilPFSClientContext context;
+	private ExecutorService executor;
+	private AtomicInteger requestsCount;
+
+	@Before
+	public void setUp() {
+		this.executor = Executors.newCachedThreadPool();
+		this.context = new VirgilPFSClientContext();
+		this.context.setRequestExecutor(this.executor);
+		this.requestsCount = new AtomicInteger();
+	}
+
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void execute() throws Exception {
+		RequestExecutor requestExecutor = new RequestExecutor(this.context);
+
+		assertEquals(RESPONSE, requestExecutor.execute(Endpoint.SEARCH_BY_IDS, delayed(0, 0)));
+		assertEquals(1, requestExecutor.getLatencyHistogram(Endpoint.SEARCH_BY_IDS).getCount());
+		assertEquals(0, requestExecutor.getLatencyHistogram(Endpoint.GET_CARD_STATUS).getCount());
+	}
+
+	@Test
+	public void execute_timeout() throws Exception {
+		this.context.setDefaultTimeout(10000);
+		this.context.setTimeout(Endpoint.SEARCH_BY_IDS, 100);
+		RequestExecutor requestExecutor = new RequestExecutor(this.context);
+
+		long start = System.nanoTime();
+		try {
+			requestExecutor.execute(Endpoint.SEARCH_BY_IDS, delayed(5000, 5000));
+			fail();
+		} catch (TimeoutException e) {
+			// Expected
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		assertEquals(1, requestExecutor.getLatencyHistogram(Endpoint.SEARCH_BY_IDS).getCount());
+
+		// Endpoint without own timeout uses default one
+		assertEquals(RESPONSE, requestExecutor.execute(Endpoint.GET_CARD_STATUS, delayed(100, 100)));
+	}
+
+	@Test
+	public void execute_deadline() throws Exception {
+		RequestExecutor requestExecutor = new RequestExecutor(this.context);
+
+		long start = System.nanoTime();
+		try (Deadline.Scope scope = Deadline.after(100, TimeUnit.MILLISECONDS).attach()) {
+			requestExecutor.execute(Endpoint.BOOTSTRAP_CARDS_SET, delayed(5000, 5000));
+			fail();
+		} catch (TimeoutException e) {
+			// Expected
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		assertNull(Deadline.current());
+	}
+
+	@Test
+	public void execute_deadlineExpired() throws Exception {
+		RequestExecutor requestExecutor = new RequestExecutor(this.context);
+
+		try (Deadline.Scope scope = Deadline.after(-1, TimeUnit.MILLISECONDS).attach()) {
+			requestExecutor.execute(Endpoint.SEARCH_BY_IDS, delayed(0, 0));
+			fail();
+		} catch (TimeoutException e) {
+			// Expected
+		}
+		assertEquals(0, this.requestsCount.get());
+	}
+
+	@Test
+	public void execute_timeoutAttached() throws Exception {
+		this.context.setDefaultTimeout(1000);
+		RequestExecutor requestExecutor = new RequestExecutor(this.context);
+
+		// Connection timeouts are limited by deadline of executing thread
+		long remaining = requestExecutor.execute(Endpoint.CREATE_ONE_TIME_CARDS, new Callable<Long>() {
+
+			@Override
+			public Long call() throws Exception {
+				return Deadline.current().timeRemaining(TimeUnit.MILLISECONDS);
+			}
+		});
+		assertTrue(remaining > 0 && remaining <= 1000);
+	}
+
+	@Test
+	public void execute_executorBusy() throws Exception {
+		final CountDownLatch busy = new CountDownLatch(1);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>());
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						busy.await();
+					} catch (InterruptedException e) {
+						// Stopped
+					}
+				}
+			});
+			this.context.setRequestExecutor(executor);
+			this.context.setDefaultTimeout(1000);
+			RequestExecutor requestExecutor = new RequestExecutor(this.context);
+
+			// Request is executed by the calling thread
+			final Thread caller = Thread.currentThread();
+			boolean callerThread = requestExecutor.execute(Endpoint.CREATE_ONE_TIME_CARDS, new Callable<Boolean>() {
+
+				@Override
+				public Boolean call() throws Exception {
+					return Thread.currentThread() == caller && Deadline.current() != null;
+				}
+			});
+			assertTrue(callerThread);
+			assertNull(Deadline.current());
+		} finally {
+			busy.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void execute_hedged() throws Exception {
+		this.context.setHedgingDelay(50);
+		this.context.setDefaultTimeout(3000);
+		RequestExecutor requestExecutor = new RequestExecutor(this.context);
+
+		// The first request is slow, hedged one is fast
+		long start = System.nanoTime();
+		assertEquals(RESPONSE, requestExecutor.execute(Endpoint.GET_CARD_STATUS, delayed(5000, 0)));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		assertEquals(2, this.requestsCount.get());
+	}
+
+	@Test
+	public void execute_notIdempotent() throws Exception {
+		this.context.setHedgingDelay(50);
+		this.context.setDefaultTimeout(3000);
+		RequestExecutor requestExecutor = new RequestExecutor(this.context);
+
+		assertEquals(RESPONSE, requestExecutor.execute(Endpoint.CREATE_ONE_TIME_CARDS, delayed(200, 0)));
+		assertEquals(1, this.requestsCount.get());
+
+		// Search consumes one-time cards
+		assertEquals(RESPONSE, requestExecutor.execute(Endpoint.SEARCH_BY_IDS, delayed(200, 0)));
+		assertEquals(2, this.requestsCount.get());
+	}
+
+	@Test
+	public void execute_failure() throws Exception {
+		this.context.setDefaultTimeout(3000);
+		RequestExecutor requestExecutor = new RequestExecutor(this.context);
+
+		final IllegalStateException exception = new IllegalStateException();
+		try {
+			requestExecutor.execute(Endpoint.SEARCH_BY_IDS, new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+					throw exception;
+				}
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertSame(exception, e);
+		}
+	}
+
+	@Test
+	public void deadline_nested() {
+		Deadline outer = Deadline.after(1, TimeUnit.SECONDS);
+		Deadline inner = Deadline.after(1, TimeUnit.HOURS);
+		try (Deadline.Scope outerScope = outer.attach()) {
+			try (Deadline.Scope innerScope = inner.attach()) {
+				// Earlier deadline remains in effect
+				assertSame(outer, Deadline.current());
+			}
+			assertSame(outer, Deadline.current());
+		}
+		assertNull(Deadline.current());
+	}
+
+	@Test
+	public void latencyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(0.99, TimeUnit.MILLISECONDS));
+
+		for (int i = 0; i < 99; i++) {
+			histogram.record(1, TimeUnit.MILLISECONDS);
+		}
+		histogram.record(1, TimeUnit.SECONDS);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(1024, histogram.getPercentile(0.5, TimeUnit.MICROSECONDS));
+		assertEquals(1024, histogram.getPercentile(0.99, TimeUnit.MICROSECONDS));
+		assertEquals(1048576, histogram.getPercentile(1, TimeUnit.MICROSECONDS));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+	}
+
+	/*
+	 * Creates request which responds after the first delay on the first call,
+	 * and after the second delay on next calls
+	 */
+	private Callable<String> delayed(final long firstDelay, final long nextDelay) {
+		return new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				long delay = (requestsCount.getAndIncrement() == 0) ? firstDelay : nextDelay;
+				if (delay > 0) {
+					Thread.sleep(delay);
+				}
+				return RESPONSE;
+			}
+		};
+	}
+
+}
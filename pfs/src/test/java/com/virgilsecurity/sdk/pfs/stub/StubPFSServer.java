@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.pfs.stub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.virgilsecurity.sdk.pfs.VirgilPFSClient.Endpoint;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+/**
+ * In-process stub of Virgil PFS service for tests and benchmarks. Implements
+ * {@code /v1/recipient} endpoints with in-memory state. Cards are not
+ * validated, card identifier is calculated from content snapshot as the real
+ * service does.
+ * 
+ * Latency can be injected for each endpoint, so timeouts and hedging can be
+ * tested.
+ * 
+ * <pre>
+ * StubPFSServer server = new StubPFSServer();
+ * server.start();
+ * context.setEphemeralServiceURL(server.getURL());
+ * ...
+ * server.stop();
+ * </pre>
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class StubPFSServer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Pattern RECIPIENT_PATH = Pattern.compile("^/v1/recipient/([^/]+)$");
+	private static final Pattern RECIPIENT_ACTION_PATH = Pattern.compile("^/v1/recipient/([^/]+)/actions/([^/]+)$");
+	private static final String SEARCH_PATH = "/v1/recipient/actions/search-by-ids";
+
+	/** Error code returned when recipient has no long-term card. */
+	public static final int ERROR_RECIPIENT_NOT_FOUND = 60001;
+
+	/** Error code returned for unknown endpoint or malformed request. */
+	public static final int ERROR_BAD_REQUEST = 60002;
+
+	private static class Recipient {
+		private JsonObject longTermCard;
+		private final Map<String, JsonObject> oneTimeCards = new LinkedHashMap<>();
+	}
+
+	private static class Latency {
+		private final long min;
+		private final long max;
+
+		Latency(long min, long max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		long next() {
+			return (min == max) ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+		}
+	}
+
+	private static class StubException extends Exception {
+		private static final long serialVersionUID = -5123071457425361234L;
+
+		private final int status;
+		private final int code;
+
+		StubException(int status, int code) {
+			this.status = status;
+			this.code = code;
+		}
+	}
+
+	private final ConcurrentMap<String, Recipient> recipients = new ConcurrentHashMap<>();
+	private final Map<Endpoint, Latency> latencies = new EnumMap<>(Endpoint.class);
+	private final Map<Endpoint, Integer> requestCounts = new EnumMap<>(Endpoint.class);
+
+	private int threadsCount;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * Create new instance of {@link StubPFSServer} which handles requests with
+	 * 16 threads.
+	 */
+	public StubPFSServer() {
+		this(16);
+	}
+
+	/**
+	 * Create new instance of {@link StubPFSServer}.
+	 * 
+	 * @param threadsCount
+	 *            the number of threads handling requests.
+	 */
+	public StubPFSServer(int threadsCount) {
+		this.threadsCount = threadsCount;
+		for (Endpoint endpoint : Endpoint.values()) {
+			this.requestCounts.put(endpoint, 0);
+		}
+	}
+
+	/**
+	 * Starts server on a free port of loopback interface.
+	 * 
+	 * @throws IOException
+	 *             if server can't be started.
+	 */
+	public void start() throws IOException {
+		this.executor = Executors.newFixedThreadPool(this.threadsCount);
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/v1/recipient", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				StubPFSServer.this.handle(exchange);
+			}
+		});
+		this.server.start();
+	}
+
+	/**
+	 * Stops server.
+	 */
+	public void stop() {
+		if (this.server != null) {
+			this.server.stop(0);
+			this.executor.shutdownNow();
+			this.server = null;
+		}
+	}
+
+	/**
+	 * @return the URL of server to be set as ephemeral service URL.
+	 */
+	public URL getURL() {
+		try {
+			return new URL("http", "127.0.0.1", this.server.getAddress().getPort(), "/");
+		} catch (MalformedURLException e) {
+			// This should never happen
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Sets latency of endpoint.
+	 * 
+	 * @param endpoint
+	 *            the endpoint.
+	 * @param latency
+	 *            the latency in milliseconds.
+	 */
+	public void setLatency(Endpoint endpoint, long latency) {
+		setLatency(endpoint, latency, latency);
+	}
+
+	/**
+	 * Sets latency of endpoint which is chosen randomly for each request.
+	 * 
+	 * @param endpoint
+	 *            the endpoint.
+	 * @param minLatency
+	 *            the minimum latency in milliseconds.
+	 * @param maxLatency
+	 *            the maximum latency in milliseconds.
+	 */
+	public void setLatency(Endpoint endpoint, long minLatency, long maxLatency) {
+		synchronized (this.latencies) {
+			this.latencies.put(endpoint, new Latency(minLatency, maxLatency));
+		}
+	}
+
+	/**
+	 * @param recipientId
+	 *            the recipient identifier.
+	 * @return the number of one-time cards of recipient.
+	 */
+	public int getOneTimeCardsCount(String recipientId) {
+		Recipient recipient = this.recipients.get(recipientId);
+		if (recipient == null) {
+			return 0;
+		}
+		synchronized (recipient) {
+			return recipient.oneTimeCards.size();
+		}
+	}
+
+	/**
+	 * @param endpoint
+	 *            the endpoint.
+	 * @return the number of requests to endpoint.
+	 */
+	public int getRequestCount(Endpoint endpoint) {
+		synchronized (this.requestCounts) {
+			return this.requestCounts.get(endpoint);
+		}
+	}
+
+	/**
+	 * Removes all recipients.
+	 */
+	public void reset() {
+		this.recipients.clear();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			JsonElement response;
+			try {
+				response = route(exchange);
+			} catch (StubException e) {
+				JsonObject error = new JsonObject();
+				error.addProperty("code", e.code);
+				respond(exchange, e.status, error);
+				return;
+			} catch (RuntimeException e) {
+				JsonObject error = new JsonObject();
+				error.addProperty("code", ERROR_BAD_REQUEST);
+				respond(exchange, 400, error);
+				return;
+			}
+			respond(exchange, 200, response);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private JsonElement route(HttpExchange exchange) throws IOException, StubException {
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+
+		if (SEARCH_PATH.equals(path) && "POST".equals(method)) {
+			JsonObject request = readBody(exchange).getAsJsonObject();
+			delay(Endpoint.SEARCH_BY_IDS);
+			return searchByIds(request.getAsJsonArray("identity_cards_ids"));
+		}
+		Matcher matcher = RECIPIENT_PATH.matcher(path);
+		if (matcher.matches() && "PUT".equals(method)) {
+			JsonObject request = readBody(exchange).getAsJsonObject();
+			delay(Endpoint.BOOTSTRAP_CARDS_SET);
+			return bootstrap(matcher.group(1), request);
+		}
+		matcher = RECIPIENT_ACTION_PATH.matcher(path);
+		if (matcher.matches() && "POST".equals(method)) {
+			String recipientId = matcher.group(1);
+			switch (matcher.group(2)) {
+			case "push-ltc":
+				JsonObject ltcRequest = readBody(exchange).getAsJsonObject();
+				delay(Endpoint.CREATE_LONG_TERM_CARD);
+				return pushLongTermCard(recipientId, ltcRequest);
+			case "push-otcs":
+				JsonArray otcRequests = readBody(exchange).getAsJsonArray();
+				delay(Endpoint.CREATE_ONE_TIME_CARDS);
+				return pushOneTimeCards(recipientId, otcRequests);
+			case "count-otcs":
+				delay(Endpoint.GET_CARD_STATUS);
+				JsonObject status = new JsonObject();
+				status.addProperty("active", getOneTimeCardsCount(recipientId));
+				return status;
+			case "validate-otcs":
+				JsonObject validateRequest = readBody(exchange).getAsJsonObject();
+				delay(Endpoint.VALIDATE_ONE_TIME_CARDS);
+				return validateOneTimeCards(recipientId, validateRequest.getAsJsonArray("one_time_cards_ids"));
+			default:
+				break;
+			}
+		}
+		throw new StubException(404, ERROR_BAD_REQUEST);
+	}
+
+	private JsonObject bootstrap(String recipientId, JsonObject request) {
+		JsonObject longTermCard = toCard(request.getAsJsonObject("long_time_card"));
+		List<JsonObject> oneTimeCards = new ArrayList<>();
+		JsonArray otcRequests = request.getAsJsonArray("one_time_cards");
+		if (otcRequests != null) {
+			for (JsonElement otcRequest : otcRequests) {
+				oneTimeCards.add(toCard(otcRequest.getAsJsonObject()));
+			}
+		}
+
+		Recipient recipient = getOrCreateRecipient(recipientId);
+		synchronized (recipient) {
+			recipient.longTermCard = longTermCard;
+			for (JsonObject card : oneTimeCards) {
+				recipient.oneTimeCards.put(card.get("id").getAsString(), card);
+			}
+		}
+
+		JsonObject response = new JsonObject();
+		response.add("long_time_card", longTermCard);
+		JsonArray cards = new JsonArray();
+		for (JsonObject card : oneTimeCards) {
+			cards.add(card);
+		}
+		response.add("one_time_cards", cards);
+		return response;
+	}
+
+	private JsonObject pushLongTermCard(String recipientId, JsonObject request) {
+		JsonObject card = toCard(request);
+		Recipient recipient = getOrCreateRecipient(recipientId);
+		synchronized (recipient) {
+			recipient.longTermCard = card;
+		}
+		return card;
+	}
+
+	private JsonArray pushOneTimeCards(String recipientId, JsonArray requests) throws StubException {
+		Recipient recipient = this.recipients.get(recipientId);
+		if (recipient == null) {
+			throw new StubException(400, ERROR_RECIPIENT_NOT_FOUND);
+		}
+		JsonArray cards = new JsonArray();
+		synchronized (recipient) {
+			for (JsonElement request : requests) {
+				JsonObject card = toCard(request.getAsJsonObject());
+				recipient.oneTimeCards.put(card.get("id").getAsString(), card);
+				cards.add(card);
+			}
+		}
+		return cards;
+	}
+
+	private JsonArray searchByIds(JsonArray recipientIds) {
+		JsonArray sets = new JsonArray();
+		for (JsonElement recipientId : recipientIds) {
+			Recipient recipient = this.recipients.get(recipientId.getAsString());
+			if (recipient == null) {
+				continue;
+			}
+			JsonObject set = new JsonObject();
+			synchronized (recipient) {
+				if (recipient.longTermCard == null) {
+					continue;
+				}
+				set.add("long_time_card", recipient.longTermCard);
+				// One-time card is given away once
+				Iterator<JsonObject> it = recipient.oneTimeCards.values().iterator();
+				if (it.hasNext()) {
+					set.add("one_time_card", it.next());
+					it.remove();
+				}
+			}
+			sets.add(set);
+		}
+		return sets;
+	}
+
+	private JsonObject validateOneTimeCards(String recipientId, JsonArray cardIds) {
+		Recipient recipient = this.recipients.get(recipientId);
+		JsonArray exhausted = new JsonArray();
+		for (JsonElement cardId : cardIds) {
+			boolean exists = false;
+			if (recipient != null) {
+				synchronized (recipient) {
+					exists = recipient.oneTimeCards.containsKey(cardId.getAsString());
+				}
+			}
+			if (!exists) {
+				exhausted.add(cardId);
+			}
+		}
+		JsonObject response = new JsonObject();
+		response.add("exhausted_one_time_cards_ids", exhausted);
+		return response;
+	}
+
+	private Recipient getOrCreateRecipient(String recipientId) {
+		Recipient recipient = this.recipients.get(recipientId);
+		if (recipient == null) {
+			recipient = new Recipient();
+			Recipient existing = this.recipients.putIfAbsent(recipientId, recipient);
+			if (existing != null) {
+				recipient = existing;
+			}
+		}
+		return recipient;
+	}
+
+	/*
+	 * Creates card from signable request. Card identifier is SHA-256 of content
+	 * snapshot
+	 */
+	private static JsonObject toCard(JsonObject request) {
+		String snapshot = request.get("content_snapshot").getAsString();
+		JsonObject card = new JsonObject();
+		card.addProperty("id", sha256(ConvertionUtils.base64ToBytes(snapshot)));
+		card.addProperty("content_snapshot", snapshot);
+
+		JsonObject meta = new JsonObject();
+		JsonObject requestMeta = request.getAsJsonObject("meta");
+		meta.add("signs", (requestMeta != null && requestMeta.has("signs")) ? requestMeta.get("signs")
+				: new JsonObject());
+		meta.add("created_at", new JsonPrimitive(String.valueOf(System.currentTimeMillis())));
+		meta.addProperty("card_version", "4.0");
+		card.add("meta", meta);
+		return card;
+	}
+
+	private static String sha256(byte[] data) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// This should never happen
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void delay(Endpoint endpoint) {
+		synchronized (this.requestCounts) {
+			this.requestCounts.put(endpoint, this.requestCounts.get(endpoint) + 1);
+		}
+		Latency latency;
+		synchronized (this.latencies) {
+			latency = this.latencies.get(endpoint);
+		}
+		if (latency == null) {
+			return;
+		}
+		long millis = latency.next();
+		if (millis > 0) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static JsonElement readBody(HttpExchange exchange) throws IOException {
+		try (InputStream is = exchange.getRequestBody(); Reader reader = new InputStreamReader(is, UTF8)) {
+			return new JsonParser().parse(reader);
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, JsonElement body) throws IOException {
+		byte[] bytes = body.toString().getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(bytes);
+		}
+	}
+
+}
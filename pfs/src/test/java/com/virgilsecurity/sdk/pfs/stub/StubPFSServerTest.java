@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.pfs.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.virgilsecurity.sdk.pfs.VirgilPFSClient.Endpoint;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+public class StubPFSServerTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private StubPFSServer server;
+	private String recipientId;
+
+	@Before
+	public void setUp() throws IOException {
+		this.server = new StubPFSServer(4);
+		this.server.start();
+		this.recipientId = UUID.randomUUID().toString();
+	}
+
+	@After
+	public void tearDown() {
+		this.server.stop();
+	}
+
+	@Test
+	public void bootstrap() throws IOException {
+		JsonObject response = bootstrap(3).getAsJsonObject();
+
+		JsonObject ltc = response.getAsJsonObject("long_time_card");
+		assertEquals(64, ltc.get("id").getAsString().length());
+		assertTrue(ltc.getAsJsonObject("meta").has("signs"));
+		assertEquals(3, response.getAsJsonArray("one_time_cards").size());
+		assertEquals(3, this.server.getOneTimeCardsCount(this.recipientId));
+		assertEquals(1, this.server.getRequestCount(Endpoint.BOOTSTRAP_CARDS_SET));
+	}
+
+	@Test
+	public void pushOneTimeCards() throws IOException {
+		bootstrap(1);
+
+		JsonArray request = new JsonArray();
+		request.add(cardRequest());
+		request.add(cardRequest());
+		JsonArray cards = call("POST", "/v1/recipient/" + this.recipientId + "/actions/push-otcs", request)
+				.getAsJsonArray();
+
+		assertEquals(2, cards.size());
+		assertEquals(3, countOneTimeCards());
+	}
+
+	@Test
+	public void pushOneTimeCards_noRecipient() throws IOException {
+		JsonArray request = new JsonArray();
+		request.add(cardRequest());
+
+		assertEquals(400, status("POST", "/v1/recipient/" + this.recipientId + "/actions/push-otcs", request));
+	}
+
+	@Test
+	public void pushLongTermCard() throws IOException {
+		bootstrap(0);
+
+		JsonObject request = cardRequest();
+		JsonObject card = call("POST", "/v1/recipient/" + this.recipientId + "/actions/push-ltc", request)
+				.getAsJsonObject();
+
+		JsonObject set = search().get(0).getAsJsonObject();
+		assertEquals(card.get("id"), set.getAsJsonObject("long_time_card").get("id"));
+	}
+
+	@Test
+	public void searchByIds() throws IOException {
+		bootstrap(2);
+
+		JsonArray sets = search();
+		assertEquals(1, sets.size());
+		assertTrue(sets.get(0).getAsJsonObject().has("one_time_card"));
+		assertEquals(1, countOneTimeCards());
+
+		// One-time cards are exhausted
+		search();
+		sets = search();
+		assertEquals(1, sets.size());
+		assertTrue(sets.get(0).getAsJsonObject().has("long_time_card"));
+		assertFalse(sets.get(0).getAsJsonObject().has("one_time_card"));
+	}
+
+	@Test
+	public void searchByIds_unknown() throws IOException {
+		assertEquals(0, search().size());
+	}
+
+	@Test
+	public void validateOneTimeCards() throws IOException {
+		JsonArray cards = bootstrap(2).getAsJsonObject().getAsJsonArray("one_time_cards");
+		String usedId = search().get(0).getAsJsonObject().getAsJsonObject("one_time_card").get("id")
+				.getAsString();
+
+		JsonArray ids = new JsonArray();
+		for (JsonElement card : cards) {
+			ids.add(card.getAsJsonObject().get("id"));
+		}
+		JsonObject request = new JsonObject();
+		request.add("one_time_cards_ids", ids);
+		JsonArray exhausted = call("POST", "/v1/recipient/" + this.recipientId + "/actions/validate-otcs", request)
+				.getAsJsonObject().getAsJsonArray("exhausted_one_time_cards_ids");
+
+		assertEquals(1, exhausted.size());
+		assertEquals(usedId, exhausted.get(0).getAsString());
+	}
+
+	@Test
+	public void latency() throws IOException {
+		bootstrap(0);
+		this.server.setLatency(Endpoint.GET_CARD_STATUS, 200);
+
+		long start = System.nanoTime();
+		countOneTimeCards();
+		assertTrue(System.nanoTime() - start >= 200 * 1000000L);
+
+		start = System.nanoTime();
+		search();
+		assertTrue(System.nanoTime() - start < 200 * 1000000L);
+	}
+
+	@Test
+	public void unknownEndpoint() throws IOException {
+		assertEquals(404, status("POST", "/v1/recipient/" + this.recipientId + "/actions/unknown", new JsonObject()));
+	}
+
+	private JsonElement bootstrap(int oneTimeCardsCount) throws IOException {
+		JsonObject request = new JsonObject();
+		request.add("long_time_card", cardRequest());
+		JsonArray otcs = new JsonArray();
+		for (int i = 0; i < oneTimeCardsCount; i++) {
+			otcs.add(cardRequest());
+		}
+		request.add("one_time_cards", otcs);
+		return call("PUT", "/v1/recipient/" + this.recipientId, request);
+	}
+
+	private JsonArray search() throws IOException {
+		JsonArray ids = new JsonArray();
+		ids.add(new JsonParser().parse("\"" + this.recipientId + "\""));
+		JsonObject request = new JsonObject();
+		request.add("identity_cards_ids", ids);
+		return call("POST", "/v1/recipient/actions/search-by-ids", request).getAsJsonArray();
+	}
+
+	private int countOneTimeCards() throws IOException {
+		return call("POST", "/v1/recipient/" + this.recipientId + "/actions/count-otcs", null).getAsJsonObject()
+				.get("active").getAsInt();
+	}
+
+	private static JsonObject cardRequest() {
+		JsonObject request = new JsonObject();
+		request.addProperty("content_snapshot",
+				ConvertionUtils.toBase64String(UUID.randomUUID().toString().getBytes(UTF8)));
+		JsonObject meta = new JsonObject();
+		meta.add("signs", new JsonObject());
+		request.add("meta", meta);
+		return request;
+	}
+
+	private JsonElement call(String method, String path, JsonElement body) throws IOException {
+		HttpURLConnection connection = open(method, path, body);
+		assertEquals(200, connection.getResponseCode());
+		try (InputStream is = connection.getInputStream(); Reader reader = new InputStreamReader(is, UTF8)) {
+			return new JsonParser().parse(reader);
+		}
+	}
+
+	private int status(String method, String path, JsonElement body) throws IOException {
+		return open(method, path, body).getResponseCode();
+	}
+
+	private HttpURLConnection open(String method, String path, JsonElement body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(this.server.getURL(), path).openConnection();
+		connection.setRequestMethod(method);
+		if (body != null) {
+			connection.setDoOutput(true);
+			try (OutputStream os = connection.getOutputStream()) {
+				os.write(body.toString().getBytes(UTF8));
+			}
+		}
+		return connection;
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.pfs.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.sdk.client.exceptions.VirgilServiceException;
+import com.virgilsecurity.sdk.client.model.CardModel;
+import com.virgilsecurity.sdk.crypto.Crypto;
+import com.virgilsecurity.sdk.crypto.VirgilCrypto;
+import com.virgilsecurity.sdk.pfs.VirgilPFSClient;
+import com.virgilsecurity.sdk.pfs.VirgilPFSClient.Endpoint;
+import com.virgilsecurity.sdk.pfs.VirgilPFSClientContext;
+import com.virgilsecurity.sdk.pfs.exceptions.VirgilPFSServiceException;
+import com.virgilsecurity.sdk.pfs.model.RecipientCardsSet;
+import com.virgilsecurity.sdk.pfs.model.request.CreateEphemeralCardRequest;
+import com.virgilsecurity.sdk.pfs.model.response.BootstrapCardsResponse;
+
+/**
+ * Tests {@link VirgilPFSClient} against {@link StubPFSServer}.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+public class VirgilPFSClientStubTest {
+
+	private static final String USERNAME_IDENTITY_TYPE = "username";
+
+	private Crypto crypto;
+	private StubPFSServer server;
+	private VirgilPFSClientContext context;
+	private String recipientId;
+
+	@Before
+	public void setUp() throws IOException {
+		this.crypto = new VirgilCrypto();
+
+		this.server = new StubPFSServer();
+		this.server.start();
+
+		this.context = new VirgilPFSClientContext();
+		this.context.setEphemeralServiceURL(this.server.getURL());
+
+		this.recipientId = UUID.randomUUID().toString();
+	}
+
+	@After
+	public void tearDown() {
+		this.server.stop();
+	}
+
+	@Test
+	public void flow() throws VirgilServiceException {
+		VirgilPFSClient client = new VirgilPFSClient(this.context);
+
+		List<CreateEphemeralCardRequest> otcRequests = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			otcRequests.add(createCardRequest());
+		}
+		BootstrapCardsResponse response = client.bootstrapCardsSet(this.recipientId, createCardRequest(),
+				otcRequests);
+		assertNotNull(response.getLongTimeCard());
+		assertEquals(3, response.getOneTimeCards().size());
+		assertEquals(3, client.getCardStatus(this.recipientId).getActive());
+
+		RecipientCardsSet cardsSet = client.getRecipientCardsSet(this.recipientId).get(0);
+		assertEquals(response.getLongTimeCard().getId(), cardsSet.getLongTermCard().getId());
+		assertNotNull(cardsSet.getOneTimeCard());
+		assertEquals(2, client.getCardStatus(this.recipientId).getActive());
+
+		List<String> otcIds = new ArrayList<>();
+		for (CardModel card : response.getOneTimeCards()) {
+			otcIds.add(card.getId());
+		}
+		assertEquals(Arrays.asList(cardsSet.getOneTimeCard().getId()),
+				client.validateOneTimeCards(this.recipientId, otcIds));
+
+		client.createOneTimeCards(this.recipientId, Arrays.asList(createCardRequest()));
+		assertEquals(3, client.getCardStatus(this.recipientId).getActive());
+	}
+
+	@Test
+	public void exhausted() throws VirgilServiceException {
+		VirgilPFSClient client = new VirgilPFSClient(this.context);
+		client.createLongTermCard(this.recipientId, createCardRequest());
+
+		RecipientCardsSet cardsSet = client.getRecipientCardsSet(this.recipientId).get(0);
+		assertNotNull(cardsSet.getLongTermCard());
+		assertNull(cardsSet.getOneTimeCard());
+	}
+
+	@Test
+	public void timeout() {
+		this.server.setLatency(Endpoint.GET_CARD_STATUS, 1000);
+		this.context.setTimeout(Endpoint.GET_CARD_STATUS, 100);
+		VirgilPFSClient client = new VirgilPFSClient(this.context);
+
+		long start = System.currentTimeMillis();
+		try {
+			client.getCardStatus(this.recipientId);
+			fail();
+		} catch (VirgilPFSServiceException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+
+	@Test
+	public void hedging() {
+		this.server.setLatency(Endpoint.GET_CARD_STATUS, 500);
+		this.context.setHedgingDelay(50);
+		this.context.setTimeout(Endpoint.GET_CARD_STATUS, 2000);
+		VirgilPFSClient client = new VirgilPFSClient(this.context);
+
+		assertEquals(0, client.getCardStatus(this.recipientId).getActive());
+		assertTrue(this.server.getRequestCount(Endpoint.GET_CARD_STATUS) > 1);
+	}
+
+	@Test
+	public void hedging_search() throws VirgilServiceException {
+		this.server.setLatency(Endpoint.SEARCH_BY_IDS, 200);
+		this.context.setHedgingDelay(50);
+		this.context.setTimeout(Endpoint.SEARCH_BY_IDS, 2000);
+		VirgilPFSClient client = new VirgilPFSClient(this.context);
+		client.createLongTermCard(this.recipientId, createCardRequest());
+		client.createOneTimeCards(this.recipientId, Arrays.asList(createCardRequest(), createCardRequest()));
+
+		// Search consumes one-time card, so it's never hedged
+		assertNotNull(client.getRecipientCardsSet(this.recipientId).get(0).getOneTimeCard());
+		assertEquals(1, this.server.getRequestCount(Endpoint.SEARCH_BY_IDS));
+		assertEquals(1, client.getCardStatus(this.recipientId).getActive());
+	}
+
+	private CreateEphemeralCardRequest createCardRequest() {
+		byte[] publicKeyData = this.crypto.exportPublicKey(this.crypto.generateKeys().getPublicKey());
+		return new CreateEphemeralCardRequest(this.recipientId, USERNAME_IDENTITY_TYPE, publicKeyData);
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.virgilsecurity.sdk.securechat.KeysRotator.Phase;
+import com.virgilsecurity.sdk.securechat.KeysRotator.Rotation;
+
+public class BackgroundKeysRotatorTest {
+
+	private static final int DESIRED_NUMBER_OF_CARDS = 10;
+
+	private KeysRotator rotator;
+	private BackgroundKeysRotator backgroundRotator;
+
+	@Before
+	public void setUp() {
+		rotator = mock(KeysRotator.class);
+		when(rotator.tryStartRotation(anyInt())).thenReturn(mock(Rotation.class));
+		backgroundRotator = new BackgroundKeysRotator(rotator, null, 60 * 60, 0.1);
+		backgroundRotator.setStepSize(5);
+	}
+
+	@After
+	public void tearDown() {
+		backgroundRotator.stop();
+	}
+
+	@Test
+	public void start() {
+		when(rotator.rotate(any(Rotation.class), any(Phase.class), anyInt())).thenReturn(true);
+		when(rotator.rotate(any(Rotation.class), eq(Phase.OT_KEYS), anyInt())).thenReturn(false, false, true);
+
+		backgroundRotator.start(DESIRED_NUMBER_OF_CARDS);
+		assertTrue(backgroundRotator.isStarted());
+
+		verify(rotator, timeout(1000)).rotate(any(Rotation.class), eq(Phase.REPLENISH), eq(5));
+		verify(rotator, times(1)).tryStartRotation(DESIRED_NUMBER_OF_CARDS);
+		verify(rotator, times(3)).rotate(any(Rotation.class), eq(Phase.OT_KEYS), eq(5));
+		verify(rotator, times(1)).rotate(any(Rotation.class), eq(Phase.LT_KEYS), eq(5));
+	}
+
+	@Test
+	public void pause() {
+		backgroundRotator.pause();
+		assertTrue(backgroundRotator.isPaused());
+
+		backgroundRotator.start(DESIRED_NUMBER_OF_CARDS);
+		verify(rotator, after(200).never()).tryStartRotation(anyInt());
+
+		when(rotator.rotate(any(Rotation.class), any(Phase.class), anyInt())).thenReturn(true);
+		backgroundRotator.resume();
+		assertFalse(backgroundRotator.isPaused());
+		verify(rotator, timeout(2000)).rotate(any(Rotation.class), eq(Phase.REPLENISH), anyInt());
+	}
+
+	@Test
+	public void stop() {
+		backgroundRotator.pause();
+		backgroundRotator.start(DESIRED_NUMBER_OF_CARDS);
+		backgroundRotator.stop();
+		assertFalse(backgroundRotator.isStarted());
+
+		backgroundRotator.resume();
+		verify(rotator, after(1500).never()).tryStartRotation(anyInt());
+	}
+
+	@Test
+	public void failedRotation() {
+		when(rotator.rotate(any(Rotation.class), any(Phase.class), anyInt())).thenThrow(new RuntimeException());
+
+		backgroundRotator.start(DESIRED_NUMBER_OF_CARDS);
+
+		verify(rotator, timeout(1000)).rotate(any(Rotation.class), eq(Phase.LT_KEYS), anyInt());
+		verify(rotator, after(200).never()).rotate(any(Rotation.class), eq(Phase.OT_KEYS), anyInt());
+		verify(rotator, times(1)).finishRotation(any(Rotation.class));
+		assertTrue(backgroundRotator.isStarted());
+	}
+
+	@Test
+	public void otherRotationInProgress() {
+		Rotation rotation = mock(Rotation.class);
+		when(rotator.tryStartRotation(anyInt())).thenReturn(null, rotation);
+		when(rotator.rotate(any(Rotation.class), any(Phase.class), anyInt())).thenReturn(true);
+
+		backgroundRotator.start(DESIRED_NUMBER_OF_CARDS);
+
+		verify(rotator, timeout(200)).tryStartRotation(DESIRED_NUMBER_OF_CARDS);
+		verify(rotator, after(200).never()).rotate(any(Rotation.class), any(Phase.class), anyInt());
+		verify(rotator, timeout(2000)).rotate(eq(rotation), eq(Phase.REPLENISH), anyInt());
+	}
+
+	@Test
+	public void stopInProgress() {
+		Rotation rotation = mock(Rotation.class);
+		when(rotator.tryStartRotation(anyInt())).thenReturn(rotation);
+		when(rotator.rotate(any(Rotation.class), any(Phase.class), anyInt())).thenReturn(false);
+		backgroundRotator.setTimeSlice(0);
+
+		backgroundRotator.start(DESIRED_NUMBER_OF_CARDS);
+		verify(rotator, timeout(1000).atLeastOnce()).rotate(eq(rotation), eq(Phase.LT_KEYS), anyInt());
+		backgroundRotator.stop();
+
+		verify(rotator, timeout(1000)).finishRotation(rotation);
+	}
+
+	@Test
+	public void restartInProgress() throws InterruptedException {
+		final CountDownLatch rotating = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Rotation first = mock(Rotation.class);
+		Rotation second = mock(Rotation.class);
+		when(rotator.tryStartRotation(anyInt())).thenReturn(first, second);
+		when(rotator.rotate(eq(first), any(Phase.class), anyInt())).thenAnswer(new Answer<Boolean>() {
+
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				rotating.countDown();
+				release.await();
+				return false;
+			}
+		});
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		try {
+			backgroundRotator = new BackgroundKeysRotator(rotator, executor, 60 * 60, 0.1);
+			backgroundRotator.start(DESIRED_NUMBER_OF_CARDS);
+			assertTrue(rotating.await(1, TimeUnit.SECONDS));
+
+			// Step is still running when rotation is started again
+			Thread stopping = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					backgroundRotator.stop();
+				}
+			});
+			stopping.start();
+			while (backgroundRotator.isStarted()) {
+				Thread.sleep(10);
+			}
+			backgroundRotator.start(DESIRED_NUMBER_OF_CARDS);
+			release.countDown();
+			stopping.join(1000);
+
+			// Task of stopped rotation is dropped
+			verify(rotator, timeout(1000)).finishRotation(first);
+			verify(rotator, timeout(1000).atLeastOnce()).rotate(eq(second), any(Phase.class), anyInt());
+			verify(rotator, after(500).times(2)).tryStartRotation(anyInt());
+			verify(rotator, times(1)).rotate(eq(first), any(Phase.class), anyInt());
+			verify(rotator, never()).rotate(isNull(Rotation.class), any(Phase.class), anyInt());
+		} finally {
+			backgroundRotator.stop();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void wrongJitter() {
+		new BackgroundKeysRotator(rotator, null, 60, 2);
+	}
+
+}
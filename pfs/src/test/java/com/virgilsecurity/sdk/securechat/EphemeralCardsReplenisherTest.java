@@ -2,16 +2,26 @@ package com.virgilsecurity.sdk.securechat;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.virgilsecurity.sdk.client.VirgilClient;
 import com.virgilsecurity.sdk.client.model.CardModel;
@@ -23,7 +33,10 @@ import com.virgilsecurity.sdk.crypto.exceptions.CryptoException;
 import com.virgilsecurity.sdk.pfs.BaseIT;
 import com.virgilsecurity.sdk.pfs.VirgilPFSClient;
 import com.virgilsecurity.sdk.pfs.VirgilPFSClientContext;
+import com.virgilsecurity.sdk.pfs.exceptions.VirgilPFSServiceException;
+import com.virgilsecurity.sdk.pfs.model.request.CreateEphemeralCardRequest;
 import com.virgilsecurity.sdk.pfs.model.response.CardStatus;
+import com.virgilsecurity.sdk.securechat.exceptions.CardsUploadException;
 import com.virgilsecurity.sdk.securechat.keystorage.JsonFileKeyStorage;
 import com.virgilsecurity.sdk.securechat.keystorage.KeyAttrs;
 import com.virgilsecurity.sdk.securechat.keystorage.KeyStorage;
@@ -109,6 +122,65 @@ public class EphemeralCardsReplenisherTest extends BaseIT {
 		assertEquals(desiredNumber1 + desiredNumber2 + desiredNumber3, status.getActive());
 	}
 
+	@Test
+	public void addCards_chunked() {
+		KeyPair keyPair = crypto.generateKeys();
+		CardModel card = virgilClient.publishCard(instantiateCreateCardRequest(keyPair));
+		initializeReplenisher(keyPair.getPrivateKey(), card);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			this.cardsReplenisher.setUploadChunkSize(3);
+			this.cardsReplenisher.setUploadExecutor(executor);
+			this.cardsReplenisher.addCards(true, 10);
+		} finally {
+			executor.shutdown();
+		}
+
+		Map<String, List<KeyAttrs>> keyAttrs = keyStorageManager.getAllKeysAttrs();
+		assertEquals(10, keyAttrs.get("ot").size());
+		assertEquals(1, keyAttrs.get("lt").size());
+		assertEquals(10, pfsClient.getCardStatus(card.getId()).getActive());
+	}
+
+	@Test
+	public void addCards_partialFailure() {
+		KeyPair keyPair = crypto.generateKeys();
+		CardModel card = virgilClient.publishCard(instantiateCreateCardRequest(keyPair));
+
+		// The second chunk upload fails
+		final AtomicInteger uploads = new AtomicInteger();
+		VirgilPFSClient failingClient = spy(this.pfsClient);
+		doAnswer(new Answer<List<CardModel>>() {
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public List<CardModel> answer(InvocationOnMock invocation) throws Throwable {
+				if (uploads.incrementAndGet() == 2) {
+					throw new VirgilPFSServiceException();
+				}
+				return pfsClient.createOneTimeCards((String) invocation.getArguments()[0],
+						(List<CreateEphemeralCardRequest>) invocation.getArguments()[1]);
+			}
+		}).when(failingClient).createOneTimeCards(anyString(), anyListOf(CreateEphemeralCardRequest.class));
+		this.pfsClient = failingClient;
+		initializeReplenisher(keyPair.getPrivateKey(), card);
+		this.cardsReplenisher.setUploadChunkSize(3);
+
+		try {
+			this.cardsReplenisher.addCards(false, 10);
+			fail();
+		} catch (CardsUploadException e) {
+			assertEquals(7, e.getUploadedCount());
+			assertEquals(3, e.getFailedCount());
+		}
+
+		// Keys of uploaded cards are kept
+		Map<String, List<KeyAttrs>> keyAttrs = keyStorageManager.getAllKeysAttrs();
+		assertEquals(10, keyAttrs.get("ot").size());
+		assertEquals(7, failingClient.getCardStatus(card.getId()).getActive());
+	}
+
 	private void initializeReplenisher(PrivateKey privateKey, CardModel card) {
 		KeyStorage keyStorage = new JsonFileKeyStorage(System.getProperty("java.io.tmpdir"),
 				UUID.randomUUID().toString());
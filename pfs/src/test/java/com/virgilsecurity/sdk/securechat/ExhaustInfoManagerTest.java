@@ -1,12 +1,15 @@
 package com.virgilsecurity.sdk.securechat;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,16 +20,18 @@ import com.virgilsecurity.sdk.securechat.impl.DefaultUserDataStorage;
 import com.virgilsecurity.sdk.securechat.model.ExhaustInfo;
 import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.ExhaustInfoEntry;
 import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.SessionExhaustInfo;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
 
 public class ExhaustInfoManagerTest {
 
 	private ExhaustInfoManager exhaustInfoManager;
 	private String cardId;
+	private UserDataStorage storage;
 
 	@Before
 	public void setUp() {
 		cardId = UUID.randomUUID().toString();
-		UserDataStorage storage = new DefaultUserDataStorage();
+		storage = new DefaultUserDataStorage();
 		exhaustInfoManager = new ExhaustInfoManager(cardId, storage);
 	}
 
@@ -64,9 +69,76 @@ public class ExhaustInfoManagerTest {
 		ExhaustInfo exhaustInfo = exhaustInfoManager.getKeysExhaustInfo();
 
 		assertNotNull(exhaustInfo);
+		assertEquals(new HashSet<>(otc), new HashSet<>(exhaustInfo.getOtc()));
+		assertEquals(new HashSet<>(ltc), new HashSet<>(exhaustInfo.getLtc()));
+		assertEquals(sessions, exhaustInfo.getSessions());
+
+		// Exhaust info is persisted
+		exhaustInfo = new ExhaustInfoManager(cardId, storage).getKeysExhaustInfo();
+		assertEquals(new HashSet<>(otc), new HashSet<>(exhaustInfo.getOtc()));
+		assertEquals(new HashSet<>(ltc), new HashSet<>(exhaustInfo.getLtc()));
+		assertEquals(sessions, exhaustInfo.getSessions());
+	}
+
+	@Test
+	public void addOtcs() {
+		Date past = new Date(System.currentTimeMillis() - 10000);
+		Date now = new Date();
+
+		exhaustInfoManager.addOtcs(Arrays.asList("1", "2"), past);
+		// Exhaust date of already exhausted key is not changed
+		exhaustInfoManager.addOtcs(Arrays.asList("2", "3"), now);
+
+		assertEquals(3, exhaustInfoManager.getOtcs().size());
+		assertTrue(exhaustInfoManager.containsOtc("2"));
+		assertFalse(exhaustInfoManager.containsLtc("2"));
+		assertEquals(Arrays.asList("1", "2"), exhaustInfoManager.getOtcsExhaustedBefore(now));
+
+		exhaustInfoManager.removeOtcs(Arrays.asList("1", "3"));
+		assertEquals(Arrays.asList("2"), exhaustInfoManager.getOtcs());
+		assertEquals(Arrays.asList("2"), new ExhaustInfoManager(cardId, storage).getOtcs());
+	}
+
+	@Test
+	public void addSession() {
+		Date past = new Date(System.currentTimeMillis() - 10000);
+		Date now = new Date();
+		byte[] sessionId1 = TestUtils.generateBytes(16);
+		byte[] sessionId2 = TestUtils.generateBytes(16);
+		String recipientCardId = UUID.randomUUID().toString();
+
+		exhaustInfoManager.addSession(sessionId1, recipientCardId, past);
+		exhaustInfoManager.addSession(sessionId2, recipientCardId, now);
+
+		assertTrue(exhaustInfoManager.containsSession(sessionId1));
+		List<SessionExhaustInfo> sessions = new ExhaustInfoManager(cardId, storage).getSessionsExhaustedBefore(now);
+		assertEquals(1, sessions.size());
+		assertEquals(new SessionExhaustInfo(sessionId1, recipientCardId, past), sessions.get(0));
+
+		exhaustInfoManager.removeSessions(Arrays.asList(sessionId1));
+		assertFalse(exhaustInfoManager.containsSession(sessionId1));
+		assertTrue(exhaustInfoManager.containsSession(sessionId2));
+	}
+
+	@Test
+	public void migrate() {
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.MILLISECOND, 0);
+		Date now = cal.getTime();
+
+		List<ExhaustInfoEntry> otc = Arrays.asList(new ExhaustInfoEntry("otc", now));
+		List<ExhaustInfoEntry> ltc = Arrays.asList(new ExhaustInfoEntry("ltc", now));
+		List<SessionExhaustInfo> sessions = Arrays
+				.asList(new SessionExhaustInfo(TestUtils.generateBytes(16), UUID.randomUUID().toString(), now));
+		String legacyKey = String.format("VIRGIL.EXHAUSTINFO.OWNER=%s", cardId);
+		storage.addData(cardId, legacyKey,
+				ConvertionUtils.getGson().toJson(new ExhaustInfo(otc, ltc, sessions)));
+
+		ExhaustInfo exhaustInfo = exhaustInfoManager.getKeysExhaustInfo();
 		assertEquals(otc, exhaustInfo.getOtc());
 		assertEquals(ltc, exhaustInfo.getLtc());
 		assertEquals(sessions, exhaustInfo.getSessions());
+		assertNull(storage.getData(cardId, legacyKey));
 	}
 
 }
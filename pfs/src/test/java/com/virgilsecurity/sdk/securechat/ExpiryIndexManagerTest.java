@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.virgilsecurity.sdk.securechat.impl.DefaultUserDataStorage;
+import com.virgilsecurity.sdk.securechat.keystorage.KeyAttrs;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.IndexEntry;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.Kind;
+import com.virgilsecurity.sdk.securechat.model.SessionState;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+public class ExpiryIndexManagerTest {
+
+	private String cardId;
+	private UserDataStorage storage;
+	private ExpiryIndexManager expiryIndexManager;
+	private Date now;
+
+	@Before
+	public void setUp() {
+		cardId = UUID.randomUUID().toString();
+		storage = new DefaultUserDataStorage();
+		expiryIndexManager = new ExpiryIndexManager(cardId, storage);
+
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.MILLISECOND, 0);
+		now = cal.getTime();
+	}
+
+	@Test
+	public void updatesIgnoredBeforeRebuild() {
+		assertFalse(expiryIndexManager.isInitialized());
+
+		expiryIndexManager.addLtKey("lt", now);
+		expiryIndexManager.addOtKeys(Arrays.asList("ot"), now);
+
+		assertFalse(expiryIndexManager.isInitialized());
+		assertFalse(expiryIndexManager.contains(Kind.LT_KEY, "lt"));
+		assertTrue(expiryIndexManager.getIdentifiers(Kind.OT_KEY).isEmpty());
+	}
+
+	@Test
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void rebuild() {
+		byte[] sessionId = TestUtils.generateBytes(16);
+		SessionState sessionState = new SessionState(sessionId, now, minusSeconds(now, 5), null);
+		SessionState eternalState = new SessionState(TestUtils.generateBytes(16), now, null, null);
+		List<Entry<String, SessionState>> sessionStates = new ArrayList<>();
+		sessionStates.add(new AbstractMap.SimpleEntry("recipient", sessionState));
+		sessionStates.add(new AbstractMap.SimpleEntry("recipient", eternalState));
+
+		Map<String, List<KeyAttrs>> keys = new HashMap<>();
+		keys.put(KeyStorageManager.SESSION_KEYS, new ArrayList<KeyAttrs>());
+		keys.put(KeyStorageManager.LT_KEYS, Arrays.asList(new KeyAttrs("lt", now)));
+		keys.put(KeyStorageManager.OT_KEYS, Arrays.asList(new KeyAttrs("ot1", now), new KeyAttrs("ot2", now)));
+
+		expiryIndexManager.rebuild(sessionStates, keys);
+
+		assertTrue(expiryIndexManager.isInitialized());
+		assertTrue(expiryIndexManager.contains(Kind.LT_KEY, "lt"));
+		assertEquals(2, expiryIndexManager.getIdentifiers(Kind.OT_KEY).size());
+
+		List<IndexEntry> expired = expiryIndexManager.getOlderThan(Kind.SESSION, now);
+		assertEquals(1, expired.size());
+		assertEquals(ConvertionUtils.toBase64String(sessionId), expired.get(0).getIdentifier());
+		assertEquals("recipient", expired.get(0).getCardId());
+
+		// Index should be persisted
+		ExpiryIndexManager restored = new ExpiryIndexManager(cardId, storage);
+		assertTrue(restored.isInitialized());
+		assertTrue(restored.contains(Kind.OT_KEY, "ot1"));
+		assertEquals(1, restored.getOlderThan(Kind.SESSION, now).size());
+	}
+
+	@Test
+	public void getOlderThan() {
+		initialize();
+
+		expiryIndexManager.addLtKey("lt1", minusSeconds(now, 30));
+		expiryIndexManager.addLtKey("lt2", minusSeconds(now, 10));
+		expiryIndexManager.addLtKey("lt3", now);
+
+		List<IndexEntry> entries = expiryIndexManager.getOlderThan(Kind.LT_KEY, minusSeconds(now, 5));
+		assertEquals(2, entries.size());
+		assertEquals("lt1", entries.get(0).getIdentifier());
+		assertEquals("lt2", entries.get(1).getIdentifier());
+
+		assertTrue(expiryIndexManager.getOlderThan(Kind.LT_KEY, minusSeconds(now, 30)).isEmpty());
+		assertTrue(expiryIndexManager.getOlderThan(Kind.OT_KEY, now).isEmpty());
+	}
+
+	@Test
+	public void remove() {
+		initialize();
+
+		byte[] sessionId = TestUtils.generateBytes(16);
+		expiryIndexManager.addSession(new SessionState(sessionId, now, now, null), "recipient");
+		expiryIndexManager.addOtKeys(Arrays.asList("ot1", "ot2"), now);
+		expiryIndexManager.addLtKey("lt", now);
+
+		expiryIndexManager.removeSessions(Arrays.asList(sessionId));
+		expiryIndexManager.removeOtKeys(Arrays.asList("ot1"));
+
+		assertFalse(expiryIndexManager.contains(Kind.SESSION, ConvertionUtils.toBase64String(sessionId)));
+		assertEquals(Arrays.asList("ot2"), expiryIndexManager.getIdentifiers(Kind.OT_KEY));
+
+		expiryIndexManager.clearKeys();
+		assertTrue(expiryIndexManager.getIdentifiers(Kind.OT_KEY).isEmpty());
+		assertTrue(expiryIndexManager.getIdentifiers(Kind.LT_KEY).isEmpty());
+	}
+
+	@Test
+	public void storedPerEntry() {
+		initialize();
+
+		byte[] sessionId = TestUtils.generateBytes(16);
+		expiryIndexManager.addSession(new SessionState(sessionId, now, now, null), "recipient");
+		expiryIndexManager.addLtKey("lt", now);
+
+		Map<String, String> records = storage.getAllData("VIRGIL.EXPIRYINDEX.OWNER=" + cardId);
+		assertEquals(3, records.size());
+		assertTrue(records.containsKey("session." + ConvertionUtils.toBase64String(sessionId)));
+		assertTrue(records.containsKey("ltc.lt"));
+	}
+
+	@Test
+	public void rebuild_removesStale() {
+		initialize();
+		expiryIndexManager.addOtKeys(Arrays.asList("ot1", "ot2"), now);
+
+		Map<String, List<KeyAttrs>> keys = new HashMap<>();
+		keys.put(KeyStorageManager.SESSION_KEYS, new ArrayList<KeyAttrs>());
+		keys.put(KeyStorageManager.LT_KEYS, new ArrayList<KeyAttrs>());
+		keys.put(KeyStorageManager.OT_KEYS, Arrays.asList(new KeyAttrs("ot2", now), new KeyAttrs("ot3", now)));
+		expiryIndexManager.rebuild(new ArrayList<Entry<String, SessionState>>(), keys);
+
+		ExpiryIndexManager restored = new ExpiryIndexManager(cardId, storage);
+		assertFalse(restored.contains(Kind.OT_KEY, "ot1"));
+		assertTrue(restored.contains(Kind.OT_KEY, "ot2"));
+		assertTrue(restored.contains(Kind.OT_KEY, "ot3"));
+	}
+
+	@Test
+	public void rebuild_concurrentUpdate() throws InterruptedException {
+		initialize();
+
+		final Map<String, List<KeyAttrs>> keys = new HashMap<>();
+		keys.put(KeyStorageManager.SESSION_KEYS, new ArrayList<KeyAttrs>());
+		keys.put(KeyStorageManager.LT_KEYS, new ArrayList<KeyAttrs>());
+		keys.put(KeyStorageManager.OT_KEYS, new ArrayList<KeyAttrs>());
+
+		// One-time key is added after storage is scanned
+		final Thread updater = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				expiryIndexManager.addOtKeys(Arrays.asList("ot"), now);
+			}
+		});
+		SessionStorageManager sessionStorageManager = mock(SessionStorageManager.class);
+		when(sessionStorageManager.getAllSessionsStates()).thenReturn(new ArrayList<Entry<String, SessionState>>());
+		KeyStorageManager keyStorageManager = mock(KeyStorageManager.class);
+		when(keyStorageManager.getAllKeysAttrs()).thenAnswer(new Answer<Map<String, List<KeyAttrs>>>() {
+
+			@Override
+			public Map<String, List<KeyAttrs>> answer(InvocationOnMock invocation) throws Throwable {
+				updater.start();
+				updater.join(200);
+				return keys;
+			}
+		});
+
+		expiryIndexManager.rebuild(sessionStorageManager, keyStorageManager);
+		updater.join();
+
+		assertTrue(expiryIndexManager.contains(Kind.OT_KEY, "ot"));
+		assertTrue(new ExpiryIndexManager(cardId, storage).contains(Kind.OT_KEY, "ot"));
+	}
+
+	@Test
+	public void needsRebuild() {
+		assertTrue(expiryIndexManager.needsRebuild(now));
+
+		expiryIndexManager.setRebuildPeriod(60);
+		initialize();
+		Date built = new Date();
+		assertFalse(expiryIndexManager.needsRebuild(built));
+		assertTrue(expiryIndexManager.needsRebuild(new Date(built.getTime() + 61 * 1000L)));
+
+		ExpiryIndexManager restored = new ExpiryIndexManager(cardId, storage);
+		restored.setRebuildPeriod(60);
+		assertFalse(restored.needsRebuild(built));
+	}
+
+	private void initialize() {
+		Map<String, List<KeyAttrs>> keys = new HashMap<>();
+		keys.put(KeyStorageManager.SESSION_KEYS, new ArrayList<KeyAttrs>());
+		keys.put(KeyStorageManager.LT_KEYS, new ArrayList<KeyAttrs>());
+		keys.put(KeyStorageManager.OT_KEYS, new ArrayList<KeyAttrs>());
+		expiryIndexManager.rebuild(new ArrayList<Entry<String, SessionState>>(), keys);
+	}
+
+	private Date minusSeconds(Date date, int seconds) {
+		return new Date(date.getTime() - seconds * 1000L);
+	}
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.virgilsecurity.sdk.client.model.CardModel;
+import com.virgilsecurity.sdk.securechat.exceptions.SecureChatException;
+import com.virgilsecurity.sdk.securechat.model.DecryptedMessage;
+import com.virgilsecurity.sdk.securechat.model.InboundMessage;
+import com.virgilsecurity.sdk.securechat.model.Message;
+import com.virgilsecurity.sdk.securechat.session.SecureSession;
+import com.virgilsecurity.sdk.securechat.utils.GsonUtils;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+public class InboundPipelineTest {
+
+	private static final String ALICE = "alice";
+	private static final String BOB = "bob";
+	private static final int MESSAGES_COUNT = 200;
+
+	private SecureChat secureChat;
+	private InboundPipeline pipeline;
+	private Map<String, CardModel> cards;
+	private Map<String, List<String>> received;
+	private List<DecryptedMessage> failed;
+	private CountDownLatch delivered;
+
+	@Before
+	public void setUp() throws SecureChatException {
+		this.secureChat = mock(SecureChat.class);
+		this.cards = new HashMap<>();
+		this.received = new HashMap<>();
+		this.failed = Collections.synchronizedList(new ArrayList<DecryptedMessage>());
+		for (String cardId : new String[] { ALICE, BOB }) {
+			CardModel card = mock(CardModel.class);
+			when(card.getId()).thenReturn(cardId);
+			this.cards.put(cardId, card);
+			this.received.put(cardId, Collections.synchronizedList(new ArrayList<String>()));
+			SecureSession session = createSession();
+			when(this.secureChat.loadSession(eq(cardId), any(byte[].class))).thenReturn(session);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		if (this.pipeline != null) {
+			this.pipeline.stop();
+		}
+	}
+
+	@Test
+	public void perPeerOrdering() throws InterruptedException {
+		createPipeline(2 * MESSAGES_COUNT);
+		this.pipeline.setParallelism(2, 4, 4, 2);
+		this.pipeline.start();
+
+		for (int i = 0; i < MESSAGES_COUNT; i++) {
+			this.pipeline.put(createMessage(ALICE, i));
+			this.pipeline.put(createMessage(BOB, i));
+		}
+		assertTrue(this.delivered.await(10, TimeUnit.SECONDS));
+
+		assertTrue(this.failed.isEmpty());
+		for (String cardId : new String[] { ALICE, BOB }) {
+			List<String> messages = this.received.get(cardId);
+			assertEquals(MESSAGES_COUNT, messages.size());
+			for (int i = 0; i < MESSAGES_COUNT; i++) {
+				assertEquals(cardId + i, messages.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void slowPeer() throws InterruptedException, SecureChatException {
+		final CountDownLatch recovered = new CountDownLatch(1);
+		final SecureSession session = createSession();
+		when(this.secureChat.loadSession(eq(ALICE), any(byte[].class))).thenAnswer(new Answer<SecureSession>() {
+
+			@Override
+			public SecureSession answer(InvocationOnMock invocation) throws Throwable {
+				recovered.await();
+				return session;
+			}
+		});
+		createPipeline(MESSAGES_COUNT + 1);
+		this.pipeline.setParallelism(1, 2, 2, 1);
+		this.pipeline.start();
+
+		this.pipeline.put(createMessage(ALICE, 0));
+		for (int i = 0; i < MESSAGES_COUNT; i++) {
+			this.pipeline.put(createMessage(BOB, i));
+		}
+
+		// Bob's messages are not stalled by Alice's session
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		while (this.delivered.getCount() > 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, this.delivered.getCount());
+		assertEquals(MESSAGES_COUNT, this.received.get(BOB).size());
+		assertTrue(this.received.get(ALICE).isEmpty());
+
+		recovered.countDown();
+		assertTrue(this.delivered.await(10, TimeUnit.SECONDS));
+		assertEquals(ALICE + 0, this.received.get(ALICE).get(0));
+	}
+
+	@Test
+	public void errors() throws InterruptedException, SecureChatException {
+		when(this.secureChat.loadSession(eq(BOB), any(byte[].class))).thenReturn(null);
+		createPipeline(2);
+		this.pipeline.start();
+
+		this.pipeline.put(new InboundMessage(this.cards.get(ALICE), "{}"));
+		this.pipeline.put(createMessage(BOB, 0));
+		assertTrue(this.delivered.await(10, TimeUnit.SECONDS));
+
+		assertEquals(2, this.failed.size());
+		for (DecryptedMessage message : this.failed) {
+			assertFalse(message.isSuccess());
+			assertNull(message.getText());
+			assertNotNull(message.getError());
+		}
+	}
+
+	@Test
+	public void backpressure() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Boolean> pressure = Collections.synchronizedList(new ArrayList<Boolean>());
+		final CountDownLatch resumed = new CountDownLatch(1);
+		this.pipeline = new InboundPipeline(this.secureChat, new InboundPipeline.Listener() {
+
+			@Override
+			public void onMessage(DecryptedMessage message) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		this.pipeline.setStageCapacity(1);
+		this.pipeline.setParallelism(1, 1, 1, 1);
+		this.pipeline.setPressureListener(new InboundPipeline.PressureListener() {
+
+			@Override
+			public void onPressureChanged(boolean paused) {
+				pressure.add(paused);
+				if (!paused) {
+					resumed.countDown();
+				}
+			}
+		}, 3, 0);
+		this.pipeline.start();
+
+		int accepted = 0;
+		while (this.pipeline.offer(createMessage(ALICE, accepted), 1000)) {
+			accepted++;
+			assertTrue(accepted < 100);
+		}
+		assertTrue(accepted >= 3);
+		assertTrue(this.pipeline.isPaused());
+		assertFalse(this.pipeline.offer(createMessage(ALICE, accepted)));
+
+		release.countDown();
+		assertTrue(resumed.await(10, TimeUnit.SECONDS));
+		assertFalse(this.pipeline.isPaused());
+		assertEquals(0, this.pipeline.getInFlightCount());
+		assertEquals(true, pressure.get(0));
+		assertEquals(false, pressure.get(pressure.size() - 1));
+	}
+
+	private void createPipeline(int expectedCount) {
+		this.delivered = new CountDownLatch(expectedCount);
+		this.pipeline = new InboundPipeline(this.secureChat, new InboundPipeline.Listener() {
+
+			@Override
+			public void onMessage(DecryptedMessage message) {
+				if (message.isSuccess()) {
+					received.get(message.getInboundMessage().getCard().getId()).add(message.getText());
+				} else {
+					failed.add(message);
+				}
+				delivered.countDown();
+			}
+		});
+	}
+
+	private SecureSession createSession() {
+		SecureSession session = mock(SecureSession.class);
+		when(session.decrypt(any(Message.class))).thenAnswer(new Answer<String>() {
+
+			@Override
+			public String answer(InvocationOnMock invocation) throws Throwable {
+				return ConvertionUtils.toString(((Message) invocation.getArguments()[0]).getCipherText());
+			}
+		});
+		return session;
+	}
+
+	private InboundMessage createMessage(String cardId, int index) {
+		Message message = new Message(ConvertionUtils.toBytes(cardId), new byte[16],
+				ConvertionUtils.toBytes(cardId + index));
+		return new InboundMessage(this.cards.get(cardId), GsonUtils.getGson().toJson(message));
+	}
+
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -115,6 +117,28 @@ public class KeyStorageManagerTest {
 		}
 	}
 
+	@Test
+	public void ltKeys_cached() throws CryptoException {
+		String ltName = UUID.randomUUID().toString();
+		keyStorageManager.saveKeys(Collections.EMPTY_LIST,
+				new KeyStorageManager.HelperKeyEntry(crypto.generateKeys().getPrivateKey(), ltName));
+
+		PrivateKey ltPrivate = keyStorageManager.getLtPrivateKey(ltName);
+		assertSame(ltPrivate, keyStorageManager.getLtPrivateKey(ltName));
+
+		keyStorageManager.invalidateLtPrivateKeys();
+		PrivateKey reloadedLtPrivate = keyStorageManager.getLtPrivateKey(ltName);
+		assertNotSame(ltPrivate, reloadedLtPrivate);
+		assertArrayEquals(crypto.exportPrivateKey(ltPrivate), crypto.exportPrivateKey(reloadedLtPrivate));
+
+		keyStorageManager.removeLtPrivateKeys(Arrays.asList(ltName));
+		try {
+			keyStorageManager.getLtPrivateKey(ltName);
+			fail();
+		} catch (KeyEntryNotFoundException e) {
+		}
+	}
+
 	@Test
 	public void sessionKeys1() {
 		byte[] sessionId = Arrays.copyOf(UUID.randomUUID().toString().getBytes(), 16);
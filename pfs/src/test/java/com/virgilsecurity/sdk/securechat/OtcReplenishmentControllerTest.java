@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.sdk.securechat.impl.DefaultUserDataStorage;
+
+public class OtcReplenishmentControllerTest {
+
+	private static final long RECONCILIATION_PERIOD = 60 * 60;
+	private static final long HORIZON = 24 * 60 * 60;
+
+	private OtcReplenishmentController controller;
+	private long now;
+
+	@Before
+	public void setUp() {
+		controller = new OtcReplenishmentController(UUID.randomUUID().toString(), new DefaultUserDataStorage(),
+				RECONCILIATION_PERIOD, HORIZON);
+		now = System.currentTimeMillis();
+	}
+
+	@Test
+	public void reconciliation() {
+		assertTrue(controller.needsReconciliation(new Date(now)));
+		assertEquals(10, controller.getMissingCards(10, new Date(now)));
+
+		controller.reconcile(4, new Date(now));
+		assertFalse(controller.needsReconciliation(new Date(now)));
+		assertTrue(controller.needsReconciliation(new Date(now + RECONCILIATION_PERIOD * 1000)));
+
+		assertEquals(4, controller.getEstimatedActive());
+		assertEquals(6, controller.getMissingCards(10, new Date(now)));
+
+		controller.reserve(6);
+		assertEquals(0, controller.getMissingCards(10, new Date(now)));
+		controller.release(2);
+		assertEquals(2, controller.getMissingCards(10, new Date(now)));
+	}
+
+	@Test
+	public void recordConsumption_notReconciled() {
+		// Consumed card is replaced when nothing is known about cards
+		assertEquals(1, controller.recordConsumption(new Date(now)));
+	}
+
+	@Test
+	public void recordConsumption() {
+		controller.reconcile(10, new Date(now));
+		controller.getMissingCards(10, new Date(now));
+
+		// A few cards consumed, no replenishment needed
+		assertEquals(0, controller.recordConsumption(new Date(now)));
+		assertEquals(9, controller.getEstimatedActive());
+		assertTrue(controller.getConsumptionRate(new Date(now)) > 0);
+	}
+
+	@Test
+	public void recordConsumption_burst() {
+		controller.setRateWindow(60 * 60);
+		controller.reconcile(10, new Date(now));
+		controller.getMissingCards(10, new Date(now));
+
+		int added = 0;
+		for (int i = 0; i < 50; i++) {
+			added += controller.recordConsumption(new Date(now + i * 1000));
+		}
+		// Cards are added in batches larger than consumption
+		assertTrue(added >= 50);
+		assertTrue(controller.getEstimatedActive() > 0);
+		assertTrue(controller.getMissingCards(10, new Date(now + 50 * 1000)) > 0
+				|| controller.getEstimatedActive() > 10);
+	}
+
+	@Test
+	public void demandDecays() {
+		controller.reconcile(10, new Date(now));
+		controller.getMissingCards(10, new Date(now));
+		for (int i = 0; i < 50; i++) {
+			controller.recordConsumption(new Date(now));
+		}
+		assertTrue(controller.getConsumptionRate(new Date(now)) > controller
+				.getConsumptionRate(new Date(now + OtcReplenishmentController.DEFAULT_RATE_WINDOW * 1000)));
+
+		// Forecast falls back to desired number of cards
+		long later = now + 100 * OtcReplenishmentController.DEFAULT_RATE_WINDOW * 1000;
+		controller.reconcile(10, new Date(later));
+		assertEquals(0, controller.getMissingCards(10, new Date(later)));
+	}
+
+}
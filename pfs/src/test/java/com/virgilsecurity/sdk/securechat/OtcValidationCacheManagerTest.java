@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.sdk.securechat.impl.DefaultUserDataStorage;
+
+public class OtcValidationCacheManagerTest {
+
+	private String cardId;
+	private UserDataStorage storage;
+	private OtcValidationCacheManager cacheManager;
+
+	@Before
+	public void setUp() {
+		cardId = UUID.randomUUID().toString();
+		storage = new DefaultUserDataStorage();
+		cacheManager = new OtcValidationCacheManager(cardId, storage);
+	}
+
+	@Test
+	public void getValidatedSince() {
+		Date past = new Date(System.currentTimeMillis() - 10000);
+		Date now = new Date();
+
+		assertTrue(cacheManager.getValidatedSince(past).isEmpty());
+
+		cacheManager.markValidated(Arrays.asList("1", "2"), past);
+		cacheManager.markValidated(Arrays.asList("3"), now);
+
+		assertEquals(new HashSet<>(Arrays.asList("1", "2", "3")), cacheManager.getValidatedSince(past));
+		assertEquals(new HashSet<>(Arrays.asList("3")), cacheManager.getValidatedSince(now));
+
+		// Cache is persisted
+		OtcValidationCacheManager otherManager = new OtcValidationCacheManager(cardId, storage);
+		assertEquals(3, otherManager.getValidatedSince(past).size());
+	}
+
+	@Test
+	public void remove() {
+		Date now = new Date();
+		cacheManager.markValidated(Arrays.asList("1", "2", "3"), now);
+
+		cacheManager.remove(Arrays.asList("2"));
+
+		assertEquals(new HashSet<>(Arrays.asList("1", "3")), cacheManager.getValidatedSince(now));
+	}
+
+	@Test
+	public void retain() {
+		Date now = new Date();
+		cacheManager.markValidated(Arrays.asList("1", "2", "3"), now);
+
+		Set<String> existing = new HashSet<>(Arrays.asList("1", "3", "4"));
+		cacheManager.retain(existing);
+
+		assertEquals(new HashSet<>(Arrays.asList("1", "3")), cacheManager.getValidatedSince(now));
+	}
+
+}
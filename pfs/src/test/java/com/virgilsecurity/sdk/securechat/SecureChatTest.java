@@ -41,6 +41,8 @@ import static org.junit.Assert.fail;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -51,6 +53,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 
 import org.apache.commons.lang.StringUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -74,6 +77,9 @@ import com.virgilsecurity.sdk.securechat.exceptions.SecureChatException;
 import com.virgilsecurity.sdk.securechat.exceptions.SessionManagerException;
 import com.virgilsecurity.sdk.securechat.impl.DefaultUserDataStorage;
 import com.virgilsecurity.sdk.securechat.keystorage.JsonFileKeyStorage;
+import com.virgilsecurity.sdk.securechat.model.DecryptedMessage;
+import com.virgilsecurity.sdk.securechat.model.EncryptedBroadcast;
+import com.virgilsecurity.sdk.securechat.model.InboundMessage;
 import com.virgilsecurity.sdk.securechat.model.MessageType;
 import com.virgilsecurity.sdk.securechat.session.SecureSession;
 
@@ -171,6 +177,12 @@ public class SecureChatTest extends BaseIT {
 		bobChat = new SecureChat(bobChatContext);
 	}
 
+	@After
+	public void tearDown() {
+		aliceChat.close();
+		bobChat.close();
+	}
+
 	@Test
 	public void createAndInitializeSecureChat() {
 		aliceChat.rotateKeys(this.numberOfCards);
@@ -240,6 +252,51 @@ public class SecureChatTest extends BaseIT {
 		assertEquals(MESSAGE3, decryptedMessage3);
 	}
 
+	@Test
+	public void decryptBatch() throws CardValidationException, SecureChatException, NoSessionException,
+			InterruptedException {
+		aliceChat.rotateKeys(this.numberOfCards);
+		bobChat.rotateKeys(this.numberOfCards);
+
+		SecureSession aliceSession = aliceChat.startNewSession(bobCard, null);
+		List<InboundMessage> messages = Arrays.asList(
+				new InboundMessage(aliceCard, aliceSession.encrypt(MESSAGE1)),
+				new InboundMessage(aliceCard, aliceSession.encrypt(MESSAGE2)),
+				new InboundMessage(bobCard, "{}"),
+				new InboundMessage(aliceCard, aliceSession.encrypt(MESSAGE3)));
+
+		List<DecryptedMessage> results = bobChat.decryptBatch(messages);
+		assertEquals(messages.size(), results.size());
+
+		assertEquals(MESSAGE1, results.get(0).getText());
+		assertEquals(MESSAGE2, results.get(1).getText());
+		assertFalse(results.get(2).isSuccess());
+		assertNotNull(results.get(2).getError());
+		assertEquals(MESSAGE3, results.get(3).getText());
+		for (int i = 0; i < messages.size(); i++) {
+			assertEquals(messages.get(i), results.get(i).getInboundMessage());
+		}
+	}
+
+	@Test
+	public void encryptForAll() throws CardValidationException, SecureChatException, InterruptedException {
+		aliceChat.rotateKeys(this.numberOfCards);
+		bobChat.rotateKeys(this.numberOfCards);
+
+		aliceChat.startNewSession(bobCard, null);
+		String unknownCardId = UUID.randomUUID().toString();
+
+		EncryptedBroadcast broadcast = aliceChat.encryptForAll(Arrays.asList(bobCard.getId(), unknownCardId),
+				MESSAGE1.getBytes(StandardCharsets.UTF_8));
+		assertTrue(broadcast.getErrors().isEmpty());
+		assertEquals(Arrays.asList(unknownCardId), broadcast.getCardIdsWithoutSession());
+		assertEquals(1, broadcast.getMessages().size());
+
+		String encryptedMessage = broadcast.getMessages().get(bobCard.getId());
+		SecureSession bobSession = bobChat.loadUpSession(aliceCard, encryptedMessage, null);
+		assertEquals(MESSAGE1, bobSession.decrypt(encryptedMessage));
+	}
+
 	@Test
 	public void recoverInitiatorSession() throws CardValidationException, SecureChatException, NoSessionException {
 		aliceChat.rotateKeys(this.numberOfCards);
@@ -15,6 +15,9 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -36,6 +39,7 @@ public class SessionStorageManagerTest {
 	private SessionState sessionState2;
 	private SessionState sessionState3;
 	private SessionState sessionState4;
+	private UserDataStorage storage;
 
 	@Before
 	public void setUp() {
@@ -43,8 +47,8 @@ public class SessionStorageManagerTest {
 		this.recipientCardId1 = UUID.randomUUID().toString();
 		this.recipientCardId2 = UUID.randomUUID().toString();
 
-		UserDataStorage storage = new DefaultUserDataStorage();
-		this.sessionStorageManager = new SessionStorageManager(this.cardId, storage);
+		this.storage = new DefaultUserDataStorage();
+		this.sessionStorageManager = new SessionStorageManager(this.cardId, this.storage);
 
 		this.sessionId1 = TestUtils.generateBytes(16);
 		this.sessionId2 = TestUtils.generateBytes(16);
@@ -150,4 +154,35 @@ public class SessionStorageManagerTest {
 		assertNull(sessionStorageManager.getSessionState(this.recipientCardId2, this.sessionState4.getSessionId()));
 	}
 
+	@Test
+	public void concurrentAdd() throws InterruptedException {
+		// Managers sharing a storage don't overwrite each other's changes
+		final SessionStorageManager otherManager = new SessionStorageManager(this.cardId, this.storage);
+		final Date now = new Date();
+		final List<SessionState> states = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			states.add(new SessionState(TestUtils.generateBytes(16), now, now, null));
+		}
+
+		ExecutorService exec = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < states.size(); i++) {
+			final SessionState state = states.get(i);
+			final SessionStorageManager manager = (i % 2 == 0) ? this.sessionStorageManager : otherManager;
+			exec.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					manager.addSessionState(state, recipientCardId1);
+				}
+			});
+		}
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(states.size() + 2, this.sessionStorageManager.getSessionStatesIds(this.recipientCardId1).size());
+		for (SessionState state : states) {
+			assertNotNull(otherManager.getSessionState(this.recipientCardId1, state.getSessionId()));
+		}
+	}
+
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.async;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.sdk.client.model.CardModel;
+import com.virgilsecurity.sdk.securechat.SecureChat;
+import com.virgilsecurity.sdk.securechat.exceptions.SecureChatException;
+import com.virgilsecurity.sdk.securechat.session.SecureSession;
+
+public class AsyncSecureChatTest {
+
+	private SecureChat secureChat;
+	private CardModel card;
+	private ExecutorService executor;
+	private AsyncSecureChat asyncChat;
+
+	@Before
+	public void setUp() {
+		this.secureChat = mock(SecureChat.class);
+		this.card = mock(CardModel.class);
+		this.executor = Executors.newSingleThreadExecutor();
+		this.asyncChat = new AsyncSecureChat(this.secureChat, this.executor);
+	}
+
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void startNewSessionAsync() throws Exception {
+		SecureSession session = mock(SecureSession.class);
+		when(this.secureChat.startNewSession(this.card, null)).thenReturn(session);
+
+		TestCallback<SecureSession> callback = new TestCallback<>();
+		Future<SecureSession> future = this.asyncChat.startNewSessionAsync(this.card, null, callback);
+
+		assertSame(session, future.get(10, TimeUnit.SECONDS));
+		assertTrue(callback.done.await(10, TimeUnit.SECONDS));
+		assertSame(session, callback.result);
+		assertNull(callback.error);
+	}
+
+	@Test
+	public void startNewSessionAsync_error() throws Exception {
+		SecureChatException exception = new SecureChatException(0, "failed");
+		when(this.secureChat.startNewSession(this.card, null)).thenThrow(exception);
+
+		TestCallback<SecureSession> callback = new TestCallback<>();
+		Future<SecureSession> future = this.asyncChat.startNewSessionAsync(this.card, null, callback);
+
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertSame(exception, e.getCause());
+		}
+		assertTrue(callback.done.await(10, TimeUnit.SECONDS));
+		assertSame(exception, callback.error);
+	}
+
+	@Test
+	public void rotateKeysAsync() throws Exception {
+		Future<Void> future = this.asyncChat.rotateKeysAsync(10, null);
+
+		assertNull(future.get(10, TimeUnit.SECONDS));
+		verify(this.secureChat).rotateKeys(10);
+	}
+
+	@Test
+	public void removeSessionsAsync_error() throws Exception {
+		IllegalStateException exception = new IllegalStateException();
+		doThrow(exception).when(this.secureChat).removeSessions("bob");
+
+		TestCallback<Void> callback = new TestCallback<>();
+		this.asyncChat.removeSessionsAsync("bob", callback);
+
+		assertTrue(callback.done.await(10, TimeUnit.SECONDS));
+		assertSame(exception, callback.error);
+	}
+
+	@Test
+	public void cancel() throws Exception {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		this.executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		TestCallback<SecureSession> callback = new TestCallback<>();
+		Future<SecureSession> future = this.asyncChat.activeSessionAsync("bob", callback);
+		assertTrue(future.cancel(false));
+		blocked.countDown();
+
+		assertTrue(callback.done.await(10, TimeUnit.SECONDS));
+		assertTrue(callback.error instanceof CancellationException);
+	}
+
+	private static class TestCallback<T> implements Callback<T> {
+
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile T result;
+		private volatile Throwable error;
+
+		@Override
+		public void onSuccess(T result) {
+			this.result = result;
+			this.done.countDown();
+		}
+
+		@Override
+		public void onFailure(Throwable error) {
+			this.error = error;
+			this.done.countDown();
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.sdk.securechat.exceptions.AttachmentException;
+import com.virgilsecurity.sdk.securechat.model.AttachmentDescriptor;
+
+public class AttachmentCipherTest {
+
+	private static final int CHUNK_SIZE = 1024;
+	private static final int HEADER_SIZE = 24;
+	private static final int TAG_SIZE = 32;
+
+	private AttachmentCipher cipher;
+	private Random random;
+
+	@Before
+	public void setUp() {
+		this.cipher = new AttachmentCipher(CHUNK_SIZE);
+		this.random = new Random();
+	}
+
+	@Test
+	public void encrypt_decrypt() throws IOException, AttachmentException {
+		for (int size : new int[] { 0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 3 * CHUNK_SIZE,
+				3 * CHUNK_SIZE + 7 }) {
+			byte[] attachment = randomBytes(size);
+			ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+			AttachmentDescriptor descriptor = this.cipher.encrypt(new ByteArrayInputStream(attachment), encrypted);
+
+			assertEquals(size, descriptor.getSize());
+			assertEquals(CHUNK_SIZE, descriptor.getChunkSize());
+
+			assertArrayEquals(attachment, decrypt(descriptor, encrypted.toByteArray()));
+		}
+	}
+
+	@Test
+	public void encrypt_freshKey() throws IOException {
+		byte[] attachment = randomBytes(100);
+		ByteArrayOutputStream encrypted1 = new ByteArrayOutputStream();
+		ByteArrayOutputStream encrypted2 = new ByteArrayOutputStream();
+		AttachmentDescriptor descriptor1 = this.cipher.encrypt(new ByteArrayInputStream(attachment), encrypted1);
+		AttachmentDescriptor descriptor2 = this.cipher.encrypt(new ByteArrayInputStream(attachment), encrypted2);
+
+		assertFalse(Arrays.equals(descriptor1.getKey(), descriptor2.getKey()));
+		assertFalse(Arrays.equals(encrypted1.toByteArray(), encrypted2.toByteArray()));
+	}
+
+	@Test
+	public void decrypt_modified() throws IOException {
+		byte[] attachment = randomBytes(2 * CHUNK_SIZE + 10);
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		AttachmentDescriptor descriptor = this.cipher.encrypt(new ByteArrayInputStream(attachment), encrypted);
+
+		byte[] data = encrypted.toByteArray();
+		data[HEADER_SIZE + CHUNK_SIZE + TAG_SIZE + 5] ^= 1;
+
+		assertCorrupted(descriptor, data);
+	}
+
+	@Test
+	public void decrypt_truncated() throws IOException {
+		byte[] attachment = randomBytes(3 * CHUNK_SIZE);
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		AttachmentDescriptor descriptor = this.cipher.encrypt(new ByteArrayInputStream(attachment), encrypted);
+
+		byte[] data = encrypted.toByteArray();
+		// Drop the last chunk
+		assertCorrupted(descriptor, Arrays.copyOf(data, data.length - CHUNK_SIZE - TAG_SIZE));
+	}
+
+	@Test
+	public void decrypt_reordered() throws IOException {
+		byte[] attachment = randomBytes(3 * CHUNK_SIZE);
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		AttachmentDescriptor descriptor = this.cipher.encrypt(new ByteArrayInputStream(attachment), encrypted);
+
+		byte[] data = encrypted.toByteArray();
+		int recordSize = CHUNK_SIZE + TAG_SIZE;
+		byte[] reordered = data.clone();
+		System.arraycopy(data, HEADER_SIZE, reordered, HEADER_SIZE + recordSize, recordSize);
+		System.arraycopy(data, HEADER_SIZE + recordSize, reordered, HEADER_SIZE, recordSize);
+
+		assertCorrupted(descriptor, reordered);
+	}
+
+	@Test
+	public void decrypt_wrongKey() throws IOException {
+		byte[] attachment = randomBytes(100);
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		AttachmentDescriptor descriptor = this.cipher.encrypt(new ByteArrayInputStream(attachment), encrypted);
+		descriptor.setKey(randomBytes(descriptor.getKey().length));
+
+		assertCorrupted(descriptor, encrypted.toByteArray());
+	}
+
+	private byte[] decrypt(AttachmentDescriptor descriptor, byte[] data) throws IOException, AttachmentException {
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+		this.cipher.decrypt(descriptor, new ByteArrayInputStream(data), decrypted);
+		return decrypted.toByteArray();
+	}
+
+	private void assertCorrupted(AttachmentDescriptor descriptor, byte[] data) throws IOException {
+		try {
+			decrypt(descriptor, data);
+			fail();
+		} catch (AttachmentException e) {
+		}
+	}
+
+	private byte[] randomBytes(int size) {
+		byte[] bytes = new byte[size];
+		this.random.nextBytes(bytes);
+		return bytes;
+	}
+
+}
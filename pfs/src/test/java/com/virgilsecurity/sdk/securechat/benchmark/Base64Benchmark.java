@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.virgilsecurity.sdk.securechat.utils.Base64Codec;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+/**
+ * Compares {@link Base64Codec} with base64 conversion of
+ * {@link ConvertionUtils}. Sizes are typical for session identifiers, message
+ * salts and message ciphertexts.
+ * 
+ * Run with {@code java -cp <test classpath>
+ * com.virgilsecurity.sdk.securechat.benchmark.Base64Benchmark}.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64Benchmark {
+
+	private static final String KEY_NAME_PREFIX = "VIRGIL.OWNER.0123456789abcdef.SESS_KEYS.";
+
+	@Param({ "16", "32", "1024" })
+	private int size;
+
+	private byte[] data;
+	private String encoded;
+	private String keyName;
+
+	@Setup
+	public void setUp() {
+		data = new byte[size];
+		new Random(1).nextBytes(data);
+		encoded = ConvertionUtils.toBase64String(data);
+		keyName = KEY_NAME_PREFIX + encoded;
+	}
+
+	@Benchmark
+	public String encode_convertionUtils() {
+		return ConvertionUtils.toBase64String(data);
+	}
+
+	@Benchmark
+	public String encode_codec() {
+		return Base64Codec.encode(data);
+	}
+
+	@Benchmark
+	public byte[] decode_convertionUtils() {
+		return ConvertionUtils.base64ToBytes(encoded);
+	}
+
+	@Benchmark
+	public byte[] decode_codec() {
+		return Base64Codec.decode(encoded);
+	}
+
+	@Benchmark
+	public byte[] decodeKeyName_convertionUtils() {
+		return ConvertionUtils.base64ToBytes(keyName.replace(KEY_NAME_PREFIX, ""));
+	}
+
+	@Benchmark
+	public byte[] decodeKeyName_codec() {
+		return Base64Codec.decode(keyName, KEY_NAME_PREFIX.length(), keyName.length());
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(Base64Benchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.virgilsecurity.sdk.pfs.model.request.ValidateOTCRequest;
+import com.virgilsecurity.sdk.securechat.model.Message;
+import com.virgilsecurity.sdk.securechat.utils.BufferPool;
+import com.virgilsecurity.sdk.securechat.utils.GsonUtils;
+import com.virgilsecurity.sdk.securechat.utils.PooledCharArrayWriter;
+
+/**
+ * Compares allocations of pooled and non-pooled message serialization,
+ * request body encoding and key storage file reading.
+ * 
+ * Run with {@code java -cp <test classpath>
+ * com.virgilsecurity.sdk.securechat.benchmark.BufferPoolBenchmark}. The GC
+ * profiler reports allocated bytes per operation as
+ * {@code gc.alloc.rate.norm}.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferPoolBenchmark {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int CARDS_COUNT = 100;
+	private static final int FILE_SIZE = 64 * 1024;
+
+	private BufferPool pool;
+	private Gson gson;
+	private Message message;
+	private ValidateOTCRequest request;
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		pool = new BufferPool();
+		gson = GsonUtils.getGson();
+
+		Random random = new Random(1);
+		byte[] sessionId = new byte[32];
+		byte[] salt = new byte[16];
+		byte[] cipherText = new byte[512];
+		random.nextBytes(sessionId);
+		random.nextBytes(salt);
+		random.nextBytes(cipherText);
+		message = new Message(sessionId, salt, cipherText);
+
+		List<String> cardsIds = new ArrayList<>();
+		for (int i = 0; i < CARDS_COUNT; i++) {
+			cardsIds.add(String.format("%064x", i));
+		}
+		request = new ValidateOTCRequest(cardsIds);
+
+		StringBuilder json = new StringBuilder("[");
+		while (json.length() < FILE_SIZE) {
+			json.append('"').append(String.format("%064x", random.nextLong())).append("\",");
+		}
+		json.append("\"\"]");
+		file = File.createTempFile("keystorage", ".json");
+		try (FileOutputStream os = new FileOutputStream(file)) {
+			os.write(json.toString().getBytes(UTF8));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public String message_string() {
+		return gson.toJson(message);
+	}
+
+	@Benchmark
+	public String message_pooled() {
+		PooledCharArrayWriter writer = new PooledCharArrayWriter(pool);
+		try {
+			gson.toJson(message, writer);
+			return writer.toString();
+		} finally {
+			writer.close();
+		}
+	}
+
+	@Benchmark
+	public int requestBody_string() throws IOException {
+		String body = gson.toJson(request);
+		return consume(new ByteArrayInputStream(body.getBytes(UTF8)));
+	}
+
+	@Benchmark
+	public int requestBody_pooled() throws IOException {
+		PooledCharArrayWriter writer = new PooledCharArrayWriter(pool);
+		ByteBuffer body = null;
+		try {
+			gson.toJson(request, writer);
+			body = writer.encode(UTF8, false);
+			return consume(new ByteArrayInputStream(body.array(), 0, body.limit()));
+		} finally {
+			writer.close();
+			pool.release(body);
+		}
+	}
+
+	@Benchmark
+	public int fileRead_stream() throws IOException {
+		try (FileInputStream is = new FileInputStream(file)) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n = 0;
+			while (-1 != (n = is.read(buffer))) {
+				os.write(buffer, 0, n);
+			}
+			String json = new String(os.toByteArray(), UTF8);
+			return countValues(new JsonReader(new java.io.StringReader(json)));
+		}
+	}
+
+	@Benchmark
+	public int fileRead_pooled() throws IOException {
+		PooledCharArrayWriter json = new PooledCharArrayWriter(pool);
+		try (FileInputStream is = new FileInputStream(file); FileChannel channel = is.getChannel()) {
+			ByteBuffer buffer = pool.acquireDirect((int) channel.size());
+			try {
+				while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+				}
+				buffer.flip();
+				json.decode(buffer, UTF8);
+			} finally {
+				pool.release(buffer);
+			}
+			return countValues(new JsonReader(json.toReader()));
+		} finally {
+			json.close();
+		}
+	}
+
+	private static int consume(InputStream is) throws IOException {
+		int sum = 0;
+		int b;
+		while ((b = is.read()) != -1) {
+			sum += b;
+		}
+		return sum;
+	}
+
+	private static int countValues(JsonReader reader) throws IOException {
+		int count = 0;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			reader.skipValue();
+			count++;
+		}
+		reader.endArray();
+		return count;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(BufferPoolBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.benchmark;
+
+import java.lang.reflect.Type;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.virgilsecurity.sdk.securechat.model.SessionState;
+import com.virgilsecurity.sdk.securechat.utils.EpochDateTypeAdapter;
+
+/**
+ * Compares parsing of session states stored with formatted dates and with
+ * epoch dates.
+ * 
+ * Run with {@code java -cp <test classpath>
+ * com.virgilsecurity.sdk.securechat.benchmark.DateParsingBenchmark}.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateParsingBenchmark {
+
+	private static final Type TYPE = new TypeToken<Map<String, SessionState>>() {
+	}.getType();
+
+	@Param({ "100", "10000" })
+	private int sessions;
+
+	private Gson legacyGson;
+	private Gson epochGson;
+
+	private String legacyJson;
+	private String epochJson;
+
+	@Setup
+	public void setUp() {
+		legacyGson = new GsonBuilder().disableHtmlEscaping().setDateFormat(EpochDateTypeAdapter.LEGACY_DATE_FORMAT)
+				.create();
+		epochGson = new GsonBuilder().disableHtmlEscaping()
+				.registerTypeAdapter(Date.class, new EpochDateTypeAdapter()).create();
+
+		Map<String, SessionState> states = new HashMap<>();
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < sessions; i++) {
+			byte[] sessionId = new byte[16];
+			sessionId[0] = (byte) i;
+			sessionId[1] = (byte) (i >> 8);
+			states.put(String.valueOf(i), new SessionState(sessionId, new Date(now), new Date(now + i), null));
+		}
+		legacyJson = legacyGson.toJson(states, TYPE);
+		epochJson = epochGson.toJson(states, TYPE);
+	}
+
+	@Benchmark
+	public Map<String, SessionState> parse_formattedDates() {
+		return legacyGson.fromJson(legacyJson, TYPE);
+	}
+
+	@Benchmark
+	public Map<String, SessionState> parse_formattedDatesWithEpochAdapter() {
+		return epochGson.fromJson(legacyJson, TYPE);
+	}
+
+	@Benchmark
+	public Map<String, SessionState> parse_epochDates() {
+		return epochGson.fromJson(epochJson, TYPE);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(DateParsingBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+}
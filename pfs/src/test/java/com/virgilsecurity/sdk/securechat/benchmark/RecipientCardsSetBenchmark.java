@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.virgilsecurity.sdk.pfs.VirgilPFSClient;
+import com.virgilsecurity.sdk.pfs.VirgilPFSClient.Endpoint;
+import com.virgilsecurity.sdk.pfs.VirgilPFSClientContext;
+import com.virgilsecurity.sdk.pfs.model.RecipientCardsSet;
+import com.virgilsecurity.sdk.pfs.model.request.CreateEphemeralCardRequest;
+import com.virgilsecurity.sdk.pfs.model.response.CardStatus;
+import com.virgilsecurity.sdk.pfs.stub.StubPFSServer;
+
+/**
+ * Measures latency of cards set search and card status requests against
+ * {@link StubPFSServer} with jittered service latency, with and without hedged
+ * requests. Search consumes one-time cards and is never hedged, so it is the
+ * baseline for hedged card status requests.
+ * 
+ * Run with {@code java -cp <test classpath>
+ * com.virgilsecurity.sdk.securechat.benchmark.RecipientCardsSetBenchmark}.
+ * 
+ * @author Andrii Iakovenko
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RecipientCardsSetBenchmark {
+
+	@Param({ "0", "20" })
+	private long hedgingDelay;
+
+	private StubPFSServer server;
+	private VirgilPFSClient client;
+	private String recipientId;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new StubPFSServer();
+		server.setLatency(Endpoint.SEARCH_BY_IDS, 5, 100);
+		server.setLatency(Endpoint.GET_CARD_STATUS, 5, 100);
+		server.start();
+
+		VirgilPFSClientContext context = new VirgilPFSClientContext();
+		context.setEphemeralServiceURL(server.getURL());
+		context.setHedgingDelay(hedgingDelay);
+		client = new VirgilPFSClient(context);
+
+		// Stub service doesn't verify cards, so random key is enough
+		byte[] publicKeyData = new byte[32];
+		new Random(1).nextBytes(publicKeyData);
+		recipientId = UUID.randomUUID().toString();
+		client.createLongTermCard(recipientId,
+				new CreateEphemeralCardRequest(recipientId, "username", publicKeyData));
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Benchmark
+	public List<RecipientCardsSet> getRecipientCardsSet() {
+		return client.getRecipientCardsSet(recipientId);
+	}
+
+	@Benchmark
+	public CardStatus getCardStatus() {
+		return client.getCardStatus(recipientId);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(RecipientCardsSetBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.group;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.virgilsecurity.sdk.securechat.Constants;
+import com.virgilsecurity.sdk.securechat.SecureChat;
+import com.virgilsecurity.sdk.securechat.exceptions.GroupSessionException;
+import com.virgilsecurity.sdk.securechat.impl.DefaultUserDataStorage;
+import com.virgilsecurity.sdk.securechat.keystorage.JsonFileKeyStorage;
+import com.virgilsecurity.sdk.securechat.keystorage.KeyStorage;
+import com.virgilsecurity.sdk.securechat.model.EncryptedBroadcast;
+import com.virgilsecurity.sdk.securechat.model.GroupKeyMessage;
+import com.virgilsecurity.sdk.securechat.utils.GsonUtils;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+public class GroupSessionManagerTest {
+
+	private static final String MESSAGE = "Hello, group";
+
+	private String groupId;
+	private String alice;
+	private String bob;
+	private String carol;
+
+	private Map<String, GroupSessionManager> managers;
+	private Map<String, KeyStorage> keyStorages;
+	private Map<String, DefaultUserDataStorage> storages;
+
+	@Before
+	public void setUp() throws InterruptedException {
+		this.groupId = UUID.randomUUID().toString();
+		this.alice = "alice" + UUID.randomUUID().toString();
+		this.bob = "bob" + UUID.randomUUID().toString();
+		this.carol = "carol" + UUID.randomUUID().toString();
+
+		this.managers = new HashMap<>();
+		this.keyStorages = new HashMap<>();
+		this.storages = new HashMap<>();
+		for (String cardId : Arrays.asList(alice, bob, carol)) {
+			this.keyStorages.put(cardId, new JsonFileKeyStorage(System.getProperty("java.io.tmpdir"), cardId));
+			this.storages.put(cardId, new DefaultUserDataStorage());
+			this.managers.put(cardId, createManager(cardId));
+		}
+	}
+
+	@Test
+	public void createGroup() throws InterruptedException, GroupSessionException {
+		GroupSession aliceGroup = this.managers.get(alice).createGroup(groupId, Arrays.asList(bob, carol));
+		assertTrue(aliceGroup.isKeyDistributionPending());
+
+		EncryptedBroadcast broadcast = aliceGroup.distributeKey();
+		assertEquals(2, broadcast.getMessages().size());
+		assertFalse(aliceGroup.isKeyDistributionPending());
+
+		GroupSession bobGroup = this.managers.get(bob).getGroup(groupId);
+		assertNotNull(bobGroup);
+		assertEquals(2, bobGroup.getMembers().size());
+		assertTrue(bobGroup.getMembers().contains(alice));
+		assertTrue(bobGroup.getMembers().contains(carol));
+
+		String groupMessage = aliceGroup.encrypt(MESSAGE);
+		assertEquals(MESSAGE, this.managers.get(bob).decrypt(groupMessage));
+		assertEquals(MESSAGE, this.managers.get(carol).decrypt(groupMessage));
+	}
+
+	@Test
+	public void createGroup_exists() throws GroupSessionException {
+		this.managers.get(alice).createGroup(groupId, Arrays.asList(bob));
+		try {
+			this.managers.get(alice).createGroup(groupId, Arrays.asList(bob));
+			fail();
+		} catch (GroupSessionException e) {
+			assertEquals(Constants.Errors.GroupSession.GROUP_EXISTS, e.getCode());
+		}
+	}
+
+	@Test
+	public void distributeKey_member() throws InterruptedException, GroupSessionException {
+		this.managers.get(alice).createGroup(groupId, Arrays.asList(bob, carol)).distributeKey();
+
+		GroupSession bobGroup = this.managers.get(bob).getGroup(groupId);
+		assertTrue(bobGroup.isKeyDistributionPending());
+		bobGroup.distributeKey();
+
+		String groupMessage = bobGroup.encrypt(MESSAGE);
+		assertEquals(MESSAGE, this.managers.get(alice).decrypt(groupMessage));
+		assertEquals(MESSAGE, this.managers.get(carol).decrypt(groupMessage));
+	}
+
+	@Test
+	public void removeMembers() throws InterruptedException, GroupSessionException {
+		GroupSession aliceGroup = this.managers.get(alice).createGroup(groupId, Arrays.asList(bob, carol));
+		aliceGroup.distributeKey();
+		String oldMessage = aliceGroup.encrypt(MESSAGE);
+
+		aliceGroup.removeMembers(Arrays.asList(carol));
+		assertEquals(Arrays.asList(bob), aliceGroup.getMembers());
+
+		// Bob replaces own key on membership change
+		GroupSession bobGroup = this.managers.get(bob).getGroup(groupId);
+		assertEquals(Arrays.asList(alice), bobGroup.getMembers());
+		assertTrue(bobGroup.isKeyDistributionPending());
+
+		String newMessage = aliceGroup.encrypt(MESSAGE);
+		assertEquals(MESSAGE, this.managers.get(bob).decrypt(oldMessage));
+		assertEquals(MESSAGE, this.managers.get(bob).decrypt(newMessage));
+		assertEquals(MESSAGE, this.managers.get(carol).decrypt(oldMessage));
+		try {
+			this.managers.get(carol).decrypt(newMessage);
+			fail();
+		} catch (GroupSessionException e) {
+			assertEquals(Constants.Errors.GroupSession.UNKNOWN_GROUP_KEY, e.getCode());
+		}
+	}
+
+	@Test
+	public void addMembers_notCreator() throws InterruptedException, GroupSessionException {
+		this.managers.get(alice).createGroup(groupId, Arrays.asList(bob)).distributeKey();
+
+		GroupSession bobGroup = this.managers.get(bob).getGroup(groupId);
+		assertEquals(alice, bobGroup.getCreator());
+		try {
+			bobGroup.addMembers(Arrays.asList(carol));
+			fail();
+		} catch (GroupSessionException e) {
+			assertEquals(Constants.Errors.GroupSession.NOT_GROUP_CREATOR, e.getCode());
+		}
+		assertEquals(Arrays.asList(alice), bobGroup.getMembers());
+	}
+
+	@Test
+	public void processKeyMessage_membersFromNotCreator() throws InterruptedException, GroupSessionException {
+		GroupSession aliceGroup = this.managers.get(alice).createGroup(groupId, Arrays.asList(bob, carol));
+		aliceGroup.distributeKey();
+
+		// Bob tries to add Mallory to Carol's view of the group
+		String mallory = "mallory" + UUID.randomUUID().toString();
+		GroupKeyMessage keyMessage = new GroupKeyMessage(groupId, 1, GroupCipher.generateKey(),
+				Arrays.asList(alice, bob, carol, mallory));
+		GroupSession carolGroup = this.managers.get(carol).processKeyMessage(bob,
+				GsonUtils.getGson().toJson(keyMessage));
+
+		assertNotNull(carolGroup);
+		assertEquals(2, carolGroup.getMembers().size());
+		assertFalse(carolGroup.getMembers().contains(mallory));
+	}
+
+	@Test
+	public void processKeyMessage_removedByNotCreator() throws InterruptedException, GroupSessionException {
+		this.managers.get(alice).createGroup(groupId, Arrays.asList(bob, carol)).distributeKey();
+
+		GroupKeyMessage keyMessage = new GroupKeyMessage(groupId, 1, GroupCipher.generateKey(),
+				Arrays.asList(alice, bob));
+		this.managers.get(carol).processKeyMessage(bob, GsonUtils.getGson().toJson(keyMessage));
+
+		assertNotNull(this.managers.get(carol).getGroup(groupId));
+	}
+
+	@Test
+	public void processKeyMessage_tooManyGroups() {
+		GroupSessionManager bobManager = this.managers.get(bob);
+		bobManager.setMaxGroupsPerCreator(2);
+
+		for (int i = 0; i < 3; i++) {
+			GroupKeyMessage keyMessage = new GroupKeyMessage(groupId + i, 1, GroupCipher.generateKey(),
+					Arrays.asList(alice, bob));
+			GroupSession group = bobManager.processKeyMessage(alice, GsonUtils.getGson().toJson(keyMessage));
+			if (i < 2) {
+				assertNotNull(group);
+			} else {
+				assertNull(group);
+			}
+		}
+		assertNull(bobManager.getGroup(groupId + 2));
+	}
+
+	@Test
+	public void decrypt_modified() throws InterruptedException, GroupSessionException {
+		GroupSession aliceGroup = this.managers.get(alice).createGroup(groupId, Arrays.asList(bob));
+		aliceGroup.distributeKey();
+
+		String groupMessage = aliceGroup.encrypt(MESSAGE).replace("\"ciphertext\":\"", "\"ciphertext\":\"AAAA");
+		try {
+			this.managers.get(bob).decrypt(groupMessage);
+			fail();
+		} catch (GroupSessionException e) {
+			assertEquals(Constants.Errors.GroupSession.CORRUPTED_MESSAGE, e.getCode());
+		}
+	}
+
+	@Test
+	public void getGroup_persisted() throws InterruptedException, GroupSessionException {
+		GroupSession aliceGroup = this.managers.get(alice).createGroup(groupId, Arrays.asList(bob));
+		aliceGroup.distributeKey();
+		String groupMessage = aliceGroup.encrypt(MESSAGE);
+
+		GroupSessionManager bobManager = createManager(bob);
+		assertEquals(MESSAGE, bobManager.decrypt(groupMessage));
+	}
+
+	@Test
+	public void processKeyMessage_notKey() {
+		assertNull(this.managers.get(bob).processKeyMessage(alice, MESSAGE));
+	}
+
+	@Test
+	public void removeGroup() throws InterruptedException, GroupSessionException {
+		this.managers.get(alice).createGroup(groupId, Arrays.asList(bob)).distributeKey();
+
+		this.managers.get(bob).removeGroup(groupId);
+		assertNull(this.managers.get(bob).getGroup(groupId));
+		assertNull(createManager(bob).getGroup(groupId));
+	}
+
+	private GroupSessionManager createManager(final String cardId) throws InterruptedException {
+		SecureChat secureChat = mock(SecureChat.class);
+		// Deliver group keys to members as if they were sent through
+		// pairwise sessions
+		when(secureChat.encryptForAll(anyListOf(String.class), any(byte[].class)))
+				.thenAnswer(new Answer<EncryptedBroadcast>() {
+
+					@SuppressWarnings("unchecked")
+					@Override
+					public EncryptedBroadcast answer(InvocationOnMock invocation) throws Throwable {
+						List<String> cardIds = (List<String>) invocation.getArguments()[0];
+						String message = ConvertionUtils.toString((byte[]) invocation.getArguments()[1]);
+
+						Map<String, String> messages = new LinkedHashMap<>();
+						for (String recipient : cardIds) {
+							managers.get(recipient).processKeyMessage(cardId, message);
+							messages.put(recipient, message);
+						}
+						return new EncryptedBroadcast(messages, new ArrayList<String>(),
+								new HashMap<String, Exception>());
+					}
+				});
+		return new GroupSessionManager(secureChat, cardId, this.keyStorages.get(cardId), this.storages.get(cardId));
+	}
+
+}
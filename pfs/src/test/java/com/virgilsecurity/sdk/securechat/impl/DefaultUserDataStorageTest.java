@@ -32,10 +32,15 @@ package com.virgilsecurity.sdk.securechat.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -80,4 +85,47 @@ public class DefaultUserDataStorageTest {
         assertNull(dateStorage.getData(storageName, "key2"));
     }
 
+    @Test
+    public void addData_null() {
+        dateStorage.addData(storageName, "key1", "value1");
+        dateStorage.addData(storageName, "key1", null);
+        assertNull(dateStorage.getData(storageName, "key1"));
+        assertTrue(dateStorage.getAllData(storageName).isEmpty());
+    }
+
+    @Test
+    public void getAllData_concurrent() throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Map<String, String>> results = Collections.synchronizedList(new ArrayList<Map<String, String>>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final String key = "key" + i;
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    dateStorage.addData(storageName, key, key);
+                    results.add(dateStorage.getAllData(storageName));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // All threads share one map, so no data is lost
+        assertEquals(8, dateStorage.getAllData(storageName).size());
+        for (Map<String, String> data : results) {
+            assertSame(results.get(0), data);
+        }
+    }
+
 }
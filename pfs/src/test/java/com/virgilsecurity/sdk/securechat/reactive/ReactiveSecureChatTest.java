@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.virgilsecurity.sdk.client.model.CardModel;
+import com.virgilsecurity.sdk.securechat.SecureChat;
+import com.virgilsecurity.sdk.securechat.exceptions.SecureChatException;
+import com.virgilsecurity.sdk.securechat.model.DecryptedMessage;
+import com.virgilsecurity.sdk.securechat.model.EncryptedMessage;
+import com.virgilsecurity.sdk.securechat.model.InboundMessage;
+import com.virgilsecurity.sdk.securechat.model.OutboundMessage;
+import com.virgilsecurity.sdk.securechat.session.SecureSession;
+
+public class ReactiveSecureChatTest {
+
+	private static final String CARD_ID = "bob";
+
+	private SecureChat secureChat;
+	private CardModel card;
+	private ExecutorService scheduler;
+	private ReactiveSecureChat reactiveChat;
+
+	@Before
+	public void setUp() {
+		this.secureChat = mock(SecureChat.class);
+		this.card = mock(CardModel.class);
+		when(this.card.getId()).thenReturn(CARD_ID);
+		when(this.secureChat.decrypt(any(InboundMessage.class))).thenAnswer(new Answer<DecryptedMessage>() {
+
+			@Override
+			public DecryptedMessage answer(InvocationOnMock invocation) throws Throwable {
+				InboundMessage message = (InboundMessage) invocation.getArguments()[0];
+				return new DecryptedMessage(message, "text:" + message.getMessage(), null);
+			}
+		});
+		this.scheduler = Executors.newFixedThreadPool(4);
+		this.reactiveChat = new ReactiveSecureChat(this.secureChat, this.scheduler);
+	}
+
+	@After
+	public void tearDown() {
+		this.scheduler.shutdownNow();
+	}
+
+	@Test
+	public void decryptor() throws InterruptedException {
+		ListPublisher<InboundMessage> publisher = new ListPublisher<>(inboundMessages(100));
+		Processor<InboundMessage, DecryptedMessage> decryptor = this.reactiveChat.decryptor();
+		publisher.subscribe(decryptor);
+		TestSubscriber<DecryptedMessage> subscriber = new TestSubscriber<>();
+		decryptor.subscribe(subscriber);
+
+		subscriber.request(100);
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertNull(subscriber.error);
+		assertEquals(100, subscriber.items.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("text:" + i, subscriber.items.get(i).getText());
+		}
+	}
+
+	@Test
+	public void decryptor_demand() throws InterruptedException {
+		ListPublisher<InboundMessage> publisher = new ListPublisher<>(inboundMessages(10));
+		Processor<InboundMessage, DecryptedMessage> decryptor = this.reactiveChat.decryptor();
+		publisher.subscribe(decryptor);
+		TestSubscriber<DecryptedMessage> subscriber = new TestSubscriber<>();
+		decryptor.subscribe(subscriber);
+
+		subscriber.request(3);
+		Thread.sleep(200);
+		assertEquals(3, subscriber.items.size());
+		assertEquals(3, publisher.emitted);
+
+		subscriber.request(7);
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertEquals(10, subscriber.items.size());
+	}
+
+	@Test
+	public void decryptor_cancel() throws InterruptedException {
+		ListPublisher<InboundMessage> publisher = new ListPublisher<>(inboundMessages(10));
+		Processor<InboundMessage, DecryptedMessage> decryptor = this.reactiveChat.decryptor();
+		publisher.subscribe(decryptor);
+		TestSubscriber<DecryptedMessage> subscriber = new TestSubscriber<>();
+		decryptor.subscribe(subscriber);
+
+		subscriber.request(2);
+		Thread.sleep(200);
+		subscriber.subscription.cancel();
+		assertTrue(publisher.cancelled);
+		assertEquals(2, subscriber.items.size());
+	}
+
+	@Test
+	public void decryptor_secondSubscriber() {
+		Processor<InboundMessage, DecryptedMessage> decryptor = this.reactiveChat.decryptor();
+		decryptor.subscribe(new TestSubscriber<DecryptedMessage>());
+		TestSubscriber<DecryptedMessage> subscriber = new TestSubscriber<>();
+		decryptor.subscribe(subscriber);
+
+		assertTrue(subscriber.error instanceof IllegalStateException);
+	}
+
+	@Test
+	public void encryptor() throws InterruptedException, SecureChatException {
+		SecureSession session = mock(SecureSession.class);
+		when(session.encrypt(anyString())).thenReturn("encrypted");
+		when(this.secureChat.startNewSession(this.card, null)).thenReturn(session);
+
+		ListPublisher<OutboundMessage> publisher = new ListPublisher<>(
+				Collections.singletonList(new OutboundMessage(this.card, "text")));
+		Processor<OutboundMessage, EncryptedMessage> encryptor = this.reactiveChat.encryptor();
+		publisher.subscribe(encryptor);
+		TestSubscriber<EncryptedMessage> subscriber = new TestSubscriber<>();
+		encryptor.subscribe(subscriber);
+
+		subscriber.request(Long.MAX_VALUE);
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertEquals(1, subscriber.items.size());
+		assertTrue(subscriber.items.get(0).isSuccess());
+		assertEquals("encrypted", subscriber.items.get(0).getMessage());
+	}
+
+	@Test
+	public void encryptor_error() throws InterruptedException, SecureChatException {
+		SecureChatException exception = new SecureChatException(0, "failed");
+		when(this.secureChat.startNewSession(this.card, null)).thenThrow(exception);
+
+		ListPublisher<OutboundMessage> publisher = new ListPublisher<>(
+				Collections.singletonList(new OutboundMessage(this.card, "text")));
+		Processor<OutboundMessage, EncryptedMessage> encryptor = this.reactiveChat.encryptor();
+		publisher.subscribe(encryptor);
+		TestSubscriber<EncryptedMessage> subscriber = new TestSubscriber<>();
+		encryptor.subscribe(subscriber);
+
+		subscriber.request(1);
+		subscriber.request(1);
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertFalse(subscriber.items.get(0).isSuccess());
+		assertSame(exception, subscriber.items.get(0).getError());
+	}
+
+	@Test
+	public void startNewSession() throws InterruptedException, SecureChatException {
+		SecureSession session = mock(SecureSession.class);
+		when(this.secureChat.startNewSession(this.card, null)).thenReturn(session);
+
+		Publisher<SecureSession> publisher = this.reactiveChat.startNewSession(this.card, null);
+		TestSubscriber<SecureSession> subscriber = new TestSubscriber<>();
+		publisher.subscribe(subscriber);
+		Thread.sleep(100);
+		verify(this.secureChat, never()).startNewSession(this.card, null);
+
+		subscriber.request(1);
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertEquals(1, subscriber.items.size());
+		assertSame(session, subscriber.items.get(0));
+	}
+
+	@Test
+	public void rotateKeys() throws InterruptedException {
+		Publisher<Void> publisher = this.reactiveChat.rotateKeys(10);
+		TestSubscriber<Void> subscriber = new TestSubscriber<>();
+		publisher.subscribe(subscriber);
+
+		subscriber.request(1);
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertNull(subscriber.error);
+		assertTrue(subscriber.items.isEmpty());
+		verify(this.secureChat).rotateKeys(10);
+	}
+
+	@Test
+	public void rotateKeys_error() throws InterruptedException {
+		IllegalStateException exception = new IllegalStateException();
+		doThrow(exception).when(this.secureChat).rotateKeys(10);
+
+		Publisher<Void> publisher = this.reactiveChat.rotateKeys(10);
+		TestSubscriber<Void> subscriber = new TestSubscriber<>();
+		publisher.subscribe(subscriber);
+
+		subscriber.request(1);
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertSame(exception, subscriber.error);
+	}
+
+	@Test
+	public void request_notPositive() throws InterruptedException {
+		Publisher<Void> publisher = this.reactiveChat.rotateKeys(10);
+		TestSubscriber<Void> subscriber = new TestSubscriber<>();
+		publisher.subscribe(subscriber);
+
+		subscriber.request(0);
+		assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+	}
+
+	private List<InboundMessage> inboundMessages(int count) {
+		List<InboundMessage> messages = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			messages.add(new InboundMessage(this.card, String.valueOf(i)));
+		}
+		return messages;
+	}
+
+	private static class ListPublisher<T> implements Publisher<T> {
+
+		private final List<T> items;
+		private volatile int emitted;
+		private volatile boolean cancelled;
+
+		ListPublisher(List<T> items) {
+			this.items = items;
+		}
+
+		@Override
+		public void subscribe(final Subscriber<? super T> subscriber) {
+			subscriber.onSubscribe(new Subscription() {
+
+				@Override
+				public synchronized void request(long n) {
+					for (long i = 0; i < n && emitted < items.size() && !cancelled; i++) {
+						subscriber.onNext(items.get(emitted++));
+					}
+					if (emitted == items.size() && !cancelled) {
+						cancelled = true;
+						subscriber.onComplete();
+					}
+				}
+
+				@Override
+				public void cancel() {
+					cancelled = true;
+				}
+			});
+		}
+	}
+
+	private static class TestSubscriber<T> implements Subscriber<T> {
+
+		private final List<T> items = Collections.synchronizedList(new ArrayList<T>());
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private volatile Subscription subscription;
+		private volatile Throwable error;
+
+		void request(long n) {
+			this.subscription.request(n);
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(T item) {
+			this.items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			this.error = throwable;
+			this.completed.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			this.completed.countDown();
+		}
+	}
+
+}
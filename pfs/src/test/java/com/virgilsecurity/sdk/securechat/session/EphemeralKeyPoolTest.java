@@ -0,0 +1,140 @@
+package com.virgilsecurity.sdk.securechat.session;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.virgilsecurity.sdk.crypto.Crypto;
+import com.virgilsecurity.sdk.crypto.KeyPair;
+import com.virgilsecurity.sdk.crypto.PrivateKey;
+import com.virgilsecurity.sdk.crypto.PublicKey;
+import com.virgilsecurity.sdk.securechat.session.EphemeralKeyPool.EphemeralKey;
+
+public class EphemeralKeyPoolTest {
+
+	private static final int SIZE = 3;
+	private static final byte[] PUBLIC_KEY_DATA = new byte[] { 1, 2, 3 };
+	private static final byte[] SIGNATURE = new byte[] { 4, 5, 6 };
+
+	private Crypto crypto;
+	private PrivateKey identityPrivateKey;
+	private Executor directExecutor;
+	private Executor idleExecutor;
+
+	@Before
+	public void setUp() {
+		this.crypto = mock(Crypto.class);
+		this.identityPrivateKey = mock(PrivateKey.class);
+
+		KeyPair keyPair = mock(KeyPair.class);
+		when(keyPair.getPrivateKey()).thenReturn(mock(PrivateKey.class));
+		when(keyPair.getPublicKey()).thenReturn(mock(PublicKey.class));
+		when(this.crypto.generateKeys()).thenReturn(keyPair);
+		when(this.crypto.exportPrivateKey(any(PrivateKey.class))).thenReturn(new byte[] { 7, 8, 9 });
+		when(this.crypto.exportPublicKey(any(PublicKey.class))).thenReturn(PUBLIC_KEY_DATA);
+		when(this.crypto.sign(any(byte[].class), eq(this.identityPrivateKey))).thenReturn(SIGNATURE);
+
+		this.directExecutor = new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		};
+		this.idleExecutor = new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+			}
+		};
+	}
+
+	@Test
+	public void take_emptyPool() {
+		EphemeralKeyPool pool = new EphemeralKeyPool(this.crypto, this.identityPrivateKey, SIZE, this.idleExecutor);
+
+		EphemeralKey key = pool.take();
+
+		assertNotNull(key);
+		assertNotNull(key.getPrivateKey());
+		assertNotNull(key.getPfsPrivateKey());
+		assertEquals(0, pool.getAvailableCount());
+		verify(this.crypto, times(1)).generateKeys();
+	}
+
+	@Test
+	public void refill() {
+		EphemeralKeyPool pool = new EphemeralKeyPool(this.crypto, this.identityPrivateKey, SIZE, this.directExecutor);
+
+		pool.refill();
+
+		assertEquals(SIZE, pool.getAvailableCount());
+		verify(this.crypto, times(SIZE)).generateKeys();
+	}
+
+	@Test
+	public void refill_takenWhileFinishing() {
+		final EphemeralKeyPool pool = spy(
+				new EphemeralKeyPool(this.crypto, this.identityPrivateKey, SIZE, this.directExecutor));
+		final AtomicBoolean taken = new AtomicBoolean();
+		doAnswer(new Answer<Integer>() {
+
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				int count = (Integer) invocation.callRealMethod();
+				if (count == SIZE && taken.compareAndSet(false, true)) {
+					// Key is taken when the pool is full, but refill is not
+					// finished yet
+					pool.take();
+				}
+				return count;
+			}
+		}).when(pool).getAvailableCount();
+
+		pool.refill();
+
+		assertEquals(SIZE, pool.getAvailableCount());
+		verify(this.crypto, times(SIZE + 1)).generateKeys();
+	}
+
+	@Test
+	public void take_prepared() {
+		EphemeralKeyPool pool = new EphemeralKeyPool(this.crypto, this.identityPrivateKey, SIZE, this.directExecutor);
+		pool.refill();
+
+		EphemeralKey key = pool.take();
+
+		assertArrayEquals(PUBLIC_KEY_DATA, key.getPublicKeyData());
+		assertArrayEquals(SIGNATURE, key.getPublicKeySignature());
+		assertEquals(SIZE, pool.getAvailableCount());
+		verify(this.crypto, times(SIZE + 1)).generateKeys();
+		verify(this.crypto, times(SIZE + 1)).sign(PUBLIC_KEY_DATA, this.identityPrivateKey);
+	}
+
+	@Test
+	public void shutdown() {
+		EphemeralKeyPool pool = new EphemeralKeyPool(this.crypto, this.identityPrivateKey, SIZE, this.directExecutor);
+		pool.refill();
+
+		pool.shutdown();
+
+		assertEquals(0, pool.getAvailableCount());
+	}
+
+}
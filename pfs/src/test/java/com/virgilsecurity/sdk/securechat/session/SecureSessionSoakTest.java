@@ -0,0 +1,144 @@
+package com.virgilsecurity.sdk.securechat.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.crypto.VirgilPFSSession;
+import com.virgilsecurity.sdk.securechat.utils.ResourceCleaner;
+
+/**
+ * Creates and drops many sessions and checks that native contexts are reused
+ * and resident memory doesn't grow.
+ */
+/**
+ * Checks that native memory of secure sessions is released. Long running, so
+ * it's excluded from the default build. Run with {@code mvn test -Psoak}.
+ */
+public class SecureSessionSoakTest {
+
+	private static final int WARMUP_SESSIONS = 2000;
+	private static final int SESSIONS = 20000;
+	private static final long MAX_RSS_GROWTH = 32 * 1024 * 1024;
+
+	private VirgilPFSPool pool;
+	private SecureRandom random;
+	private Date expirationDate;
+
+	@Before
+	public void setUp() {
+		this.pool = new VirgilPFSPool(4);
+		this.random = new SecureRandom();
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.add(Calendar.DAY_OF_YEAR, 1);
+		this.expirationDate = calendar.getTime();
+	}
+
+	@After
+	public void tearDown() {
+		this.pool.close();
+	}
+
+	@Test
+	public void closedSessions() throws Exception {
+		runSessions(WARMUP_SESSIONS, true);
+		long rss = residentMemory();
+		long created = this.pool.getCreatedCount();
+
+		runSessions(SESSIONS, true);
+
+		// All contexts are reused
+		assertEquals(created, this.pool.getCreatedCount());
+		assertRssGrowth(rss);
+	}
+
+	@Test
+	public void unreachableSessions() throws Exception {
+		int registered = ResourceCleaner.getRegisteredCount();
+		runSessions(WARMUP_SESSIONS, false);
+		long rss = residentMemory();
+
+		runSessions(SESSIONS, false);
+
+		// Contexts of dropped sessions are released by cleaner
+		for (int i = 0; i < 50 && ResourceCleaner.getRegisteredCount() > registered; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		assertTrue(ResourceCleaner.getRegisteredCount() <= registered);
+		assertRssGrowth(rss);
+	}
+
+	private void runSessions(int count, boolean close) {
+		for (int i = 0; i < count; i++) {
+			byte[] sessionId = randomBytes();
+			byte[] firstKey = randomBytes();
+			byte[] secondKey = randomBytes();
+			byte[] additionalData = randomBytes();
+
+			// Secure sessions own native sessions, and close them when they
+			// are closed or become unreachable
+			SecureSession sender = new SecureSession(
+					new VirgilPFSSession(sessionId, firstKey, secondKey, additionalData), this.expirationDate, null,
+					this.pool);
+			SecureSession recipient = new SecureSession(
+					new VirgilPFSSession(sessionId, secondKey, firstKey, additionalData), this.expirationDate, null,
+					this.pool);
+			try {
+				String message = "Message " + i;
+				assertEquals(message, recipient.decrypt(sender.encrypt(message)));
+			} finally {
+				if (close) {
+					sender.close();
+					recipient.close();
+				}
+			}
+		}
+	}
+
+	private byte[] randomBytes() {
+		byte[] bytes = new byte[32];
+		this.random.nextBytes(bytes);
+		return bytes;
+	}
+
+	private void assertRssGrowth(long rss) throws IOException {
+		if (rss < 0) {
+			// Resident memory size is not available on this platform
+			return;
+		}
+		System.gc();
+		long growth = residentMemory() - rss;
+		assertTrue(String.format("Resident memory grew by %d bytes", growth), growth < MAX_RSS_GROWTH);
+	}
+
+	private static long residentMemory() throws IOException {
+		File status = new File("/proc/self/status");
+		if (!status.exists()) {
+			return -1;
+		}
+		try (BufferedReader reader = new BufferedReader(new FileReader(status))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("VmRSS:")) {
+					String[] parts = line.trim().split("\\s+");
+					return Long.parseLong(parts[1]) * 1024;
+				}
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.virgilsecurity.sdk.securechat.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.crypto.VirgilPFS;
+import com.virgilsecurity.crypto.VirgilPFSSession;
+
+public class SecureSessionTest {
+
+	private static final int THREADS = 8;
+	private static final int MESSAGES_PER_THREAD = 200;
+
+	private SecureSession senderSession;
+	private SecureSession recipientSession;
+	private ExecutorService executor;
+	private byte[] sessionId;
+	private byte[] firstKey;
+	private byte[] secondKey;
+	private byte[] additionalData;
+	private Date expirationDate;
+
+	@Before
+	public void setUp() {
+		SecureRandom random = new SecureRandom();
+		byte[] sessionId = new byte[32];
+		byte[] firstKey = new byte[32];
+		byte[] secondKey = new byte[32];
+		byte[] additionalData = new byte[32];
+		random.nextBytes(sessionId);
+		random.nextBytes(firstKey);
+		random.nextBytes(secondKey);
+		random.nextBytes(additionalData);
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.add(Calendar.DAY_OF_YEAR, 1);
+
+		this.sessionId = sessionId;
+		this.firstKey = firstKey;
+		this.secondKey = secondKey;
+		this.additionalData = additionalData;
+		this.expirationDate = calendar.getTime();
+
+		this.senderSession = new SecureSession(
+				new VirgilPFSSession(sessionId, firstKey, secondKey, additionalData), calendar.getTime(), null);
+		this.recipientSession = new SecureSession(
+				new VirgilPFSSession(sessionId, secondKey, firstKey, additionalData), calendar.getTime(), null);
+
+		this.executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+		this.senderSession.close();
+		this.recipientSession.close();
+	}
+
+	@Test
+	public void encryptDecrypt_concurrent() throws Exception {
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			final int thread = i;
+			futures.add(this.executor.submit(new Callable<Integer>() {
+
+				@Override
+				public Integer call() throws Exception {
+					for (int j = 0; j < MESSAGES_PER_THREAD; j++) {
+						String message = String.format("Message %d from thread %d", j, thread);
+						String encryptedMessage = senderSession.encrypt(message);
+						assertEquals(message, recipientSession.decrypt(encryptedMessage));
+					}
+					return MESSAGES_PER_THREAD;
+				}
+			}));
+		}
+		int count = 0;
+		for (Future<Integer> future : futures) {
+			count += future.get();
+		}
+		assertEquals(THREADS * MESSAGES_PER_THREAD, count);
+	}
+
+	@Test
+	public void encrypt_idleContextsLimit() throws Exception {
+		this.senderSession.setMaxIdleContexts(1);
+
+		final String message = "Hello";
+		List<Future<String>> futures = new ArrayList<>();
+		for (int i = 0; i < THREADS * 4; i++) {
+			futures.add(this.executor.submit(new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+					return recipientSession.decrypt(senderSession.encrypt(message));
+				}
+			}));
+		}
+		for (Future<String> future : futures) {
+			assertEquals(message, future.get());
+		}
+	}
+
+	@Test
+	public void close_nativeSession() {
+		VirgilPFSSession pfsSession = mock(VirgilPFSSession.class);
+		when(pfsSession.getIdentifier()).thenReturn(sessionId);
+		VirgilPFSPool pool = mock(VirgilPFSPool.class);
+		when(pool.acquire()).thenReturn(mock(VirgilPFS.class));
+
+		SecureSession session = new SecureSession(pfsSession, expirationDate, null, pool);
+		session.close();
+		session.close();
+
+		verify(pfsSession, times(1)).close();
+		assertArrayEquals(sessionId, session.getIdentifier());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void encrypt_closed() throws Exception {
+		this.senderSession.close();
+		this.senderSession.encrypt("Hello");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void getEncryptionKey_closed() {
+		this.senderSession.close();
+		this.senderSession.getEncryptionKey();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void getPfs_closed() {
+		this.senderSession.close();
+		this.senderSession.getPfs();
+	}
+
+	@Test
+	public void getPfs_notReturnedToPool() throws Exception {
+		VirgilPFSPool pool = new VirgilPFSPool(4);
+		try {
+			SecureSession session = new SecureSession(
+					new VirgilPFSSession(sessionId, firstKey, secondKey, additionalData), expirationDate, null, pool);
+			VirgilPFS pfs = session.getPfs();
+
+			// Exposed context is not used for encryption
+			String message = "Hello";
+			assertEquals(message, this.recipientSession.decrypt(session.encrypt(message)));
+
+			session.close();
+			assertEquals(1, pool.getIdleCount());
+			assertNotSame(pfs, pool.acquire());
+		} finally {
+			pool.close();
+		}
+	}
+
+}
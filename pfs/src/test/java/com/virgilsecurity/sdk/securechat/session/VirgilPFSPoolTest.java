@@ -0,0 +1,90 @@
+package com.virgilsecurity.sdk.securechat.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.crypto.VirgilPFS;
+import com.virgilsecurity.crypto.VirgilPFSSession;
+
+public class VirgilPFSPoolTest {
+
+	private static final int MAX_IDLE_CONTEXTS = 2;
+
+	private VirgilPFSPool pool;
+
+	@Before
+	public void setUp() {
+		this.pool = new VirgilPFSPool(MAX_IDLE_CONTEXTS);
+	}
+
+	@After
+	public void tearDown() {
+		this.pool.close();
+	}
+
+	@Test
+	public void acquire_reuse() {
+		VirgilPFS context = this.pool.acquire();
+		this.pool.release(context);
+
+		assertSame(context, this.pool.acquire());
+		assertEquals(1, this.pool.getCreatedCount());
+	}
+
+	@Test
+	public void release_limit() {
+		VirgilPFS first = this.pool.acquire();
+		VirgilPFS second = this.pool.acquire();
+		VirgilPFS third = this.pool.acquire();
+		this.pool.release(first);
+		this.pool.release(second);
+		this.pool.release(third);
+
+		assertEquals(MAX_IDLE_CONTEXTS, this.pool.getIdleCount());
+		assertEquals(3, this.pool.getCreatedCount());
+	}
+
+	@Test
+	public void release_resetSession() {
+		VirgilPFS context = mock(VirgilPFS.class);
+		this.pool.release(context);
+
+		verify(context).setSession(any(VirgilPFSSession.class));
+		verify(context, never()).close();
+		assertSame(context, this.pool.acquire());
+	}
+
+	@Test
+	public void release_resetSessionFailed() {
+		VirgilPFS context = mock(VirgilPFS.class);
+		doThrow(new RuntimeException()).when(context).setSession(any(VirgilPFSSession.class));
+		this.pool.release(context);
+
+		verify(context).close();
+		assertEquals(0, this.pool.getIdleCount());
+	}
+
+	@Test
+	public void close() {
+		VirgilPFS context = this.pool.acquire();
+		this.pool.release(this.pool.acquire());
+		this.pool.close();
+
+		assertEquals(0, this.pool.getIdleCount());
+
+		this.pool.release(context);
+		assertEquals(0, this.pool.getIdleCount());
+		assertNotSame(context, this.pool.acquire());
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+public class Base64CodecTest {
+
+	private static final int MAX_LENGTH = 100;
+
+	@Test
+	public void encode() {
+		Random random = new Random(1);
+		for (int length = 0; length < MAX_LENGTH; length++) {
+			byte[] data = new byte[length];
+			random.nextBytes(data);
+
+			assertEquals(ConvertionUtils.toBase64String(data), Base64Codec.encode(data));
+		}
+	}
+
+	@Test
+	public void encode_toArray() {
+		byte[] data = ConvertionUtils.toBytes("Hello world");
+		char[] dst = new char[Base64Codec.encodedLength(data.length) + 2];
+
+		int written = Base64Codec.encode(data, dst, 1);
+
+		assertEquals(Base64Codec.encodedLength(data.length), written);
+		assertEquals(ConvertionUtils.toBase64String(data), new String(dst, 1, written));
+	}
+
+	@Test
+	public void decode() {
+		Random random = new Random(1);
+		for (int length = 0; length < MAX_LENGTH; length++) {
+			byte[] data = new byte[length];
+			random.nextBytes(data);
+
+			assertArrayEquals(data, Base64Codec.decode(ConvertionUtils.toBase64String(data)));
+		}
+	}
+
+	@Test
+	public void decode_range() {
+		byte[] data = ConvertionUtils.toBytes("Hello world");
+		String prefix = "VIRGIL.OWNER.id.SESS_KEYS.";
+		String name = prefix + ConvertionUtils.toBase64String(data);
+
+		assertArrayEquals(data, Base64Codec.decode(name, prefix.length(), name.length()));
+	}
+
+	@Test
+	public void decode_nonCanonical() {
+		byte[] data = ConvertionUtils.toBytes("Hello");
+		String encoded = ConvertionUtils.toBase64String(data);
+
+		assertArrayEquals(ConvertionUtils.base64ToBytes(encoded.replace("=", "")),
+				Base64Codec.decode(encoded.replace("=", "")));
+	}
+
+}
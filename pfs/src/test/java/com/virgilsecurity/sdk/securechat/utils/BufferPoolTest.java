@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+	private static final int MAX_BUFFER_SIZE = 4096;
+	private static final int MAX_BUFFERS_PER_CLASS = 2;
+
+	private BufferPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new BufferPool(MAX_BUFFER_SIZE, MAX_BUFFERS_PER_CLASS);
+	}
+
+	@Test
+	public void acquireBytes_sizeClasses() {
+		assertEquals(BufferPool.MIN_BUFFER_SIZE, pool.acquireBytes(0).length);
+		assertEquals(BufferPool.MIN_BUFFER_SIZE, pool.acquireBytes(BufferPool.MIN_BUFFER_SIZE).length);
+		assertEquals(512, pool.acquireBytes(BufferPool.MIN_BUFFER_SIZE + 1).length);
+		assertEquals(MAX_BUFFER_SIZE, pool.acquireBytes(MAX_BUFFER_SIZE).length);
+		assertEquals(MAX_BUFFER_SIZE + 1, pool.acquireBytes(MAX_BUFFER_SIZE + 1).length);
+	}
+
+	@Test
+	public void release_bytes() {
+		byte[] buffer = pool.acquireBytes(1000);
+		pool.release(buffer);
+
+		assertSame(buffer, pool.acquireBytes(600));
+		assertNotSame(buffer, pool.acquireBytes(600));
+	}
+
+	@Test
+	public void release_notPooled() {
+		byte[] large = pool.acquireBytes(MAX_BUFFER_SIZE * 2);
+		pool.release(large);
+		assertNotSame(large, pool.acquireBytes(MAX_BUFFER_SIZE * 2));
+
+		byte[] odd = new byte[1000];
+		pool.release(odd);
+		assertNotSame(odd, pool.acquireBytes(1000));
+	}
+
+	@Test
+	public void release_limit() {
+		char[] first = pool.acquireChars(100);
+		char[] second = pool.acquireChars(100);
+		char[] third = pool.acquireChars(100);
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+
+		assertSame(second, pool.acquireChars(100));
+		assertSame(first, pool.acquireChars(100));
+		assertNotSame(third, pool.acquireChars(100));
+	}
+
+	@Test
+	public void release_direct() {
+		ByteBuffer buffer = pool.acquireDirect(300);
+		assertTrue(buffer.isDirect());
+		assertEquals(512, buffer.remaining());
+
+		buffer.put((byte) 1).flip();
+		pool.release(buffer);
+
+		ByteBuffer reused = pool.acquireDirect(300);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(512, reused.limit());
+	}
+
+	@Test
+	public void release_heapByteBuffer() {
+		byte[] array = pool.acquireBytes(100);
+		pool.release(ByteBuffer.wrap(array));
+
+		assertSame(array, pool.acquireBytes(100));
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.virgilsecurity.sdk.securechat.model.SessionState;
+
+public class EpochDateTypeAdapterTest {
+
+	private Gson gson;
+	private Gson legacyGson;
+	private Date date;
+
+	@Before
+	public void setUp() {
+		gson = new GsonBuilder().registerTypeAdapter(Date.class, new EpochDateTypeAdapter()).create();
+		legacyGson = new GsonBuilder().setDateFormat(EpochDateTypeAdapter.LEGACY_DATE_FORMAT).create();
+
+		Calendar cal = Calendar.getInstance();
+		date = cal.getTime();
+	}
+
+	@Test
+	public void write() {
+		assertEquals(String.valueOf(date.getTime()), gson.toJson(date));
+		assertEquals("null", gson.toJson(null, Date.class));
+	}
+
+	@Test
+	public void read() {
+		assertEquals(date, gson.fromJson(String.valueOf(date.getTime()), Date.class));
+		assertEquals(date, gson.fromJson("\"" + date.getTime() + "\"", Date.class));
+		assertNull(gson.fromJson("null", Date.class));
+	}
+
+	@Test
+	public void read_legacy() {
+		assertEquals(date, gson.fromJson(legacyGson.toJson(date), Date.class));
+	}
+
+	@Test
+	public void read_legacyModel() {
+		SessionState state = new SessionState(new byte[] { 1, 2, 3 }, date, new Date(date.getTime() + 1000), null);
+
+		SessionState restoredState = gson.fromJson(legacyGson.toJson(state), SessionState.class);
+		assertEquals(state.getCreationDate(), restoredState.getCreationDate());
+		assertEquals(state.getExpirationDate(), restoredState.getExpirationDate());
+
+		restoredState = gson.fromJson(gson.toJson(state), SessionState.class);
+		assertEquals(state.getCreationDate(), restoredState.getCreationDate());
+		assertEquals(state.getExpirationDate(), restoredState.getExpirationDate());
+	}
+
+	@Test
+	public void isEpoch() {
+		assertTrue(EpochDateTypeAdapter.isEpoch("1500000000000"));
+		assertTrue(EpochDateTypeAdapter.isEpoch("-1"));
+		assertFalse(EpochDateTypeAdapter.isEpoch("-"));
+		assertFalse(EpochDateTypeAdapter.isEpoch(""));
+		assertFalse(EpochDateTypeAdapter.isEpoch(null));
+		assertFalse(EpochDateTypeAdapter.isEpoch("\"2017-07-01 10:00:00.000\""));
+	}
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.virgilsecurity.sdk.securechat.TestUtils;
+import com.virgilsecurity.sdk.securechat.model.ExhaustInfo;
+import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.ExhaustInfoEntry;
+import com.virgilsecurity.sdk.securechat.model.ExhaustInfo.SessionExhaustInfo;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.IndexEntry;
+import com.virgilsecurity.sdk.securechat.model.ExpiryIndex.Kind;
+import com.virgilsecurity.sdk.securechat.model.InitiationMessage;
+import com.virgilsecurity.sdk.securechat.model.Message;
+import com.virgilsecurity.sdk.securechat.model.ReplenishmentInfo;
+import com.virgilsecurity.sdk.securechat.model.SessionState;
+import com.virgilsecurity.sdk.utils.ConvertionUtils;
+
+public class ModelTypeAdapterFactoryTest {
+
+	private static class ByteArrayToBase64TypeAdapter implements JsonSerializer<byte[]>, JsonDeserializer<byte[]> {
+		public byte[] deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
+				throws JsonParseException {
+			return ConvertionUtils.base64ToBytes(json.getAsString());
+		}
+
+		public JsonElement serialize(byte[] src, Type typeOfSrc, JsonSerializationContext context) {
+			return new JsonPrimitive(ConvertionUtils.toBase64String(src));
+		}
+	}
+
+	private Gson reflectiveGson;
+	private Gson gson;
+	private Date now;
+
+	@Before
+	public void setUp() {
+		reflectiveGson = new GsonBuilder()
+				.registerTypeHierarchyAdapter(byte[].class, new ByteArrayToBase64TypeAdapter()).disableHtmlEscaping()
+				.registerTypeAdapter(Date.class, new EpochDateTypeAdapter()).serializeNulls().create();
+		gson = new GsonBuilder().registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+				.registerTypeHierarchyAdapter(byte[].class, new ByteArrayToBase64TypeAdapter()).disableHtmlEscaping()
+				.registerTypeAdapter(Date.class, new EpochDateTypeAdapter()).serializeNulls().create();
+		now = new Date();
+	}
+
+	@Test
+	public void message() {
+		Message message = new Message(TestUtils.generateBytes(16), TestUtils.generateBytes(16),
+				TestUtils.generateBytes(100));
+
+		String json = gson.toJson(message);
+		assertEquals(reflectiveGson.toJson(message), json);
+		assertEquals(message, gson.fromJson(json, Message.class));
+		assertEquals(json, GsonUtils.getGson().toJson(message));
+	}
+
+	@Test
+	public void initiationMessage() {
+		InitiationMessage message = new InitiationMessage("initiator", "responder", "ltc", "otc",
+				TestUtils.generateBytes(32), TestUtils.generateBytes(64), TestUtils.generateBytes(16),
+				TestUtils.generateBytes(100));
+
+		String json = gson.toJson(message);
+		assertEquals(reflectiveGson.toJson(message), json);
+
+		InitiationMessage restored = gson.fromJson(json, InitiationMessage.class);
+		assertEquals(message.getInitiatorIcId(), restored.getInitiatorIcId());
+		assertEquals(message.getResponderIcId(), restored.getResponderIcId());
+		assertEquals(message.getResponderLtcId(), restored.getResponderLtcId());
+		assertEquals(message.getResponderOtcId(), restored.getResponderOtcId());
+		assertArrayEquals(message.getEphPublicKey(), restored.getEphPublicKey());
+		assertArrayEquals(message.getEphPublicKeySignature(), restored.getEphPublicKeySignature());
+		assertArrayEquals(message.getSalt(), restored.getSalt());
+		assertArrayEquals(message.getCipherText(), restored.getCipherText());
+	}
+
+	@Test
+	public void initiationMessage_weak() {
+		InitiationMessage message = new InitiationMessage("initiator", "responder", "ltc", null,
+				TestUtils.generateBytes(32), TestUtils.generateBytes(64), TestUtils.generateBytes(16),
+				TestUtils.generateBytes(100));
+
+		Gson withoutNulls = new GsonBuilder()
+				.registerTypeHierarchyAdapter(byte[].class, new ByteArrayToBase64TypeAdapter()).disableHtmlEscaping()
+				.create();
+		String json = gson.toJson(message);
+		assertEquals(withoutNulls.toJson(message), json);
+		assertNull(gson.fromJson(json, InitiationMessage.class).getResponderOtcId());
+	}
+
+	@Test
+	public void sessionState() {
+		SessionState state = new SessionState(TestUtils.generateBytes(16), now, new Date(now.getTime() + 1000),
+				TestUtils.generateBytes(10));
+
+		String json = gson.toJson(state);
+		assertEquals(reflectiveGson.toJson(state), json);
+		assertEquals(state, gson.fromJson(json, SessionState.class));
+
+		state.setAdditionalData(null);
+		json = gson.toJson(state);
+		assertEquals(reflectiveGson.toJson(state), json);
+		assertEquals(state, gson.fromJson(json, SessionState.class));
+	}
+
+	@Test
+	public void exhaustInfo() {
+		ExhaustInfo info = new ExhaustInfo(Arrays.asList(new ExhaustInfoEntry("otc", now)),
+				Arrays.asList(new ExhaustInfoEntry("ltc1", now), new ExhaustInfoEntry("ltc2", now)),
+				Arrays.asList(new SessionExhaustInfo(TestUtils.generateBytes(16), "card", now)));
+
+		String json = gson.toJson(info);
+		assertEquals(reflectiveGson.toJson(info), json);
+
+		ExhaustInfo restored = gson.fromJson(json, ExhaustInfo.class);
+		assertEquals(info.getOtc(), restored.getOtc());
+		assertEquals(info.getLtc(), restored.getLtc());
+		assertEquals(info.getSessions(), restored.getSessions());
+	}
+
+	@Test
+	public void indexEntry() {
+		IndexEntry entry = new IndexEntry(Kind.SESSION, UUID.randomUUID().toString(), "card", now.getTime());
+
+		String json = gson.toJson(entry);
+		assertEquals(reflectiveGson.toJson(entry), json);
+		assertEquals(entry, gson.fromJson(json, IndexEntry.class));
+	}
+
+	@Test
+	public void replenishmentInfo() {
+		ReplenishmentInfo info = new ReplenishmentInfo();
+		info.setActive(10);
+		info.setDesired(20);
+		info.setRate(0.5);
+		info.setRateUpdatedAt(now.getTime());
+		info.setReconciledAt(now.getTime() - 1);
+
+		String json = gson.toJson(info);
+		assertEquals(reflectiveGson.toJson(info), json);
+
+		ReplenishmentInfo restored = gson.fromJson(json, ReplenishmentInfo.class);
+		assertEquals(info.getActive(), restored.getActive());
+		assertEquals(info.getDesired(), restored.getDesired());
+		assertEquals(info.getRate(), restored.getRate(), 0);
+		assertEquals(info.getRateUpdatedAt(), restored.getRateUpdatedAt());
+		assertEquals(info.getReconciledAt(), restored.getReconciledAt());
+	}
+
+}
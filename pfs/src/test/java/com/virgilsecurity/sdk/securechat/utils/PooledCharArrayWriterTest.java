@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.sdk.securechat.model.Message;
+
+public class PooledCharArrayWriterTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String TEXT = "Hello, \u043c\u0438\u0440 \ud83d\ude00";
+
+	private BufferPool pool;
+	private PooledCharArrayWriter writer;
+
+	@Before
+	public void setUp() {
+		pool = new BufferPool();
+		writer = new PooledCharArrayWriter(pool);
+	}
+
+	@After
+	public void tearDown() {
+		writer.close();
+	}
+
+	@Test
+	public void write_grow() throws IOException {
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			writer.write(TEXT);
+			writer.write('.');
+			expected.append(TEXT).append('.');
+		}
+		assertEquals(expected.length(), writer.size());
+		assertEquals(expected.toString(), writer.toString());
+	}
+
+	@Test
+	public void encode() throws IOException {
+		writer.write(TEXT);
+
+		for (boolean direct : new boolean[] { false, true }) {
+			ByteBuffer buffer = writer.encode(UTF8, direct);
+			assertEquals(direct, buffer.isDirect());
+
+			byte[] encoded = new byte[buffer.remaining()];
+			buffer.get(encoded);
+			pool.release(buffer);
+
+			assertEquals(TEXT, new String(encoded, UTF8));
+		}
+	}
+
+	@Test
+	public void decode() throws IOException {
+		byte[] data = TEXT.getBytes(UTF8);
+		writer.write('[');
+		writer.decode(data, 0, data.length, UTF8);
+		writer.write(']');
+
+		assertEquals("[" + TEXT + "]", writer.toString());
+	}
+
+	@Test
+	public void toReader() throws IOException {
+		Message message = new Message(new byte[] { 1, 2 }, new byte[] { 3 }, new byte[] { 4, 5, 6 });
+		GsonUtils.getGson().toJson(message, writer);
+
+		Message parsed = GsonUtils.getGson().fromJson(writer.toReader(), Message.class);
+		assertEquals(GsonUtils.getGson().toJson(message), GsonUtils.getGson().toJson(parsed));
+	}
+
+	@Test
+	public void close_releasesBuffer() throws IOException {
+		writer.write(TEXT);
+		writer.close();
+
+		PooledCharArrayWriter next = new PooledCharArrayWriter(pool);
+		try {
+			next.write("x");
+			assertEquals("x", next.toString());
+			assertTrue(next.size() == 1);
+		} finally {
+			next.close();
+		}
+	}
+
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2017, Virgil Security, Inc.
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of virgil nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.virgilsecurity.sdk.securechat.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.virgilsecurity.sdk.pfs.Deadline;
+import com.virgilsecurity.sdk.securechat.utils.SingleFlight.Call;
+
+public class SingleFlightTest {
+
+	private static final int THREADS = 8;
+
+	private SingleFlight<String, Object> singleFlight;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		this.singleFlight = new SingleFlight<>();
+		this.executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void execute_sequential() {
+		final AtomicInteger calls = new AtomicInteger();
+		Call<Object, RuntimeException> call = new Call<Object, RuntimeException>() {
+
+			@Override
+			public Object call() {
+				calls.incrementAndGet();
+				return new Object();
+			}
+		};
+
+		Object first = this.singleFlight.execute("key", call);
+		Object second = this.singleFlight.execute("key", call);
+
+		assertEquals(2, calls.get());
+		assertEquals(0, this.singleFlight.getInFlightCount());
+		assertNotSame(first, second);
+	}
+
+	@Test
+	public void execute_concurrent() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Call<Object, InterruptedException> call = new Call<Object, InterruptedException>() {
+
+			@Override
+			public Object call() throws InterruptedException {
+				calls.incrementAndGet();
+				started.countDown();
+				release.await();
+				return new Object();
+			}
+		};
+
+		List<Future<Object>> results = submit(call, started);
+		waitForFollowers();
+		release.countDown();
+
+		Object result = results.get(0).get(5, TimeUnit.SECONDS);
+		for (Future<Object> future : results) {
+			assertSame(result, future.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, calls.get());
+		assertEquals(0, this.singleFlight.getInFlightCount());
+	}
+
+	@Test
+	public void execute_concurrentFailure() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final IOException error = new IOException();
+		final Call<Object, IOException> call = new Call<Object, IOException>() {
+
+			@Override
+			public Object call() throws IOException {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw error;
+			}
+		};
+
+		List<Future<Object>> results = submit(call, started);
+		waitForFollowers();
+		release.countDown();
+
+		for (Future<Object> future : results) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertSame(error, e.getCause());
+			}
+		}
+	}
+
+	@Test
+	public void execute_timeoutNotShared() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Object result = new Object();
+		final Call<Object, IOException> call = new Call<Object, IOException>() {
+
+			@Override
+			public Object call() throws IOException {
+				if (calls.incrementAndGet() > 1) {
+					return result;
+				}
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw new IOException(new TimeoutException());
+			}
+		};
+
+		List<Future<Object>> results = submit(call, started);
+		waitForFollowers();
+		release.countDown();
+
+		try {
+			results.get(0).get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().getCause() instanceof TimeoutException);
+		}
+		for (Future<Object> future : results.subList(1, results.size())) {
+			assertSame(result, future.get(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void execute_followerDeadline() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		final Call<Object, InterruptedException> call = new Call<Object, InterruptedException>() {
+
+			@Override
+			public Object call() throws InterruptedException {
+				calls.incrementAndGet();
+				started.countDown();
+				release.await();
+				return new Object();
+			}
+		};
+
+		Future<Object> leader = this.executor.submit(new Callable<Object>() {
+
+			@Override
+			public Object call() throws Exception {
+				return singleFlight.execute("key", call);
+			}
+		});
+		started.await(5, TimeUnit.SECONDS);
+		Future<Object> follower = this.executor.submit(new Callable<Object>() {
+
+			@Override
+			public Object call() throws Exception {
+				try (Deadline.Scope scope = Deadline.after(100, TimeUnit.MILLISECONDS).attach()) {
+					return singleFlight.execute("key", call);
+				}
+			}
+		});
+
+		// Follower fails after its deadline, and doesn't do the work
+		try {
+			follower.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof CancellationException);
+			assertTrue(e.getCause().getCause() instanceof TimeoutException);
+		}
+		assertEquals(1, this.singleFlight.getInFlightCount());
+
+		release.countDown();
+		leader.get(5, TimeUnit.SECONDS);
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void execute_followerInterrupted() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Call<Object, InterruptedException> call = new Call<Object, InterruptedException>() {
+
+			@Override
+			public Object call() throws InterruptedException {
+				started.countDown();
+				release.await();
+				return new Object();
+			}
+		};
+
+		Future<Object> leader = this.executor.submit(new Callable<Object>() {
+
+			@Override
+			public Object call() throws Exception {
+				return singleFlight.execute("key", call);
+			}
+		});
+		started.await(5, TimeUnit.SECONDS);
+
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		Thread follower = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					singleFlight.execute("key", call);
+				} catch (Throwable e) {
+					error.set(e);
+				}
+			}
+		});
+		follower.start();
+		waitForFollowers();
+		follower.interrupt();
+		follower.join(5000);
+
+		assertTrue(error.get() instanceof CancellationException);
+
+		release.countDown();
+		leader.get(5, TimeUnit.SECONDS);
+	}
+
+	private <E extends Exception> List<Future<Object>> submit(final Call<Object, E> call, CountDownLatch started)
+			throws InterruptedException {
+		List<Future<Object>> results = new ArrayList<>();
+		results.add(this.executor.submit(new Callable<Object>() {
+
+			@Override
+			public Object call() throws Exception {
+				return singleFlight.execute("key", call);
+			}
+		}));
+		started.await(5, TimeUnit.SECONDS);
+		for (int i = 1; i < THREADS; i++) {
+			results.add(this.executor.submit(new Callable<Object>() {
+
+				@Override
+				public Object call() throws Exception {
+					return singleFlight.execute("key", call);
+				}
+			}));
+		}
+		return results;
+	}
+
+	private void waitForFollowers() throws InterruptedException {
+		// Followers don't signal when they start waiting, so give them time
+		// to join the flight
+		Thread.sleep(200);
+		assertEquals(1, this.singleFlight.getInFlightCount());
+	}
+
+}